@@ -0,0 +1,73 @@
+package benchmark;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import logic.Customer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mäter bankens vanligaste anrop mot en bank av storleken
+ * {@link BankState#transactions}. Varje tråd väljer konton och kunder
+ * slumpmässigt så att samtidiga trådar sällan låser samma rad.
+ * Insättningar och uttag läggs till i databasen under körningen.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BankLogicBenchmark {
+
+    /** Slumptal per tråd. */
+    @State(Scope.Thread)
+    public static class Picker {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int account(BankState state) {
+            return 1 + random.nextInt(state.accounts);
+        }
+
+        int customer(BankState state) {
+            return random.nextInt(state.customers);
+        }
+    }
+
+    @Benchmark
+    public boolean deposit(BankState state, Picker picker) {
+        int accountId = picker.account(state);
+        return state.bank.deposit(BenchData.ownerOf(accountId), accountId, 100);
+    }
+
+    @Benchmark
+    public boolean withdraw(BankState state, Picker picker) {
+        int accountId = picker.account(state);
+        return state.bank.withdraw(BenchData.ownerOf(accountId), accountId, 100);
+    }
+
+    @Benchmark
+    public List<String> getTransactions(BankState state, Picker picker) {
+        int accountId = picker.account(state);
+        return state.bank.getTransactions(BenchData.ownerOf(accountId), accountId);
+    }
+
+    @Benchmark
+    public Customer getCustomerByIndex(BankState state, Picker picker) {
+        return state.bank.getCustomerByIndex(picker.customer(state));
+    }
+
+    @Benchmark
+    public String[] getAccountInfoArray(BankState state, Picker picker) {
+        return state.bank.getAccountInfoArray(BenchData.pNo(picker.customer(state)));
+    }
+}
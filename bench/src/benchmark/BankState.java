@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import logic.BankLogic;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * En bank fylld med syntetisk data, delad av alla trådar i en körning.
+ * Databasens innehåll ersätts, så en separat databas måste anges med
+ * {@code -Dbank.db.url}, eller banken köras i minnet med
+ * {@code -Dbank.storage=memory}.
+ *
+ */
+@State(Scope.Benchmark)
+public class BankState {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int transactions;
+
+    BankLogic bank;
+    int accounts;
+    int customers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (!"memory".equals(System.getProperty("bank.storage"))
+                && System.getProperty("bank.db.url") == null) {
+            throw new IllegalStateException(
+                    "Benchmarks replace all bank data; point -Dbank.db.url at a scratch database"
+                    + " or run with -Dbank.storage=memory");
+        }
+        accounts = BenchData.accountsFor(transactions);
+        customers = accounts / 2;
+
+        Path file = BenchData.write(transactions);
+        try {
+            bank = new BankLogic();
+            bank.restoreSnapshot(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (bank != null) {
+            bank.close();
+        }
+    }
+}
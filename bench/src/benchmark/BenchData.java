@@ -0,0 +1,91 @@
+package benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import database.AccountDAO;
+import database.TransactionDAO;
+import logic.Customer;
+import logic.SnapshotWriter;
+import model.AccountType;
+import model.TransactionType;
+
+/**
+ * Genererar en syntetisk bank som en ögonblicksbild, så att även stora
+ * datamängder kan läsas in snabbt med COPY i stället för en insättning i
+ * taget. Varje kund har två konton och varje konto ungefär
+ * {@link #TRANSACTIONS_PER_ACCOUNT} transaktioner.
+ *
+ */
+final class BenchData {
+
+    static final int TRANSACTIONS_PER_ACCOUNT = 100;
+
+    private static final BigDecimal AMOUNT = BigDecimal.valueOf(100);
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    private BenchData() {
+    }
+
+    /**
+     * @param transactions antal transaktioner.
+     * @return antal konton för så många transaktioner, jämnt antal och minst två.
+     */
+    static int accountsFor(int transactions) {
+        int accounts = Math.max(2, transactions / TRANSACTIONS_PER_ACCOUNT);
+        return accounts + (accounts & 1);
+    }
+
+    /**
+     * @param accountId kontots id, från 1.
+     * @return personnumret för kontots ägare.
+     */
+    static String ownerOf(int accountId) {
+        return pNo((accountId - 1) / 2);
+    }
+
+    static String pNo(int customer) {
+        return String.format("19%06d-%04d", customer / 10_000, customer % 10_000);
+    }
+
+    /**
+     * Skriver en bank med {@code transactions} insättningar till en temporär fil.
+     *
+     * @return filen, som anroparen ansvarar för att ta bort.
+     * @throws IOException om filen inte kunde skrivas.
+     */
+    static Path write(int transactions) throws IOException {
+        int accounts = accountsFor(transactions);
+        Path file = Files.createTempFile("bench-bank", ".dat");
+
+        try (SnapshotWriter writer = new SnapshotWriter(file, false)) {
+            for (int c = 0; c < accounts / 2; c++) {
+                writer.writeCustomer(new Customer("Kund", "Nummer " + c, pNo(c)));
+            }
+
+            long[] deposits = new long[accounts + 1];
+            for (int t = 0; t < transactions; t++) {
+                deposits[t % accounts + 1]++;
+            }
+            for (int id = 1; id <= accounts; id++) {
+                AccountType type = (id & 1) == 1 ? AccountType.SAVINGS : AccountType.CREDIT;
+                writer.writeAccount(new AccountDAO.AccountRecord(
+                        id, ownerOf(id), type, AMOUNT.multiply(BigDecimal.valueOf(deposits[id]))));
+            }
+
+            for (int t = 0; t < transactions; t++) {
+                writer.writeTransaction(new TransactionDAO.TransactionRecord(
+                        t + 1, t % accounts + 1, AMOUNT, TransactionType.DEPOSIT.name(),
+                        "Deposit", START.plusSeconds(t)));
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+}
@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Kör hela benchmarksviten och skriver resultaten som JSON, en fil per
+ * trådantal, så att de kan jämföras mellan versioner.
+ *
+ * <p>Systemegenskaper:
+ * <ul>
+ *   <li>{@code bank.db.url}, {@code bank.db.user}, {@code bank.db.password}:
+ *       databasen som fylls med testdata (krävs, skickas vidare till
+ *       benchmark-JVM:en)</li>
+ *   <li>{@code bench.transactions}: kommaseparerade datamängder, annars
+ *       värdena i {@link BankState#transactions}</li>
+ *   <li>{@code bench.threads}: kommaseparerade trådantal, standard 1,4,16</li>
+ *   <li>{@code bench.results}: katalog för resultaten, standard bench-results</li>
+ * </ul>
+ *
+ */
+public class BenchmarkMain {
+
+    private static final String[] FORWARDED_PROPERTIES = {
+            "bank.db.url", "bank.db.user", "bank.db.password"
+    };
+
+    public static void main(String[] args) throws Exception {
+        Path results = Paths.get(System.getProperty("bench.results", "bench-results"));
+        Files.createDirectories(results);
+
+        for (String threads : System.getProperty("bench.threads", "1,4,16").split(",")) {
+            int count = Integer.parseInt(threads.trim());
+            new Runner(options(BankLogicBenchmark.class, results.resolve("bank-logic-t" + count + ".json"))
+                    .threads(count)
+                    .build()).run();
+        }
+        new Runner(options(LoadSaveBenchmark.class, results.resolve("load-save.json"))
+                .build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(Class<?> benchmark, Path result) {
+        List<String> jvmArgs = new ArrayList<>();
+        for (String name : FORWARDED_PROPERTIES) {
+            String value = System.getProperty(name);
+            if (value != null) {
+                jvmArgs.add("-D" + name + "=" + value);
+            }
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(benchmark.getName())
+                .jvmArgsAppend(jvmArgs.toArray(new String[0]))
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString());
+
+        String transactions = System.getProperty("bench.transactions");
+        if (transactions != null) {
+            options.param("transactions", transactions.split(","));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,66 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import logic.LoadSave;
+import logic.SnapshotInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mäter att spara banken till fil och att läsa in den igen. Varje anrop
+ * gör hela arbetet, så varje mätning är ett enskilt anrop.
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(1)
+@Fork(1)
+public class LoadSaveBenchmark {
+
+    /** En sparad kopia av banken att läsa in och en fil att spara till. */
+    @State(Scope.Benchmark)
+    public static class SnapshotFiles {
+        Path saved;
+        Path target;
+
+        @Setup(Level.Trial)
+        public void setUp(BankState state) throws IOException {
+            saved = Files.createTempFile("bench-load", ".dat");
+            target = Files.createTempFile("bench-save", ".dat");
+            LoadSave.saveBankToFile(state.bank, saved.toString());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(saved);
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Benchmark
+    public SnapshotInfo save(BankState state, SnapshotFiles files) throws IOException {
+        return LoadSave.saveBankToFile(state.bank, files.target.toString());
+    }
+
+    @Benchmark
+    public SnapshotInfo load(BankState state, SnapshotFiles files) throws IOException {
+        return LoadSave.loadBankFromFile(state.bank, files.saved.toString());
+    }
+}
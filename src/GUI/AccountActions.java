@@ -1,131 +1,155 @@
 package GUI;
 
 import java.io.File;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.IntConsumer;
 
 import javax.swing.JFileChooser;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
-import logic.BankLogic;
-import logic.LoadSave;
+import logic.TransactionExporter;
+import model.Money;
 
 /**
  * Klass som hanterar kontoåtgärder i det grafiska användargränssnittet gentemot banklogiken.
+ * Alla anrop mot banklogiken körs asynkront via {@link AsyncBankLogic}; dialoger och
+ * uppdateringar av komponenter sker på EDT.
  *
  */
 public class AccountActions {
 
     private final int SELECTED_INDEX_NOT_FOUND = -1;
     private final int INVALID_ACCOUNT_ID = -1;
-    private final int INVALID_AMOUNT = -1;
-    private final int customerSelectedIndex;
+    private final String customerpNo;
     private final JList<String> accountList;
-    private final BankLogic bankLogic;
+    private final AccountListModel accountListModel;
+    private final AsyncBankLogic asyncBank;
     private final JTextArea accountOutputTextArea;
 
     /**
      * Konstruktor för AccountActions.
      *
-     * @param bankLogic banklogik.
+     * @param asyncBank asynkron banklogik.
      * @param accountList lista med konton som är kopplad till GUI.
+     * @param accountListModel kontolistans modell.
      * @param accountOutputTextArea textområde för systemmeddelanden.
-     * @param customerSelectedIndex index för vald kund.
+     * @param customerpNo personnummer för vald kund.
      */
     public AccountActions(
-            BankLogic bankLogic,
+            AsyncBankLogic asyncBank,
             JList<String> accountList,
+            AccountListModel accountListModel,
             JTextArea accountOutputTextArea,
-            int customerSelectedIndex) {
+            String customerpNo) {
         this.accountList = accountList;
-        this.bankLogic = bankLogic;
+        this.accountListModel = accountListModel;
+        this.asyncBank = asyncBank;
         this.accountOutputTextArea = accountOutputTextArea;
-        this.customerSelectedIndex = customerSelectedIndex;
+        this.customerpNo = customerpNo;
     }
 
     /** Hanterar tillägg av sparkonto. */
     public void handleCreateSavingsAccount() {
         String pNo = getSelectedCustomerpNo();
-        int accountId = bankLogic.createSavingsAccount(pNo);
-        if (accountId != INVALID_ACCOUNT_ID) {
-            accountOutputTextArea.setText("Sparkonto skapat med id: " + accountId);
-            updateAccountList(customerSelectedIndex);
-        } else {
-            accountOutputTextArea.setText("Kunde inte skapa sparkonto.");
-        }
+        asyncBank.run(
+                bankLogic -> bankLogic.createSavingsAccount(pNo),
+                accountId -> {
+                    if (accountId != INVALID_ACCOUNT_ID) {
+                        accountOutputTextArea.setText("Sparkonto skapat med id: " + accountId);
+                        updateAccountList();
+                    } else {
+                        accountOutputTextArea.setText("Kunde inte skapa sparkonto.");
+                    }
+                },
+                this::showError);
     }
 
     /** Hanterar tillägg av kreditkonto. */
     public void handleCreateCreditAccount() {
         String pNo = getSelectedCustomerpNo();
-        int accountId = bankLogic.createCreditAccount(pNo);
-        if (accountId != INVALID_ACCOUNT_ID) {
-            accountOutputTextArea.setText("Kreditkonto skapat med id: " + accountId);
-            updateAccountList(customerSelectedIndex);
-        } else {
-            accountOutputTextArea.setText("Kunde inte skapa kreditkonto.");
-        }
+        asyncBank.run(
+                bankLogic -> bankLogic.createCreditAccount(pNo),
+                accountId -> {
+                    if (accountId != INVALID_ACCOUNT_ID) {
+                        accountOutputTextArea.setText("Kreditkonto skapat med id: " + accountId);
+                        updateAccountList();
+                    } else {
+                        accountOutputTextArea.setText("Kunde inte skapa kreditkonto.");
+                    }
+                },
+                this::showError);
     }
 
     /** Hanterar stängning av konto. */
     public void handleCloseAccount() {
         String pNo = getSelectedCustomerpNo();
-        int accountId = acquireAccountId();
-        if (accountId == SELECTED_INDEX_NOT_FOUND) {
-            return;
-        }
-        int remove = JOptionPane.showConfirmDialog(
-                null,
-                "Är du säker på att du vill stänga kontot med id: " + accountId + "?",
-                "Bekräfta stängning av konto",
-                JOptionPane.YES_NO_OPTION);
-        if (remove != JOptionPane.YES_OPTION) {
-            accountOutputTextArea.setText("Stängning av konto avbröts.");
-            return;
-        }
-
-        String accountInfo = bankLogic.closeAccount(pNo, accountId);
-        if (accountInfo != null) {
-            accountOutputTextArea.setText("Kontot avstängt: " + accountInfo);
+        acquireAccountId(accountId -> {
+            int remove = JOptionPane.showConfirmDialog(
+                    null,
+                    "Är du säker på att du vill stänga kontot med id: " + accountId + "?",
+                    "Bekräfta stängning av konto",
+                    JOptionPane.YES_NO_OPTION);
+            if (remove != JOptionPane.YES_OPTION) {
+                accountOutputTextArea.setText("Stängning av konto avbröts.");
+                return;
+            }
 
-            updateAccountList(customerSelectedIndex);
-        } else {
-            accountOutputTextArea.setText("Kunde inte hitta konto.");
-        }
+            accountOutputTextArea.setText("Stänger konto...");
+            asyncBank.run(
+                    bankLogic -> bankLogic.closeAccount(pNo, accountId),
+                    accountInfo -> {
+                        if (accountInfo != null) {
+                            accountOutputTextArea.setText("Kontot avstängt: " + accountInfo);
+                            updateAccountList();
+                        } else {
+                            accountOutputTextArea.setText("Kunde inte hitta konto.");
+                        }
+                    },
+                    this::showError);
+        });
     }
 
     /** Hanterar hämtning av transaktioner. */
     public void handleGetTransactions() {
         String pNo = getSelectedCustomerpNo();
-
-        int accountId = acquireAccountId();
-        if (accountId == SELECTED_INDEX_NOT_FOUND) {
-            return;
-        }
-        String transactions = bankLogic.getTransactions(pNo, accountId).toString();
-        accountOutputTextArea.setText(transactions);
+        acquireAccountId(accountId ->
+                TransactionHistoryView.show(accountList, asyncBank, pNo, accountId));
     }
 
-    /** Hanterar sparandet av transaktioner. */
+    /**
+     * Hanterar sparandet av transaktioner. Historiken strömmas direkt från
+     * databasen till filen, som text eller CSV beroende på vald filändelse.
+     */
     public void handleSaveTransactions() {
         String pNo = getSelectedCustomerpNo();
-        int accountId = acquireAccountId();
-        if (accountId == SELECTED_INDEX_NOT_FOUND) {
-            return;
-        }
+        acquireAccountId(accountId -> {
+            FileNameExtensionFilter textFilter = new FileNameExtensionFilter("Text files", "txt");
+            FileNameExtensionFilter csvFilter = new FileNameExtensionFilter("CSV files", "csv");
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setCurrentDirectory(new File("src/data"));
+            fileChooser.setSelectedFile(new File("transaktioner.txt"));
+            fileChooser.setDialogTitle("Spara transaktioner");
+            fileChooser.addChoosableFileFilter(textFilter);
+            fileChooser.addChoosableFileFilter(csvFilter);
+            fileChooser.setFileFilter(textFilter);
 
-        List<String> transactions = bankLogic.getTransactions(pNo, accountId);
-        JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setCurrentDirectory(new File("src/data"));
-        fileChooser.setSelectedFile(new File("transaktioner.txt"));
-        fileChooser.setDialogTitle("Spara transaktioner");
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Text files", "txt"));
-
-        int returnValue = fileChooser.showSaveDialog(null);
-        if (returnValue == JFileChooser.APPROVE_OPTION) {
-            if (fileChooser.getSelectedFile().exists()) {
+            int returnValue = fileChooser.showSaveDialog(null);
+            if (returnValue != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            String path = fileChooser.getSelectedFile().getAbsolutePath();
+            TransactionExporter.Format format =
+                    path.endsWith(".csv") || fileChooser.getFileFilter() == csvFilter
+                            ? TransactionExporter.Format.CSV
+                            : TransactionExporter.Format.TEXT;
+            String extension = "." + format.getExtension();
+            File file = new File(path.endsWith(extension) ? path : path + extension);
+            if (file.exists()) {
                 int overwrite =
                         JOptionPane.showConfirmDialog(
                                 null,
@@ -136,80 +160,96 @@ public class AccountActions {
                     return;
                 }
             }
-            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-            if (!filePath.endsWith(".txt")) {
-                filePath += ".txt";
-            }
-            transactions = LoadSave.saveTransactionToFile(filePath, transactions);
-            if (transactions != null) {
-                accountOutputTextArea.setText("Transaktioner sparade.");
-            } else {
-                accountOutputTextArea.setText("Kunde inte spara transaktioner.");
-            }
-        }
+
+            accountOutputTextArea.setText("Sparar transaktioner...");
+            asyncBank.run(
+                    bankLogic -> {
+                        try {
+                            return new TransactionExporter(bankLogic, 1).exportAccount(
+                                    pNo, accountId, file.toPath(), format,
+                                    (rows, done, total) -> SwingUtilities.invokeLater(() ->
+                                            accountOutputTextArea.setText(
+                                                    "Sparar transaktioner... " + rows + " rader")));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    },
+                    result -> {
+                        if (result != null) {
+                            accountOutputTextArea.setText(
+                                    result.rows() + " transaktioner sparade.");
+                        } else {
+                            accountOutputTextArea.setText("Kunde inte hitta konto.");
+                        }
+                    },
+                    error -> accountOutputTextArea.setText(
+                            "Kunde inte spara transaktioner: " + AsyncBankLogic.describe(error)));
+        });
     }
 
     /** Hanterar hämtning av konto. */
     public void handleGetAccount() {
         String pNo = getSelectedCustomerpNo();
-        int accountId = acquireAccountId();
-        if (accountId == SELECTED_INDEX_NOT_FOUND) {
-            return;
-        }
-        String accountInfo = bankLogic.getAccount(pNo, accountId);
-        accountOutputTextArea.setText(accountInfo);
+        acquireAccountId(accountId -> asyncBank.run(
+                bankLogic -> bankLogic.getAccount(pNo, accountId),
+                accountOutputTextArea::setText,
+                this::showError));
     }
 
     /** Hanterar insättning på konto. */
     public void handleDeposit() {
         String pNo = getSelectedCustomerpNo();
-        int accountId = acquireAccountId();
-        if (accountId == SELECTED_INDEX_NOT_FOUND) {
-            return;
-        }
-        int amount = promptForAmount("Ange belopp att sätta in:");
-        if (amount == INVALID_AMOUNT) {
-            return;
-        }
+        acquireAccountId(accountId -> {
+            Money amount = promptForAmount("Ange belopp att sätta in:");
+            if (amount == null) {
+                return;
+            }
 
-        if (bankLogic.deposit(pNo, accountId, amount)) {
-            accountOutputTextArea.setText("Insättningen lyckades");
-            updateAccountList(customerSelectedIndex);
-        } else {
-            accountOutputTextArea.setText("Insättningen misslyckades");
-        }
+            asyncBank.run(
+                    bankLogic -> bankLogic.deposit(pNo, accountId, amount),
+                    ok -> {
+                        if (ok) {
+                            accountOutputTextArea.setText("Insättningen lyckades");
+                            updateAccountList();
+                        } else {
+                            accountOutputTextArea.setText("Insättningen misslyckades");
+                        }
+                    },
+                    this::showError);
+        });
     }
 
     /** Hanterar uttag från konto. */
     public void handleWithdraw() {
         String pNo = getSelectedCustomerpNo();
-        int accountId = acquireAccountId();
-        if (accountId == SELECTED_INDEX_NOT_FOUND) {
-            return;
-        }
-        int amount = promptForAmount("Ange belopp att ta ut:");
-        if (amount == INVALID_AMOUNT) {
-            return;
-        }
+        acquireAccountId(accountId -> {
+            Money amount = promptForAmount("Ange belopp att ta ut:");
+            if (amount == null) {
+                return;
+            }
 
-        if (bankLogic.withdraw(pNo, accountId, amount)) {
-            accountOutputTextArea.setText("Uttaget lyckades.");
-            updateAccountList(customerSelectedIndex);
-        } else {
-            accountOutputTextArea.setText("Uttaget misslyckades.");
-        }
+            asyncBank.run(
+                    bankLogic -> bankLogic.withdraw(pNo, accountId, amount),
+                    ok -> {
+                        if (ok) {
+                            accountOutputTextArea.setText("Uttaget lyckades.");
+                            updateAccountList();
+                        } else {
+                            accountOutputTextArea.setText("Uttaget misslyckades.");
+                        }
+                    },
+                    this::showError);
+        });
     }
 
     /**
      * Uppdaterar listan med konto så att den visar de uppdaterade kontona när konton ändras.
-     *
-     * @param customerIndex index för vald kund.
+     * När databasen rapporterar ändringar uppdateras listan redan av dem.
      */
-    private void updateAccountList(int customerIndex) {
-        if (customerIndex == SELECTED_INDEX_NOT_FOUND) {
-            return;
+    private void updateAccountList() {
+        if (!asyncBank.isLive()) {
+            accountListModel.reload(this::showError);
         }
-        accountList.setListData(bankLogic.getAccountInfoArray(customerIndex));
     }
 
     /**
@@ -223,15 +263,21 @@ public class AccountActions {
 
     /**
      * Hämtar konto-id, kontrollerar först om konto är valt, om inget konto är valt kan konto-id
-     * anges manuellt. Innefattar även validering.
+     * anges manuellt. Ett valt konto tas från raden som visas, ett manuellt angivet
+     * konto-id valideras asynkront.
      *
-     * @return konto-id om kontot finns, alternativt -1.
+     * @param onAccount anropas på EDT med konto-id om kontot finns.
      */
-    private int acquireAccountId() {
+    private void acquireAccountId(IntConsumer onAccount) {
         String pNo = getSelectedCustomerpNo();
         if (isAccountSelected()) {
-            return Integer.parseInt(
-                    bankLogic.getAccountIdBypNoAndIndex(pNo, accountList.getSelectedIndex()));
+            int accountId = accountListModel.accountIdAt(accountList.getSelectedIndex());
+            if (accountId != -1) {
+                onAccount.accept(accountId);
+            } else {
+                accountOutputTextArea.setText("Kunde inte hitta konto.");
+            }
+            return;
         }
 
         String input =
@@ -239,22 +285,27 @@ public class AccountActions {
                         null, "Inget konto valt. \nAnge konto-id " + "manuellt:");
         if (input == null) {
             accountOutputTextArea.setText("Val av konto avbrutet.");
-            return SELECTED_INDEX_NOT_FOUND;
+            return;
         }
         int accountId;
         try {
             accountId = Integer.parseInt(input);
         } catch (NumberFormatException e) {
             accountOutputTextArea.setText("Ogiltigt konto-id, vänligen försök igen!");
-            return SELECTED_INDEX_NOT_FOUND;
+            return;
         }
 
-        if (bankLogic.getAccount(pNo, accountId) != null) {
-            return accountId;
-        }
-        accountOutputTextArea.setText(
-                "Kunde inte hitta konto med detta konto-id, vänligen försök igen!");
-        return SELECTED_INDEX_NOT_FOUND;
+        asyncBank.run(
+                bankLogic -> bankLogic.getAccount(pNo, accountId) != null,
+                exists -> {
+                    if (exists) {
+                        onAccount.accept(accountId);
+                    } else {
+                        accountOutputTextArea.setText(
+                                "Kunde inte hitta konto med detta konto-id, vänligen försök igen!");
+                    }
+                },
+                this::showError);
     }
 
     /**
@@ -263,32 +314,41 @@ public class AccountActions {
      * @return personnumret.
      */
     private String getSelectedCustomerpNo() {
-        return bankLogic.getCustomerByIndex(customerSelectedIndex).getpNo();
+        return customerpNo;
+    }
+
+    /**
+     * Visar ett fel från ett asynkront anrop.
+     *
+     * @param error felet.
+     */
+    private void showError(Throwable error) {
+        accountOutputTextArea.setText("Databasfel: " + AsyncBankLogic.describe(error));
     }
 
     /**
      * Hämtar mängden pengar som ska matas in.
      *
      * @param message meddelandet som visas i inmatningsdialogen.
-     * @return mängden pengar, alternativt -1 om mängden är ogiltig.
+     * @return mängden pengar, i kronor och ören, alternativt null om mängden är ogiltig.
      */
-    private int promptForAmount(String message) {
+    private Money promptForAmount(String message) {
         String input = JOptionPane.showInputDialog(message);
         if (input == null) {
             accountOutputTextArea.setText("Åtgärden avbruten");
-            return INVALID_AMOUNT;
+            return null;
         }
-        int amount;
+        Money amount;
         try {
-            amount = Integer.parseInt(input);
+            amount = Money.parse(input);
         } catch (NumberFormatException e) {
             accountOutputTextArea.setText("Ogiltig mängd pengar, vänligen försök igen!");
-            return INVALID_AMOUNT;
+            return null;
         }
 
-        if (amount <= 0) {
+        if (amount.signum() <= 0) {
             accountOutputTextArea.setText("Beloppet måste vara större än noll.");
-            return INVALID_AMOUNT;
+            return null;
         }
 
         return amount;
@@ -0,0 +1,156 @@
+package GUI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.swing.AbstractListModel;
+
+import database.AccountDAO;
+import database.ChangeFeed;
+
+/**
+ * Listmodell för en kunds konton, sorterade på konto-id. När kontona läses
+ * om jämförs de med raderna som visas, och JList meddelas bara om de rader
+ * som tillkommit, försvunnit eller fått nytt saldo. Markering och
+ * scrollposition behålls därför när andra klienter ändrar kontona.
+ *
+ * <p>All intern state ändras bara på EDT.
+ *
+ */
+public class AccountListModel extends AbstractListModel<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AsyncBankLogic asyncBank;
+    private String pNo;
+    /** Tar emot fel från hämtningar som listan själv startar. */
+    private Consumer<Throwable> onError = error -> { };
+    private List<AccountDAO.AccountRecord> accounts = new ArrayList<>();
+    /** Räknas upp vid byte av kund så att svar för en tidigare kund ignoreras. */
+    private int generation;
+
+    /**
+     * Konstruktor för AccountListModel. Listan är tom tills en kund visas.
+     *
+     * @param asyncBank asynkron banklogik.
+     */
+    public AccountListModel(AsyncBankLogic asyncBank) {
+        this.asyncBank = asyncBank;
+    }
+
+    @Override
+    public int getSize() {
+        return accounts.size();
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return accounts.get(index).toString();
+    }
+
+    /**
+     * Hämtar konto-id för kontot som visas på en viss rad.
+     *
+     * @param index radens index
+     * @return konto-id, eller -1 om indexet är utanför listan.
+     */
+    public int accountIdAt(int index) {
+        return index >= 0 && index < accounts.size() ? accounts.get(index).getAccountId() : -1;
+    }
+
+    /**
+     * Visar en kunds konton. Listan töms direkt och fylls när kontona hämtats.
+     *
+     * @param pNo kundens personnummer, null för en tom lista
+     * @param onError tar emot fel från hämtningen, och från senare
+     *                hämtningar efter ändringar i databasen, på EDT
+     */
+    public void show(String pNo, Consumer<Throwable> onError) {
+        this.pNo = pNo;
+        this.onError = onError;
+        generation++;
+        apply(List.of());
+        if (pNo != null) {
+            reload(onError);
+        }
+    }
+
+    /**
+     * Läser om den visade kundens konton och uppdaterar raderna som ändrats.
+     *
+     * @param onError tar emot fel från hämtningen på EDT
+     */
+    public void reload(Consumer<Throwable> onError) {
+        if (pNo == null) {
+            return;
+        }
+        String requestedPNo = pNo;
+        int requested = generation;
+        asyncBank.run(
+                bankLogic -> bankLogic.getAccounts(requestedPNo),
+                fresh -> {
+                    if (requested == generation) {
+                        apply(fresh);
+                    }
+                },
+                onError);
+    }
+
+    /**
+     * Läser om kontona om en ändring av konton rör den visade kunden: ett
+     * av kontona i listan, eller ett konto som kunden äger och som inte
+     * finns i listan än. Fel går till mottagaren som angavs vid
+     * {@link #show}.
+     *
+     * @param change ändrade konton med ägarnas personnummer
+     */
+    public void reloadIfAffected(ChangeFeed.Change change) {
+        if (pNo == null) {
+            return;
+        }
+        if (change.isAll() || affects(change.rows())) {
+            reload(onError);
+        }
+    }
+
+    private boolean affects(Map<String, String> owners) {
+        if (owners.containsValue(pNo)) {
+            return true;
+        }
+        for (AccountDAO.AccountRecord account : accounts) {
+            if (owners.containsKey(Integer.toString(account.getAccountId()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Gör raderna lika med {@code fresh}, som är sorterad på konto-id. */
+    private void apply(List<AccountDAO.AccountRecord> fresh) {
+        int i = 0;
+        int j = 0;
+        while (i < accounts.size() || j < fresh.size()) {
+            int cmp = i == accounts.size() ? 1
+                    : j == fresh.size() ? -1
+                    : Integer.compare(accounts.get(i).getAccountId(), fresh.get(j).getAccountId());
+            if (cmp < 0) {
+                accounts.remove(i);
+                fireIntervalRemoved(this, i, i);
+            } else if (cmp > 0) {
+                accounts.add(i, fresh.get(j++));
+                fireIntervalAdded(this, i, i);
+                i++;
+            } else {
+                AccountDAO.AccountRecord account = fresh.get(j++);
+                // Owner and type never change, only the balance
+                if (accounts.get(i).getBalance().compareTo(account.getBalance()) != 0) {
+                    accounts.set(i, account);
+                    fireContentsChanged(this, i, i);
+                }
+                i++;
+            }
+        }
+    }
+}
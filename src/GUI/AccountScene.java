@@ -13,25 +13,26 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 
-import logic.BankLogic;
-import logic.Customer;
-
 /**
  * Klass som hanterar kontoscenen i det grafiska användargränssnittet.
  *
  */
 public class AccountScene {
-    private static final int SELECTED_INDEX_NOT_FOUND = -1;
 
     /**
      * Skapar kontoscenen
      *
+     * @param asyncBank asynkron banklogik.
+     * @param accountList kontolistan.
+     * @param accountListModel kontolistans modell.
+     * @param pNo personnummer för vald kund.
      * @return panelen för kundscenen.
      */
     public JPanel create(
-            BankLogic bankLogic,
+            AsyncBankLogic asyncBank,
             JList<String> accountList,
-            int customerSelectedIndex) {
+            AccountListModel accountListModel,
+            String pNo) {
 
         JTextArea outputTextArea = new JTextArea(5, 20);
         JPanel panel = new JPanel(new BorderLayout());
@@ -57,7 +58,7 @@ public class AccountScene {
 
         AccountActions accountActions =
                 new AccountActions(
-                        bankLogic, accountList, outputTextArea, customerSelectedIndex);
+                        asyncBank, accountList, accountListModel, outputTextArea, pNo);
 
         JPanel accountButtonPanel = new JPanel();
         topPanel.add(accountButtonPanel);
@@ -73,11 +74,11 @@ public class AccountScene {
         JButton closeAccountButton = new JButton("Stäng konto");
 
 
-        if (customerSelectedIndex == SELECTED_INDEX_NOT_FOUND) {
+        if (pNo == null) {
             return panel;
         }
-        Customer customer = bankLogic.getCustomerByIndex(customerSelectedIndex);
-        accountList.setListData(bankLogic.getAccountInfoArray(customerSelectedIndex));
+        accountListModel.show(pNo, error -> outputTextArea.setText(
+                "Databasfel: " + AsyncBankLogic.describe(error)));
 
         ActionListener accountActionListener =
                 e -> {
@@ -0,0 +1,245 @@
+package GUI;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+import database.ChangeFeed;
+import logic.BankLogic;
+
+/**
+ * Asynkron fasad över {@link BankLogic} för GUI:t. Allt databasarbete körs
+ * på bakgrundstrådar (virtuella trådar när JVM:en stöder det) och resultat
+ * och fel levereras tillbaka på Event Dispatch Thread, så att fönstret
+ * aldrig fryser medan en fråga pågår.
+ *
+ */
+public class AsyncBankLogic implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(AsyncBankLogic.class.getName());
+
+    private final BankLogic bankLogic;
+    private final ExecutorService executor = newExecutor();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Set<CompletableFuture<?>> running = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<Boolean>> busyListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<List<ChangeFeed.Change>>> changeListeners =
+            new CopyOnWriteArrayList<>();
+    private volatile boolean live;
+
+    /**
+     * Konstruktor för AsyncBankLogic.
+     *
+     * @param bankLogic banklogiken som anropen körs mot.
+     */
+    public AsyncBankLogic(BankLogic bankLogic) {
+        this.bankLogic = bankLogic;
+    }
+
+    /**
+     * Kör {@code work} mot banklogiken på en bakgrundstråd. {@code onSuccess}
+     * eller {@code onError} anropas sedan på EDT. Ett avbrutet anrop går
+     * till {@code onError} med en {@link CancellationException}, så att
+     * anroparen kan städa upp det som väntade på svaret.
+     *
+     * @param work arbetet som ska köras
+     * @param onSuccess tar emot resultatet på EDT
+     * @param onError tar emot felet på EDT
+     * @return en future som kan avbrytas med {@code cancel(true)}.
+     */
+    public <T> CompletableFuture<T> run(
+            Function<BankLogic, T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+
+        CancellableFuture<T> result = new CancellableFuture<>();
+        started();
+        running.add(result);
+
+        result.task = executor.submit(() -> {
+            try {
+                if (!result.isDone()) {
+                    result.complete(work.apply(bankLogic));
+                }
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+
+        result.whenComplete((value, error) -> {
+            running.remove(result);
+            SwingUtilities.invokeLater(() -> {
+                finished();
+                if (error != null) {
+                    if (!result.isCancelled()) {
+                        LOGGER.log(Level.WARNING, "Background bank call failed", error);
+                    }
+                    onError.accept(error);
+                } else {
+                    onSuccess.accept(value);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Avbryter alla pågående anrop. Anrop som redan står i en JDBC-fråga
+     * får ett avbrott men frågan kan köras klart i databasen.
+     */
+    public void cancelAll() {
+        for (CompletableFuture<?> call : running) {
+            call.cancel(true);
+        }
+    }
+
+    /**
+     * Hämtar ett läsbart felmeddelande, utan omslutande CompletionException.
+     *
+     * @param error felet från ett asynkront anrop.
+     * @return felmeddelandet.
+     */
+    public static String describe(Throwable error) {
+        Throwable t = error;
+        while (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof CancellationException) {
+            return "Avbrutet";
+        }
+        return t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName();
+    }
+
+    /**
+     * Lägger till en lyssnare som anropas på EDT med {@code true} när det
+     * första anropet startar och {@code false} när det sista är klart.
+     *
+     * @param listener lyssnaren.
+     */
+    public void addBusyListener(Consumer<Boolean> listener) {
+        busyListeners.add(listener);
+    }
+
+    /**
+     * Börjar ta emot ändringar som gjorts i databasen, även av andra
+     * klienter, och skickar dem till ändringslyssnarna på EDT. Gör inget
+     * när banken körs i minnet.
+     */
+    public void listenForChanges() {
+        executor.submit(() -> {
+            try {
+                boolean started = bankLogic.listenForChanges(changes ->
+                        SwingUtilities.invokeLater(() ->
+                                changeListeners.forEach(l -> l.accept(changes))));
+                if (started) {
+                    live = true;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not listen for changes", e);
+            }
+        });
+    }
+
+    /**
+     * Lägger till en lyssnare som anropas på EDT med ändrade kunder,
+     * konton och transaktioner när {@link #isLive()} är true.
+     *
+     * @param listener lyssnaren.
+     */
+    public void addChangeListener(Consumer<List<ChangeFeed.Change>> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Kontrollerar om ändringar i databasen rapporteras, så att listor inte
+     * behöver läsas om efter varje egen åtgärd.
+     *
+     * @return true om ändringslyssnarna anropas.
+     */
+    public boolean isLive() {
+        return live;
+    }
+
+    /**
+     * Kontrollerar om något anrop pågår.
+     *
+     * @return true om minst ett anrop pågår.
+     */
+    public boolean isBusy() {
+        return inFlight.get() > 0;
+    }
+
+    private void started() {
+        if (inFlight.getAndIncrement() == 0) {
+            fireBusy(true);
+        }
+    }
+
+    private void finished() {
+        if (inFlight.decrementAndGet() == 0) {
+            fireBusy(false);
+        }
+    }
+
+    private void fireBusy(boolean busy) {
+        Runnable notify = () -> busyListeners.forEach(l -> l.accept(busy));
+        if (SwingUtilities.isEventDispatchThread()) {
+            notify.run();
+        } else {
+            SwingUtilities.invokeLater(notify);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Använder virtuella trådar om JVM:en har dem (Java 21+), annars en
+     * trådpool med daemon-trådar. Antalet samtidiga databasanrop begränsas
+     * ändå av anslutningspoolen.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "bank-worker-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /** CompletableFuture vars cancel även avbryter bakgrundsuppgiften. */
+    private static final class CancellableFuture<T> extends CompletableFuture<T> {
+        private volatile Future<?> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> t = task;
+            if (cancelled && t != null) {
+                t.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+}
@@ -1,99 +1,117 @@
 package GUI;
 
+import java.util.function.Consumer;
+
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JTextArea;
 
-import logic.BankLogic;
+import logic.Customer;
 
 /**
  * Klass som hanterar kundåtgärder i det grafiska användargränssnittet gentemot banklogiken.
+ * Alla anrop mot banklogiken körs asynkront via {@link AsyncBankLogic}; dialoger och
+ * uppdateringar av komponenter sker på EDT.
  *
  */
 public class CustomerActions {
     private static final int SELECTED_INDEX_NOT_FOUND = -1;
 
-    private final BankLogic bankLogic;
+    private final AsyncBankLogic asyncBank;
     private final JList<String> customerList;
+    private final CustomerListModel customerListModel;
     private final JTextArea customerOutputTextArea;
 
     /**
      * Konstruktor för CustomerActions.
      *
-     * @param bankLogic banklogik.
+     * @param asyncBank asynkron banklogik.
      * @param customerList lista med kunder som är kopplad till GUI.
+     * @param customerListModel kundlistans lata modell.
      * @param customerOutputTextArea textområde för systemmeddelanden.
      */
     public CustomerActions(
-            BankLogic bankLogic, JList<String> customerList, JTextArea customerOutputTextArea) {
-        this.bankLogic = bankLogic;
+            AsyncBankLogic asyncBank,
+            JList<String> customerList,
+            CustomerListModel customerListModel,
+            JTextArea customerOutputTextArea) {
+        this.asyncBank = asyncBank;
         this.customerList = customerList;
+        this.customerListModel = customerListModel;
         this.customerOutputTextArea = customerOutputTextArea;
     }
 
     /** Hanterar visning av kundinformation. */
     public void handleGetCustomer() {
-        String pNo = acquirepNo();
-        if (pNo == null) {
-            return;
-        }
-
-        String customerInfo = bankLogic.getCustomer(pNo).toString();
-        if (customerInfo != null) {
-            customerOutputTextArea.setText("Info för kund " + customerInfo);
-        } else {
-            customerOutputTextArea.setText("Kunde inte hitta kund.");
-        }
+        // getCustomer returns null for an unknown customer, so skip the existence check
+        acquirepNo(false, pNo -> asyncBank.run(
+                bankLogic -> bankLogic.getCustomer(pNo),
+                customerInfo -> {
+                    if (customerInfo != null) {
+                        customerOutputTextArea.setText("Info för kund " + customerInfo);
+                    } else {
+                        customerOutputTextArea.setText("Kunde inte hitta kund.");
+                    }
+                },
+                this::showError));
     }
 
     /** Hanterar ändring av kundens namn. */
     public void handleChangeCustomerName() {
-
-        String pNo = acquirepNo();
-        if (pNo == null) {
-            return;
-        }
-
-        String newName = JOptionPane.showInputDialog("Skriv in nytt namn:");
-        if (newName == null) {
-            customerOutputTextArea.setText("Namnbyte avbrutet.");
-        }
-
-        String newSurname = JOptionPane.showInputDialog("Skriv in nytt efternamn");
-        if (newSurname == null) {
-            customerOutputTextArea.setText("Namnbyte avbrutet.");
-        }
-        if (bankLogic.changeCustomerName(newName, newSurname, pNo)) {
-            customerOutputTextArea.setText("Kundens namn uppdaterat.");
-            updateCustomerList();
-        } else {
-            customerOutputTextArea.setText("Kunde inte hitta kund, vänligen försök igen!");
-        }
+        acquirepNo(pNo -> {
+            String newName = JOptionPane.showInputDialog("Skriv in nytt namn:");
+            if (newName == null) {
+                customerOutputTextArea.setText("Namnbyte avbrutet.");
+                return;
+            }
+
+            String newSurname = JOptionPane.showInputDialog("Skriv in nytt efternamn");
+            if (newSurname == null) {
+                customerOutputTextArea.setText("Namnbyte avbrutet.");
+                return;
+            }
+
+            asyncBank.run(
+                    bankLogic -> bankLogic.changeCustomerName(newName, newSurname, pNo),
+                    changed -> {
+                        if (changed) {
+                            customerOutputTextArea.setText("Kundens namn uppdaterat.");
+                            updateCustomerList();
+                        } else {
+                            customerOutputTextArea.setText(
+                                    "Kunde inte hitta kund, vänligen försök igen!");
+                        }
+                    },
+                    this::showError);
+        });
     }
 
     /** Hanterar borttagning av kund. */
     public void handleDeleteCustomer() {
-        String pNo = acquirepNo();
-        if (pNo == null) {
-            return;
-        }
-        int remove = JOptionPane.showConfirmDialog(
-                null,
-                "Är du säker på att du vill ta bort denna kund?\n"
-                        + "Alla konton kopplade till denna kund kommer att tas bort.",
-                "Bekräfta stängning av konto",
-                JOptionPane.YES_NO_OPTION);
-        if (remove != JOptionPane.YES_OPTION) {
-            customerOutputTextArea.setText("Borttagning av kund avbröts.");
-            return;
-        }
-        if (bankLogic.deleteCustomer(pNo) != null) {
-            customerOutputTextArea.setText("Kund borttagen.");
-            updateCustomerList();
-        } else {
-            customerOutputTextArea.setText("Kunde inte hitta kund.");
-        }
-
+        acquirepNo(pNo -> {
+            int remove = JOptionPane.showConfirmDialog(
+                    null,
+                    "Är du säker på att du vill ta bort denna kund?\n"
+                            + "Alla konton kopplade till denna kund kommer att tas bort.",
+                    "Bekräfta stängning av konto",
+                    JOptionPane.YES_NO_OPTION);
+            if (remove != JOptionPane.YES_OPTION) {
+                customerOutputTextArea.setText("Borttagning av kund avbröts.");
+                return;
+            }
+
+            asyncBank.run(
+                    bankLogic -> bankLogic.deleteCustomer(pNo),
+                    deleted -> {
+                        if (deleted != null) {
+                            customerOutputTextArea.setText("Kund borttagen.");
+                            updateCustomerList();
+                        } else {
+                            customerOutputTextArea.setText("Kunde inte hitta kund.");
+                        }
+                    },
+                    this::showError);
+        });
     }
 
     /** Hanterar tillägg av kund. */
@@ -106,50 +124,87 @@ public class CustomerActions {
             return;
         }
 
-        if (bankLogic.createCustomer(name, surname, pNo)) {
-            customerOutputTextArea.setText("Ny kund skapad.");
-            updateCustomerList();
-        } else {
-            customerOutputTextArea.setText("Kund med detta personnummer existerar redan.");
-        }
+        asyncBank.run(
+                bankLogic -> bankLogic.createCustomer(name, surname, pNo),
+                created -> {
+                    if (created) {
+                        customerOutputTextArea.setText("Ny kund skapad.");
+                        updateCustomerList();
+                    } else {
+                        customerOutputTextArea.setText(
+                                "Kund med detta personnummer existerar redan.");
+                    }
+                },
+                this::showError);
     }
 
     /**
-     * Hämtar valt personnummer från kundlistan.
-     *
-     * @return personnummer för den valda kunden.
+     * Uppdaterar listan med kunder så att den visar de uppdaterade kunderna när kunder ändras.
+     * När databasen rapporterar ändringar uppdateras listan redan av dem.
      */
-    private String getSelectedpNo() {
-        return bankLogic.getCustomerByIndex(customerList.getSelectedIndex()).getpNo();
-    }
-
-    /** Uppdaterar listan med kunder så att den visar de uppdaterade kunderna när kunder ändras. */
     private void updateCustomerList() {
-        customerList.setListData(bankLogic.getCustomerInfoArray());
+        if (!asyncBank.isLive()) {
+            customerListModel.refresh();
+        }
     }
 
     /**
      * Hämtar ett personnummer för en kund om kund är vald tar den från listan, om kund ej vald kan
-     * personnumret matas in manuellt.
+     * personnumret matas in manuellt. Ett manuellt inmatat personnummer kontrolleras asynkront.
+     *
+     * @param onpNo anropas på EDT med personnumret om kunden finns.
+     */
+    private void acquirepNo(Consumer<String> onpNo) {
+        acquirepNo(true, onpNo);
+    }
+
+    /**
+     * Hämtar ett personnummer för en kund, se {@link #acquirepNo(Consumer)}.
      *
-     * @return personnumret, alternativt null om personnumret var ogiltigt eller inte fanns.
+     * @param verify om ett manuellt inmatat personnummer ska kontrolleras.
+     * @param onpNo anropas på EDT med personnumret.
      */
-    private String acquirepNo() {
-        if (customerList.getSelectedIndex() != SELECTED_INDEX_NOT_FOUND) {
-            return getSelectedpNo();
+    private void acquirepNo(boolean verify, Consumer<String> onpNo) {
+        int selectedIndex = customerList.getSelectedIndex();
+        if (selectedIndex != SELECTED_INDEX_NOT_FOUND) {
+            Customer customer = customerListModel.getCustomerAt(selectedIndex);
+            if (customer != null) {
+                onpNo.accept(customer.getpNo());
+            } else {
+                customerOutputTextArea.setText("Kundlistan laddas, försök igen.");
+            }
+            return;
         }
 
         String pNo = JOptionPane.showInputDialog("Ingen kund vald.\nAnge personnummer manuellt:");
         if (pNo == null || pNo.isEmpty()) {
             customerOutputTextArea.setText("Åtgärden avbröts.");
-            return null;
+            return;
         }
-
-        if (bankLogic.getCustomer(pNo) != null) {
-            return pNo;
+        if (!verify) {
+            onpNo.accept(pNo);
+            return;
         }
 
-        customerOutputTextArea.setText("Kunde inte hitta kund med detta personnummer.");
-        return null;
+        asyncBank.run(
+                bankLogic -> bankLogic.customerExists(pNo),
+                exists -> {
+                    if (exists) {
+                        onpNo.accept(pNo);
+                    } else {
+                        customerOutputTextArea.setText(
+                                "Kunde inte hitta kund med detta personnummer.");
+                    }
+                },
+                this::showError);
+    }
+
+    /**
+     * Visar ett fel från ett asynkront anrop.
+     *
+     * @param error felet.
+     */
+    private void showError(Throwable error) {
+        customerOutputTextArea.setText("Databasfel: " + AsyncBankLogic.describe(error));
     }
 }
@@ -0,0 +1,197 @@
+package GUI;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.swing.AbstractListModel;
+
+import database.ChangeFeed;
+import logic.Customer;
+
+/**
+ * Lat listmodell för kundlistan. Kunder hämtas sida för sida från databasen
+ * när JList ber om en rad, och endast ett begränsat antal sidor hålls i
+ * minnet. Sidor hämtas med nyckelbaserad paginering från närmaste kända
+ * sidgräns, så rullning går lika snabbt långt ner i listan som i början.
+ *
+ * <p>Sidor hämtas asynkront: en rad vars sida inte är laddad visas tom tills
+ * sidan kommit, och modellen meddelar sedan JList att raderna ändrats. När
+ * kunder ändras blir de laddade sidorna inaktuella men visas tills de
+ * hämtats igen, vilket bara sker för sidor som JList ber om. All intern
+ * state ändras bara på EDT.
+ *
+ */
+public class CustomerListModel extends AbstractListModel<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 16;
+    private static final String LOADING = "";
+
+    private final AsyncBankLogic asyncBank;
+    private final Map<Integer, List<Customer>> pages =
+            new LinkedHashMap<>(MAX_CACHED_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<Customer>> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+    /** Sista kunden på varje sida som hämtats, används som markör för nästa sida. */
+    private final TreeMap<Integer, Customer> pageEnds = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    /** Laddade sidor som kan ha ändrats sedan de hämtades. */
+    private final Set<Integer> stale = new HashSet<>();
+    /** Räknas upp när sidorna blir inaktuella så att svar på äldre sidförfrågningar ignoreras. */
+    private int generation;
+    /** Räknas upp för varje räkning så att bara det senaste antalet används. */
+    private int countGeneration;
+    private int size;
+
+    /**
+     * Konstruktor för CustomerListModel. Antalet kunder hämtas asynkront.
+     *
+     * @param asyncBank asynkron banklogik.
+     */
+    public CustomerListModel(AsyncBankLogic asyncBank) {
+        this.asyncBank = asyncBank;
+        refresh();
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        Customer customer = getCustomerAt(index);
+        return customer != null ? customer.toString() : LOADING;
+    }
+
+    /**
+     * Hämtar kunden på en viss rad. Om radens sida inte är laddad, eller
+     * kan ha ändrats, startas en hämtning av sidan.
+     *
+     * @param index radens index
+     * @return kunden, eller null om indexet är utanför listan eller sidan inte är laddad.
+     */
+    public Customer getCustomerAt(int index) {
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        int pageIndex = index / PAGE_SIZE;
+        List<Customer> page = pages.get(pageIndex);
+        if (page == null || stale.contains(pageIndex)) {
+            requestPage(pageIndex);
+        }
+        if (page == null) {
+            return null;
+        }
+        int offset = index % PAGE_SIZE;
+        return offset < page.size() ? page.get(offset) : null;
+    }
+
+    /** Läser om antalet kunder och alla sidor som visas. */
+    public void refresh() {
+        invalidatePages();
+        recount();
+    }
+
+    /**
+     * Uppdaterar listan efter att kunder ändrats. En kund som skapats,
+     * bytt namn eller tagits bort flyttar raderna mellan sig och sin nya
+     * eller gamla plats, så alla laddade sidor blir inaktuella. Antalet
+     * kunder räknas bara om när kunder skapats eller tagits bort.
+     *
+     * @param change ändrade kunder
+     */
+    public void update(ChangeFeed.Change change) {
+        if (change.isAll()) {
+            refresh();
+            return;
+        }
+        invalidatePages();
+        if (!change.rows().values().stream().allMatch(ChangeFeed.UPDATED::equals)) {
+            recount();
+        } else if (size > 0) {
+            fireContentsChanged(this, 0, size - 1);
+        }
+    }
+
+    private void invalidatePages() {
+        generation++;
+        loading.clear();
+        // Cursors are only valid for the positions they were read at
+        pageEnds.clear();
+        stale.addAll(pages.keySet());
+    }
+
+    private void recount() {
+        int requested = ++countGeneration;
+        asyncBank.run(
+                bankLogic -> bankLogic.getCustomerCount(),
+                count -> {
+                    if (requested != countGeneration) {
+                        return;
+                    }
+                    int oldSize = size;
+                    size = count;
+                    if (oldSize > size) {
+                        fireIntervalRemoved(this, size, oldSize - 1);
+                    } else if (oldSize < size) {
+                        fireIntervalAdded(this, oldSize, size - 1);
+                    }
+                    if (size > 0) {
+                        fireContentsChanged(this, 0, size - 1);
+                    }
+                },
+                error -> {
+                    // Ask again for the stale pages on screen, with the old size
+                    if (requested == countGeneration && size > 0) {
+                        fireContentsChanged(this, 0, size - 1);
+                    }
+                });
+    }
+
+    private void requestPage(int pageIndex) {
+        if (!loading.add(pageIndex)) {
+            return;
+        }
+
+        Map.Entry<Integer, Customer> cursor = pageEnds.lowerEntry(pageIndex);
+        Customer after = cursor != null ? cursor.getValue() : null;
+        int skip = cursor != null
+                ? (pageIndex - cursor.getKey() - 1) * PAGE_SIZE
+                : pageIndex * PAGE_SIZE;
+        int requested = generation;
+
+        asyncBank.run(
+                bankLogic -> bankLogic.getCustomerPage(after, skip, PAGE_SIZE),
+                page -> {
+                    if (requested != generation) {
+                        return;
+                    }
+                    loading.remove(pageIndex);
+                    stale.remove(pageIndex);
+                    pages.put(pageIndex, page);
+                    if (!page.isEmpty()) {
+                        pageEnds.put(pageIndex, page.get(page.size() - 1));
+                    }
+                    int first = pageIndex * PAGE_SIZE;
+                    int last = Math.min(size, first + PAGE_SIZE) - 1;
+                    if (last >= first) {
+                        fireContentsChanged(this, first, last);
+                    }
+                },
+                error -> {
+                    if (requested == generation) {
+                        loading.remove(pageIndex);
+                    }
+                });
+    }
+}
@@ -12,8 +12,6 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 
-import logic.BankLogic;
-
 /**
  * Klass som hanterar kundscenen i det grafiska användargränssnittet.
  *
@@ -22,10 +20,15 @@ public class CustomerScene {
     /**
      * Skapar kundscenen.
      *
+     * @param asyncBank asynkron banklogik.
+     * @param customerList kundlistan.
+     * @param customerListModel kundlistans lata modell.
      * @return panelen för kundscenen.
      */
     public JPanel create(
-            BankLogic bankLogic, JList<String> customerList
+            AsyncBankLogic asyncBank,
+            JList<String> customerList,
+            CustomerListModel customerListModel
     ) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.add(new JLabel("Kunder"), BorderLayout.NORTH);
@@ -50,12 +53,10 @@ public class CustomerScene {
         panel.add(customerOutputScrollPane, BorderLayout.SOUTH);
 
         CustomerActions customerActions =
-                new CustomerActions(bankLogic, customerList, outputTextArea);
+                new CustomerActions(asyncBank, customerList, customerListModel, outputTextArea);
 
         outputTextArea.setText("Vänligen välj en kund.");
 
-        customerList.setListData(bankLogic.getCustomerInfoArray());
-
         JButton addCustomerButton = new JButton("Lägg till kund");
         JButton getCustomerButton = new JButton("Hämta kund");
         JButton changeCustomerNameButton = new JButton("Ändra namnet på kund");
@@ -6,10 +6,24 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.function.Consumer;
 
+import database.ChangeFeed;
 import logic.BankLogic;
+import logic.Customer;
+import logic.CustomerImporter;
+import logic.InterestRates;
 import logic.LoadSave;
+import logic.TransactionExporter;
 
 /**
  * GUI för bankapplikationen.
@@ -18,13 +32,19 @@ import logic.LoadSave;
 public class GUI {
 
     private BankLogic bankLogic;
+    private final AsyncBankLogic asyncBank;
     private final JFrame frame;
     private final JPanel cardPanel;
     private final JList<String> customerList;
+    private CustomerListModel customerListModel;
     private final JList<String> accountList;
+    private final AccountListModel accountListModel;
     private boolean isCustomerMenuActive;
     private JPanel customerScenePanel;
     private final AccountScene accountScene;
+    private final JLabel statusLabel = new JLabel(BUSY_TEXT);
+
+    private static final String BUSY_TEXT = "Arbetar...";
 
     private final String CUSTOMER_SCENE = "customerScene";
     private final String DEFAULT_DIRECTORY = "src/Data";
@@ -42,14 +62,22 @@ public class GUI {
             );
             throw new RuntimeException(e);
         }
+        this.asyncBank = new AsyncBankLogic(bankLogic);
         this.frame = new JFrame("Bank Management Program");
         this.cardPanel = new JPanel(new CardLayout());
-        this.customerList = new JList<>();
-        this.accountList = new JList<>();
+        this.customerListModel = new CustomerListModel(asyncBank);
+        this.customerList = new JList<>(customerListModel);
+        // Fixed cell size so JList never has to render every row to measure it
+        this.customerList.setPrototypeCellValue("000000000000 Förnamn Efternamnsson");
+        this.accountListModel = new AccountListModel(asyncBank);
+        this.accountList = new JList<>(accountListModel);
         this.isCustomerMenuActive = true;
         CustomerScene customerScene = new CustomerScene();
-        this.customerScenePanel = customerScene.create(bankLogic, customerList);
+        this.customerScenePanel =
+                customerScene.create(asyncBank, customerList, customerListModel);
         this.accountScene = new AccountScene();
+        asyncBank.addChangeListener(this::handleChanges);
+        asyncBank.listenForChanges();
     }
 
     /** Startar upp GUI. */
@@ -66,6 +94,7 @@ public class GUI {
         cardLayout.show(cardPanel, CUSTOMER_SCENE);
 
         frame.add(cardPanel, BorderLayout.CENTER);
+        frame.add(createStatusBar(), BorderLayout.SOUTH);
 
         JMenuBar customerMenuBar = new JMenuBar();
         JMenu loadSaveBank = new JMenu("Ladda/Spara Bank");
@@ -75,11 +104,19 @@ public class GUI {
 
         JMenuItem loadBankMenuItem = new JMenuItem("Ladda bank");
         JMenuItem saveBankMenuItem = new JMenuItem("Spara bank");
+        JMenuItem saveIncrementalMenuItem = new JMenuItem("Spara ändringar sedan tidigare sparning");
+        JMenuItem exportBankMenuItem = new JMenuItem("Exportera alla transaktioner");
+        JMenuItem importCustomersMenuItem = new JMenuItem("Importera kunder från CSV");
+        JMenuItem interestRunMenuItem = new JMenuItem("Bokför årsränta");
         JMenuItem viewAccountsMenuItem = new JMenuItem("Visa konton");
         JMenuItem openTransactionsMenuItem = new JMenuItem("Öppna tidigare sparade transaktioner");
 
         loadSaveBank.add(loadBankMenuItem);
         loadSaveBank.add(saveBankMenuItem);
+        loadSaveBank.add(saveIncrementalMenuItem);
+        loadSaveBank.add(exportBankMenuItem);
+        loadSaveBank.add(importCustomersMenuItem);
+        loadSaveBank.add(interestRunMenuItem);
         accountMenu.add(viewAccountsMenuItem);
         transactionMenu.add(openTransactionsMenuItem);
 
@@ -87,18 +124,19 @@ public class GUI {
                 e -> {
                     if (e.getSource() == viewAccountsMenuItem) {
                         if (isCustomerMenuActive) {
-                            if (handleViewAccounts()) {
+                            handleViewAccounts(() -> {
                                 viewAccountsMenuItem.setText("Tillbaka till kunder");
                                 loadSaveBank.setVisible(false);
                                 transactionMenu.setVisible(true);
-                            }
+                                isCustomerMenuActive = false;
+                            });
                         } else {
                             handleViewCustomers();
                             viewAccountsMenuItem.setText("Visa konton");
                             loadSaveBank.setVisible(true);
                             transactionMenu.setVisible(false);
+                            isCustomerMenuActive = true;
                         }
-                        isCustomerMenuActive = !isCustomerMenuActive;
                     }
                     if (e.getSource() == loadBankMenuItem) {
                         handleLoadBank();
@@ -106,6 +144,18 @@ public class GUI {
                     if (e.getSource() == saveBankMenuItem) {
                         handleSaveBank();
                     }
+                    if (e.getSource() == saveIncrementalMenuItem) {
+                        handleSaveIncremental();
+                    }
+                    if (e.getSource() == exportBankMenuItem) {
+                        handleExportBank();
+                    }
+                    if (e.getSource() == importCustomersMenuItem) {
+                        handleImportCustomers();
+                    }
+                    if (e.getSource() == interestRunMenuItem) {
+                        handleInterestRun();
+                    }
                     if (e.getSource() == openTransactionsMenuItem) {
                         handleReadTransactions();
                     }
@@ -114,6 +164,10 @@ public class GUI {
         viewAccountsMenuItem.addActionListener(menuActionListener);
         loadBankMenuItem.addActionListener(menuActionListener);
         saveBankMenuItem.addActionListener(menuActionListener);
+        saveIncrementalMenuItem.addActionListener(menuActionListener);
+        exportBankMenuItem.addActionListener(menuActionListener);
+        importCustomersMenuItem.addActionListener(menuActionListener);
+        interestRunMenuItem.addActionListener(menuActionListener);
         openTransactionsMenuItem.addActionListener(menuActionListener);
 
         customerMenuBar.add(loadSaveBank);
@@ -124,36 +178,102 @@ public class GUI {
         frame.setVisible(true);
     }
 
+    /**
+     * Skapar statusraden som visar när databasanrop pågår och låter
+     * användaren avbryta dem.
+     *
+     * @return panelen för statusraden.
+     */
+    private JPanel createStatusBar() {
+        JPanel statusBar = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        JButton cancelButton = new JButton("Avbryt");
+        cancelButton.addActionListener(e -> asyncBank.cancelAll());
+
+        statusBar.add(statusLabel);
+        statusBar.add(progressBar);
+        statusBar.add(cancelButton);
+
+        Consumer<Boolean> showBusy = busy -> {
+            statusLabel.setText(BUSY_TEXT);
+            statusLabel.setVisible(busy);
+            progressBar.setVisible(busy);
+            cancelButton.setVisible(busy);
+            frame.setCursor(busy
+                    ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR)
+                    : Cursor.getDefaultCursor());
+        };
+        showBusy.accept(asyncBank.isBusy());
+        asyncBank.addBusyListener(showBusy);
+        return statusBar;
+    }
+
     /** Hanterar inläsning av bankdata. */
     private void handleLoadBank() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Ladda bank");
         fileChooser.setCurrentDirectory(new File(DEFAULT_DIRECTORY));
         int returnValue = fileChooser.showOpenDialog(null);
-        if (returnValue == JFileChooser.APPROVE_OPTION) {
-            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-            BankLogic loadedBankLogic = LoadSave.loadBankFromFile(filePath);
-            if (loadedBankLogic == null || loadedBankLogic.getAllCustomers().isEmpty()) {
-                JOptionPane.showMessageDialog(null, "Misslyckades med att ladda bank.");
-                return;
-            }
-            bankLogic = loadedBankLogic;
-            customerList.setListData(bankLogic.getCustomerInfoArray());
-            cardPanel.remove(customerScenePanel);
-            CustomerScene customerScene = new CustomerScene();
-            customerScenePanel = customerScene.create(bankLogic, customerList);
-            cardPanel.add(customerScenePanel, CUSTOMER_SCENE);
-            cardPanel.revalidate();
-            cardPanel.repaint();
+        if (returnValue != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        int replace = JOptionPane.showConfirmDialog(
+                null,
+                "All nuvarande data i banken ersätts med innehållet i filen.\nVill du fortsätta?",
+                "Ladda bank",
+                JOptionPane.YES_NO_OPTION);
+        if (replace != JOptionPane.YES_OPTION) {
+            return;
         }
+
+        String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+        asyncBank.run(
+                bankLogic -> {
+                    try {
+                        return LoadSave.loadBankFromFile(bankLogic, filePath);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                info -> {
+                    showLoadedBank();
+                    JOptionPane.showMessageDialog(null, "Bank laddad: " + info);
+                },
+                error -> JOptionPane.showMessageDialog(
+                        null, "Misslyckades med att ladda bank.\n"
+                                + AsyncBankLogic.describe(error)));
+    }
+
+    /** Bygger om kundscenen efter att en bank laddats in i databasen. */
+    private void showLoadedBank() {
+        customerListModel = new CustomerListModel(asyncBank);
+        customerList.setModel(customerListModel);
+        cardPanel.remove(customerScenePanel);
+        CustomerScene customerScene = new CustomerScene();
+        customerScenePanel = customerScene.create(asyncBank, customerList, customerListModel);
+        cardPanel.add(customerScenePanel, CUSTOMER_SCENE);
+        cardPanel.revalidate();
+        cardPanel.repaint();
     }
 
     /** Hanterar sparande av bankdata. */
     private void handleSaveBank() {
-        if (bankLogic.getAllCustomers().isEmpty()) {
-            JOptionPane.showMessageDialog(null, "Inga kunder att spara.");
-            return;
-        }
+        asyncBank.run(
+                bankLogic -> bankLogic.getCustomerCount(),
+                count -> {
+                    if (count == 0) {
+                        JOptionPane.showMessageDialog(null, "Inga kunder att spara.");
+                        return;
+                    }
+                    chooseFileAndSaveBank();
+                },
+                error -> JOptionPane.showMessageDialog(
+                        null, "Databasfel: " + AsyncBankLogic.describe(error)));
+    }
+
+    /** Låter användaren välja fil och sparar bankdata till den. */
+    private void chooseFileAndSaveBank() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Spara bank");
         fileChooser.setSelectedFile(new File("bankdata.dat"));
@@ -172,7 +292,233 @@ public class GUI {
                 }
             }
             String filePath = fileChooser.getSelectedFile().getAbsolutePath();
-            LoadSave.saveBankToFile(bankLogic, filePath);
+            asyncBank.run(
+                    bankLogic -> {
+                        try {
+                            return LoadSave.saveBankToFile(bankLogic, filePath);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    },
+                    info -> JOptionPane.showMessageDialog(null, "Bank sparad: " + info),
+                    error -> JOptionPane.showMessageDialog(
+                            null, "Misslyckades med att spara bank.\n"
+                                    + AsyncBankLogic.describe(error)));
+        }
+    }
+
+    /**
+     * Sparar bara det som ändrats sedan en tidigare sparad bank. Användaren
+     * väljer först den tidigare filen och sedan filen för ändringarna, som
+     * föreslås i samma katalog så att kedjan kan laddas igen.
+     */
+    private void handleSaveIncremental() {
+        JFileChooser parentChooser = new JFileChooser();
+        parentChooser.setDialogTitle("Välj den tidigare sparade banken");
+        parentChooser.setCurrentDirectory(new File(DEFAULT_DIRECTORY));
+        if (parentChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File parent = parentChooser.getSelectedFile();
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Spara ändringar");
+        fileChooser.setCurrentDirectory(parent.getParentFile());
+        fileChooser.setSelectedFile(new File(parent.getParentFile(), "bankdata-"
+                + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(LocalDateTime.now())
+                + ".dat"));
+        if (fileChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        if (fileChooser.getSelectedFile().exists()) {
+            int overwrite = JOptionPane.showConfirmDialog(
+                    null,
+                    "Filen finns redan. Vill du skriva över den?",
+                    "Överskrivning",
+                    JOptionPane.YES_NO_OPTION);
+            if (overwrite != JOptionPane.YES_OPTION) {
+                return;
+            }
+        }
+
+        String parentPath = parent.getAbsolutePath();
+        String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+        asyncBank.run(
+                bankLogic -> {
+                    try {
+                        return LoadSave.saveIncrementalBankToFile(bankLogic, parentPath, filePath);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                info -> JOptionPane.showMessageDialog(null, "Ändringar sparade: " + info),
+                error -> JOptionPane.showMessageDialog(
+                        null, "Misslyckades med att spara ändringar.\n"
+                                + AsyncBankLogic.describe(error)));
+    }
+
+    /**
+     * Exporterar alla kontons transaktioner till en vald katalog, en fil per
+     * konto. Konton exporteras parallellt och framsteg visas i statusraden.
+     */
+    private void handleExportBank() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Välj katalog för export");
+        fileChooser.setCurrentDirectory(new File(DEFAULT_DIRECTORY));
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (fileChooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path directory = fileChooser.getSelectedFile().toPath();
+
+        TransactionExporter.Format[] formats = TransactionExporter.Format.values();
+        int choice = JOptionPane.showOptionDialog(
+                frame, "Välj filformat:", "Exportera transaktioner",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                null, formats, formats[0]);
+        if (choice < 0) {
+            return;
+        }
+        TransactionExporter.Format format = formats[choice];
+
+        asyncBank.run(
+                bankLogic -> {
+                    try {
+                        return new TransactionExporter(bankLogic).exportBank(
+                                directory, format,
+                                (rows, done, total) -> SwingUtilities.invokeLater(() ->
+                                        statusLabel.setText(String.format(
+                                                "Exporterar: %d rader, %d/%d konton",
+                                                rows, done, total))));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                result -> JOptionPane.showMessageDialog(frame, String.format(
+                        "%d transaktioner från %d konton exporterade till %s.",
+                        result.rows(), result.accounts(), directory)),
+                error -> JOptionPane.showMessageDialog(
+                        frame, "Exporten misslyckades: " + AsyncBankLogic.describe(error)));
+    }
+
+    /**
+     * Hanterar import av kunder från en CSV-fil. Avvisade rader skrivs till
+     * en fil bredvid den importerade och framsteg visas i statusraden.
+     */
+    private void handleImportCustomers() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Importera kunder");
+        fileChooser.setCurrentDirectory(new File(DEFAULT_DIRECTORY));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("CSV files", "csv"));
+        if (fileChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path csv = fileChooser.getSelectedFile().toPath();
+        Path rejectedFile = csv.resolveSibling(csv.getFileName() + ".avvisade.csv");
+
+        asyncBank.run(
+                bankLogic -> {
+                    try {
+                        return new CustomerImporter(bankLogic).importFile(
+                                csv, rejectedFile,
+                                (lines, imported, rejected) -> SwingUtilities.invokeLater(() ->
+                                        statusLabel.setText(String.format(
+                                                "Importerar: %d rader, %d kunder, %d avvisade",
+                                                lines, imported, rejected))));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                result -> {
+                    customerListModel.refresh();
+                    String message = String.format(
+                            "%d kunder och %d konton importerade (%.0f rader/s).",
+                            result.customers(), result.accounts(), result.linesPerSecond());
+                    if (result.rejected() > 0) {
+                        message += String.format("%n%d rader avvisades, se %s.",
+                                result.rejected(), result.rejectedFile());
+                    }
+                    JOptionPane.showMessageDialog(frame, message);
+                },
+                error -> JOptionPane.showMessageDialog(
+                        frame, "Importen misslyckades: " + AsyncBankLogic.describe(error)));
+    }
+
+    /**
+     * Hanterar räntekörning för ett år. Året och räntesatserna anges varje
+     * gång, med förslag från systemegenskaperna. En avbruten körning
+     * återupptas om samma år anges igen.
+     */
+    private void handleInterestRun() {
+        String[] suggested = InterestRates.suggested();
+        JTextField yearField = new JTextField(String.valueOf(Year.now().getValue()));
+        JTextField savingsField = new JTextField(suggested[0]);
+        JTextField creditField = new JTextField(suggested[1]);
+        JTextField debtField = new JTextField(suggested[2]);
+        JPanel form = new JPanel(new GridLayout(0, 2, 5, 5));
+        form.add(new JLabel("År:"));
+        form.add(yearField);
+        form.add(new JLabel("Sparränta (%):"));
+        form.add(savingsField);
+        form.add(new JLabel("Kreditränta (%):"));
+        form.add(creditField);
+        form.add(new JLabel("Skuldränta (%):"));
+        form.add(debtField);
+
+        int answer = JOptionPane.showConfirmDialog(
+                frame, form, "Bokför årsränta på alla konton",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (answer != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        Year year;
+        try {
+            year = Year.parse(yearField.getText().strip());
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(frame, "Ogiltigt år, ange till exempel 2026.");
+            return;
+        }
+        InterestRates rates;
+        try {
+            rates = InterestRates.parse(
+                    savingsField.getText(), creditField.getText(), debtField.getText());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(
+                    frame, "Ogiltig räntesats, ange procent som ett positivt tal, till exempel 1,5.");
+            return;
+        }
+
+        asyncBank.run(
+                bankLogic -> bankLogic.accrueInterest(year, rates,
+                        (accounts, done, total) -> SwingUtilities.invokeLater(() ->
+                                statusLabel.setText(String.format(
+                                        "Räntekörning: %d konton, %d/%d intervall",
+                                        accounts, done, total)))),
+                result -> JOptionPane.showMessageDialog(frame, String.format(
+                        "Ränta för %s bokförd på %d konton, totalt %s kr.",
+                        result.period(), result.accounts(),
+                        result.interest())),
+                error -> JOptionPane.showMessageDialog(
+                        frame, "Räntekörningen misslyckades: " + AsyncBankLogic.describe(error)));
+    }
+
+    /**
+     * Uppdaterar kund- och kontolistan när kunder eller konton ändrats i
+     * databasen, av den här eller en annan klient. Kontolistan läses bara
+     * om när ändringen rör den visade kunden.
+     *
+     * @param changes ändrade tabeller och nycklar.
+     */
+    private void handleChanges(List<ChangeFeed.Change> changes) {
+        for (ChangeFeed.Change change : changes) {
+            switch (change.table()) {
+                case CUSTOMERS -> customerListModel.update(change);
+                case ACCOUNTS -> accountListModel.reloadIfAffected(change);
+                case TRANSACTIONS -> {
+                    // Balances arrive with the accounts change
+                }
+            }
         }
     }
 
@@ -184,32 +530,57 @@ public class GUI {
         accountList.clearSelection();
     }
 
-    /** Hanterar visning av kontoscenen. AccountList uppdateras dynamiskt. */
-    private boolean handleViewAccounts() {
+    /**
+     * Hanterar visning av kontoscenen. AccountList uppdateras dynamiskt. Om personnumret
+     * matas in manuellt kontrolleras det asynkront innan scenen visas.
+     *
+     * @param onShown anropas på EDT när kontoscenen visats.
+     */
+    private void handleViewAccounts(Runnable onShown) {
         int customerSelectedIndex = customerList.getSelectedIndex();
         final int SELECTED_INDEX_NOT_FOUND = -1;
-        if (customerSelectedIndex == SELECTED_INDEX_NOT_FOUND) {
-            String pNo =
-                    JOptionPane.showInputDialog("Ingen kund vald.\nAnge personnummer manuellt:");
-            if (pNo == null || pNo.isEmpty()) {
-                JOptionPane.showMessageDialog(null, "Åtgärden avbröts.");
-                return false;
-            }
-            if (bankLogic.getCustomer(pNo) == null) {
-                JOptionPane.showMessageDialog(
-                        null, "Kunde inte hitta kund med detta personnummer.");
-                return false;
+        if (customerSelectedIndex != SELECTED_INDEX_NOT_FOUND) {
+            Customer customer = customerListModel.getCustomerAt(customerSelectedIndex);
+            if (customer == null) {
+                JOptionPane.showMessageDialog(null, "Kundlistan laddas, försök igen.");
+                return;
             }
-            customerSelectedIndex = bankLogic.findCustomerIndexBypNo(pNo);
+            showAccountScene(customer.getpNo());
+            onShown.run();
+            return;
         }
 
-        JPanel accountScenePanel =
-                accountScene.create(bankLogic, accountList, customerSelectedIndex);
+        String pNo = JOptionPane.showInputDialog("Ingen kund vald.\nAnge personnummer manuellt:");
+        if (pNo == null || pNo.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "Åtgärden avbröts.");
+            return;
+        }
+        asyncBank.run(
+                bankLogic -> bankLogic.customerExists(pNo),
+                exists -> {
+                    if (exists) {
+                        showAccountScene(pNo);
+                        onShown.run();
+                    } else {
+                        JOptionPane.showMessageDialog(
+                                null, "Kunde inte hitta kund med detta personnummer.");
+                    }
+                },
+                error -> JOptionPane.showMessageDialog(
+                        null, "Databasfel: " + AsyncBankLogic.describe(error)));
+    }
+
+    /**
+     * Visar kontoscenen för en kund.
+     *
+     * @param pNo kundens personnummer.
+     */
+    private void showAccountScene(String pNo) {
+        JPanel accountScenePanel = accountScene.create(asyncBank, accountList, accountListModel, pNo);
         String ACCOUNT_SCENE = "accountScene";
         cardPanel.add(accountScenePanel, ACCOUNT_SCENE);
         CardLayout cardLayout = (CardLayout) cardPanel.getLayout();
         cardLayout.show(cardPanel, ACCOUNT_SCENE);
-        return true;
     }
 
     /** Läser en textfil innehållande tidigare transaktioner i programmet. */
@@ -217,7 +588,7 @@ public class GUI {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Läs transaktioner");
         fileChooser.setCurrentDirectory(new File(DEFAULT_DIRECTORY));
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Text files", "txt"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Text and CSV files", "txt", "csv"));
 
         int returnValue = fileChooser.showOpenDialog(null);
         if (returnValue == JFileChooser.APPROVE_OPTION) {
@@ -0,0 +1,297 @@
+package GUI;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Textfil som läses via minnesmappning i stället för att läsas in. Ett
+ * index med radernas startpositioner byggs i bakgrunden, och rader avkodas
+ * först när de efterfrågas, så även filer på flera hundra MB öppnas direkt.
+ *
+ * <p>Indexet kan läsas från EDT medan det byggs: {@link #lineCount()} växer
+ * allteftersom raderna indexeras.
+ *
+ */
+class MappedTextFile implements AutoCloseable {
+
+    /** Filen mappas i segment eftersom en MappedByteBuffer är begränsad till 2 GB. */
+    private static final int SEGMENT_SIZE = 1 << 30;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 1 << 22;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    /** Radernas startpositioner; ersätts när arrayen växer. */
+    private volatile long[] lineStarts = new long[1024];
+    private volatile int lineCount;
+    private volatile boolean indexed;
+
+    /**
+     * Öppnar och mappar en fil. Indexet byggs inte förrän
+     * {@link #buildIndex} anropas.
+     *
+     * @param file filen som ska öppnas
+     * @throws IOException om filen inte kunde öppnas
+     */
+    MappedTextFile(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i * SEGMENT_SIZE;
+            segments[i] = channel.map(
+                    FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+    }
+
+    /** @return filens storlek i byte. */
+    long size() {
+        return size;
+    }
+
+    /** @return antal rader som indexerats hittills. */
+    int lineCount() {
+        return lineCount;
+    }
+
+    /** @return true när hela filen är indexerad. */
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Bygger radindexet. Körs på en bakgrundstråd.
+     *
+     * @param progress tar emot antal indexerade byte med jämna mellanrum
+     * @param cancelled avbryter indexeringen när den returnerar true
+     */
+    void buildIndex(LongConsumer progress, BooleanSupplier cancelled) {
+        if (size == 0) {
+            indexed = true;
+            return;
+        }
+        addLine(0);
+        for (int s = 0; s < segments.length; s++) {
+            MappedByteBuffer segment = segments[s];
+            long base = (long) s * SEGMENT_SIZE;
+            int limit = segment.limit();
+            for (int i = 0; i < limit; i++) {
+                if (segment.get(i) == '\n') {
+                    long next = base + i + 1;
+                    if (next < size) {
+                        addLine(next);
+                    }
+                }
+                if ((i & (PROGRESS_INTERVAL - 1)) == 0 && i > 0) {
+                    if (cancelled.getAsBoolean()) {
+                        return;
+                    }
+                    progress.accept(base + i);
+                }
+            }
+        }
+        indexed = true;
+        progress.accept(size);
+    }
+
+    private void addLine(long start) {
+        long[] starts = lineStarts;
+        int n = lineCount;
+        if (n == starts.length) {
+            starts = Arrays.copyOf(starts, n * 2);
+            lineStarts = starts;
+        }
+        starts[n] = start;
+        lineCount = n + 1;
+    }
+
+    /**
+     * Avkodar en rad utan radbrytning.
+     *
+     * @param line radens index
+     * @return radens text.
+     */
+    String line(int line) {
+        long start = lineStart(line);
+        int length = lineLength(line, start);
+        byte[] bytes = new byte[length];
+        read(start, bytes, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hittar raden som innehåller en byteposition.
+     *
+     * @param offset positionen i filen
+     * @return radens index.
+     */
+    int lineOf(long offset) {
+        int n = lineCount;
+        long[] starts = lineStarts;
+        int i = Arrays.binarySearch(starts, 0, n, offset);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Söker efter rader som innehåller en text, direkt i de mappade byten.
+     * Kräver att indexet är klart.
+     *
+     * @param text texten som söks
+     * @param cancelled avbryter sökningen när den returnerar true
+     * @return index för de rader som matchar, i filordning.
+     */
+    int[] findLines(String text, BooleanSupplier cancelled) {
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        IntList hits = new IntList();
+        if (needle.length == 0) {
+            return hits.toArray();
+        }
+        byte first = needle[0];
+        long last = size - needle.length;
+        long pos = 0;
+        while (pos <= last) {
+            if ((pos & (PROGRESS_INTERVAL - 1)) == 0 && cancelled.getAsBoolean()) {
+                break;
+            }
+            if (byteAt(pos) == first && matches(pos, needle)) {
+                int line = lineOf(pos);
+                hits.add(line);
+                if (line + 1 >= lineCount) {
+                    break;
+                }
+                // One hit per line is enough; continue from the next line
+                pos = lineStarts[line + 1];
+                continue;
+            }
+            pos++;
+        }
+        return hits.toArray();
+    }
+
+    /**
+     * Söker efter rader vars första datum (ÅÅÅÅ-MM-DD) ligger inom ett
+     * intervall. Datumet tolkas direkt ur byten utan att raden avkodas.
+     * Kräver att indexet är klart.
+     *
+     * @param from första datum som ingår, som ÅÅÅÅMMDD
+     * @param to sista datum som ingår, som ÅÅÅÅMMDD
+     * @param cancelled avbryter sökningen när den returnerar true
+     * @return index för de rader som matchar, i filordning.
+     */
+    int[] findLinesInDateRange(int from, int to, BooleanSupplier cancelled) {
+        IntList hits = new IntList();
+        int n = lineCount;
+        for (int line = 0; line < n; line++) {
+            long start = lineStarts[line];
+            int date = firstDate(start, lineLength(line, start));
+            if (date >= from && date <= to) {
+                hits.add(line);
+            }
+            if ((line & 0xFFFF) == 0 && cancelled.getAsBoolean()) {
+                break;
+            }
+        }
+        return hits.toArray();
+    }
+
+    /** @return första datumet på raden som ÅÅÅÅMMDD, eller -1 om det saknas. */
+    private int firstDate(long start, int length) {
+        for (int i = 0; i + 10 <= length; i++) {
+            long p = start + i;
+            if (isDigit(p) && isDigit(p + 1) && isDigit(p + 2) && isDigit(p + 3)
+                    && byteAt(p + 4) == '-' && isDigit(p + 5) && isDigit(p + 6)
+                    && byteAt(p + 7) == '-' && isDigit(p + 8) && isDigit(p + 9)) {
+                return digits(p, 4) * 10_000 + digits(p + 5, 2) * 100 + digits(p + 8, 2);
+            }
+        }
+        return -1;
+    }
+
+    private boolean isDigit(long pos) {
+        byte b = byteAt(pos);
+        return b >= '0' && b <= '9';
+    }
+
+    private int digits(long pos, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value * 10 + (byteAt(pos + i) - '0');
+        }
+        return value;
+    }
+
+    private boolean matches(long pos, byte[] needle) {
+        for (int i = 1; i < needle.length; i++) {
+            if (byteAt(pos + i) != needle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long lineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /** Radens längd utan radbrytning, begränsad till {@link #MAX_LINE_BYTES}. */
+    private int lineLength(int line, long start) {
+        long end = line + 1 < lineCount ? lineStarts[line + 1] : size;
+        if (end > start && byteAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end > start && byteAt(end - 1) == '\r') {
+            end--;
+        }
+        return (int) Math.min(end - start, MAX_LINE_BYTES);
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos / SEGMENT_SIZE)].get((int) (pos % SEGMENT_SIZE));
+    }
+
+    private void read(long pos, byte[] dst, int length) {
+        int s = (int) (pos / SEGMENT_SIZE);
+        int offset = (int) (pos % SEGMENT_SIZE);
+        int done = 0;
+        while (done < length) {
+            MappedByteBuffer segment = segments[s];
+            int n = Math.min(length - done, segment.limit() - offset);
+            segment.get(offset, dst, done, n);
+            done += n;
+            s++;
+            offset = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** Växande int-array för sökträffar. */
+    private static final class IntList {
+        private int[] values = new int[256];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -1,37 +1,315 @@
 package GUI;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
 
+import javax.swing.AbstractListModel;
+import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.WindowConstants;
 
 
 /**
  * Klass som hanterar läsning och visning av transaktioner i en dialogruta.
+ * Filen minnesmappas och visas i en virtuell lista som bara avkodar de rader
+ * som syns, så att även mycket stora exportfiler kan öppnas. Radindexet byggs
+ * i bakgrunden och listan växer medan det byggs.
  *
  */
 public class TransactionFileViewer {
-    public static void showTransactionsInDialog(JFrame frame, String filePath) {
-        JDialog dialog = new JDialog(frame, "Saved Transactions", true);
-        JTextArea textArea = new JTextArea();
-        textArea.setEditable(false);
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(Paths.get(filePath).toFile()))) {
-            textArea.read(reader, null);
+    private final MappedTextFile file;
+    private final LineListModel model;
+    private final JList<String> list;
+    private final JLabel statusLabel = new JLabel(" ");
+    private final JButton searchButton = new JButton("Sök");
+    private final JButton dateButton = new JButton("Filtrera datum");
+    private SwingWorker<?, ?> indexer;
+    private SwingWorker<?, ?> search;
+
+    private TransactionFileViewer(MappedTextFile file) {
+        this.file = file;
+        this.model = new LineListModel(file);
+        this.list = new JList<>(model);
+    }
+
+    public static void showTransactionsInDialog(JFrame frame, String filePath) {
+        MappedTextFile file;
+        try {
+            file = new MappedTextFile(Paths.get(filePath));
         } catch (IOException e) {
             JOptionPane.showMessageDialog(frame, "Kunde inte läsa filen.", "Fel", JOptionPane.ERROR_MESSAGE);
             return;
         }
+        new TransactionFileViewer(file).open(frame, filePath);
+    }
+
+    private void open(JFrame frame, String filePath) {
+        JDialog dialog = new JDialog(frame, "Saved Transactions", false);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        // Fixed cell size so JList never has to decode every line to measure it
+        list.setPrototypeCellValue("0000-00-00T00:00:00.000000 | WITHDRAWAL | -000000.00 kr | Withdrawal");
 
-        dialog.add(new JScrollPane(textArea));
-        dialog.setSize(400, 300);
+        dialog.add(createToolBar(), BorderLayout.NORTH);
+        dialog.add(new JScrollPane(list), BorderLayout.CENTER);
+        dialog.add(statusLabel, BorderLayout.SOUTH);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                close();
+            }
+        });
+
+        dialog.setSize(700, 500);
         dialog.setLocationRelativeTo(frame);
+        startIndexing();
         dialog.setVisible(true);
     }
+
+    private JPanel createToolBar() {
+        JTextField lineField = new JTextField(6);
+        JButton jumpButton = new JButton("Gå till rad");
+        JTextField searchField = new JTextField(12);
+        JTextField fromField = new JTextField("ÅÅÅÅ-MM-DD", 8);
+        JTextField toField = new JTextField("ÅÅÅÅ-MM-DD", 8);
+        JButton clearButton = new JButton("Visa alla");
+
+        jumpButton.addActionListener(e -> jumpToLine(lineField.getText()));
+        lineField.addActionListener(e -> jumpToLine(lineField.getText()));
+        searchButton.addActionListener(e -> searchText(searchField.getText()));
+        searchField.addActionListener(e -> searchText(searchField.getText()));
+        dateButton.addActionListener(e -> searchDates(fromField.getText(), toField.getText()));
+        clearButton.addActionListener(e -> {
+            cancelSearch();
+            model.showAll();
+            statusLabel.setText(model.getSize() + " rader");
+        });
+        searchButton.setEnabled(false);
+        dateButton.setEnabled(false);
+
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        toolBar.add(lineField);
+        toolBar.add(jumpButton);
+        toolBar.add(searchField);
+        toolBar.add(searchButton);
+        toolBar.add(new JLabel("Från"));
+        toolBar.add(fromField);
+        toolBar.add(new JLabel("Till"));
+        toolBar.add(toField);
+        toolBar.add(dateButton);
+        toolBar.add(clearButton);
+        return toolBar;
+    }
+
+    /** Bygger radindexet i bakgrunden och låter listan växa medan det pågår. */
+    private void startIndexing() {
+        long size = file.size();
+        indexer = new SwingWorker<Void, Long>() {
+            @Override
+            protected Void doInBackground() {
+                file.buildIndex(this::publish, this::isCancelled);
+                return null;
+            }
+
+            @Override
+            protected void process(List<Long> chunks) {
+                long done = chunks.get(chunks.size() - 1);
+                model.indexGrew();
+                statusLabel.setText(String.format(
+                        "Indexerar... %d%% (%d rader)",
+                        size == 0 ? 100 : done * 100 / size, model.getSize()));
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                model.indexGrew();
+                statusLabel.setText(model.getSize() + " rader");
+                searchButton.setEnabled(true);
+                dateButton.setEnabled(true);
+            }
+        };
+        indexer.execute();
+    }
+
+    private void jumpToLine(String input) {
+        int line;
+        try {
+            line = Integer.parseInt(input.trim()) - 1;
+        } catch (NumberFormatException e) {
+            statusLabel.setText("Ogiltigt radnummer.");
+            return;
+        }
+        model.showAll();
+        if (line < 0 || line >= model.getSize()) {
+            statusLabel.setText("Raden finns inte (" + model.getSize() + " rader indexerade).");
+            return;
+        }
+        list.setSelectedIndex(line);
+        list.ensureIndexIsVisible(line);
+    }
+
+    private void searchText(String text) {
+        if (text.isEmpty()) {
+            return;
+        }
+        runSearch("\"" + text + "\"", cancelled -> file.findLines(text, cancelled));
+    }
+
+    private void searchDates(String fromText, String toText) {
+        int from;
+        int to;
+        try {
+            from = toDateKey(LocalDate.parse(fromText.trim()));
+            to = toDateKey(LocalDate.parse(toText.trim()));
+        } catch (DateTimeParseException e) {
+            statusLabel.setText("Ange datum som ÅÅÅÅ-MM-DD.");
+            return;
+        }
+        runSearch(fromText.trim() + " – " + toText.trim(),
+                cancelled -> file.findLinesInDateRange(from, to, cancelled));
+    }
+
+    private static int toDateKey(LocalDate date) {
+        return date.getYear() * 10_000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    /** Kör en sökning i bakgrunden och visar sedan bara de matchande raderna. */
+    private void runSearch(String description, Search query) {
+        cancelSearch();
+        statusLabel.setText("Söker " + description + "...");
+        search = new SwingWorker<int[], Void>() {
+            @Override
+            protected int[] doInBackground() {
+                return query.run(this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    int[] lines = get();
+                    model.showOnly(lines);
+                    statusLabel.setText(lines.length + " rader matchar " + description);
+                } catch (InterruptedException | ExecutionException e) {
+                    statusLabel.setText("Sökningen misslyckades.");
+                }
+            }
+        };
+        search.execute();
+    }
+
+    private void cancelSearch() {
+        if (search != null) {
+            search.cancel(true);
+            search = null;
+        }
+    }
+
+    private void close() {
+        indexer.cancel(true);
+        cancelSearch();
+        try {
+            file.close();
+        } catch (IOException ignored) {
+            // Read-only mapping, nothing to flush
+        }
+    }
+
+    @FunctionalInterface
+    private interface Search {
+        int[] run(BooleanSupplier cancelled);
+    }
+
+    /**
+     * Virtuell listmodell över filens rader. Visar antingen alla indexerade
+     * rader eller bara raderna från den senaste sökningen.
+     */
+    private static final class LineListModel extends AbstractListModel<String> {
+        private static final long serialVersionUID = 1L;
+        private final MappedTextFile file;
+        private int[] filter;
+        private int size;
+
+        LineListModel(MappedTextFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return file.line(filter != null ? filter[index] : index);
+        }
+
+        /** Lägger till rader som indexerats sedan förra anropet. */
+        void indexGrew() {
+            if (filter != null) {
+                return;
+            }
+            int old = size;
+            size = visibleLines();
+            if (size > old) {
+                fireIntervalAdded(this, old, size - 1);
+            }
+        }
+
+        void showOnly(int[] lines) {
+            replace(lines, lines.length);
+        }
+
+        void showAll() {
+            if (filter != null) {
+                replace(null, visibleLines());
+            }
+        }
+
+        /**
+         * Den sista indexerade raden visas först när nästa rad hittats
+         * eller indexet är klart, eftersom dess slut annars inte är känt.
+         */
+        private int visibleLines() {
+            int n = file.lineCount();
+            return file.isIndexed() ? n : Math.max(0, n - 1);
+        }
+
+        private void replace(int[] newFilter, int newSize) {
+            int old = size;
+            filter = null;
+            size = 0;
+            if (old > 0) {
+                fireIntervalRemoved(this, 0, old - 1);
+            }
+            filter = newFilter;
+            size = newSize;
+            if (size > 0) {
+                fireIntervalAdded(this, 0, size - 1);
+            }
+        }
+    }
 }
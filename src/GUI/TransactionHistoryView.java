@@ -0,0 +1,143 @@
+package GUI;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Window;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+
+import database.TransactionDAO;
+
+/**
+ * Dialogruta som visar ett kontos transaktionshistorik. Historiken hämtas
+ * sida för sida med nyckelbaserad paginering, och nästa sida hämtas först
+ * när användaren scrollat nära slutet av listan, så att konton med många
+ * transaktioner inte behöver läsas in i sin helhet.
+ *
+ */
+public class TransactionHistoryView {
+
+    static final int PAGE_SIZE = 500;
+    /** Hur många rader från slutet nästa sida börjar hämtas. */
+    private static final int PREFETCH_ROWS = 100;
+
+    private final AsyncBankLogic asyncBank;
+    private final String pNo;
+    private final int accountId;
+    private final HistoryModel model = new HistoryModel();
+    private final JLabel statusLabel = new JLabel(" ");
+    private boolean loading;
+    private boolean exhausted;
+
+    private TransactionHistoryView(AsyncBankLogic asyncBank, String pNo, int accountId) {
+        this.asyncBank = asyncBank;
+        this.pNo = pNo;
+        this.accountId = accountId;
+    }
+
+    /**
+     * Öppnar historikvyn för ett konto och hämtar första sidan.
+     *
+     * @param parent komponent som dialogen placeras över.
+     * @param asyncBank asynkron banklogik.
+     * @param pNo kundens personnummer.
+     * @param accountId kontots id.
+     */
+    public static void show(Component parent, AsyncBankLogic asyncBank, String pNo, int accountId) {
+        new TransactionHistoryView(asyncBank, pNo, accountId).open(parent);
+    }
+
+    private void open(Component parent) {
+        Window owner = parent != null ? SwingUtilities.getWindowAncestor(parent) : null;
+        JDialog dialog = new JDialog(owner, "Transaktioner för konto " + accountId);
+
+        JList<String> list = new JList<>(model);
+        list.setPrototypeCellValue("0000-00-00T00:00:00 | WITHDRAWAL | -000000.00 kr | Withdrawal");
+        JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            JScrollBar bar = (JScrollBar) e.getAdjustable();
+            int rowHeight = Math.max(1, list.getFixedCellHeight());
+            int remaining = bar.getMaximum() - (bar.getValue() + bar.getVisibleAmount());
+            if (remaining <= PREFETCH_ROWS * rowHeight) {
+                loadNextPage();
+            }
+        });
+
+        dialog.add(scrollPane, BorderLayout.CENTER);
+        dialog.add(statusLabel, BorderLayout.SOUTH);
+        dialog.setSize(600, 400);
+        dialog.setLocationRelativeTo(parent);
+        dialog.setVisible(true);
+
+        loadNextPage();
+    }
+
+    /** Hämtar nästa sida om ingen hämtning pågår och historiken inte är slut. */
+    private void loadNextPage() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        statusLabel.setText("Hämtar transaktioner...");
+
+        TransactionDAO.TransactionRecord after = model.last();
+        asyncBank.run(
+                bankLogic -> bankLogic.getTransactionPage(pNo, accountId, after, PAGE_SIZE),
+                page -> {
+                    loading = false;
+                    if (page == null) {
+                        exhausted = true;
+                        statusLabel.setText("Kunde inte hitta konto.");
+                        return;
+                    }
+                    model.append(page);
+                    if (page.size() < PAGE_SIZE) {
+                        exhausted = true;
+                        statusLabel.setText(model.getSize() + " transaktioner");
+                    } else {
+                        statusLabel.setText(model.getSize() + " transaktioner hittills, scrolla för fler");
+                    }
+                },
+                error -> {
+                    loading = false;
+                    statusLabel.setText("Databasfel: " + AsyncBankLogic.describe(error));
+                });
+    }
+
+    /** Listmodell som växer med en sida i taget. Ändras bara på EDT. */
+    private static final class HistoryModel extends AbstractListModel<String> {
+        private static final long serialVersionUID = 1L;
+        private final List<TransactionDAO.TransactionRecord> rows = new ArrayList<>();
+
+        @Override
+        public int getSize() {
+            return rows.size();
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return rows.get(index).toString();
+        }
+
+        TransactionDAO.TransactionRecord last() {
+            return rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        }
+
+        void append(List<TransactionDAO.TransactionRecord> page) {
+            if (page.isEmpty()) {
+                return;
+            }
+            int first = rows.size();
+            rows.addAll(page);
+            fireIntervalAdded(this, first, rows.size() - 1);
+        }
+    }
+}
@@ -4,26 +4,136 @@ import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import metrics.Metrics;
+import metrics.OperationTimer;
 import model.AccountType;
+import model.Money;
+import model.TransactionType;
 
 /**
  * Data Access Object for the accounts table.
  */
-public class AccountDAO {
+public class AccountDAO implements AccountStore {
 
     private static final Logger LOGGER =
             Logger.getLogger(AccountDAO.class.getName());
 
-    private final Connection connection;
+    private static final String INSERT_SQL =
+            "INSERT INTO accounts(pno, account_type, balance) " +
+            "VALUES (?, ?::account_type, ?)";
 
-    public AccountDAO(Connection connection) {
-        if (connection == null) {
-            throw new IllegalArgumentException("Connection cannot be null");
+    private static final String FIND_BY_ID_SQL =
+            "SELECT * FROM accounts WHERE account_id = ?";
+
+    private static final String FIND_BY_PNO_SQL =
+            "SELECT * FROM accounts WHERE pno = ? ORDER BY account_id";
+
+    private static final String FIND_ALL_SQL =
+            "SELECT * FROM accounts ORDER BY account_id";
+
+    private static final String UPDATE_BALANCE_SQL =
+            "UPDATE accounts SET balance = ? WHERE account_id = ?";
+
+    /** Accounts touched in a change-log range; {@code account_id} is null for deleted rows. */
+    private static final String STREAM_CHANGED_SQL =
+            "SELECT k.row_key, a.* FROM (" +
+            "  SELECT DISTINCT row_key::int AS row_key FROM bank_change_log " +
+            "  WHERE table_name = 'accounts' AND change_id > ? AND change_id <= ?) k " +
+            "LEFT JOIN accounts a ON a.account_id = k.row_key " +
+            "ORDER BY k.row_key";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM accounts WHERE account_id = ?";
+
+    /**
+     * Applies a delta given in öre. Amounts are bound and returned as
+     * {@code bigint} öre and converted to and from NUMERIC in the
+     * statement, so no decimal values cross the wire.
+     *
+     * <p>The transaction is stamped with {@code clock_timestamp()} while
+     * the account row is locked, not with the default start time of the
+     * database transaction. Per account, time order then equals the order
+     * in which {@code balance_after} was computed, which the point-in-time
+     * lookups in {@link TransactionDAO} rely on. A long batch that started
+     * earlier but posts after a short deposit would otherwise sort before
+     * it.
+     */
+    private static final String APPLY_DELTA_SQL =
+            "WITH p AS (SELECT ?::bigint * 0.01 AS delta), " +
+            "upd AS (" +
+            "  UPDATE accounts a SET balance = a.balance + p.delta FROM p " +
+            "  WHERE a.account_id = ? AND a.pno = ? " +
+            "    AND (a.account_type <> 'SAVINGS' OR a.balance + p.delta >= 0) " +
+            "  RETURNING a.account_id, a.balance, p.delta) " +
+            "INSERT INTO transactions " +
+            "(account_id, amount, transaction_type, description, balance_after, transaction_time) " +
+            "SELECT account_id, delta, ?::transaction_type, ?, balance, clock_timestamp() FROM upd " +
+            "RETURNING transaction_id, (balance_after * 100)::bigint";
+
+    /**
+     * Same posting as {@link #APPLY_DELTA_SQL} without a result set, so it
+     * can be queued with {@code addBatch}. The update count is 1 when the
+     * delta was applied and 0 when it was rejected.
+     */
+    private static final String APPLY_DELTA_BATCH_SQL =
+            "WITH p AS (SELECT ?::bigint * 0.01 AS delta), " +
+            "upd AS (" +
+            "  UPDATE accounts a SET balance = a.balance + p.delta FROM p " +
+            "  WHERE a.account_id = ? AND a.pno = ? " +
+            "    AND (a.account_type <> 'SAVINGS' OR a.balance + p.delta >= 0) " +
+            "  RETURNING a.account_id, a.balance, p.delta) " +
+            "INSERT INTO transactions " +
+            "(account_id, amount, transaction_type, description, balance_after, transaction_time) " +
+            "SELECT account_id, delta, ?::transaction_type, ?, balance, clock_timestamp() FROM upd";
+
+    private static final String EXISTS_SQL =
+            "SELECT 1 FROM accounts WHERE account_id = ?";
+
+    private static final OperationTimer SAVE_TIMER =
+            Metrics.timer("AccountDAO.save");
+
+    private static final OperationTimer FIND_BY_ID_TIMER =
+            Metrics.timer("AccountDAO.findById");
+
+    private static final OperationTimer FIND_BY_PNO_TIMER =
+            Metrics.timer("AccountDAO.findByPNo");
+
+    private static final OperationTimer FIND_ALL_TIMER =
+            Metrics.timer("AccountDAO.findAll");
+
+    private static final OperationTimer STREAM_ALL_TIMER =
+            Metrics.timer("AccountDAO.streamAll");
+
+    private static final OperationTimer STREAM_CHANGED_TIMER =
+            Metrics.timer("AccountDAO.streamChanged");
+
+    private static final OperationTimer UPDATE_BALANCE_TIMER =
+            Metrics.timer("AccountDAO.updateBalance");
+
+    private static final OperationTimer DELETE_TIMER =
+            Metrics.timer("AccountDAO.delete");
+
+    private static final OperationTimer APPLY_DELTA_TIMER =
+            Metrics.timer("AccountDAO.applyDelta");
+
+    private static final OperationTimer APPLY_DELTA_BATCH_TIMER =
+            Metrics.timer("AccountDAO.applyDeltaBatch");
+
+    private static final OperationTimer EXISTS_TIMER =
+            Metrics.timer("AccountDAO.exists");
+
+    private final ConnectionPool pool;
+
+    public AccountDAO(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
         }
-        this.connection = connection;
+        this.pool = pool;
     }
 
 
@@ -32,18 +142,17 @@ public class AccountDAO {
      *
      * @throws DatabaseException if the insert fails or no key is generated
      */
-    public int save(String pNo, AccountType accountType, BigDecimal balance) {
-
-        String sql =
-                "INSERT INTO accounts(pno, account_type, balance) " +
-                "VALUES (?, ?::account_type, ?)";
+    @Override
+    public int save(String pNo, AccountType accountType, Money balance) {
 
-        try (PreparedStatement stmt =
-                     connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        long start = SAVE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt =
+                    lease.prepare(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
 
             stmt.setString(1, pNo);
             stmt.setString(2, accountType.name());
-            stmt.setBigDecimal(3, balance);
+            stmt.setBigDecimal(3, balance.toBigDecimal());
 
             int affected = stmt.executeUpdate();
 
@@ -55,7 +164,7 @@ public class AccountDAO {
             try (ResultSet keys = stmt.getGeneratedKeys()) {
                 if (keys.next()) {
                     int id = keys.getInt(1);
-                    LOGGER.info("Created account id=" + id + " for pNo=" + pNo);
+                    LOGGER.info(() -> "Created account id=" + id + " for pNo=" + pNo);
                     return id;
                 }
                 throw new DatabaseException(
@@ -63,9 +172,12 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            SAVE_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed to save account for pNo=" + pNo, e);
             throw new DatabaseException("Failed to save account", e);
+        } finally {
+            SAVE_TIMER.stop(start);
         }
     }
 
@@ -76,11 +188,12 @@ public class AccountDAO {
      * @return the {@link AccountRecord}, or {@code null} if not found
      * @throws DatabaseException on SQL error
      */
+    @Override
     public AccountRecord findById(int accountId) {
 
-        String sql = "SELECT * FROM accounts WHERE account_id = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = FIND_BY_ID_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(FIND_BY_ID_SQL);
 
             stmt.setInt(1, accountId);
 
@@ -91,10 +204,13 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            FIND_BY_ID_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed to find account id=" + accountId, e);
             throw new DatabaseException(
                     "Failed to find account " + accountId, e);
+        } finally {
+            FIND_BY_ID_TIMER.stop(start);
         }
 
         return null;
@@ -105,14 +221,14 @@ public class AccountDAO {
      *
      * @throws DatabaseException on SQL error
      */
+    @Override
     public List<AccountRecord> findByPNo(String pNo) {
 
         List<AccountRecord> accounts = new ArrayList<>();
 
-        String sql =
-                "SELECT * FROM accounts WHERE pno = ? ORDER BY account_id";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = FIND_BY_PNO_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(FIND_BY_PNO_SQL);
 
             stmt.setString(1, pNo);
 
@@ -123,29 +239,126 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            FIND_BY_PNO_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed to find accounts for pNo=" + pNo, e);
             throw new DatabaseException(
                     "Failed to find accounts for customer " + pNo, e);
+        } finally {
+            FIND_BY_PNO_TIMER.stop(start);
+        }
+
+        return accounts;
+    }
+
+
+    /**
+     * Returns every account in the bank, ordered by id.
+     *
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public List<AccountRecord> findAll() {
+
+        List<AccountRecord> accounts = new ArrayList<>();
+
+        long start = FIND_ALL_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(FIND_ALL_SQL);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    accounts.add(mapRow(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            FIND_ALL_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to find all accounts", e);
+            throw new DatabaseException("Failed to find accounts", e);
+        } finally {
+            FIND_ALL_TIMER.stop(start);
         }
 
         return accounts;
     }
 
 
+    /**
+     * Streams every account in the bank, in id order, to {@code sink}.
+     *
+     * @return the number of rows streamed
+     * @throws DatabaseException on SQL error
+     * @see Cursors
+     */
+    @Override
+    public long streamAll(Consumer<AccountRecord> sink) {
+
+        long start = STREAM_ALL_TIMER.start();
+        try {
+            return Cursors.stream(pool, FIND_ALL_SQL, stmt -> { }, this::mapRow, sink);
+
+        } catch (SQLException e) {
+            STREAM_ALL_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to stream all accounts", e);
+            throw new DatabaseException("Failed to stream accounts", e);
+        } finally {
+            STREAM_ALL_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Streams the accounts logged by {@link ChangeLog} after change
+     * {@code afterChange} up to and including {@code throughChange}, in id
+     * order. Accounts that still exist go to {@code changed} in their
+     * current state; the ids of removed accounts go to {@code deleted}.
+     *
+     * @return the number of changed and deleted accounts
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public long streamChanged(long afterChange, long throughChange,
+                              Consumer<AccountRecord> changed, IntConsumer deleted) {
+
+        long start = STREAM_CHANGED_TIMER.start();
+        try {
+            return Cursors.forEach(pool, STREAM_CHANGED_SQL,
+                    stmt -> {
+                        stmt.setLong(1, afterChange);
+                        stmt.setLong(2, throughChange);
+                    },
+                    rs -> {
+                        if (rs.getObject("account_id") != null) {
+                            changed.accept(mapRow(rs));
+                        } else {
+                            deleted.accept(rs.getInt("row_key"));
+                        }
+                    });
+
+        } catch (SQLException e) {
+            STREAM_CHANGED_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to stream changed accounts", e);
+            throw new DatabaseException("Failed to stream changed accounts", e);
+        } finally {
+            STREAM_CHANGED_TIMER.stop(start);
+        }
+    }
+
+
     /**
      * Updates the balance of an account.
      *
      * @return {@code true} if exactly one row was updated
      * @throws DatabaseException on SQL error
      */
-    public boolean updateBalance(int accountId, BigDecimal balance) {
+    @Override
+    public boolean updateBalance(int accountId, Money balance) {
 
-        String sql = "UPDATE accounts SET balance = ? WHERE account_id = ?";
+        long start = UPDATE_BALANCE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(UPDATE_BALANCE_SQL);
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-
-            stmt.setBigDecimal(1, balance);
+            stmt.setBigDecimal(1, balance.toBigDecimal());
             stmt.setInt(2, accountId);
 
             int affected = stmt.executeUpdate();
@@ -160,10 +373,13 @@ public class AccountDAO {
             return true;
 
         } catch (SQLException e) {
+            UPDATE_BALANCE_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed to update balance for accountId=" + accountId, e);
             throw new DatabaseException(
                     "Failed to update balance for account " + accountId, e);
+        } finally {
+            UPDATE_BALANCE_TIMER.stop(start);
         }
     }
 
@@ -174,11 +390,12 @@ public class AccountDAO {
      * @return {@code true} if exactly one row was deleted
      * @throws DatabaseException on SQL error
      */
+    @Override
     public boolean delete(int accountId) {
 
-        String sql = "DELETE FROM accounts WHERE account_id = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = DELETE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(DELETE_SQL);
 
             stmt.setInt(1, accountId);
 
@@ -190,23 +407,121 @@ public class AccountDAO {
                 return false;
             }
 
-            LOGGER.info("Deleted account id=" + accountId);
+            LOGGER.info(() -> "Deleted account id=" + accountId);
             return true;
 
         } catch (SQLException e) {
+            DELETE_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed to delete account id=" + accountId, e);
             throw new DatabaseException(
                     "Failed to delete account " + accountId, e);
+        } finally {
+            DELETE_TIMER.stop(start);
         }
     }
 
 
-    public boolean exists(int accountId) {
+    /**
+     * Applies {@code delta} to an account's balance and inserts the matching
+     * transaction row in one statement. The update only matches when the
+     * account belongs to {@code pNo} and, for savings accounts, the new
+     * balance stays non-negative; the row lock taken by the UPDATE makes
+     * concurrent postings on the same account serialize correctly.
+     *
+     * @return the resulting {@link Posting}, or {@code null} if the account
+     *         does not exist, is owned by someone else, or the savings
+     *         rule rejected the delta
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public Posting applyDelta(int accountId, String pNo, Money delta,
+                              TransactionType transactionType, String description) {
+
+        long start = APPLY_DELTA_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(APPLY_DELTA_SQL);
+
+            stmt.setLong(1, delta.ore());
+            stmt.setInt(2, accountId);
+            stmt.setString(3, pNo);
+            stmt.setString(4, transactionType.name());
+            stmt.setString(5, description);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Posting(rs.getInt(1), Money.ofOre(rs.getLong(2)));
+                }
+            }
+
+        } catch (SQLException e) {
+            APPLY_DELTA_TIMER.failed();
+            LOGGER.log(Level.SEVERE,
+                    "Failed to apply delta to accountId=" + accountId, e);
+            throw new DatabaseException(
+                    "Failed to apply delta to account " + accountId, e);
+        } finally {
+            APPLY_DELTA_TIMER.stop(start);
+        }
 
-        String sql = "SELECT 1 FROM accounts WHERE account_id = ?";
+        return null;
+    }
+
+
+    /**
+     * Applies a list of deltas as one JDBC batch, in list order. Each delta
+     * follows the same rules as {@link #applyDelta}; a later delta on the
+     * same account sees the balance left by the earlier ones. Should be
+     * called inside a transaction so the batch commits or rolls back as a
+     * whole.
+     *
+     * @return per-delta flags, {@code true} where the delta was applied
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public boolean[] applyDeltaBatch(List<Delta> deltas) {
+
+        boolean[] applied = new boolean[deltas.size()];
+        if (deltas.isEmpty()) {
+            return applied;
+        }
+
+        long start = APPLY_DELTA_BATCH_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(APPLY_DELTA_BATCH_SQL);
+
+            for (Delta d : deltas) {
+                stmt.setLong(1, d.delta().ore());
+                stmt.setInt(2, d.accountId());
+                stmt.setString(3, d.pNo());
+                stmt.setString(4, d.transactionType().name());
+                stmt.setString(5, d.description());
+                stmt.addBatch();
+            }
+
+            int[] counts = stmt.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                applied[i] = counts[i] > 0;
+            }
+            return applied;
+
+        } catch (SQLException e) {
+            APPLY_DELTA_BATCH_TIMER.failed();
+            LOGGER.log(Level.SEVERE,
+                    "Failed to apply batch of " + deltas.size() + " deltas", e);
+            throw new DatabaseException("Failed to apply delta batch", e);
+        } finally {
+            APPLY_DELTA_BATCH_TIMER.stop(start);
+        }
+    }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+    @Override
+    public boolean exists(int accountId) {
+
+        long start = EXISTS_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(EXISTS_SQL);
 
             stmt.setInt(1, accountId);
 
@@ -215,10 +530,13 @@ public class AccountDAO {
             }
 
         } catch (SQLException e) {
+            EXISTS_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed existence check for accountId=" + accountId, e);
             throw new DatabaseException(
                     "Failed to check account existence " + accountId, e);
+        } finally {
+            EXISTS_TIMER.stop(start);
         }
     }
 
@@ -237,6 +555,20 @@ public class AccountDAO {
         );
     }
 
+    /**
+     * Result of {@link #applyDelta}: the inserted transaction's id and the
+     * account balance after the delta was applied.
+     */
+    public record Posting(int transactionId, Money balance) {
+    }
+
+    /**
+     * One queued posting for {@link #applyDeltaBatch}.
+     */
+    public record Delta(int accountId, String pNo, Money delta,
+                        TransactionType transactionType, String description) {
+    }
+
     /**
      * Immutable data-transfer object representing one row in
      * the accounts table.
@@ -263,9 +595,13 @@ public class AccountDAO {
 
         @Override
         public String toString() {
-            return String.format(
-                    "Account{id=%d, pNo=%s, type=%s, balance=%s}",
-                    accountId, pNo, accountType, balance);
+            // Rendered for every row of an account list, so no String.format
+            return new StringBuilder(64)
+                    .append("Account{id=").append(accountId)
+                    .append(", pNo=").append(pNo)
+                    .append(", type=").append(accountType)
+                    .append(", balance=").append(balance)
+                    .append('}').toString();
         }
     }
 }
@@ -0,0 +1,83 @@
+package database;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import model.AccountType;
+import model.Money;
+import model.TransactionType;
+
+/**
+ * Storage contract for accounts, implemented by {@link AccountDAO} on
+ * PostgreSQL and by the in-memory engine.
+ *
+ * @see StorageEngine
+ */
+public interface AccountStore {
+
+    /**
+     * Opens an account.
+     *
+     * @return the new account's id
+     * @throws DatabaseException on failure, including an unknown pno
+     */
+    int save(String pNo, AccountType accountType, Money balance);
+
+    /** @return the account, or {@code null} if not found */
+    AccountDAO.AccountRecord findById(int accountId);
+
+    /** Returns every account belonging to a customer, ordered by id. */
+    List<AccountDAO.AccountRecord> findByPNo(String pNo);
+
+    /** Returns every account in the bank, ordered by id. */
+    List<AccountDAO.AccountRecord> findAll();
+
+    /**
+     * Streams every account, in id order, to {@code sink}.
+     *
+     * @return the number of accounts streamed
+     */
+    long streamAll(Consumer<AccountDAO.AccountRecord> sink);
+
+    /**
+     * Streams the accounts changed after change {@code afterChange} up to
+     * and including {@code throughChange}, in id order; see
+     * {@link ChangeTracker}.
+     *
+     * @return the number of changed and deleted accounts
+     */
+    long streamChanged(long afterChange, long throughChange,
+                       Consumer<AccountDAO.AccountRecord> changed, IntConsumer deleted);
+
+    /** @return {@code false} if the account does not exist */
+    boolean updateBalance(int accountId, Money balance);
+
+    /**
+     * Deletes an account together with its transactions.
+     *
+     * @return {@code false} if the account does not exist
+     */
+    boolean delete(int accountId);
+
+    /**
+     * Applies {@code delta} to an account's balance and records the
+     * matching transaction atomically. The delta is rejected unless the
+     * account belongs to {@code pNo} and, for savings accounts, the new
+     * balance stays non-negative.
+     *
+     * @return the posting, or {@code null} if the delta was rejected
+     */
+    AccountDAO.Posting applyDelta(int accountId, String pNo, Money delta,
+                                  TransactionType transactionType, String description);
+
+    /**
+     * Applies deltas in list order, each by the rules of
+     * {@link #applyDelta}. Should run inside a transaction.
+     *
+     * @return per-delta flags, {@code true} where the delta was applied
+     */
+    boolean[] applyDeltaBatch(List<AccountDAO.Delta> deltas);
+
+    boolean exists(int accountId);
+}
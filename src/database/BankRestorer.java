@@ -0,0 +1,557 @@
+package database;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import logic.SnapshotInfo;
+import logic.SnapshotReader;
+
+/**
+ * Replaces the contents of the database with a bank snapshot using
+ * PostgreSQL's COPY protocol.
+ *
+ * <p>A restore runs in three phases:
+ * <ol>
+ *   <li>Foreign keys and secondary indexes on the bank tables are recorded
+ *       and dropped and user triggers (such as the {@link ChangeLog}
+ *       triggers) are disabled, so rows can be loaded in any order without
+ *       per-row index maintenance, constraint checks or change logging.</li>
+ *   <li>Each table is truncated and loaded with {@code COPY ... FROM STDIN}
+ *       on its own connection and thread, each reading its own section of
+ *       the snapshot. Truncating and copying in the same transaction lets
+ *       the server skip most of the WAL for the new rows.</li>
+ *   <li>Indexes are rebuilt in parallel, foreign keys are re-added (which
+ *       validates the loaded data in one pass), triggers are re-enabled, id
+ *       sequences are moved past the restored rows, {@link ChangeFeed}
+ *       listeners are told that every table changed and the tables are
+ *       analyzed.</li>
+ * </ol>
+ *
+ * <p>Because the tables are loaded on separate connections the restore is
+ * not atomic. If loading fails, the tables are emptied and the dropped
+ * indexes and constraints are recreated before the error is rethrown; the
+ * snapshot file itself is never modified, so the restore can be retried.
+ *
+ * <p>Incremental snapshots are applied on top of a restored base with
+ * {@link #applyDelta(Path)}, which runs in a single ordinary transaction.
+ */
+public class BankRestorer {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(BankRestorer.class.getName());
+
+    private static final String BANK_TABLES =
+            "('customers'::regclass, 'accounts'::regclass, 'transactions'::regclass)";
+
+    private static final String FIND_FOREIGN_KEYS_SQL =
+            "SELECT conrelid::regclass::text, quote_ident(conname), pg_get_constraintdef(oid) " +
+            "FROM pg_constraint WHERE contype = 'f' AND conrelid IN " + BANK_TABLES;
+
+    /** Indexes that do not back a primary key or unique constraint. */
+    private static final String FIND_SECONDARY_INDEXES_SQL =
+            "SELECT i.indexrelid::regclass::text, pg_get_indexdef(i.indexrelid) " +
+            "FROM pg_index i WHERE i.indrelid IN " + BANK_TABLES + " " +
+            "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = i.indexrelid)";
+
+    private static final String COPY_CUSTOMERS_SQL =
+            "COPY customers (pno, first_name, last_name) FROM STDIN WITH (FORMAT csv)";
+
+    private static final String COPY_ACCOUNTS_SQL =
+            "COPY accounts (account_id, pno, account_type, balance) FROM STDIN WITH (FORMAT csv)";
+
+    private static final String COPY_TRANSACTIONS_SQL =
+            "COPY transactions " +
+            "(transaction_id, account_id, amount, transaction_type, description, transaction_time, " +
+            " balance_after) " +
+            "FROM STDIN WITH (FORMAT csv)";
+
+    private static final String DELETE_ACCOUNT_SQL =
+            "DELETE FROM accounts WHERE account_id = ?";
+
+    private static final String DELETE_CUSTOMER_SQL =
+            "DELETE FROM customers WHERE pno = ?";
+
+    private static final String UPSERT_CUSTOMER_SQL =
+            "INSERT INTO customers (pno, first_name, last_name) VALUES (?, ?, ?) " +
+            "ON CONFLICT (pno) DO UPDATE " +
+            "SET first_name = EXCLUDED.first_name, last_name = EXCLUDED.last_name";
+
+    private static final String UPSERT_ACCOUNT_SQL =
+            "INSERT INTO accounts (account_id, pno, account_type, balance) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (account_id) DO UPDATE " +
+            "SET pno = EXCLUDED.pno, account_type = EXCLUDED.account_type, " +
+            "balance = EXCLUDED.balance";
+
+    private static final String[] DISABLE_TRIGGERS_SQL = {
+            "ALTER TABLE customers DISABLE TRIGGER USER",
+            "ALTER TABLE accounts DISABLE TRIGGER USER",
+            "ALTER TABLE transactions DISABLE TRIGGER USER"
+    };
+
+    private static final String[] ENABLE_TRIGGERS_SQL = {
+            "ALTER TABLE customers ENABLE TRIGGER USER",
+            "ALTER TABLE accounts ENABLE TRIGGER USER",
+            "ALTER TABLE transactions ENABLE TRIGGER USER"
+    };
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INDEX_BUILD_MEMORY_SQL =
+            "SET LOCAL maintenance_work_mem = '256MB'";
+
+    private static final String[] RESET_SEQUENCE_SQL = {
+            "SELECT setval(pg_get_serial_sequence('accounts', 'account_id'), " +
+            "COALESCE(MAX(account_id), 0) + 1, false) FROM accounts",
+            "SELECT setval(pg_get_serial_sequence('transactions', 'transaction_id'), " +
+            "COALESCE(MAX(transaction_id), 0) + 1, false) FROM transactions"
+    };
+
+    private static final String ANALYZE_SQL =
+            "ANALYZE customers, accounts, transactions";
+
+    private final ConnectionPool pool;
+
+    public BankRestorer(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Deletes all customers, accounts and transactions and loads the
+     * snapshot in their place.
+     *
+     * @return what was restored
+     * @throws IOException if the snapshot cannot be read
+     * @throws DatabaseException on SQL error
+     */
+    public SnapshotInfo restore(Path snapshot) throws IOException {
+
+        SnapshotInfo expected;
+        try (SnapshotReader reader = new SnapshotReader(snapshot)) {
+            expected = reader.info();
+        }
+
+        long started = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(3, r -> {
+            Thread t = new Thread(r, "bank-restore");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            Deferred deferred = dropDeferred();
+            long[] counts;
+            try {
+                counts = awaitAll(List.of(
+                        workers.submit(() -> copy(snapshot, COPY_CUSTOMERS_SQL, Table.CUSTOMERS)),
+                        workers.submit(() -> copy(snapshot, COPY_ACCOUNTS_SQL, Table.ACCOUNTS)),
+                        workers.submit(() -> copy(snapshot, COPY_TRANSACTIONS_SQL, Table.TRANSACTIONS))));
+                if (counts[0] != expected.customers() || counts[1] != expected.accounts()
+                        || counts[2] != expected.transactions()) {
+                    throw new IOException("Snapshot row counts do not match its trailer");
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Snapshot load failed, emptying bank tables", e);
+                recoverAfterFailedLoad(workers, deferred, e);
+                throw e;
+            }
+
+            rebuild(workers, deferred);
+            reportRestored();
+
+            LOGGER.info(String.format(
+                    "Restored %d customers, %d accounts, %d transactions in %d ms",
+                    counts[0], counts[1], counts[2], (System.nanoTime() - started) / 1_000_000));
+            return new SnapshotInfo(expected.snapshotId(), expected.parentId(),
+                    counts[0], counts[1], counts[2], 0, 0, expected.created());
+
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Indexes and foreign keys dropped for the load. */
+    private record Deferred(List<String[]> foreignKeys, List<String[]> indexes) {
+    }
+
+    private Deferred dropDeferred() {
+        List<String[]> foreignKeys = new ArrayList<>();
+        List<String[]> indexes = new ArrayList<>();
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement()) {
+
+            try (ResultSet rs = stmt.executeQuery(FIND_FOREIGN_KEYS_SQL)) {
+                while (rs.next()) {
+                    foreignKeys.add(new String[] {rs.getString(1), rs.getString(2), rs.getString(3)});
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(FIND_SECONDARY_INDEXES_SQL)) {
+                while (rs.next()) {
+                    indexes.add(new String[] {rs.getString(1), rs.getString(2)});
+                }
+            }
+
+            // Logged so the definitions can be recreated by hand if the
+            // process dies before the rebuild phase
+            for (String[] fk : foreignKeys) {
+                LOGGER.info("Deferring constraint: ALTER TABLE " + fk[0]
+                        + " ADD CONSTRAINT " + fk[1] + " " + fk[2]);
+            }
+            for (String[] index : indexes) {
+                LOGGER.info("Deferring index: " + index[1]);
+            }
+
+            Connection connection = lease.connection();
+            connection.setAutoCommit(false);
+            try {
+                for (String[] fk : foreignKeys) {
+                    stmt.execute("ALTER TABLE " + fk[0] + " DROP CONSTRAINT " + fk[1]);
+                }
+                for (String[] index : indexes) {
+                    stmt.execute("DROP INDEX " + index[0]);
+                }
+                for (String sql : DISABLE_TRIGGERS_SQL) {
+                    stmt.execute(sql);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to drop indexes and constraints for restore", e);
+            throw new DatabaseException("Failed to prepare restore", e);
+        }
+
+        return new Deferred(foreignKeys, indexes);
+    }
+
+    /** Truncates one table and loads its section of the snapshot with COPY. */
+    private long copy(Path snapshot, String copySql, Table table) throws IOException {
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             SnapshotReader reader = new SnapshotReader(snapshot)) {
+
+            Connection connection = lease.connection();
+            connection.setAutoCommit(false);
+            try {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("TRUNCATE " + table.name);
+                }
+
+                long rows = copyRows(connection, reader, copySql, table);
+                connection.commit();
+                LOGGER.fine("Copied " + rows + " rows into " + table.name);
+                return rows;
+
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to copy " + table.name, e);
+            throw new DatabaseException("Failed to restore " + table.name, e);
+        }
+    }
+
+    /** Streams one table's rows from the snapshot into {@code COPY ... FROM STDIN}. */
+    private static long copyRows(Connection connection, SnapshotReader reader,
+                                 String copySql, Table table) throws SQLException, IOException {
+        try (CopyWriter out = CopyWriter.open(connection, copySql)) {
+            long rows = switch (table) {
+                case CUSTOMERS -> reader.readCustomers(c -> out.row()
+                        .text(c.getpNo()).text(c.getName()).text(c.getSurname()).end());
+                case ACCOUNTS -> reader.readAccounts(a -> out.row()
+                        .number(a.getAccountId()).text(a.getpNo())
+                        .text(a.getAccountType().name()).decimal(a.getBalance()).end());
+                case TRANSACTIONS -> reader.readTransactions(t -> out.row()
+                        .number(t.transactionId()).number(t.accountId())
+                        .decimal(t.amount()).text(t.transactionType())
+                        .text(t.description())
+                        .raw(t.transactionTime() != null
+                                ? t.transactionTime().toString() : null)
+                        .decimal(t.balanceAfter())
+                        .end());
+            };
+            out.finish();
+            return rows;
+        }
+    }
+
+    /**
+     * Applies an incremental snapshot to the current contents of the
+     * database: removed accounts and customers are deleted, changed ones
+     * are upserted and new transactions are appended. Everything happens
+     * in one transaction, so a failed delta leaves the database as it was.
+     * The delta must be applied on top of the snapshot it was taken from,
+     * and deltas in a chain must be applied in order.
+     *
+     * @return what was applied
+     * @throws IOException if the snapshot cannot be read
+     * @throws DatabaseException on SQL error
+     */
+    public SnapshotInfo applyDelta(Path delta) throws IOException {
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             SnapshotReader reader = new SnapshotReader(delta)) {
+
+            SnapshotInfo info = reader.info();
+            if (!info.isIncremental()) {
+                throw new IOException("Not an incremental snapshot: " + delta.getFileName());
+            }
+
+            long started = System.nanoTime();
+            Connection connection = lease.connection();
+            connection.setAutoCommit(false);
+            try {
+                ChangeFeed.reportInFull(lease, ChangeFeed.Table.values());
+                try (Batch accounts = new Batch(lease.prepare(DELETE_ACCOUNT_SQL))) {
+                    reader.readAccountDeletions(accountId -> accounts.add(stmt ->
+                            stmt.setInt(1, accountId)));
+                }
+                // Accounts and transactions of removed customers cascade
+                try (Batch customers = new Batch(lease.prepare(DELETE_CUSTOMER_SQL))) {
+                    reader.readCustomerDeletions(pNo -> customers.add(stmt ->
+                            stmt.setString(1, pNo)));
+                }
+                try (Batch customers = new Batch(lease.prepare(UPSERT_CUSTOMER_SQL))) {
+                    reader.readCustomers(c -> customers.add(stmt -> {
+                        stmt.setString(1, c.getpNo());
+                        stmt.setString(2, c.getName());
+                        stmt.setString(3, c.getSurname());
+                    }));
+                }
+                try (Batch accounts = new Batch(lease.prepare(UPSERT_ACCOUNT_SQL))) {
+                    reader.readAccounts(a -> accounts.add(stmt -> {
+                        stmt.setInt(1, a.getAccountId());
+                        stmt.setString(2, a.getpNo());
+                        stmt.setString(3, a.getAccountType().name());
+                        stmt.setBigDecimal(4, a.getBalance());
+                    }));
+                }
+                long transactions = copyRows(connection, reader, COPY_TRANSACTIONS_SQL,
+                        Table.TRANSACTIONS);
+
+                try (Statement stmt = connection.createStatement()) {
+                    for (String sql : RESET_SEQUENCE_SQL) {
+                        stmt.execute(sql);
+                    }
+                }
+                connection.commit();
+
+                LOGGER.info(String.format(
+                        "Applied delta with %d customers, %d accounts, %d transactions in %d ms",
+                        info.customers(), info.accounts(), transactions,
+                        (System.nanoTime() - started) / 1_000_000));
+                return info;
+
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to apply incremental snapshot " + delta, e);
+            throw new DatabaseException("Failed to apply incremental snapshot", e);
+        }
+    }
+
+    /** Rebuilds indexes in parallel, then re-adds foreign keys and resets sequences. */
+    private void rebuild(ExecutorService workers, Deferred deferred) throws IOException {
+
+        List<Future<Long>> builds = new ArrayList<>();
+        for (String[] index : deferred.indexes()) {
+            builds.add(workers.submit(() -> {
+                executeInTransaction(INDEX_BUILD_MEMORY_SQL, index[1]);
+                return 0L;
+            }));
+        }
+        awaitAll(builds);
+
+        List<String> statements = new ArrayList<>();
+        for (String[] fk : deferred.foreignKeys()) {
+            statements.add("ALTER TABLE " + fk[0] + " ADD CONSTRAINT " + fk[1] + " " + fk[2]);
+        }
+        statements.addAll(List.of(ENABLE_TRIGGERS_SQL));
+        statements.addAll(List.of(RESET_SEQUENCE_SQL));
+        executeInTransaction(statements.toArray(new String[0]));
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement()) {
+            stmt.execute(ANALYZE_SQL);
+        } catch (SQLException e) {
+            // Statistics will be collected by autovacuum eventually
+            LOGGER.log(Level.WARNING, "Failed to analyze restored tables", e);
+        }
+    }
+
+    private void recoverAfterFailedLoad(ExecutorService workers, Deferred deferred, Exception cause) {
+        try {
+            executeInTransaction("TRUNCATE transactions, accounts, customers");
+            rebuild(workers, deferred);
+            reportRestored();
+        } catch (IOException | RuntimeException e) {
+            cause.addSuppressed(e);
+            LOGGER.log(Level.SEVERE,
+                    "Failed to restore indexes and constraints after a failed load", e);
+        }
+    }
+
+    /** The tables were loaded with the notify triggers disabled, so listeners are told here. */
+    private void reportRestored() {
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+            connection.setAutoCommit(false);
+            try {
+                ChangeFeed.reportInFull(lease, ChangeFeed.Table.values());
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // Listeners still see the restored rows on their next reload
+            LOGGER.log(Level.WARNING, "Failed to report the restore to change listeners", e);
+        }
+    }
+
+    private void executeInTransaction(String... statements) {
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement()) {
+
+            Connection connection = lease.connection();
+            connection.setAutoCommit(false);
+            try {
+                for (String sql : statements) {
+                    stmt.execute(sql);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Restore statement failed: " + String.join("; ", statements), e);
+            throw new DatabaseException("Failed to rebuild database after restore", e);
+        }
+    }
+
+    private static long[] awaitAll(List<Future<Long>> futures) throws IOException {
+        long[] results = new long[futures.size()];
+        Exception failure = null;
+        for (int i = 0; i < results.length; i++) {
+            try {
+                results[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new DatabaseException("Restore interrupted", e);
+            } catch (ExecutionException e) {
+                Exception cause = e.getCause() instanceof Exception ex ? ex : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure instanceof IOException io) {
+            throw io;
+        }
+        if (failure instanceof RuntimeException re) {
+            throw re;
+        }
+        if (failure != null) {
+            throw new DatabaseException("Restore failed", failure);
+        }
+        return results;
+    }
+
+    /**
+     * Sends parameter sets for one cached statement in batches of
+     * {@link #BATCH_SIZE}. Used from snapshot callbacks, so SQL errors are
+     * rethrown unchecked.
+     */
+    private static final class Batch implements AutoCloseable {
+        private final PreparedStatement stmt;
+        private int pending;
+
+        @FunctionalInterface
+        interface Parameters {
+            void set(PreparedStatement stmt) throws SQLException;
+        }
+
+        Batch(PreparedStatement stmt) {
+            this.stmt = stmt;
+        }
+
+        void add(Parameters parameters) {
+            try {
+                parameters.set(stmt);
+                stmt.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    flush();
+                }
+            } catch (SQLException e) {
+                throw new DatabaseException("Batch update failed", e);
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (pending > 0) {
+                stmt.executeBatch();
+                pending = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+            } finally {
+                stmt.clearBatch();
+            }
+        }
+    }
+
+    private enum Table {
+        CUSTOMERS("customers"),
+        ACCOUNTS("accounts"),
+        TRANSACTIONS("transactions");
+
+        private final String name;
+
+        Table(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import metrics.Metrics;
+
+/**
+ * Push notifications of committed changes to customers, accounts and
+ * transactions, so that every client of the database can refresh what it
+ * shows without polling.
+ *
+ * <p>Statement-level triggers collect the distinct keys a statement
+ * touched from its transition table and send them with one
+ * {@code NOTIFY} on {@link #CHANNEL}, as {@code table:key,key,...}. A
+ * statement touching more than {@link #MAX_KEYS} rows, and any
+ * {@code TRUNCATE}, sends {@code table:*} instead. Customers are keyed on
+ * pno, accounts on account id and transactions on the account they were
+ * posted to. Customer keys carry the operation, account keys the owner's
+ * pno and transaction keys the highest transaction id the statement
+ * posted to the account, as {@code key@detail}, so that listeners can
+ * tell what changed and whether they have already seen the change. PostgreSQL delivers notifications only when
+ * the transaction commits, and drops duplicates within one transaction.
+ *
+ * <p>A daemon thread holds a dedicated connection outside the pool,
+ * {@code LISTEN}s on the channel and hands each batch of notifications
+ * to the listeners, merged per table. If the connection is lost the
+ * thread reconnects with backoff. Notifications sent while it was down
+ * are lost, so after a reconnect every table is reported as changed.
+ *
+ * <p>Every writer pays for the triggers once they are installed, also
+ * when nobody listens: committing a transaction that notifies takes a
+ * cluster-wide lock on the notification queue. The triggers are therefore
+ * only installed when a feed is first started, not with the schema. Bulk
+ * writers such as imports, restores and interest runs call
+ * {@link #reportInFull}, which makes the triggers return at once for the
+ * rest of the transaction and sends one {@code table:*} per table
+ * instead. Unlike {@code session_replication_role = replica} this leaves
+ * the {@link ChangeLog} triggers and foreign key checks running.
+ */
+public class ChangeFeed implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(ChangeFeed.class.getName());
+
+    public static final String CHANNEL = "bank_changes";
+
+    /** Statements touching more rows than this report the whole table. */
+    public static final int MAX_KEYS = 100;
+
+    /** Operations a customer's key maps to; see {@link Change}. */
+    public static final String INSERTED = "I";
+    public static final String UPDATED = "U";
+    public static final String DELETED = "D";
+
+    /** Batches merging more keys than this for one table report the whole table. */
+    private static final int MAX_MERGED_KEYS = 10_000;
+
+    private static final int POLL_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /** Set for the rest of a transaction by {@link #reportInFull}. */
+    private static final String QUIET_SETTING = "bank.quiet_changes";
+
+    private static final LongAdder NOTIFICATIONS = Metrics.counter("ChangeFeed.notifications");
+    private static final LongAdder RECONNECTS = Metrics.counter("ChangeFeed.reconnects");
+
+    /**
+     * Reads the keys from the transition table with plain column
+     * references; each branch is only planned for the table it names.
+     */
+    private static final String NOTIFY_FUNCTION_SQL =
+            "CREATE OR REPLACE FUNCTION notify_bank_change() RETURNS trigger " +
+            "LANGUAGE plpgsql AS $$ " +
+            "DECLARE " +
+            "  keys text; " +
+            "  n int; " +
+            "BEGIN " +
+            "  IF current_setting('" + QUIET_SETTING + "', true) = 'on' THEN " +
+            "    RETURN NULL; " +
+            "  END IF; " +
+            "  IF TG_OP = 'TRUNCATE' THEN " +
+            "    PERFORM pg_notify('" + CHANNEL + "', TG_TABLE_NAME || ':*'); " +
+            "    RETURN NULL; " +
+            "  END IF; " +
+            "  IF TG_TABLE_NAME = 'customers' THEN " +
+            "    SELECT count(*), string_agg(k, ',') INTO n, keys FROM (" +
+            "      SELECT DISTINCT pno || '@' || left(TG_OP, 1) AS k FROM changed_rows " +
+            "      LIMIT " + (MAX_KEYS + 1) + ") s; " +
+            "  ELSIF TG_TABLE_NAME = 'accounts' THEN " +
+            "    SELECT count(*), string_agg(k, ',') INTO n, keys FROM (" +
+            "      SELECT DISTINCT account_id || '@' || pno AS k FROM changed_rows " +
+            "      LIMIT " + (MAX_KEYS + 1) + ") s; " +
+            "  ELSE " +
+            "    SELECT count(*), string_agg(k, ',') INTO n, keys FROM (" +
+            "      SELECT account_id || '@' || max(transaction_id) AS k FROM changed_rows " +
+            "      GROUP BY account_id LIMIT " + (MAX_KEYS + 1) + ") s; " +
+            "  END IF; " +
+            "  IF n > " + MAX_KEYS + " THEN " +
+            "    keys := '*'; " +
+            "  END IF; " +
+            "  IF n > 0 THEN " +
+            "    PERFORM pg_notify('" + CHANNEL + "', TG_TABLE_NAME || ':' || keys); " +
+            "  END IF; " +
+            "  RETURN NULL; " +
+            "END $$";
+
+    private static final String QUIET_SQL =
+            "SELECT set_config('" + QUIET_SETTING + "', 'on', true)";
+
+    /** Sends nothing unless the triggers are installed, as then nobody listens. */
+    private static final String NOTIFY_ALL_SQL =
+            "SELECT pg_notify('" + CHANNEL + "', t || ':*') FROM unnest(?::text[]) t " +
+            "WHERE EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = 'notify_bank_change_insert')";
+
+    private static final String[] SCHEMA_SQL = {
+            NOTIFY_FUNCTION_SQL,
+            "DO $$ BEGIN " +
+            triggers("customers", true) +
+            triggers("accounts", true) +
+            // Transactions are insert-only; their rows go with their account
+            triggers("transactions", false) +
+            "END $$"
+    };
+
+    /** Tables whose changes are reported. */
+    public enum Table {
+        CUSTOMERS, ACCOUNTS, TRANSACTIONS
+    }
+
+    /**
+     * The rows of one table that changed. Keys are pnos for customers and
+     * account ids otherwise; a key may name a row that no longer exists.
+     * An account's key maps to the owner's pno, a transaction's to the
+     * highest transaction id posted to the account, and a customer's to
+     * {@link #INSERTED}, {@link #UPDATED} or {@link #DELETED}. Merged over
+     * several statements, a customer is deleted if the last of them
+     * deleted it, and otherwise inserted if any of them did.
+     *
+     * @param rows the changed keys and their details, or {@code null} if
+     *             any row may have changed
+     */
+    public record Change(Table table, Map<String, String> rows) {
+
+        /** @return {@code true} if any row of the table may have changed */
+        public boolean isAll() {
+            return rows == null;
+        }
+
+        /** @return the changed keys, or {@code null} if any row may have changed */
+        public Set<String> keys() {
+            return rows == null ? null : rows.keySet();
+        }
+    }
+
+    /** Receives changes on the feed's thread; must return quickly. */
+    @FunctionalInterface
+    public interface Listener {
+        void onChanges(List<Change> changes);
+    }
+
+    private final ConnectionPool pool;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Thread thread;
+    private volatile boolean closed;
+
+    public ChangeFeed(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Installs the notify triggers if they are missing.
+     *
+     * @throws DatabaseException on SQL error
+     */
+    public void ensureSchema() {
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement()) {
+            for (String sql : SCHEMA_SQL) {
+                stmt.execute(sql);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to install change notifications", e);
+            throw new DatabaseException("Failed to install change notifications", e);
+        }
+    }
+
+    /**
+     * Silences the notify triggers for the rest of the lease's transaction
+     * and reports each of {@code tables} as changed in full when it
+     * commits. For statements that touch too many rows to report them one
+     * by one, so that they do not pay for collecting the keys.
+     *
+     * @throws IllegalStateException if the lease has no open transaction
+     */
+    static void reportInFull(ConnectionPool.Lease lease, Table... tables) throws SQLException {
+        Connection connection = lease.connection();
+        if (connection.getAutoCommit()) {
+            throw new IllegalStateException("reportInFull requires an open transaction");
+        }
+        String[] names = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            names[i] = tables[i].name().toLowerCase(Locale.ROOT);
+        }
+        lease.prepare(QUIET_SQL).executeQuery().close();
+        PreparedStatement notify = lease.prepare(NOTIFY_ALL_SQL);
+        notify.setArray(1, connection.createArrayOf("text", names));
+        notify.executeQuery().close();
+    }
+
+    /**
+     * Starts listening if the feed is not running yet. Listeners added
+     * before the start miss nothing that commits after it.
+     */
+    public synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException("Change feed is closed");
+        }
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "change-feed");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Listeners are called in the order they were added. */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Stops the listener thread within one poll interval. */
+    @Override
+    public void close() {
+        closed = true;
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    private void run() {
+        long backoff = POLL_MILLIS;
+        boolean reconnected = false;
+        while (!closed) {
+            try (Connection connection = pool.openUnpooled()) {
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnected) {
+                    LOGGER.info("Change feed reconnected, reporting all tables as changed");
+                    dispatch(everything());
+                }
+                backoff = POLL_MILLIS;
+                while (!closed) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+                    if (notifications != null && notifications.length > 0) {
+                        NOTIFICATIONS.add(notifications.length);
+                        dispatch(merge(notifications));
+                    }
+                }
+            } catch (SQLException e) {
+                if (closed) {
+                    break;
+                }
+                RECONNECTS.increment();
+                reconnected = true;
+                LOGGER.log(Level.WARNING,
+                        "Change feed lost its connection, retrying in " + backoff + " ms", e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+        LOGGER.fine("Change feed stopped");
+    }
+
+    private void dispatch(List<Change> changes) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onChanges(changes);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Merges a batch of notifications into one change per table, in table
+     * order. A transaction key seen more than once keeps its highest id,
+     * and a customer key keeps the last operation other than an update.
+     */
+    static List<Change> merge(PGNotification[] notifications) {
+        Map<Table, Map<String, String>> rows = new EnumMap<>(Table.class);
+        Set<Table> all = new HashSet<>();
+        for (PGNotification notification : notifications) {
+            String payload = notification.getParameter();
+            int colon = payload.indexOf(':');
+            Table table = colon < 0 ? null : table(payload.substring(0, colon));
+            if (table == null) {
+                LOGGER.warning("Ignoring malformed change notification: " + payload);
+                continue;
+            }
+            if (all.contains(table)) {
+                continue;
+            }
+            String rest = payload.substring(colon + 1);
+            Map<String, String> tableRows = rows.computeIfAbsent(table, t -> new HashMap<>());
+            if (rest.equals("*")) {
+                all.add(table);
+                continue;
+            }
+            for (String entry : rest.split(",")) {
+                int at = entry.indexOf('@');
+                String key = at < 0 ? entry : entry.substring(0, at);
+                String detail = at < 0 ? "" : entry.substring(at + 1);
+                tableRows.merge(key, detail, switch (table) {
+                    case CUSTOMERS -> (older, newer) -> newer.equals(UPDATED) ? older : newer;
+                    case ACCOUNTS -> (older, newer) -> newer;
+                    case TRANSACTIONS -> ChangeFeed::higherId;
+                });
+            }
+            if (tableRows.size() > MAX_MERGED_KEYS) {
+                all.add(table);
+            }
+        }
+
+        List<Change> changes = new ArrayList<>(rows.size());
+        rows.forEach((table, tableRows) ->
+                changes.add(new Change(table, all.contains(table) ? null : Map.copyOf(tableRows))));
+        return changes;
+    }
+
+    private static String higherId(String a, String b) {
+        return Long.parseLong(a) >= Long.parseLong(b) ? a : b;
+    }
+
+    private static List<Change> everything() {
+        List<Change> changes = new ArrayList<>();
+        for (Table table : Table.values()) {
+            changes.add(new Change(table, null));
+        }
+        return changes;
+    }
+
+    private static Table table(String name) {
+        return switch (name) {
+            case "customers" -> Table.CUSTOMERS;
+            case "accounts" -> Table.ACCOUNTS;
+            case "transactions" -> Table.TRANSACTIONS;
+            default -> null;
+        };
+    }
+
+    /**
+     * Builds the statements of a DO block that creates the notify triggers
+     * of a table unless they exist: one per event, each with the
+     * transition table the function reads as {@code changed_rows}.
+     */
+    private static String triggers(String table, boolean updatable) {
+        StringBuilder sql = new StringBuilder();
+        sql.append(trigger(table, "insert", "INSERT REFERENCING NEW TABLE AS changed_rows"));
+        if (updatable) {
+            sql.append(trigger(table, "update", "UPDATE REFERENCING NEW TABLE AS changed_rows"));
+        }
+        sql.append(trigger(table, "delete", "DELETE REFERENCING OLD TABLE AS changed_rows"));
+        sql.append(trigger(table, "truncate", "TRUNCATE"));
+        return sql.toString();
+    }
+
+    private static String trigger(String table, String suffix, String event) {
+        String name = "notify_bank_change_" + suffix;
+        return "  IF NOT EXISTS (SELECT 1 FROM pg_trigger " +
+               "                 WHERE tgname = '" + name + "' AND tgrelid = '" + table + "'::regclass) THEN " +
+               "    CREATE TRIGGER " + name + " AFTER " + event + " ON " + table + " " +
+               "    FOR EACH STATEMENT EXECUTE PROCEDURE notify_bank_change(); " +
+               "  END IF; ";
+    }
+}
@@ -0,0 +1,292 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Change tracking for incremental snapshots.
+ *
+ * <p>Row triggers on {@code customers} and {@code accounts} append the key
+ * of every inserted, updated or deleted row to {@code bank_change_log}.
+ * Transactions are insert-only, so their ids serve as their own log. Every
+ * snapshot written from this database is recorded in
+ * {@code bank_snapshots} together with its marks: the highest transaction
+ * id and change-log id it contains. An incremental snapshot contains the
+ * log entries and transactions after its parent's marks.
+ *
+ * <p>Ids come from sequences and are handed out before the inserting
+ * transaction commits, so a plain {@code max(id)} could skip a row that
+ * commits later with a lower id. {@link #pinSnapshot()} therefore briefly
+ * takes a SHARE lock on the logged tables from a second connection. This
+ * waits out in-flight writers while the snapshot transaction fixes its
+ * view. Every id at or below the returned marks is then committed and
+ * visible.
+ */
+public class ChangeLog implements ChangeTracker {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(ChangeLog.class.getName());
+
+    private static final long FENCE_TIMEOUT_SECONDS = 30;
+
+    private static final String[] SCHEMA_SQL = {
+            "CREATE TABLE IF NOT EXISTS bank_change_log (" +
+            "  change_id bigserial PRIMARY KEY," +
+            "  table_name text NOT NULL," +
+            "  row_key text NOT NULL)",
+
+            "CREATE TABLE IF NOT EXISTS bank_snapshots (" +
+            "  snapshot_id bigint PRIMARY KEY," +
+            "  transaction_mark bigint NOT NULL," +
+            "  change_mark bigint NOT NULL," +
+            "  created_at timestamptz NOT NULL DEFAULT now())",
+
+            "CREATE OR REPLACE FUNCTION log_bank_change() RETURNS trigger " +
+            "LANGUAGE plpgsql AS $$ " +
+            "BEGIN " +
+            "  IF TG_OP = 'DELETE' THEN " +
+            "    INSERT INTO bank_change_log (table_name, row_key) " +
+            "    VALUES (TG_TABLE_NAME, to_jsonb(OLD) ->> TG_ARGV[0]); " +
+            "    RETURN OLD; " +
+            "  END IF; " +
+            "  INSERT INTO bank_change_log (table_name, row_key) " +
+            "  VALUES (TG_TABLE_NAME, to_jsonb(NEW) ->> TG_ARGV[0]); " +
+            "  RETURN NEW; " +
+            "END $$",
+
+            "DO $$ BEGIN " +
+            "  IF NOT EXISTS (SELECT 1 FROM pg_trigger " +
+            "                 WHERE tgname = 'log_bank_change' AND tgrelid = 'customers'::regclass) THEN " +
+            "    CREATE TRIGGER log_bank_change AFTER INSERT OR UPDATE OR DELETE ON customers " +
+            "    FOR EACH ROW EXECUTE PROCEDURE log_bank_change('pno'); " +
+            "  END IF; " +
+            "  IF NOT EXISTS (SELECT 1 FROM pg_trigger " +
+            "                 WHERE tgname = 'log_bank_change' AND tgrelid = 'accounts'::regclass) THEN " +
+            "    CREATE TRIGGER log_bank_change AFTER INSERT OR UPDATE OR DELETE ON accounts " +
+            "    FOR EACH ROW EXECUTE PROCEDURE log_bank_change('account_id'); " +
+            "  END IF; " +
+            "END $$"
+    };
+
+    private static final String FENCE_SQL =
+            "LOCK TABLE transactions, bank_change_log IN SHARE MODE";
+
+    private static final String FENCE_TIMEOUT_SQL =
+            "SET LOCAL lock_timeout = '" + FENCE_TIMEOUT_SECONDS + "s'";
+
+    private static final String MARKS_SQL =
+            "SELECT (SELECT COALESCE(MAX(transaction_id), 0) FROM transactions), " +
+            "(SELECT CASE WHEN is_called THEN last_value ELSE 0 END " +
+            " FROM bank_change_log_change_id_seq)";
+
+    private static final String FIND_MARKS_SQL =
+            "SELECT transaction_mark, change_mark FROM bank_snapshots WHERE snapshot_id = ?";
+
+    private static final String REGISTER_SQL =
+            "INSERT INTO bank_snapshots (snapshot_id, transaction_mark, change_mark) " +
+            "VALUES (?, ?, ?) ON CONFLICT (snapshot_id) DO UPDATE " +
+            "SET transaction_mark = EXCLUDED.transaction_mark, change_mark = EXCLUDED.change_mark";
+
+    /** After a full snapshot, older chains cannot be extended and their log is pruned. */
+    private static final String UNREGISTER_OTHERS_SQL =
+            "DELETE FROM bank_snapshots WHERE snapshot_id <> ?";
+
+    private static final String PRUNE_SQL =
+            "DELETE FROM bank_change_log WHERE change_id <= ?";
+
+    private final ConnectionPool pool;
+    private volatile boolean available;
+
+    /**
+     * Marks of a snapshot: it contains every transaction with an id at or
+     * below {@code transactionMark} and every logged change at or below
+     * {@code changeMark}.
+     */
+    public record Marks(long transactionMark, long changeMark) {
+    }
+
+    public ChangeLog(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Creates the change-log tables and triggers if they are missing.
+     * Failure is logged rather than thrown: the bank still works, but
+     * incremental snapshots are disabled until the schema exists.
+     *
+     * @return {@code true} if change tracking is available
+     */
+    public boolean ensureSchema() {
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement()) {
+            for (String sql : SCHEMA_SQL) {
+                stmt.execute(sql);
+            }
+            available = true;
+        } catch (SQLException | DatabaseException e) {
+            LOGGER.log(Level.SEVERE,
+                    "Could not install change log, incremental snapshots disabled", e);
+            available = false;
+        }
+        return available;
+    }
+
+    /** @return {@code true} if the schema is installed and changes are being tracked */
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Fixes the current thread's transaction snapshot behind a write fence
+     * and returns the marks it covers. Must be the first statement of a
+     * REPEATABLE READ transaction.
+     *
+     * @throws DatabaseException if the fence cannot be taken
+     */
+    @Override
+    public Marks pinSnapshot() {
+        requireAvailable();
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> fence = CompletableFuture.runAsync(() -> holdFence(locked, release));
+
+        try {
+            while (!locked.await(100, TimeUnit.MILLISECONDS)) {
+                if (fence.isDone()) {
+                    fence.join();
+                }
+            }
+
+            try (ConnectionPool.Lease lease = pool.lease()) {
+                if (lease.connection().getAutoCommit()) {
+                    throw new IllegalStateException("pinSnapshot requires an open transaction");
+                }
+                try (ResultSet rs = lease.prepare(MARKS_SQL).executeQuery()) {
+                    rs.next();
+                    return new Marks(rs.getLong(1), rs.getLong(2));
+                }
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read snapshot marks", e);
+            throw new DatabaseException("Failed to read snapshot marks", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while waiting for snapshot fence", e);
+        } finally {
+            release.countDown();
+            try {
+                fence.get(FENCE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                LOGGER.log(Level.WARNING, "Snapshot fence did not release cleanly", e);
+            }
+        }
+    }
+
+    /** Runs on a separate thread, and therefore on a separate pooled connection. */
+    private void holdFence(CountDownLatch locked, CountDownLatch release) {
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(FENCE_TIMEOUT_SQL);
+                stmt.execute(FENCE_SQL);
+                locked.countDown();
+                release.await(FENCE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to take snapshot fence", e);
+            throw new DatabaseException("Failed to take snapshot fence", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while holding snapshot fence", e);
+        }
+    }
+
+    /**
+     * Returns the marks of a snapshot previously written from this
+     * database, or {@code null} if it is unknown (never registered, taken
+     * from another database, or superseded by a later full snapshot).
+     *
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public Marks findMarks(long snapshotId) {
+        requireAvailable();
+
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(FIND_MARKS_SQL);
+            stmt.setLong(1, snapshotId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new Marks(rs.getLong(1), rs.getLong(2)) : null;
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to find snapshot " + snapshotId, e);
+            throw new DatabaseException("Failed to find snapshot " + snapshotId, e);
+        }
+    }
+
+    /**
+     * Records a snapshot so that incremental snapshots can be based on it.
+     * A full snapshot replaces all earlier registrations and prunes the log
+     * it covers. Runs in the caller's transaction.
+     *
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public void register(long snapshotId, Marks marks, boolean full) {
+        if (!available) {
+            return;
+        }
+
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            if (full) {
+                PreparedStatement unregister = lease.prepare(UNREGISTER_OTHERS_SQL);
+                unregister.setLong(1, snapshotId);
+                unregister.executeUpdate();
+
+                PreparedStatement prune = lease.prepare(PRUNE_SQL);
+                prune.setLong(1, marks.changeMark());
+                int pruned = prune.executeUpdate();
+                LOGGER.fine("Pruned " + pruned + " change log entries");
+            }
+
+            PreparedStatement stmt = lease.prepare(REGISTER_SQL);
+            stmt.setLong(1, snapshotId);
+            stmt.setLong(2, marks.transactionMark());
+            stmt.setLong(3, marks.changeMark());
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to register snapshot " + snapshotId, e);
+            throw new DatabaseException("Failed to register snapshot " + snapshotId, e);
+        }
+    }
+
+    private void requireAvailable() {
+        if (!available) {
+            throw new DatabaseException(
+                    "Change log is not installed; incremental snapshots are unavailable");
+        }
+    }
+}
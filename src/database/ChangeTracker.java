@@ -0,0 +1,42 @@
+package database;
+
+/**
+ * Change tracking for incremental snapshots: which customers and accounts
+ * changed, and which transactions were added, since an earlier snapshot.
+ *
+ * <p>A snapshot's {@link ChangeLog.Marks} name the last transaction id and
+ * the last change it contains. The stores' {@code streamChanged} and
+ * {@link TransactionStore#streamRange} methods take these marks, so an
+ * incremental snapshot is written as everything between its parent's
+ * marks and its own.
+ */
+public interface ChangeTracker {
+
+    /** @return {@code true} if changes are being tracked */
+    boolean isAvailable();
+
+    /**
+     * Fixes what the current thread's transaction sees and returns the
+     * marks it covers. Must be the first call of the transaction.
+     *
+     * @throws DatabaseException if the marks cannot be read
+     */
+    ChangeLog.Marks pinSnapshot();
+
+    /**
+     * Returns the marks of a snapshot previously written from this bank,
+     * or {@code null} if it is unknown.
+     *
+     * @throws DatabaseException if the marks cannot be read
+     */
+    ChangeLog.Marks findMarks(long snapshotId);
+
+    /**
+     * Records a snapshot so that incremental snapshots can be based on it.
+     * A full snapshot replaces all earlier registrations. Runs in the
+     * caller's transaction.
+     *
+     * @throws DatabaseException if the snapshot cannot be recorded
+     */
+    void register(long snapshotId, ChangeLog.Marks marks, boolean full);
+}
@@ -0,0 +1,393 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of JDBC connections.
+ *
+ * <p>Callers lease a connection for one unit of work and close the
+ * {@link Lease} when done. Leases are re-entrant per thread: a DAO call
+ * made inside {@code executeInTransaction} gets the same connection as
+ * the surrounding transaction, so commit / rollback covers all of it.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(ConnectionPool.class.getName());
+
+    /** Idle connections older than this are validated before reuse. */
+    private static final long VALIDATE_AFTER_IDLE_NANOS =
+            TimeUnit.SECONDS.toNanos(5);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final int minIdle;
+    private final long maxWaitNanos;
+    private final long idleTimeoutNanos;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final ThreadLocal<Lease> current = new ThreadLocal<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWait = new AtomicLong();
+    private final LongAdder leaseNanos = new LongAdder();
+    private final AtomicLong maxLease = new AtomicLong();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    /**
+     * Creates a pool and eagerly opens {@code minIdle} connections so that
+     * an unreachable database is reported at startup.
+     *
+     * @param factory opens new physical connections
+     * @param maxSize upper bound on open connections
+     * @param minIdle connections kept open even when idle
+     * @param maxWait how long {@link #lease()} blocks before giving up
+     * @param idleTimeout idle connections above {@code minIdle} are closed after this
+     * @param statementCacheSize prepared statements cached per connection
+     * @throws SQLException if an initial connection cannot be opened
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize, int minIdle,
+                          Duration maxWait, Duration idleTimeout,
+                          int statementCacheSize) throws SQLException {
+        if (factory == null) {
+            throw new IllegalArgumentException("Connection factory cannot be null");
+        }
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException(
+                    "Invalid pool size max=" + maxSize + " minIdle=" + minIdle);
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.minIdle = minIdle;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < minIdle; i++) {
+            idle.push(open());
+        }
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, idleTimeout.toMillis() / 2);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leases a connection for the calling thread. If the thread already
+     * holds a lease from this pool, the same lease is returned and must
+     * be closed once more.
+     *
+     * @throws DatabaseException if the pool is closed, no connection
+     *         becomes available within the max wait, or a new connection
+     *         cannot be opened
+     */
+    public Lease lease() {
+        Lease held = current.get();
+        if (held != null) {
+            held.depth++;
+            return held;
+        }
+        if (closed) {
+            throw new DatabaseException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                timeouts.increment();
+                throw new DatabaseException(
+                        "Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted waiting for a database connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        waitNanos.add(waited);
+        maxWait.accumulateAndGet(waited, Math::max);
+
+        PooledConnection pooled;
+        try {
+            pooled = takeIdleOrOpen();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            if (e instanceof DatabaseException de) {
+                throw de;
+            }
+            throw new DatabaseException("Failed to open database connection", e);
+        }
+
+        leases.increment();
+        Lease lease = new Lease(pooled);
+        current.set(lease);
+        return lease;
+    }
+
+    /**
+     * Returns a snapshot of pool-size, wait-time and lease-duration metrics.
+     */
+    public PoolStats getStats() {
+        long count = leases.sum();
+        int open = size.get();
+        int idleCount = idle.size();
+        return new PoolStats(
+                maxSize,
+                open,
+                idleCount,
+                Math.max(0, open - idleCount),
+                permits.getQueueLength(),
+                count,
+                timeouts.sum(),
+                created.sum(),
+                evicted.sum(),
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / count),
+                TimeUnit.NANOSECONDS.toMicros(maxWait.get()),
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(leaseNanos.sum() / count),
+                TimeUnit.NANOSECONDS.toMicros(maxLease.get()),
+                statementCounters.hits.sum(),
+                statementCounters.misses.sum(),
+                statementCounters.evictions.sum());
+    }
+
+    private PooledConnection takeIdleOrOpen() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isUsable(pooled)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return open();
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.connection.isClosed()) {
+                return false;
+            }
+            if (System.nanoTime() - pooled.lastReturned < VALIDATE_AFTER_IDLE_NANOS) {
+                return true;
+            }
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Connection validation failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Opens a physical connection that does not count against the pool,
+     * for sessions that outlive any lease such as {@code LISTEN}. The
+     * caller closes it.
+     */
+    Connection openUnpooled() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        return factory.create();
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = factory.create();
+        size.incrementAndGet();
+        created.increment();
+        return new PooledConnection(connection,
+                new StatementCache(connection, statementCacheSize, statementCounters));
+    }
+
+    private void release(Lease lease) {
+        current.remove();
+
+        long held = System.nanoTime() - lease.leasedAt;
+        leaseNanos.add(held);
+        maxLease.accumulateAndGet(held, Math::max);
+
+        PooledConnection pooled = lease.pooled;
+        boolean reusable = !closed && !lease.broken && resetState(pooled.connection);
+        if (reusable) {
+            pooled.lastReturned = System.nanoTime();
+            idle.offerFirst(pooled);
+        } else {
+            discard(pooled);
+        }
+        permits.release();
+    }
+
+    /**
+     * Rolls back anything a caller left open so the next lease starts clean.
+     */
+    private boolean resetState(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                LOGGER.warning("Connection returned with an open transaction, rolling back");
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to reset pooled connection", e);
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        size.decrementAndGet();
+        try {
+            pooled.statements.clear();
+            pooled.connection.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Failed to close discarded connection", e);
+        }
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle timeout,
+     * never going below {@code minIdle}.
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (PooledConnection pooled : idle) {
+            if (idle.size() <= minIdle) {
+                return;
+            }
+            if (now - pooled.lastReturned > idleTimeoutNanos && idle.remove(pooled)) {
+                evicted.increment();
+                discard(pooled);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Opens a new physical connection, typically {@code Database::connect}.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private volatile long lastReturned = System.nanoTime();
+
+        private PooledConnection(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * A connection held by one thread for one unit of work. Closing the
+     * outermost lease returns the connection to the pool.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final PooledConnection pooled;
+        private final long leasedAt = System.nanoTime();
+        private int depth = 1;
+        private boolean broken;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        public Connection connection() {
+            return pooled.connection;
+        }
+
+        /**
+         * Returns a prepared statement from this connection's statement
+         * cache. The statement stays owned by the cache: do not close it,
+         * only the result sets it produces.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return pooled.statements.prepare(sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        /**
+         * Like {@link #prepare(String)}, for statements that return
+         * generated keys.
+         */
+        public PreparedStatement prepare(String sql, int autoGeneratedKeys)
+                throws SQLException {
+            return pooled.statements.prepare(sql, autoGeneratedKeys);
+        }
+
+        /** Marks the connection as unusable so it is closed instead of reused. */
+        public void invalidate() {
+            broken = true;
+        }
+
+        @Override
+        public void close() {
+            if (--depth == 0) {
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * Point-in-time pool metrics. Durations are in microseconds.
+     */
+    public record PoolStats(int maxSize, int size, int idle, int active, int waiting,
+                            long leases, long timeouts, long created, long evicted,
+                            long avgWaitMicros, long maxWaitMicros,
+                            long avgLeaseMicros, long maxLeaseMicros,
+                            long statementHits, long statementMisses,
+                            long statementEvictions) {
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Pool{size=%d/%d, active=%d, idle=%d, waiting=%d, leases=%d, "
+                    + "timeouts=%d, created=%d, evicted=%d, wait avg/max=%d/%dus, "
+                    + "lease avg/max=%d/%dus, statements hit/miss/evicted=%d/%d/%d}",
+                    size, maxSize, active, idle, waiting, leases, timeouts, created,
+                    evicted, avgWaitMicros, maxWaitMicros, avgLeaseMicros, maxLeaseMicros,
+                    statementHits, statementMisses, statementEvictions);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package database;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Encodes rows as COPY CSV into a reusable buffer and hands full
+ * buffers to the server. Text values are always quoted so that an
+ * unquoted empty field can mean NULL.
+ */
+final class CopyWriter implements AutoCloseable {
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final CopyIn copyIn;
+    private final StringBuilder row = new StringBuilder(256);
+    private byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    private int size;
+    private boolean first;
+    private boolean finished;
+
+    CopyWriter(CopyIn copyIn) {
+        this.copyIn = copyIn;
+    }
+
+    /** Starts {@code copySql}, a {@code COPY ... FROM STDIN} statement, on {@code connection}. */
+    static CopyWriter open(Connection connection, String copySql) throws SQLException {
+        return new CopyWriter(connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql));
+    }
+
+    CopyWriter row() {
+        row.setLength(0);
+        first = true;
+        return this;
+    }
+
+    CopyWriter text(String value) {
+        separator();
+        if (value != null) {
+            row.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    row.append('"');
+                }
+                row.append(c);
+            }
+            row.append('"');
+        }
+        return this;
+    }
+
+    CopyWriter raw(String value) {
+        separator();
+        if (value != null) {
+            row.append(value);
+        }
+        return this;
+    }
+
+    CopyWriter number(long value) {
+        separator();
+        row.append(value);
+        return this;
+    }
+
+    CopyWriter decimal(BigDecimal value) {
+        return raw(value != null ? value.toPlainString() : null);
+    }
+
+    void end() {
+        row.append('\n');
+        byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (size + bytes.length > buffer.length) {
+                flush();
+                if (bytes.length > buffer.length) {
+                    buffer = new byte[bytes.length];
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        } catch (SQLException e) {
+            throw new DatabaseException("COPY failed", e);
+        }
+    }
+
+    void finish() throws SQLException {
+        flush();
+        copyIn.endCopy();
+        finished = true;
+    }
+
+    private void separator() {
+        if (!first) {
+            row.append(',');
+        }
+        first = false;
+    }
+
+    private void flush() throws SQLException {
+        if (size > 0) {
+            copyIn.writeToCopy(buffer, 0, size);
+            size = 0;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!finished && copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Streams query results through a server-side cursor so that large result
+ * sets are never materialized. PostgreSQL only honours the fetch size
+ * inside a transaction; if the calling thread is not already in one, a
+ * transaction is opened for the duration of the query and rolled back
+ * afterwards (the queries are read-only).
+ */
+final class Cursors {
+
+    /** Rows fetched per round trip. */
+    static final int FETCH_SIZE = 1000;
+
+    @FunctionalInterface
+    interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    private Cursors() {
+    }
+
+    /**
+     * Runs {@code sql} and hands each mapped row to {@code sink}.
+     *
+     * @return the number of rows streamed
+     */
+    static <T> long stream(ConnectionPool pool, String sql, Binder binder,
+                           RowMapper<T> mapper, Consumer<? super T> sink) throws SQLException {
+        return forEach(pool, sql, binder, rs -> sink.accept(mapper.map(rs)));
+    }
+
+    /**
+     * Runs {@code sql} and hands the result set, positioned on each row in
+     * turn, to {@code handler}.
+     *
+     * @return the number of rows handled
+     */
+    static long forEach(ConnectionPool pool, String sql, Binder binder,
+                        RowHandler handler) throws SQLException {
+
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+            boolean ownTransaction = connection.getAutoCommit();
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            }
+
+            try {
+                PreparedStatement stmt = lease.prepare(sql);
+                stmt.setFetchSize(FETCH_SIZE);
+                binder.bind(stmt);
+
+                long count = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.handle(rs);
+                        count++;
+                    }
+                }
+                return count;
+
+            } finally {
+                if (ownTransaction) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+        }
+    }
+}
@@ -1,83 +1,289 @@
 package database;
 
 import logic.Customer;
+import metrics.Metrics;
+import model.AccountType;
+import metrics.OperationTimer;
 
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class CustomerDAO {
+public class CustomerDAO implements CustomerStore {
 
     private static final Logger LOGGER =
             Logger.getLogger(CustomerDAO.class.getName());
 
-    private final Connection connection;
+    private static final String INSERT_SQL =
+            "INSERT INTO customers(pno, first_name, last_name) " +
+            "VALUES (?, ?, ?)";
 
-    public CustomerDAO(Connection connection) {
-        if (connection == null) {
-            throw new IllegalArgumentException("Connection cannot be null");
+    private static final String FIND_BY_PNO_SQL =
+            "SELECT * FROM customers WHERE pno = ?";
+
+    /** One row per account, or a single row with null account columns. */
+    private static final String FIND_WITH_ACCOUNTS_SQL =
+            "SELECT c.pno, c.first_name, c.last_name, " +
+            "a.account_id, a.account_type, a.balance " +
+            "FROM customers c LEFT JOIN accounts a ON a.pno = c.pno " +
+            "WHERE c.pno = ? ORDER BY a.account_id";
+
+    private static final String EXISTS_SQL =
+            "SELECT 1 FROM customers WHERE pno = ?";
+
+    private static final String UPDATE_NAME_SQL =
+            "UPDATE customers SET first_name = ?, last_name = ? " +
+            "WHERE pno = ?";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM customers WHERE pno = ?";
+
+    /**
+     * Customer list order. The "C" collation compares code points, unlike
+     * the database default, so {@link #NAME_ORDER} can sort the same way.
+     */
+    private static final String NAME_ORDER_SQL =
+            "first_name COLLATE \"C\", last_name COLLATE \"C\", pno COLLATE \"C\"";
+
+    private static final String FIND_ALL_SQL =
+            "SELECT * FROM customers ORDER BY " + NAME_ORDER_SQL;
+
+    private static final String STREAM_ALL_SQL =
+            "SELECT * FROM customers ORDER BY pno";
+
+    /** Customers touched in a change-log range; {@code pno} is null for deleted rows. */
+    private static final String STREAM_CHANGED_SQL =
+            "SELECT k.row_key, c.* FROM (" +
+            "  SELECT DISTINCT row_key FROM bank_change_log " +
+            "  WHERE table_name = 'customers' AND change_id > ? AND change_id <= ?) k " +
+            "LEFT JOIN customers c ON c.pno = k.row_key " +
+            "ORDER BY k.row_key";
+
+    private static final String COUNT_SQL =
+            "SELECT count(*) FROM customers";
+
+    private static final String FIND_PAGE_SQL =
+            "SELECT * FROM customers " +
+            "ORDER BY " + NAME_ORDER_SQL + " LIMIT ? OFFSET ?";
+
+    private static final String FIND_PAGE_AFTER_SQL =
+            "SELECT * FROM customers " +
+            "WHERE (" + NAME_ORDER_SQL + ") > (?, ?, ?) " +
+            "ORDER BY " + NAME_ORDER_SQL + " LIMIT ? OFFSET ?";
+
+    private static final Comparator<String> CODE_POINT_ORDER = CustomerDAO::compareCodePoints;
+
+    /**
+     * The order of {@link #getAllCustomers()} and {@link #findPage}, for
+     * callers that keep customers sorted on their own. Null names sort
+     * last, as they do in the database.
+     */
+    public static final Comparator<Customer> NAME_ORDER =
+            Comparator.comparing(Customer::getName, Comparator.nullsLast(CODE_POINT_ORDER))
+                    .thenComparing(Customer::getSurname, Comparator.nullsLast(CODE_POINT_ORDER))
+                    .thenComparing(Customer::getpNo, CODE_POINT_ORDER);
+
+    /** Session-local staging tables for {@link #importBatch}, emptied at commit. */
+    private static final String[] IMPORT_STAGE_SQL = {
+            "CREATE TEMP TABLE IF NOT EXISTS import_customers (" +
+            "  line bigint, pno text, first_name text, last_name text) " +
+            "ON COMMIT DELETE ROWS",
+
+            "CREATE TEMP TABLE IF NOT EXISTS import_accounts (" +
+            "  line bigint, position int, pno text, account_type text, balance numeric) " +
+            "ON COMMIT DELETE ROWS"
+    };
+
+    private static final String COPY_IMPORT_CUSTOMERS_SQL =
+            "COPY import_customers (line, pno, first_name, last_name) " +
+            "FROM STDIN WITH (FORMAT csv)";
+
+    private static final String COPY_IMPORT_ACCOUNTS_SQL =
+            "COPY import_accounts (line, position, pno, account_type, balance) " +
+            "FROM STDIN WITH (FORMAT csv)";
+
+    /**
+     * Inserts the staged customers that do not exist yet, opens their
+     * accounts and books each non-zero opening balance as a transaction.
+     * Returns the counts and the lines of customers that already existed.
+     */
+    private static final String IMPORT_SQL =
+            "WITH inserted AS (" +
+            "  INSERT INTO customers (pno, first_name, last_name) " +
+            "  SELECT pno, first_name, last_name FROM import_customers ORDER BY line " +
+            "  ON CONFLICT (pno) DO NOTHING " +
+            "  RETURNING pno), " +
+            "created AS (" +
+            "  INSERT INTO accounts (pno, account_type, balance) " +
+            "  SELECT a.pno, a.account_type::account_type, a.balance " +
+            "  FROM import_accounts a JOIN inserted i ON i.pno = a.pno " +
+            "  ORDER BY a.line, a.position " +
+            "  RETURNING account_id, balance), " +
+            "opened AS (" +
+            "  INSERT INTO transactions " +
+            "  (account_id, amount, transaction_type, description, balance_after, transaction_time) " +
+            "  SELECT account_id, balance, " +
+            "    (CASE WHEN balance > 0 THEN 'DEPOSIT' ELSE 'WITHDRAWAL' END)::transaction_type, " +
+            "    'Opening balance', balance, clock_timestamp() " +
+            "  FROM created WHERE balance <> 0) " +
+            "SELECT (SELECT count(*) FROM inserted), (SELECT count(*) FROM created), " +
+            "  ARRAY(SELECT c.line FROM import_customers c " +
+            "        WHERE NOT EXISTS (SELECT 1 FROM inserted i WHERE i.pno = c.pno) " +
+            "        ORDER BY c.line)";
+
+    private static final OperationTimer SAVE_TIMER =
+            Metrics.timer("CustomerDAO.save");
+
+    private static final OperationTimer FIND_BY_PNO_TIMER =
+            Metrics.timer("CustomerDAO.findByPNo");
+
+    private static final OperationTimer FIND_WITH_ACCOUNTS_TIMER =
+            Metrics.timer("CustomerDAO.findWithAccounts");
+
+    private static final OperationTimer EXISTS_TIMER =
+            Metrics.timer("CustomerDAO.exists");
+
+    private static final OperationTimer UPDATE_NAME_TIMER =
+            Metrics.timer("CustomerDAO.updateName");
+
+    private static final OperationTimer DELETE_TIMER =
+            Metrics.timer("CustomerDAO.delete");
+
+    private static final OperationTimer GET_ALL_CUSTOMERS_TIMER =
+            Metrics.timer("CustomerDAO.getAllCustomers");
+
+    private static final OperationTimer STREAM_ALL_TIMER =
+            Metrics.timer("CustomerDAO.streamAll");
+
+    private static final OperationTimer STREAM_CHANGED_TIMER =
+            Metrics.timer("CustomerDAO.streamChanged");
+
+    private static final OperationTimer COUNT_TIMER =
+            Metrics.timer("CustomerDAO.count");
+
+    private static final OperationTimer FIND_PAGE_TIMER =
+            Metrics.timer("CustomerDAO.findPage");
+
+    private static final OperationTimer IMPORT_BATCH_TIMER =
+            Metrics.timer("CustomerDAO.importBatch");
+
+    private final ConnectionPool pool;
+
+    public CustomerDAO(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
         }
-        this.connection = connection;
+        this.pool = pool;
     }
 
+    @Override
     public boolean save(Customer customer) {
-        String sql =
-                "INSERT INTO customers(pno, first_name, last_name) " +
-                "VALUES (?, ?, ?)";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = SAVE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(INSERT_SQL);
             stmt.setString(1, customer.getpNo());
             stmt.setString(2, customer.getName());
             stmt.setString(3, customer.getSurname());
             return stmt.executeUpdate() == 1;
         } catch (SQLException e) {
+            SAVE_TIMER.failed();
             LOGGER.log(Level.SEVERE, "Failed to save customer pNo=" + customer.getpNo(), e);
             throw new DatabaseException("Failed to save customer", e);
+        } finally {
+            SAVE_TIMER.stop(start);
         }
     }
 
+    @Override
     public Customer findByPNo(String pNo) {
-        String sql = "SELECT * FROM customers WHERE pno = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = FIND_BY_PNO_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(FIND_BY_PNO_SQL);
             stmt.setString(1, pNo);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return new Customer(
-                            rs.getString("first_name"),
-                            rs.getString("last_name"),
-                            rs.getString("pno")
-                    );
+                    return mapRow(rs);
                 }
             }
         } catch (SQLException e) {
+            FIND_BY_PNO_TIMER.failed();
             LOGGER.log(Level.SEVERE, "Failed to find customer pNo=" + pNo, e);
             throw new DatabaseException("Failed to find customer " + pNo, e);
+        } finally {
+            FIND_BY_PNO_TIMER.stop(start);
         }
         return null;
     }
 
+    /**
+     * Returns a customer together with their accounts, ordered by account
+     * id, in a single round trip.
+     *
+     * @return the customer and accounts, or {@code null} if there is no
+     *         customer with this pno
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public CustomerDetails findWithAccounts(String pNo) {
+        long start = FIND_WITH_ACCOUNTS_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(FIND_WITH_ACCOUNTS_SQL);
+            stmt.setString(1, pNo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Customer customer = mapRow(rs);
+                List<AccountDAO.AccountRecord> accounts = new ArrayList<>();
+                do {
+                    int accountId = rs.getInt("account_id");
+                    if (!rs.wasNull()) {
+                        accounts.add(new AccountDAO.AccountRecord(
+                                accountId,
+                                customer.getpNo(),
+                                AccountType.valueOf(rs.getString("account_type")),
+                                rs.getBigDecimal("balance")));
+                    }
+                } while (rs.next());
+                return new CustomerDetails(customer, accounts);
+            }
+        } catch (SQLException e) {
+            FIND_WITH_ACCOUNTS_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to find customer with accounts pNo=" + pNo, e);
+            throw new DatabaseException("Failed to find customer " + pNo, e);
+        } finally {
+            FIND_WITH_ACCOUNTS_TIMER.stop(start);
+        }
+    }
+
+    @Override
     public boolean exists(String pNo) {
-        String sql = "SELECT 1 FROM customers WHERE pno = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = EXISTS_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(EXISTS_SQL);
             stmt.setString(1, pNo);
             try (ResultSet rs = stmt.executeQuery()) {
                 return rs.next();
             }
         } catch (SQLException e) {
+            EXISTS_TIMER.failed();
             LOGGER.log(Level.SEVERE, "Failed existence check for pNo=" + pNo, e);
             throw new DatabaseException("Failed to check customer existence " + pNo, e);
+        } finally {
+            EXISTS_TIMER.stop(start);
         }
     }
 
+    @Override
     public boolean updateName(String pNo, String firstName, String lastName) {
-        String sql =
-                "UPDATE customers SET first_name = ?, last_name = ? " +
-                "WHERE pno = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = UPDATE_NAME_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(UPDATE_NAME_SQL);
             stmt.setString(1, firstName);
             stmt.setString(2, lastName);
             stmt.setString(3, pNo);
@@ -88,50 +294,298 @@ public class CustomerDAO {
             }
             return true;
         } catch (SQLException e) {
+            UPDATE_NAME_TIMER.failed();
             LOGGER.log(Level.SEVERE, "Failed to update name for pNo=" + pNo, e);
             throw new DatabaseException("Failed to update customer name " + pNo, e);
+        } finally {
+            UPDATE_NAME_TIMER.stop(start);
         }
     }
 
+    @Override
     public boolean delete(String pNo) {
-        String sql = "DELETE FROM customers WHERE pno = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = DELETE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(DELETE_SQL);
             stmt.setString(1, pNo);
             int affected = stmt.executeUpdate();
             if (affected == 0) {
                 LOGGER.warning("Delete affected 0 rows for pNo=" + pNo);
                 return false;
             }
-            LOGGER.info("Deleted customer pNo=" + pNo);
+            LOGGER.info(() -> "Deleted customer pNo=" + pNo);
             return true;
         } catch (SQLException e) {
+            DELETE_TIMER.failed();
             LOGGER.log(Level.SEVERE, "Failed to delete customer pNo=" + pNo, e);
             throw new DatabaseException("Failed to delete customer " + pNo, e);
+        } finally {
+            DELETE_TIMER.stop(start);
         }
     }
 
     /**
      * Returns all customers, strictly ordered by first name, last name, and pno
-     * to ensure index consistency for the GUI.
+     * in {@link #NAME_ORDER} to ensure index consistency for the GUI.
      */
+    @Override
     public List<Customer> getAllCustomers() {
         List<Customer> customers = new ArrayList<>();
-        String sql = "SELECT * FROM customers ORDER BY first_name, last_name, pno";
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        long start = GET_ALL_CUSTOMERS_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease();
+             ResultSet rs = lease.prepare(FIND_ALL_SQL).executeQuery()) {
             while (rs.next()) {
-                customers.add(new Customer(
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getString("pno")
-                ));
+                customers.add(mapRow(rs));
             }
         } catch (SQLException e) {
+            GET_ALL_CUSTOMERS_TIMER.failed();
             LOGGER.log(Level.SEVERE, "Failed to get all customers", e);
             throw new DatabaseException("Failed to retrieve all customers", e);
+        } finally {
+            GET_ALL_CUSTOMERS_TIMER.stop(start);
+        }
+        return customers;
+    }
+
+    /**
+     * Streams every customer, in pno order, to {@code sink} without
+     * materializing the table.
+     *
+     * @return the number of rows streamed
+     * @see Cursors
+     */
+    @Override
+    public long streamAll(Consumer<Customer> sink) {
+        long start = STREAM_ALL_TIMER.start();
+        try {
+            return Cursors.stream(pool, STREAM_ALL_SQL, stmt -> { }, this::mapRow, sink);
+        } catch (SQLException e) {
+            STREAM_ALL_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to stream all customers", e);
+            throw new DatabaseException("Failed to stream customers", e);
+        } finally {
+            STREAM_ALL_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Streams the customers logged by {@link ChangeLog} after change
+     * {@code afterChange} up to and including {@code throughChange}.
+     * Customers that still exist go to {@code changed} in their current
+     * state; the personal numbers of removed customers go to {@code deleted}.
+     *
+     * @return the number of changed and deleted customers
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public long streamChanged(long afterChange, long throughChange,
+                              Consumer<Customer> changed, Consumer<String> deleted) {
+        long start = STREAM_CHANGED_TIMER.start();
+        try {
+            return Cursors.forEach(pool, STREAM_CHANGED_SQL,
+                    stmt -> {
+                        stmt.setLong(1, afterChange);
+                        stmt.setLong(2, throughChange);
+                    },
+                    rs -> {
+                        if (rs.getString("pno") != null) {
+                            changed.accept(mapRow(rs));
+                        } else {
+                            deleted.accept(rs.getString("row_key"));
+                        }
+                    });
+        } catch (SQLException e) {
+            STREAM_CHANGED_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to stream changed customers", e);
+            throw new DatabaseException("Failed to stream changed customers", e);
+        } finally {
+            STREAM_CHANGED_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Returns the number of customers.
+     */
+    @Override
+    public int count() {
+        long start = COUNT_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease();
+             ResultSet rs = lease.prepare(COUNT_SQL).executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            COUNT_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to count customers", e);
+            throw new DatabaseException("Failed to count customers", e);
+        } finally {
+            COUNT_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Returns one page of customers in {@link #getAllCustomers()} order
+     * using keyset pagination: rows strictly after {@code after}, skipping
+     * {@code skip} of them. With a cursor close to the wanted page the skip
+     * is small and the query walks an index on the order's columns, which
+     * must be declared with the same "C" collation, instead of scanning
+     * from the start.
+     *
+     * @param after last customer before the page, or {@code null} to start
+     *              from the beginning
+     * @param skip rows to skip after the cursor
+     * @param limit page size
+     */
+    @Override
+    public List<Customer> findPage(Customer after, int skip, int limit) {
+        List<Customer> customers = new ArrayList<>(limit);
+
+        long start = FIND_PAGE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt;
+            int i = 1;
+            if (after == null) {
+                stmt = lease.prepare(FIND_PAGE_SQL);
+            } else {
+                stmt = lease.prepare(FIND_PAGE_AFTER_SQL);
+                stmt.setString(i++, after.getName());
+                stmt.setString(i++, after.getSurname());
+                stmt.setString(i++, after.getpNo());
+            }
+            stmt.setInt(i++, limit);
+            stmt.setInt(i, skip);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    customers.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            FIND_PAGE_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to get customer page", e);
+            throw new DatabaseException("Failed to retrieve customer page", e);
+        } finally {
+            FIND_PAGE_TIMER.stop(start);
         }
         return customers;
     }
-}
\ No newline at end of file
+
+    /**
+     * Imports a batch of new customers with their opening accounts. The
+     * rows are streamed into temporary staging tables with COPY and then
+     * inserted with one set-based statement, which also skips every
+     * customer whose pno already exists. Opening balances are booked as a
+     * deposit (or, for a negative credit balance, a withdrawal) so that
+     * the account history matches the balance.
+     *
+     * <p>Must run inside the caller's transaction; the staging tables are
+     * emptied when it commits or rolls back.
+     *
+     * @return the number of customers and accounts created and the lines
+     *         of the customers that already existed
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public ImportResult importBatch(List<ImportRow> rows) {
+        long start = IMPORT_BATCH_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+            if (connection.getAutoCommit()) {
+                throw new IllegalStateException("importBatch requires an open transaction");
+            }
+            ChangeFeed.reportInFull(lease, ChangeFeed.Table.values());
+
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : IMPORT_STAGE_SQL) {
+                    stmt.execute(sql);
+                }
+            }
+            try (CopyWriter out = CopyWriter.open(connection, COPY_IMPORT_CUSTOMERS_SQL)) {
+                for (ImportRow row : rows) {
+                    Customer c = row.customer();
+                    out.row().number(row.line())
+                            .text(c.getpNo()).text(c.getName()).text(c.getSurname()).end();
+                }
+                out.finish();
+            }
+            try (CopyWriter out = CopyWriter.open(connection, COPY_IMPORT_ACCOUNTS_SQL)) {
+                for (ImportRow row : rows) {
+                    for (int i = 0; i < row.accounts().size(); i++) {
+                        OpeningAccount account = row.accounts().get(i);
+                        out.row().number(row.line()).number(i)
+                                .text(row.customer().getpNo())
+                                .text(account.accountType().name())
+                                .decimal(account.balance()).end();
+                    }
+                }
+                out.finish();
+            }
+
+            try (ResultSet rs = lease.prepare(IMPORT_SQL).executeQuery()) {
+                rs.next();
+                List<Long> duplicates = new ArrayList<>();
+                for (Long line : (Long[]) rs.getArray(3).getArray()) {
+                    duplicates.add(line);
+                }
+                return new ImportResult(rs.getInt(1), rs.getInt(2), duplicates);
+            }
+
+        } catch (SQLException e) {
+            IMPORT_BATCH_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to import " + rows.size() + " customers", e);
+            throw new DatabaseException("Failed to import customers", e);
+        } finally {
+            IMPORT_BATCH_TIMER.stop(start);
+        }
+    }
+
+    private Customer mapRow(ResultSet rs) throws SQLException {
+        return new Customer(
+                rs.getString("first_name"),
+                rs.getString("last_name"),
+                rs.getString("pno")
+        );
+    }
+
+    /**
+     * Compares like the "C" collation does on UTF-8 text. String.compareTo
+     * differs only in that it puts characters above U+FFFF, which Java
+     * stores as surrogate pairs, before those from U+E000 to U+FFFF.
+     */
+    private static int compareCodePoints(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                boolean xSurrogate = Character.isSurrogate(x);
+                if (xSurrogate == Character.isSurrogate(y)) {
+                    return x - y;
+                }
+                return xSurrogate ? 1 : -1;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * Result of {@link #findWithAccounts}: a customer and all of their
+     * accounts, ordered by account id.
+     */
+    public record CustomerDetails(Customer customer, List<AccountDAO.AccountRecord> accounts) {
+    }
+
+    /** An account to open for an imported customer, with its opening balance. */
+    public record OpeningAccount(AccountType accountType, BigDecimal balance) {
+    }
+
+    /**
+     * One customer to import. {@code line} identifies the row in the
+     * source file and is reported back for customers that already exist.
+     */
+    public record ImportRow(long line, Customer customer, List<OpeningAccount> accounts) {
+    }
+
+    /** Result of {@link #importBatch}. */
+    public record ImportResult(int customers, int accounts, List<Long> duplicateLines) {
+    }
+}
@@ -0,0 +1,86 @@
+package database;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import logic.Customer;
+
+/**
+ * Storage contract for customers, implemented by {@link CustomerDAO} on
+ * PostgreSQL and by the in-memory engine.
+ *
+ * @see StorageEngine
+ */
+public interface CustomerStore {
+
+    /**
+     * Inserts a customer.
+     *
+     * @return {@code true} if the customer was inserted
+     * @throws DatabaseException on failure, including a duplicate pno
+     */
+    boolean save(Customer customer);
+
+    /** @return the customer, or {@code null} if there is none with this pno */
+    Customer findByPNo(String pNo);
+
+    /**
+     * Returns a customer together with their accounts, ordered by account id.
+     *
+     * @return the customer and accounts, or {@code null} if there is no
+     *         customer with this pno
+     */
+    CustomerDAO.CustomerDetails findWithAccounts(String pNo);
+
+    boolean exists(String pNo);
+
+    /** @return {@code false} if there is no customer with this pno */
+    boolean updateName(String pNo, String firstName, String lastName);
+
+    /**
+     * Deletes a customer together with their accounts and transactions.
+     *
+     * @return {@code false} if there is no customer with this pno
+     */
+    boolean delete(String pNo);
+
+    /** Returns all customers ordered by first name, last name and pno. */
+    List<Customer> getAllCustomers();
+
+    /**
+     * Streams every customer, in pno order, to {@code sink}.
+     *
+     * @return the number of customers streamed
+     */
+    long streamAll(Consumer<Customer> sink);
+
+    /**
+     * Streams the customers changed after change {@code afterChange} up to
+     * and including {@code throughChange}; see {@link ChangeTracker}.
+     *
+     * @return the number of changed and deleted customers
+     */
+    long streamChanged(long afterChange, long throughChange,
+                       Consumer<Customer> changed, Consumer<String> deleted);
+
+    int count();
+
+    /**
+     * Returns one page of customers in {@link #getAllCustomers()} order:
+     * rows strictly after {@code after}, skipping {@code skip} of them.
+     *
+     * @param after last customer before the page, or {@code null} to start
+     *              from the beginning
+     */
+    List<Customer> findPage(Customer after, int skip, int limit);
+
+    /**
+     * Imports new customers with their opening accounts, skipping every
+     * customer whose pno already exists. Non-zero opening balances are
+     * booked as a deposit or withdrawal. Must run inside a transaction.
+     *
+     * @return the number of customers and accounts created and the lines
+     *         of the customers that were skipped
+     */
+    CustomerDAO.ImportResult importBatch(List<CustomerDAO.ImportRow> rows);
+}
@@ -3,16 +3,52 @@ package database;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Duration;
+
+import metrics.Metrics;
 
 public class Database {
 
-    private static final String URL =
-            "jdbc:postgresql://localhost:5432/TransactionManagement";
+    // Overridable so that benchmarks and scratch runs can point at a
+    // throwaway database instead of the real one
+    private static final String URL = System.getProperty("bank.db.url",
+            "jdbc:postgresql://localhost:5432/TransactionManagement");
+
+    private static final String USER = System.getProperty("bank.db.user", "adam");
+    private static final String PASSWORD = System.getProperty("bank.db.password", "");
 
-    private static final String USER = "adam";
-    private static final String PASSWORD = "";
+    private static final int POOL_MAX_SIZE = 10;
+    private static final int POOL_MIN_IDLE = 1;
+    private static final Duration POOL_MAX_WAIT = Duration.ofSeconds(10);
+    private static final Duration POOL_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    private static final int STATEMENT_CACHE_SIZE = 64;
 
     public static Connection connect() throws SQLException {
         return DriverManager.getConnection(URL, USER, PASSWORD);
     }
+
+    /**
+     * Creates the application's connection pool with default sizing.
+     *
+     * @throws SQLException if the database cannot be reached
+     */
+    public static ConnectionPool createPool() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(Database::connect,
+                POOL_MAX_SIZE, POOL_MIN_IDLE, POOL_MAX_WAIT, POOL_IDLE_TIMEOUT,
+                STATEMENT_CACHE_SIZE);
+        registerGauges(pool);
+        return pool;
+    }
+
+    /** Publishes pool saturation through {@link Metrics}. */
+    private static void registerGauges(ConnectionPool pool) {
+        Metrics.gauge("pool.size", () -> pool.getStats().size());
+        Metrics.gauge("pool.maxSize", () -> pool.getStats().maxSize());
+        Metrics.gauge("pool.active", () -> pool.getStats().active());
+        Metrics.gauge("pool.waiting", () -> pool.getStats().waiting());
+        Metrics.gauge("pool.timeouts", () -> pool.getStats().timeouts());
+        Metrics.gauge("pool.maxWaitMicros", () -> pool.getStats().maxWaitMicros());
+        Metrics.gauge("pool.statementHits", () -> pool.getStats().statementHits());
+        Metrics.gauge("pool.statementMisses", () -> pool.getStats().statementMisses());
+    }
 }
@@ -0,0 +1,342 @@
+package database;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import metrics.Metrics;
+import metrics.OperationTimer;
+import model.Money;
+
+/**
+ * Set-based period-end interest accrual with restartable checkpoints.
+ *
+ * <p>A run for a period splits the account ids that exist when it starts
+ * into contiguous slices and records one checkpoint row per slice in
+ * {@code interest_runs}. Each {@link #accrueBatch} call handles the next
+ * batch of accounts in a slice with a single statement: it locks the
+ * accounts, credits or charges the rounded interest, inserts the INTEREST
+ * transactions and advances the slice's checkpoint. Because the checkpoint
+ * moves in the same statement as the postings, a run that is interrupted
+ * can be resumed and no account is credited twice for the same period.
+ * Accounts opened after the run started are not part of it.
+ */
+public class InterestDAO implements InterestStore {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(InterestDAO.class.getName());
+
+    private static final String SCHEMA_SQL =
+            "CREATE TABLE IF NOT EXISTS interest_runs (" +
+            "  period text NOT NULL," +
+            "  slice int NOT NULL," +
+            "  last_account_id int NOT NULL," +
+            "  upper_account_id int NOT NULL," +
+            "  accounts bigint NOT NULL DEFAULT 0," +
+            "  interest numeric NOT NULL DEFAULT 0," +
+            "  finished boolean NOT NULL DEFAULT false," +
+            "  started_at timestamptz NOT NULL DEFAULT now()," +
+            "  PRIMARY KEY (period, slice))";
+
+    /** Held for the duration of a run so that a period is never run twice at once. */
+    private static final String TRY_LOCK_SQL =
+            "SELECT pg_try_advisory_lock(hashtext('interest_run'), hashtext(?))";
+
+    private static final String UNLOCK_SQL =
+            "SELECT pg_advisory_unlock(hashtext('interest_run'), hashtext(?))";
+
+    private static final String FIND_SLICES_SQL =
+            "SELECT slice, last_account_id, upper_account_id, accounts, " +
+            "       (interest * 100)::bigint, finished " +
+            "FROM interest_runs WHERE period = ? ORDER BY slice";
+
+    private static final String ACCOUNT_RANGE_SQL =
+            "SELECT COALESCE(MIN(account_id), 0), COALESCE(MAX(account_id), 0) FROM accounts";
+
+    private static final String INSERT_SLICE_SQL =
+            "INSERT INTO interest_runs (period, slice, last_account_id, upper_account_id) " +
+            "VALUES (?, ?, ?, ?)";
+
+    /**
+     * Accrues interest for the next batch of a slice and advances its
+     * checkpoint. Savings accounts earn the savings rate, credit accounts
+     * the credit rate on a positive balance and are charged the debt rate
+     * on a negative one. Interest is rounded to öre; accounts whose
+     * interest rounds to zero are skipped but still checkpointed. Totals
+     * are returned in öre. Postings are stamped with the time the account
+     * was locked, as in {@link AccountDAO}.
+     */
+    private static final String ACCRUE_BATCH_SQL =
+            "WITH run AS (" +
+            "  SELECT last_account_id, upper_account_id FROM interest_runs " +
+            "  WHERE period = ? AND slice = ? AND NOT finished), " +
+            "batch AS (" +
+            "  SELECT a.account_id, a.account_type, a.balance FROM accounts a, run " +
+            "  WHERE a.account_id > run.last_account_id AND a.account_id <= run.upper_account_id " +
+            "  ORDER BY a.account_id LIMIT ? FOR UPDATE OF a), " +
+            "rated AS (" +
+            "  SELECT account_id, round(balance * CASE " +
+            "      WHEN account_type = 'SAVINGS' THEN ?::numeric " +
+            "      WHEN balance >= 0 THEN ?::numeric " +
+            "      ELSE ?::numeric END / 100, 2) AS interest " +
+            "  FROM batch), " +
+            "upd AS (" +
+            "  UPDATE accounts a SET balance = a.balance + r.interest FROM rated r " +
+            "  WHERE a.account_id = r.account_id AND r.interest <> 0 " +
+            "  RETURNING a.account_id, r.interest, a.balance), " +
+            "ins AS (" +
+            "  INSERT INTO transactions " +
+            "  (account_id, amount, transaction_type, description, balance_after, transaction_time) " +
+            "  SELECT account_id, interest, 'INTEREST'::transaction_type, ?, balance, " +
+            "         clock_timestamp() FROM upd), " +
+            "totals AS (" +
+            "  SELECT (SELECT count(*) FROM batch) AS scanned, " +
+            "         (SELECT max(account_id) FROM batch) AS last_id, " +
+            "         (SELECT count(*) FROM upd) AS credited, " +
+            "         (SELECT COALESCE(sum(interest), 0) FROM upd) AS interest), " +
+            "chk AS (" +
+            "  UPDATE interest_runs i SET " +
+            "    last_account_id = COALESCE(t.last_id, i.last_account_id), " +
+            "    accounts = i.accounts + t.credited, " +
+            "    interest = i.interest + t.interest, " +
+            "    finished = t.scanned < ? " +
+            "  FROM totals t WHERE i.period = ? AND i.slice = ? AND NOT i.finished) " +
+            "SELECT scanned, credited, (interest * 100)::bigint FROM totals";
+
+    private static final OperationTimer START_TIMER =
+            Metrics.timer("InterestDAO.start");
+
+    private static final OperationTimer ACCRUE_BATCH_TIMER =
+            Metrics.timer("InterestDAO.accrueBatch");
+
+    private final ConnectionPool pool;
+
+    /**
+     * Checkpoint of one slice of a run: accounts with ids above
+     * {@code lastAccountId} up to and including {@code upperAccountId}
+     * remain, unless the slice is {@code finished}.
+     */
+    public record Slice(int slice, int lastAccountId, int upperAccountId,
+                        long accounts, Money interest, boolean finished) {
+    }
+
+    /**
+     * Result of {@link #accrueBatch}.
+     *
+     * @param scanned accounts examined in the batch
+     * @param credited accounts that received or were charged interest
+     * @param interest net interest posted
+     * @param finished whether the slice has no accounts left
+     */
+    public record BatchResult(int scanned, int credited, Money interest, boolean finished) {
+    }
+
+    public InterestDAO(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Takes the run lock for a period on a connection held by the calling
+     * thread until the returned handle is closed.
+     *
+     * @return the lock, or {@code null} if the period is already being run
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public RunLock tryLock(String period) {
+        ConnectionPool.Lease lease = pool.lease();
+        try {
+            PreparedStatement stmt = lease.prepare(TRY_LOCK_SQL);
+            stmt.setString(1, period);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                if (rs.getBoolean(1)) {
+                    return new AdvisoryLock(lease, period);
+                }
+            }
+            lease.close();
+            return null;
+        } catch (SQLException e) {
+            lease.close();
+            LOGGER.log(Level.SEVERE, "Failed to lock interest run " + period, e);
+            throw new DatabaseException("Failed to lock interest run " + period, e);
+        }
+    }
+
+    /** Holds the advisory lock for one period; see {@link #tryLock}. */
+    private static final class AdvisoryLock implements RunLock {
+        private final ConnectionPool.Lease lease;
+        private final String period;
+
+        private AdvisoryLock(ConnectionPool.Lease lease, String period) {
+            this.lease = lease;
+            this.period = period;
+        }
+
+        @Override
+        public void close() {
+            try {
+                PreparedStatement stmt = lease.prepare(UNLOCK_SQL);
+                stmt.setString(1, period);
+                stmt.executeQuery().close();
+            } catch (SQLException e) {
+                // Dropping the connection releases the lock as well
+                LOGGER.log(Level.WARNING, "Failed to unlock interest run " + period, e);
+                lease.invalidate();
+            } finally {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the checkpoints of a period's run, creating them if the run
+     * has not started. A new run splits the current account ids into
+     * {@code slices} ranges of equal width; a resumed run keeps its
+     * original slices.
+     *
+     * @return the slices, ordered by slice number
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public List<Slice> startOrResume(String period, int slices) {
+        if (slices <= 0) {
+            throw new IllegalArgumentException("Slices must be positive: " + slices);
+        }
+
+        long start = START_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(SCHEMA_SQL);
+            }
+
+            List<Slice> existing = findSlices(lease, period);
+            if (!existing.isEmpty()) {
+                LOGGER.info(() -> "Resuming interest run " + period);
+                return existing;
+            }
+
+            int min;
+            int max;
+            try (ResultSet rs = lease.prepare(ACCOUNT_RANGE_SQL).executeQuery()) {
+                rs.next();
+                min = rs.getInt(1);
+                max = rs.getInt(2);
+            }
+
+            long width = Math.max(1, ((long) max - min + slices) / slices);
+            PreparedStatement insert = lease.prepare(INSERT_SLICE_SQL);
+            long lower = (long) min - 1;
+            for (int i = 0; i < slices; i++) {
+                long upper = i == slices - 1 ? max : Math.min(max, lower + width);
+                insert.setString(1, period);
+                insert.setInt(2, i);
+                insert.setInt(3, (int) lower);
+                insert.setInt(4, (int) upper);
+                insert.addBatch();
+                lower = upper;
+            }
+            insert.executeBatch();
+            return findSlices(lease, period);
+
+        } catch (SQLException e) {
+            START_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to start interest run " + period, e);
+            throw new DatabaseException("Failed to start interest run " + period, e);
+        } finally {
+            START_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Accrues interest for up to {@code batchSize} accounts of a slice.
+     * Rates are percentages for the whole period. Runs in a transaction of
+     * its own unless the caller has one open, and reports accounts and
+     * transactions to {@link ChangeFeed} listeners as changed in full
+     * rather than collecting the keys of every row.
+     *
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public BatchResult accrueBatch(String period, int slice, int batchSize,
+                                   BigDecimal savingsRate, BigDecimal creditRate,
+                                   BigDecimal debtRate, String description) {
+        long start = ACCRUE_BATCH_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+            boolean own = connection.getAutoCommit();
+            if (own) {
+                connection.setAutoCommit(false);
+            }
+            try {
+                ChangeFeed.reportInFull(lease, ChangeFeed.Table.ACCOUNTS, ChangeFeed.Table.TRANSACTIONS);
+
+                PreparedStatement stmt = lease.prepare(ACCRUE_BATCH_SQL);
+                int i = 1;
+                stmt.setString(i++, period);
+                stmt.setInt(i++, slice);
+                stmt.setInt(i++, batchSize);
+                stmt.setBigDecimal(i++, savingsRate);
+                stmt.setBigDecimal(i++, creditRate);
+                stmt.setBigDecimal(i++, debtRate);
+                stmt.setString(i++, description);
+                stmt.setInt(i++, batchSize);
+                stmt.setString(i++, period);
+                stmt.setInt(i, slice);
+                BatchResult result;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    int scanned = rs.getInt(1);
+                    result = new BatchResult(scanned, rs.getInt(2), Money.ofOre(rs.getLong(3)),
+                            scanned < batchSize);
+                }
+                if (own) {
+                    connection.commit();
+                }
+                return result;
+
+            } catch (SQLException | RuntimeException e) {
+                if (own) {
+                    connection.rollback();
+                }
+                throw e;
+            } finally {
+                if (own) {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            ACCRUE_BATCH_TIMER.failed();
+            LOGGER.log(Level.SEVERE,
+                    "Failed to accrue interest for " + period + " slice " + slice, e);
+            throw new DatabaseException("Failed to accrue interest for " + period, e);
+        } finally {
+            ACCRUE_BATCH_TIMER.stop(start);
+        }
+    }
+
+    private static List<Slice> findSlices(ConnectionPool.Lease lease, String period)
+            throws SQLException {
+        PreparedStatement stmt = lease.prepare(FIND_SLICES_SQL);
+        stmt.setString(1, period);
+        List<Slice> slices = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                slices.add(new Slice(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+                        rs.getLong(4), Money.ofOre(rs.getLong(5)), rs.getBoolean(6)));
+            }
+        }
+        return slices;
+    }
+}
@@ -0,0 +1,44 @@
+package database;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Period-end interest accrual with restartable checkpoints, as used by
+ * {@code logic.InterestRun}. A run for a period splits the accounts into
+ * slices of account ids and accrues them a batch at a time; each batch
+ * advances its slice's checkpoint together with its postings, so a
+ * resumed run never credits an account twice.
+ */
+public interface InterestStore {
+
+    /**
+     * Takes the run lock for a period, held until the returned handle is
+     * closed.
+     *
+     * @return the lock, or {@code null} if the period is already being run
+     */
+    RunLock tryLock(String period);
+
+    /**
+     * Returns the checkpoints of a period's run, creating them if the run
+     * has not started. A resumed run keeps its original slices.
+     *
+     * @return the slices, ordered by slice number
+     */
+    List<InterestDAO.Slice> startOrResume(String period, int slices);
+
+    /**
+     * Accrues interest for up to {@code batchSize} accounts of a slice.
+     * Rates are percentages for the whole period.
+     */
+    InterestDAO.BatchResult accrueBatch(String period, int slice, int batchSize,
+                                        BigDecimal savingsRate, BigDecimal creditRate,
+                                        BigDecimal debtRate, String description);
+
+    /** Held while a period is being run; see {@link #tryLock}. */
+    interface RunLock extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
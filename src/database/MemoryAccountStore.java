@@ -0,0 +1,172 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import model.AccountType;
+import model.Money;
+import model.TransactionType;
+
+/** {@link AccountStore} of the {@link MemoryEngine}. */
+final class MemoryAccountStore implements AccountStore {
+
+    private final MemoryEngine engine;
+
+    MemoryAccountStore(MemoryEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public int save(String pNo, AccountType accountType, Money balance) {
+        engine.lock.writeLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            if (!t.customers.containsKey(pNo)) {
+                throw new DatabaseException("Failed to save account");
+            }
+            return t.addAccount(t.nextAccountId, pNo, accountType, balance, null).accountId;
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public AccountDAO.AccountRecord findById(int accountId) {
+        MemoryEngine.AccountRow row = row(accountId);
+        return row != null ? row.toRecord() : null;
+    }
+
+    @Override
+    public List<AccountDAO.AccountRecord> findByPNo(String pNo) {
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            MemoryEngine.CustomerRow owner = t.customers.get(pNo);
+            if (owner == null) {
+                return new ArrayList<>();
+            }
+            List<AccountDAO.AccountRecord> accounts = new ArrayList<>(owner.accountCount);
+            for (int i = 0; i < owner.accountCount; i++) {
+                accounts.add(t.accounts.get(owner.accountIds[i]).toRecord());
+            }
+            return accounts;
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<AccountDAO.AccountRecord> findAll() {
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            int[] ids = t.accounts.sortedKeys();
+            List<AccountDAO.AccountRecord> accounts = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                accounts.add(t.accounts.get(id).toRecord());
+            }
+            return accounts;
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long streamAll(Consumer<AccountDAO.AccountRecord> sink) {
+        List<AccountDAO.AccountRecord> accounts = findAll();
+        accounts.forEach(sink);
+        return accounts.size();
+    }
+
+    /** Accounts that were deleted and not added back are reported as deleted. */
+    @Override
+    public long streamChanged(long afterChange, long throughChange,
+                              Consumer<AccountDAO.AccountRecord> changed, IntConsumer deleted) {
+        List<AccountDAO.AccountRecord> accounts = new ArrayList<>();
+        List<Integer> deletions = new ArrayList<>();
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            for (int id : t.accounts.sortedKeys()) {
+                MemoryEngine.AccountRow row = t.accounts.get(id);
+                long change = row.changed();
+                if (change > afterChange && change <= throughChange) {
+                    accounts.add(row.toRecord());
+                }
+            }
+            t.deletedAccounts.forEach((id, change) -> {
+                if (change > afterChange && change <= throughChange && !t.accounts.containsKey(id)) {
+                    deletions.add(id);
+                }
+            });
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+        accounts.forEach(changed);
+        deletions.sort(null);
+        deletions.forEach(deleted::accept);
+        return accounts.size() + deletions.size();
+    }
+
+    @Override
+    public boolean updateBalance(int accountId, Money balance) {
+        MemoryEngine.AccountRow row = row(accountId);
+        if (row == null) {
+            return false;
+        }
+        row.setBalance(balance);
+        return true;
+    }
+
+    @Override
+    public boolean delete(int accountId) {
+        engine.lock.writeLock().lock();
+        try {
+            return engine.tables.removeAccount(accountId) != null;
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public AccountDAO.Posting applyDelta(int accountId, String pNo, Money delta,
+                                         TransactionType transactionType, String description) {
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.AccountRow row = engine.tables.accounts.get(accountId);
+            if (row == null || !row.pNo.equals(pNo)) {
+                return null;
+            }
+            return row.post(delta, transactionType, description, engine.nextTransactionId);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] applyDeltaBatch(List<AccountDAO.Delta> deltas) {
+        boolean[] applied = new boolean[deltas.size()];
+        for (int i = 0; i < applied.length; i++) {
+            AccountDAO.Delta d = deltas.get(i);
+            applied[i] = applyDelta(d.accountId(), d.pNo(), d.delta(),
+                    d.transactionType(), d.description()) != null;
+        }
+        return applied;
+    }
+
+    @Override
+    public boolean exists(int accountId) {
+        return row(accountId) != null;
+    }
+
+    private MemoryEngine.AccountRow row(int accountId) {
+        engine.lock.readLock().lock();
+        try {
+            return engine.tables.accounts.get(accountId);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package database;
+
+/**
+ * {@link ChangeTracker} of the {@link MemoryEngine}. The change mark is the
+ * engine's change counter; transactions run under the write lock, so no
+ * posting is in flight while a snapshot reads the marks.
+ */
+final class MemoryChangeTracker implements ChangeTracker {
+
+    private final MemoryEngine engine;
+
+    MemoryChangeTracker(MemoryEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public ChangeLog.Marks pinSnapshot() {
+        if (!engine.lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("pinSnapshot requires an open transaction");
+        }
+        return new ChangeLog.Marks(engine.nextTransactionId.get() - 1L,
+                engine.tables.changes.get());
+    }
+
+    @Override
+    public ChangeLog.Marks findMarks(long snapshotId) {
+        engine.lock.readLock().lock();
+        try {
+            return engine.tables.snapshots.get(snapshotId);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    /** A full snapshot also forgets the deletions it covers. */
+    @Override
+    public void register(long snapshotId, ChangeLog.Marks marks, boolean full) {
+        engine.lock.writeLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            if (full) {
+                t.snapshots.clear();
+                t.deletedCustomers.values().removeIf(change -> change <= marks.changeMark());
+                t.deletedAccounts.values().removeIf(change -> change <= marks.changeMark());
+            }
+            t.snapshots.put(snapshotId, marks);
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package database;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import logic.Customer;
+import model.Money;
+import model.TransactionType;
+
+/** {@link CustomerStore} of the {@link MemoryEngine}. */
+final class MemoryCustomerStore implements CustomerStore {
+
+    private final MemoryEngine engine;
+
+    MemoryCustomerStore(MemoryEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public boolean save(Customer customer) {
+        engine.lock.writeLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            if (t.customers.containsKey(customer.getpNo())) {
+                throw new DatabaseException("Failed to save customer");
+            }
+            t.upsertCustomer(customer);
+            return true;
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Customer findByPNo(String pNo) {
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.CustomerRow row = engine.tables.customers.get(pNo);
+            return row != null ? row.customer : null;
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CustomerDAO.CustomerDetails findWithAccounts(String pNo) {
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            MemoryEngine.CustomerRow row = t.customers.get(pNo);
+            if (row == null) {
+                return null;
+            }
+            List<AccountDAO.AccountRecord> accounts = new ArrayList<>(row.accountCount);
+            for (int i = 0; i < row.accountCount; i++) {
+                accounts.add(t.accounts.get(row.accountIds[i]).toRecord());
+            }
+            return new CustomerDAO.CustomerDetails(row.customer, accounts);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(String pNo) {
+        engine.lock.readLock().lock();
+        try {
+            return engine.tables.customers.containsKey(pNo);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateName(String pNo, String firstName, String lastName) {
+        engine.lock.writeLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            if (!t.customers.containsKey(pNo)) {
+                return false;
+            }
+            t.upsertCustomer(new Customer(firstName, lastName, pNo));
+            return true;
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(String pNo) {
+        engine.lock.writeLock().lock();
+        try {
+            return engine.tables.removeCustomer(pNo) != null;
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        engine.lock.readLock().lock();
+        try {
+            return new ArrayList<>(engine.tables.customersByName);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long streamAll(Consumer<Customer> sink) {
+        List<Customer> customers = getAllCustomers();
+        customers.sort(Comparator.comparing(Customer::getpNo));
+        customers.forEach(sink);
+        return customers.size();
+    }
+
+    /** Customers that were deleted and not added back are reported as deleted. */
+    @Override
+    public long streamChanged(long afterChange, long throughChange,
+                              Consumer<Customer> changed, Consumer<String> deleted) {
+        List<Customer> customers = new ArrayList<>();
+        List<String> deletions = new ArrayList<>();
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            for (MemoryEngine.CustomerRow row : t.customers.values()) {
+                if (row.changed > afterChange && row.changed <= throughChange) {
+                    customers.add(row.customer);
+                }
+            }
+            t.deletedCustomers.forEach((pNo, change) -> {
+                if (change > afterChange && change <= throughChange && !t.customers.containsKey(pNo)) {
+                    deletions.add(pNo);
+                }
+            });
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+        customers.sort(Comparator.comparing(Customer::getpNo));
+        customers.forEach(changed);
+        deletions.sort(null);
+        deletions.forEach(deleted);
+        return customers.size() + deletions.size();
+    }
+
+    @Override
+    public int count() {
+        engine.lock.readLock().lock();
+        try {
+            return engine.tables.customers.size();
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Customer> findPage(Customer after, int skip, int limit) {
+        List<Customer> customers = new ArrayList<>(limit);
+
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.Tables t = engine.tables;
+            Iterable<Customer> rows = after == null
+                    ? t.customersByName
+                    : t.customersByName.tailSet(after, false);
+            int skipped = 0;
+            for (Customer c : rows) {
+                if (customers.size() == limit) {
+                    break;
+                }
+                if (skipped < skip) {
+                    skipped++;
+                } else {
+                    customers.add(c);
+                }
+            }
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+        return customers;
+    }
+
+    /**
+     * Imports the rows in order. A customer whose pno exists, or appeared
+     * earlier in the batch, is skipped.
+     */
+    @Override
+    public CustomerDAO.ImportResult importBatch(List<CustomerDAO.ImportRow> rows) {
+        if (!engine.lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("importBatch requires an open transaction");
+        }
+
+        MemoryEngine.Tables t = engine.tables;
+        Set<String> batch = new HashSet<>();
+        List<Long> duplicates = new ArrayList<>();
+        int customers = 0;
+        int accounts = 0;
+        for (CustomerDAO.ImportRow row : rows) {
+            Customer c = row.customer();
+            if (t.customers.containsKey(c.getpNo()) || !batch.add(c.getpNo())) {
+                duplicates.add(row.line());
+                continue;
+            }
+            t.upsertCustomer(c);
+            customers++;
+
+            for (CustomerDAO.OpeningAccount opening : row.accounts()) {
+                Money balance = Money.of(opening.balance(), RoundingMode.UNNECESSARY);
+                MemoryEngine.AccountRow account = t.addAccount(t.nextAccountId, c.getpNo(),
+                        opening.accountType(), balance, null);
+                if (balance.signum() != 0) {
+                    account.record(balance,
+                            balance.signum() > 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL,
+                            "Opening balance", balance, engine.nextTransactionId);
+                }
+                accounts++;
+            }
+        }
+        return new CustomerDAO.ImportResult(customers, accounts, duplicates);
+    }
+}
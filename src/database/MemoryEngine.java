@@ -0,0 +1,515 @@
+package database;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import logic.Customer;
+import logic.SnapshotInfo;
+import logic.SnapshotReader;
+import metrics.Metrics;
+import model.AccountType;
+import model.Money;
+import model.TransactionType;
+
+/**
+ * Storage engine that keeps the whole bank on the heap, for benchmarks,
+ * demos and load tests that should run without a database.
+ *
+ * <p>Customers are kept in a map keyed on pno and, for paging, in a set
+ * ordered like {@link CustomerStore#getAllCustomers()}. Accounts are kept
+ * in an {@link IntHashMap} keyed on account id, and each account carries
+ * its own append-only {@link TransactionLog} of rows in a shared
+ * {@link OffHeapLedger}.
+ *
+ * <p>One read-write lock guards the tables. Reads and postings take the
+ * read lock, so postings on different accounts run in parallel; a posting
+ * locks only its own account. Creating or removing customers and accounts
+ * takes the write lock, and so does {@link #inTransaction}: transactions
+ * run one at a time and see no concurrent changes. They are not rolled
+ * back, however; work that fails halfway keeps the changes it made. The
+ * stores check their input before changing anything, so this only
+ * matters for failures in the caller's own code.
+ *
+ * <p>Every change to a customer or account row stamps the row with the
+ * next number of a counter, and deletions are remembered with theirs
+ * until a full snapshot covers them. These numbers are the change marks
+ * of incremental snapshots, see {@link MemoryChangeTracker}.
+ */
+public final class MemoryEngine implements StorageEngine {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(MemoryEngine.class.getName());
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Replaced as a whole by {@link #restore}; guarded by {@link #lock}, volatile for the gauges. */
+    volatile Tables tables = new Tables();
+    final AtomicInteger nextTransactionId = new AtomicInteger(1);
+
+    private final MemoryCustomerStore customers = new MemoryCustomerStore(this);
+    private final MemoryAccountStore accounts = new MemoryAccountStore(this);
+    private final MemoryTransactionStore transactions = new MemoryTransactionStore(this);
+    private final MemoryInterestStore interest = new MemoryInterestStore(this);
+    private final MemoryChangeTracker changeTracker = new MemoryChangeTracker(this);
+
+    /** Creates an empty bank. */
+    public MemoryEngine() {
+        Metrics.gauge("MemoryEngine.ledgerRows", () -> tables.ledger.size());
+        Metrics.gauge("MemoryEngine.ledgerBytes", () -> tables.ledger.allocatedBytes());
+        LOGGER.info("Using in-memory storage; the bank is not persisted");
+    }
+
+    @Override
+    public CustomerStore customers() {
+        return customers;
+    }
+
+    @Override
+    public AccountStore accounts() {
+        return accounts;
+    }
+
+    @Override
+    public TransactionStore transactions() {
+        return transactions;
+    }
+
+    @Override
+    public InterestStore interest() {
+        return interest;
+    }
+
+    @Override
+    public ChangeTracker changeTracker() {
+        return changeTracker;
+    }
+
+    /** Runs the work under the write lock; the isolation level is always serializable. */
+    @Override
+    public <T> T inTransaction(int isolation, Supplier<T> work) {
+        lock.writeLock().lock();
+        try {
+            return work.get();
+        } catch (RuntimeException e) {
+            if (lock.getWriteHoldCount() > 1) {
+                throw e;
+            }
+            LOGGER.log(Level.SEVERE, "Transaction failed", e);
+            throw new DatabaseException("Transaction failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the full snapshot into new tables and swaps them in, so a
+     * snapshot that cannot be read leaves the bank as it was. Each
+     * incremental snapshot is read completely and checked before it is
+     * applied.
+     */
+    @Override
+    public SnapshotInfo restore(List<Path> chain) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long started = System.nanoTime();
+            SnapshotInfo info = load(chain.get(0));
+            for (Path delta : chain.subList(1, chain.size())) {
+                info = applyDelta(delta);
+            }
+            LOGGER.info(String.format("Restored %d customers, %d accounts in %d ms",
+                    tables.customers.size(), tables.accounts.size(),
+                    (System.nanoTime() - started) / 1_000_000));
+            return info;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return the number of processors */
+    @Override
+    public int concurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            tables = new Tables();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private SnapshotInfo load(Path snapshot) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(snapshot)) {
+            SnapshotInfo expected = reader.info();
+            Tables loaded = new Tables();
+            long[] counts = new long[3];
+            try {
+                counts[0] = reader.readCustomers(loaded::addCustomer);
+                counts[1] = reader.readAccounts(a -> loaded.addAccount(a, null));
+                counts[2] = reader.readTransactions(loaded::appendTransaction);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (counts[0] != expected.customers() || counts[1] != expected.accounts()
+                    || counts[2] != expected.transactions()) {
+                throw new IOException("Snapshot row counts do not match its trailer");
+            }
+            loaded.finishLoad();
+
+            tables = loaded;
+            nextTransactionId.set(loaded.maxTransactionId + 1);
+            return new SnapshotInfo(expected.snapshotId(), expected.parentId(),
+                    counts[0], counts[1], counts[2], 0, 0, expected.created());
+        }
+    }
+
+    /** Applies an incremental snapshot in the order {@link BankRestorer#applyDelta} does. */
+    private SnapshotInfo applyDelta(Path delta) throws IOException {
+        List<Integer> deletedAccounts = new ArrayList<>();
+        List<String> deletedCustomers = new ArrayList<>();
+        List<Customer> upsertedCustomers = new ArrayList<>();
+        List<AccountDAO.AccountRecord> upsertedAccounts = new ArrayList<>();
+        List<TransactionDAO.TransactionRecord> appended = new ArrayList<>();
+
+        SnapshotInfo info;
+        try (SnapshotReader reader = new SnapshotReader(delta)) {
+            info = reader.info();
+            if (!info.isIncremental()) {
+                throw new IOException("Not an incremental snapshot: " + delta.getFileName());
+            }
+            reader.readAccountDeletions(deletedAccounts::add);
+            reader.readCustomerDeletions(deletedCustomers::add);
+            reader.readCustomers(upsertedCustomers::add);
+            reader.readAccounts(upsertedAccounts::add);
+            reader.readTransactions(appended::add);
+        }
+
+        Tables t = tables;
+        Set<Integer> removedAccounts = new HashSet<>(deletedAccounts);
+        Set<String> removedCustomers = new HashSet<>(deletedCustomers);
+        Set<String> customersAfter = new HashSet<>();
+        for (String pNo : t.customers.keySet()) {
+            if (!removedCustomers.contains(pNo)) {
+                customersAfter.add(pNo);
+            }
+        }
+        for (Customer c : upsertedCustomers) {
+            customersAfter.add(c.getpNo());
+        }
+        Set<Integer> accountsAfter = new HashSet<>();
+        t.accounts.forEachValue(row -> {
+            if (!removedAccounts.contains(row.accountId) && !removedCustomers.contains(row.pNo)) {
+                accountsAfter.add(row.accountId);
+            }
+        });
+        for (AccountDAO.AccountRecord a : upsertedAccounts) {
+            if (!customersAfter.contains(a.getpNo())) {
+                throw new IOException("Snapshot references unknown customer " + a.getpNo());
+            }
+            accountsAfter.add(a.getAccountId());
+        }
+        for (TransactionDAO.TransactionRecord tx : appended) {
+            if (!accountsAfter.contains(tx.accountId())) {
+                throw new IOException("Snapshot references unknown account " + tx.accountId());
+            }
+        }
+
+        for (int accountId : deletedAccounts) {
+            t.removeAccount(accountId);
+        }
+        for (String pNo : deletedCustomers) {
+            t.removeCustomer(pNo);
+        }
+        for (Customer c : upsertedCustomers) {
+            t.upsertCustomer(c);
+        }
+        for (AccountDAO.AccountRecord a : upsertedAccounts) {
+            AccountRow old = t.accounts.get(a.getAccountId());
+            TransactionLog log = null;
+            if (old != null) {
+                t.removeAccount(old.accountId);
+                log = old.log;
+            }
+            t.addAccount(a, log);
+        }
+        for (TransactionDAO.TransactionRecord tx : appended) {
+            t.appendTransaction(tx);
+        }
+        t.finishLoad();
+        nextTransactionId.set(Math.max(nextTransactionId.get(), t.maxTransactionId + 1));
+        return info;
+    }
+
+    /** The bank's contents. Structural changes need the write lock. */
+    static final class Tables {
+        final Map<String, CustomerRow> customers = new HashMap<>();
+        final TreeSet<Customer> customersByName = new TreeSet<>(CustomerDAO.NAME_ORDER);
+        final IntHashMap<AccountRow> accounts = new IntHashMap<>();
+        final OffHeapLedger ledger = new OffHeapLedger();
+        int nextAccountId = 1;
+        int maxTransactionId;
+        /** The last change number handed out. */
+        final AtomicLong changes = new AtomicLong();
+        /** Change numbers of deleted rows not yet covered by a full snapshot. */
+        final Map<String, Long> deletedCustomers = new HashMap<>();
+        final Map<Integer, Long> deletedAccounts = new HashMap<>();
+        /** Marks of the snapshots incremental snapshots can be based on. */
+        final Map<Long, ChangeLog.Marks> snapshots = new HashMap<>();
+
+        void addCustomer(Customer customer) {
+            if (customers.putIfAbsent(customer.getpNo(),
+                    new CustomerRow(customer, changes.incrementAndGet())) != null) {
+                throw new UncheckedIOException(new IOException(
+                        "Duplicate customer in snapshot: " + customer.getpNo()));
+            }
+            customersByName.add(customer);
+        }
+
+        void upsertCustomer(Customer customer) {
+            CustomerRow row = customers.get(customer.getpNo());
+            if (row == null) {
+                customers.put(customer.getpNo(), new CustomerRow(customer, changes.incrementAndGet()));
+            } else {
+                customersByName.remove(row.customer);
+                row.customer = customer;
+                row.changed = changes.incrementAndGet();
+            }
+            customersByName.add(customer);
+        }
+
+        /** Removes a customer with their accounts and transactions. */
+        CustomerRow removeCustomer(String pNo) {
+            CustomerRow row = customers.remove(pNo);
+            if (row != null) {
+                customersByName.remove(row.customer);
+                for (int i = 0; i < row.accountCount; i++) {
+                    accounts.remove(row.accountIds[i]);
+                    deletedAccounts.put(row.accountIds[i], changes.incrementAndGet());
+                }
+                deletedCustomers.put(pNo, changes.incrementAndGet());
+            }
+            return row;
+        }
+
+        /** Adds an account read from a snapshot, whose balance must be whole öre. */
+        AccountRow addAccount(AccountDAO.AccountRecord a, TransactionLog log) {
+            Money balance;
+            try {
+                balance = Money.of(a.getBalance(), RoundingMode.UNNECESSARY);
+            } catch (ArithmeticException e) {
+                throw new UncheckedIOException(new IOException(
+                        "Snapshot balance of account " + a.getAccountId() + " is not whole öre"));
+            }
+            return addAccount(a.getAccountId(), a.getpNo(), a.getAccountType(), balance, log);
+        }
+
+        AccountRow addAccount(int accountId, String pNo, AccountType type,
+                              Money balance, TransactionLog log) {
+            CustomerRow owner = customers.get(pNo);
+            if (owner == null) {
+                throw new UncheckedIOException(new IOException(
+                        "Snapshot references unknown customer " + pNo));
+            }
+            AccountRow row = new AccountRow(accountId, pNo, type, balance,
+                    log != null ? log : new TransactionLog(ledger, accountId), changes);
+            if (accounts.put(accountId, row) != null) {
+                throw new UncheckedIOException(new IOException(
+                        "Duplicate account in snapshot: " + accountId));
+            }
+            owner.addAccount(accountId);
+            nextAccountId = Math.max(nextAccountId, accountId + 1);
+            return row;
+        }
+
+        AccountRow removeAccount(int accountId) {
+            AccountRow row = accounts.remove(accountId);
+            if (row != null) {
+                deletedAccounts.put(accountId, changes.incrementAndGet());
+                CustomerRow owner = customers.get(row.pNo);
+                if (owner != null) {
+                    owner.removeAccount(accountId);
+                }
+            }
+            return row;
+        }
+
+        void appendTransaction(TransactionDAO.TransactionRecord t) {
+            AccountRow row = accounts.get(t.accountId());
+            if (row == null) {
+                throw new UncheckedIOException(new IOException(
+                        "Snapshot references unknown account " + t.accountId()));
+            }
+            row.log.append(t.transactionId(), TransactionLog.toMicros(t.transactionTime()),
+                    t.amount(), TransactionType.valueOf(t.transactionType()),
+                    t.description(), t.balanceAfter());
+            maxTransactionId = Math.max(maxTransactionId, t.transactionId());
+        }
+
+        /** Puts rows that were loaded out of order back in order. */
+        void finishLoad() {
+            accounts.forEachValue(row -> row.log.sort());
+            for (CustomerRow row : customers.values()) {
+                row.sortAccounts();
+            }
+        }
+    }
+
+    /** A customer and the ids of their accounts, ascending. */
+    static final class CustomerRow {
+        Customer customer;
+        /** Change number of the last change to the customer. */
+        long changed;
+        int[] accountIds = new int[2];
+        int accountCount;
+
+        CustomerRow(Customer customer, long changed) {
+            this.customer = customer;
+            this.changed = changed;
+        }
+
+        void addAccount(int accountId) {
+            if (accountCount == accountIds.length) {
+                accountIds = Arrays.copyOf(accountIds, accountCount * 2);
+            }
+            accountIds[accountCount++] = accountId;
+        }
+
+        void removeAccount(int accountId) {
+            for (int i = 0; i < accountCount; i++) {
+                if (accountIds[i] == accountId) {
+                    System.arraycopy(accountIds, i + 1, accountIds, i, accountCount - i - 1);
+                    accountCount--;
+                    return;
+                }
+            }
+        }
+
+        void sortAccounts() {
+            Arrays.sort(accountIds, 0, accountCount);
+        }
+    }
+
+    /**
+     * An account with its history. Owner and type never change; the
+     * balance, its change number and the history are guarded by the
+     * row's monitor.
+     */
+    static final class AccountRow {
+        final int accountId;
+        final String pNo;
+        final AccountType accountType;
+        private Money balance;
+        final TransactionLog log;
+        private final AtomicLong changes;
+        private long changed;
+
+        AccountRow(int accountId, String pNo, AccountType accountType,
+                   Money balance, TransactionLog log, AtomicLong changes) {
+            this.accountId = accountId;
+            this.pNo = pNo;
+            this.accountType = accountType;
+            this.balance = balance;
+            this.log = log;
+            this.changes = changes;
+            this.changed = changes.incrementAndGet();
+        }
+
+        /** @return the change number of the last change to the account */
+        synchronized long changed() {
+            return changed;
+        }
+
+        synchronized AccountDAO.AccountRecord toRecord() {
+            return new AccountDAO.AccountRecord(accountId, pNo, accountType,
+                    balance.toBigDecimal());
+        }
+
+        synchronized void setBalance(Money balance) {
+            this.balance = balance;
+            changed = changes.incrementAndGet();
+        }
+
+        /**
+         * Applies a delta and records it, unless it would take a savings
+         * account below zero.
+         *
+         * @return the posting, or {@code null} if the delta was rejected
+         */
+        synchronized AccountDAO.Posting post(Money delta, TransactionType type,
+                                             String description, AtomicInteger ids) {
+            Money after = balance.plus(delta);
+            if (accountType == AccountType.SAVINGS && after.signum() < 0) {
+                return null;
+            }
+            balance = after;
+            changed = changes.incrementAndGet();
+            int id = record(delta, type, description, after, ids);
+            return new AccountDAO.Posting(id, after);
+        }
+
+        /**
+         * Posts a period's interest: the savings rate on savings accounts,
+         * the credit or debt rate on credit accounts depending on the sign
+         * of the balance. Interest is rounded to öre like PostgreSQL's
+         * {@code round}; interest that rounds to zero is not posted.
+         *
+         * @return the interest posted
+         */
+        synchronized Money accrue(BigDecimal savingsRate, BigDecimal creditRate,
+                                  BigDecimal debtRate, String description,
+                                  AtomicInteger ids) {
+            BigDecimal rate = accountType == AccountType.SAVINGS ? savingsRate
+                    : balance.signum() >= 0 ? creditRate
+                    : debtRate;
+            Money interest = balance.percent(rate, RoundingMode.HALF_UP);
+            if (interest.signum() != 0) {
+                balance = balance.plus(interest);
+                changed = changes.incrementAndGet();
+                record(interest, TransactionType.INTEREST, description, balance, ids);
+            }
+            return interest;
+        }
+
+        /** Records a transaction without changing the balance. */
+        synchronized int record(Money amount, TransactionType type, String description,
+                                Money balanceAfter, AtomicInteger ids) {
+            int id = ids.getAndIncrement();
+            log.append(id, TransactionLog.toMicros(now()), amount, type, description, balanceAfter);
+            return id;
+        }
+
+        synchronized TransactionLog.View history() {
+            return log.view();
+        }
+
+        synchronized int backfill() {
+            return log.backfill(balance.toBigDecimal());
+        }
+    }
+
+    /** The current time at the precision PostgreSQL stores. */
+    static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
@@ -0,0 +1,143 @@
+package database;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.Money;
+
+/**
+ * {@link InterestStore} of the {@link MemoryEngine}. Slices are split like
+ * {@link InterestDAO} does and their checkpoints are kept on the heap, so
+ * a run interrupted halfway resumes as long as the engine is open. A batch
+ * runs under the write lock, so no posting interleaves with it and its
+ * checkpoint moves together with its postings.
+ */
+final class MemoryInterestStore implements InterestStore {
+
+    private final MemoryEngine engine;
+    /** Guarded by {@code engine.lock}. */
+    private final Map<String, List<Checkpoint>> runs = new HashMap<>();
+    /** Guarded by itself. */
+    private final Set<String> running = new HashSet<>();
+
+    MemoryInterestStore(MemoryEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public RunLock tryLock(String period) {
+        synchronized (running) {
+            if (!running.add(period)) {
+                return null;
+            }
+        }
+        return () -> {
+            synchronized (running) {
+                running.remove(period);
+            }
+        };
+    }
+
+    @Override
+    public List<InterestDAO.Slice> startOrResume(String period, int slices) {
+        if (slices <= 0) {
+            throw new IllegalArgumentException("Slices must be positive: " + slices);
+        }
+
+        engine.lock.writeLock().lock();
+        try {
+            List<Checkpoint> run = runs.get(period);
+            if (run == null) {
+                int[] ids = engine.tables.accounts.sortedKeys();
+                int min = ids.length > 0 ? ids[0] : 0;
+                int max = ids.length > 0 ? ids[ids.length - 1] : 0;
+                long width = Math.max(1, ((long) max - min + slices) / slices);
+                run = new ArrayList<>(slices);
+                long lower = (long) min - 1;
+                for (int i = 0; i < slices; i++) {
+                    long upper = i == slices - 1 ? max : Math.min(max, lower + width);
+                    run.add(new Checkpoint(i, (int) lower, (int) upper));
+                    lower = upper;
+                }
+                runs.put(period, run);
+            }
+            List<InterestDAO.Slice> result = new ArrayList<>(run.size());
+            for (Checkpoint checkpoint : run) {
+                result.add(checkpoint.toSlice());
+            }
+            return result;
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public InterestDAO.BatchResult accrueBatch(String period, int slice, int batchSize,
+                                               BigDecimal savingsRate, BigDecimal creditRate,
+                                               BigDecimal debtRate, String description) {
+        engine.lock.writeLock().lock();
+        try {
+            List<Checkpoint> run = runs.get(period);
+            if (run == null || slice < 0 || slice >= run.size()) {
+                throw new DatabaseException("Failed to accrue interest for " + period);
+            }
+            Checkpoint checkpoint = run.get(slice);
+            if (checkpoint.finished) {
+                return new InterestDAO.BatchResult(0, 0, Money.ZERO, true);
+            }
+
+            IntHashMap<MemoryEngine.AccountRow> accounts = engine.tables.accounts;
+            int scanned = 0;
+            int credited = 0;
+            Money interest = Money.ZERO;
+            int id = checkpoint.lastAccountId;
+            while (scanned < batchSize && id < checkpoint.upperAccountId) {
+                MemoryEngine.AccountRow row = accounts.get(++id);
+                if (row == null) {
+                    continue;
+                }
+                scanned++;
+                Money accrued = row.accrue(savingsRate, creditRate, debtRate,
+                        description, engine.nextTransactionId);
+                if (accrued.signum() != 0) {
+                    credited++;
+                    interest = interest.plus(accrued);
+                }
+            }
+
+            checkpoint.lastAccountId = id;
+            checkpoint.accounts += credited;
+            checkpoint.interest = checkpoint.interest.plus(interest);
+            checkpoint.finished = id >= checkpoint.upperAccountId;
+            return new InterestDAO.BatchResult(scanned, credited, interest, checkpoint.finished);
+        } finally {
+            engine.lock.writeLock().unlock();
+        }
+    }
+
+    /** Checkpoint of one slice; see {@link InterestDAO.Slice}. */
+    private static final class Checkpoint {
+        final int slice;
+        int lastAccountId;
+        final int upperAccountId;
+        long accounts;
+        Money interest = Money.ZERO;
+        boolean finished;
+
+        Checkpoint(int slice, int lastAccountId, int upperAccountId) {
+            this.slice = slice;
+            this.lastAccountId = lastAccountId;
+            this.upperAccountId = upperAccountId;
+        }
+
+        InterestDAO.Slice toSlice() {
+            return new InterestDAO.Slice(slice, lastAccountId, upperAccountId,
+                    accounts, interest, finished);
+        }
+    }
+}
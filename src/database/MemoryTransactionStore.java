@@ -0,0 +1,182 @@
+package database;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import model.Money;
+import model.TransactionType;
+
+/**
+ * {@link TransactionStore} of the {@link MemoryEngine}. Reads of one
+ * account take a {@link TransactionLog.View} of its history and work on it
+ * without holding any lock; point-in-time lookups are binary searches over
+ * the off-heap time column and allocate nothing until a row is returned.
+ */
+final class MemoryTransactionStore implements TransactionStore {
+
+    private final MemoryEngine engine;
+
+    MemoryTransactionStore(MemoryEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public int ensureBalanceHistory() {
+        return backfillBalances();
+    }
+
+    @Override
+    public int backfillBalances() {
+        int[] filled = new int[1];
+        engine.lock.readLock().lock();
+        try {
+            engine.tables.accounts.forEachValue(row -> filled[0] += row.backfill());
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+        return filled[0];
+    }
+
+    @Override
+    public int save(int accountId, Money amount, TransactionType transactionType,
+                    String description, Money balanceAfter) {
+        engine.lock.readLock().lock();
+        try {
+            MemoryEngine.AccountRow row = engine.tables.accounts.get(accountId);
+            if (row == null) {
+                throw new DatabaseException(
+                        "Transaction insert affected 0 rows for accountId=" + accountId);
+            }
+            return row.record(amount, transactionType, description, balanceAfter,
+                    engine.nextTransactionId);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TransactionDAO.TransactionRecord> findByAccountId(int accountId) {
+        List<TransactionDAO.TransactionRecord> list = new ArrayList<>();
+        streamByAccountId(accountId, list::add);
+        return list;
+    }
+
+    @Override
+    public List<TransactionDAO.TransactionRecord> findPage(
+            int accountId, TransactionDAO.TransactionRecord after, int limit) {
+
+        List<TransactionDAO.TransactionRecord> list = new ArrayList<>(limit);
+        TransactionLog.View view = history(accountId);
+        if (view == null) {
+            return list;
+        }
+        int from = after == null
+                ? view.size()
+                : view.lowerBound(TransactionLog.toMicros(after.transactionTime()),
+                        after.transactionId());
+        for (int i = from - 1; i >= 0 && list.size() < limit; i--) {
+            list.add(view.get(i));
+        }
+        return list;
+    }
+
+    @Override
+    public long streamByAccountId(int accountId, Consumer<TransactionDAO.TransactionRecord> sink) {
+        TransactionLog.View view = history(accountId);
+        if (view == null) {
+            return 0;
+        }
+        for (int i = view.size() - 1; i >= 0; i--) {
+            sink.accept(view.get(i));
+        }
+        return view.size();
+    }
+
+    @Override
+    public long streamAll(Consumer<TransactionDAO.TransactionRecord> sink) {
+        return streamRange(Long.MIN_VALUE, Long.MAX_VALUE, sink);
+    }
+
+    /** Merges the accounts' histories, each in id order, by transaction id. */
+    @Override
+    public long streamRange(long afterId, long throughId,
+                            Consumer<TransactionDAO.TransactionRecord> sink) {
+
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(
+                (a, b) -> Integer.compare(a.view.transactionId(a.next), b.view.transactionId(b.next)));
+        engine.lock.readLock().lock();
+        try {
+            engine.tables.accounts.forEachValue(row -> {
+                TransactionLog.View view = row.history();
+                if (view.size() > 0) {
+                    heads.add(new Cursor(view));
+                }
+            });
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+
+        long rows = 0;
+        while (!heads.isEmpty()) {
+            Cursor head = heads.poll();
+            int id = head.view.transactionId(head.next);
+            if (id > afterId && id <= throughId) {
+                sink.accept(head.view.get(head.next));
+                rows++;
+            }
+            if (++head.next < head.view.size()) {
+                heads.add(head);
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public BigDecimal balanceAt(int accountId, LocalDateTime at) {
+        TransactionLog.View view = history(accountId);
+        if (view == null) {
+            return BigDecimal.ZERO;
+        }
+        return view.balanceAt(view.lowerBound(TransactionLog.toMicros(at), Integer.MAX_VALUE) - 1);
+    }
+
+    @Override
+    public List<TransactionDAO.DailyBalance> dailyBalances(int accountId, LocalDate from, LocalDate to) {
+        List<TransactionDAO.DailyBalance> list = new ArrayList<>();
+        TransactionLog.View view = history(accountId);
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            BigDecimal balance = BigDecimal.ZERO;
+            if (view != null) {
+                long midnight = TransactionLog.toMicros(day.plusDays(1).atStartOfDay());
+                balance = view.balanceAt(view.lowerBound(midnight, Integer.MIN_VALUE) - 1);
+            }
+            list.add(new TransactionDAO.DailyBalance(day, balance));
+        }
+        return list;
+    }
+
+    private TransactionLog.View history(int accountId) {
+        MemoryEngine.AccountRow row;
+        engine.lock.readLock().lock();
+        try {
+            row = engine.tables.accounts.get(accountId);
+        } finally {
+            engine.lock.readLock().unlock();
+        }
+        return row != null ? row.history() : null;
+    }
+
+    private static final class Cursor {
+        final TransactionLog.View view;
+        int next;
+
+        Cursor(TransactionLog.View view) {
+            this.view = view;
+        }
+    }
+}
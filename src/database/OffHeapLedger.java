@@ -0,0 +1,231 @@
+package database;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar, append-only store of transaction rows outside the Java heap,
+ * used by the in-memory engine for account history.
+ *
+ * <p>Rows are kept in chunks of {@link #CHUNK_ROWS} rows, each a direct
+ * {@link ByteBuffer} holding one column after the other: transaction id
+ * and account id as ints, amount and running balance as longs in öre,
+ * transaction time as epoch microseconds, transaction type as an ordinal
+ * byte and the description as an int into a dictionary of distinct
+ * descriptions. That is 37 bytes per row and no heap objects at all, so
+ * a ledger of tens of millions of postings adds nothing for the garbage
+ * collector to trace. Amounts with more than two decimals, which the bank
+ * itself never produces, are kept exactly in a side table.
+ *
+ * <p>Appends are synchronized. Rows are never moved and only a missing
+ * running balance is ever written after the append, so a row can be read
+ * without locking by any thread that learned its index through a
+ * happens-before edge, such as the lock of the account that owns it.
+ * Rows are not reclaimed when an account is removed; the memory is
+ * released when the ledger itself is dropped.
+ */
+final class OffHeapLedger {
+
+    static final int CHUNK_ROWS = 1 << 16;
+
+    /** Stands for a null amount or balance. */
+    static final long NULL = Long.MIN_VALUE;
+    /** The value is not a whole number of öre and is kept in {@link #exact}. */
+    private static final long INEXACT = Long.MIN_VALUE + 1;
+
+    private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_ROWS);
+    private static final int ROW_MASK = CHUNK_ROWS - 1;
+
+    private static final int IDS = 0;
+    private static final int ACCOUNTS = IDS + 4 * CHUNK_ROWS;
+    private static final int AMOUNTS = ACCOUNTS + 4 * CHUNK_ROWS;
+    private static final int BALANCES = AMOUNTS + 8 * CHUNK_ROWS;
+    private static final int TIMES = BALANCES + 8 * CHUNK_ROWS;
+    private static final int TYPES = TIMES + 8 * CHUNK_ROWS;
+    private static final int DESCRIPTIONS = TYPES + CHUNK_ROWS;
+    private static final int CHUNK_BYTES = DESCRIPTIONS + 4 * CHUNK_ROWS;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int size;
+
+    /** Keyed on row and column offset; guarded by {@code this}. */
+    private final Map<Long, BigDecimal> exact = new HashMap<>();
+    private volatile String[] descriptions = new String[16];
+    private int descriptionCount;
+    private final Map<String, Integer> descriptionIds = new HashMap<>();
+
+    /** @return the number of rows appended */
+    synchronized int size() {
+        return size;
+    }
+
+    /** @return the bytes held off-heap */
+    synchronized long allocatedBytes() {
+        return (long) chunks.length * CHUNK_BYTES;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param balanceAfter the running balance, or {@code null} if unknown
+     * @return the row's index
+     */
+    synchronized int append(int transactionId, int accountId, BigDecimal amount,
+                            BigDecimal balanceAfter, long time, byte type, String description) {
+        int row = next();
+        return put(row, transactionId, accountId, encode(row, AMOUNTS, amount),
+                encode(row, BALANCES, balanceAfter), time, type, description);
+    }
+
+    /**
+     * Appends a row whose amount and running balance are whole öre, as
+     * every posting is; nothing is allocated unless the description is new.
+     *
+     * @return the row's index
+     */
+    synchronized int append(int transactionId, int accountId, long amountOre,
+                            long balanceOre, long time, byte type, String description) {
+        int row = next();
+        return put(row, transactionId, accountId, encode(row, AMOUNTS, amountOre),
+                encode(row, BALANCES, balanceOre), time, type, description);
+    }
+
+    private int next() {
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Ledger is full");
+        }
+        return size;
+    }
+
+    private int put(int row, int transactionId, int accountId, long amount, long balance,
+                    long time, byte type, String description) {
+        ByteBuffer chunk = chunk(row);
+        int i = row & ROW_MASK;
+        chunk.putInt(IDS + 4 * i, transactionId);
+        chunk.putInt(ACCOUNTS + 4 * i, accountId);
+        chunk.putLong(AMOUNTS + 8 * i, amount);
+        chunk.putLong(BALANCES + 8 * i, balance);
+        chunk.putLong(TIMES + 8 * i, time);
+        chunk.put(TYPES + i, type);
+        chunk.putInt(DESCRIPTIONS + 4 * i, descriptionId(description));
+        size++;
+        return row;
+    }
+
+    int transactionId(int row) {
+        return chunks[row >>> CHUNK_SHIFT].getInt(IDS + 4 * (row & ROW_MASK));
+    }
+
+    int accountId(int row) {
+        return chunks[row >>> CHUNK_SHIFT].getInt(ACCOUNTS + 4 * (row & ROW_MASK));
+    }
+
+    /** @return the amount in öre, or {@link #NULL}; see {@link #amount(int)} for exact values */
+    long amountOre(int row) {
+        return chunks[row >>> CHUNK_SHIFT].getLong(AMOUNTS + 8 * (row & ROW_MASK));
+    }
+
+    long time(int row) {
+        return chunks[row >>> CHUNK_SHIFT].getLong(TIMES + 8 * (row & ROW_MASK));
+    }
+
+    byte type(int row) {
+        return chunks[row >>> CHUNK_SHIFT].get(TYPES + (row & ROW_MASK));
+    }
+
+    String description(int row) {
+        int id = chunks[row >>> CHUNK_SHIFT].getInt(DESCRIPTIONS + 4 * (row & ROW_MASK));
+        return id < 0 ? null : descriptions[id];
+    }
+
+    BigDecimal amount(int row) {
+        return decode(row, AMOUNTS, amountOre(row));
+    }
+
+    /** @return the running balance, or {@code null} if unknown */
+    BigDecimal balance(int row) {
+        return decode(row, BALANCES,
+                chunks[row >>> CHUNK_SHIFT].getLong(BALANCES + 8 * (row & ROW_MASK)));
+    }
+
+    boolean hasBalance(int row) {
+        return chunks[row >>> CHUNK_SHIFT].getLong(BALANCES + 8 * (row & ROW_MASK)) != NULL;
+    }
+
+    /** Fills in a running balance that was unknown when the row was appended. */
+    synchronized void setBalance(int row, BigDecimal balance) {
+        chunks[row >>> CHUNK_SHIFT].putLong(BALANCES + 8 * (row & ROW_MASK),
+                encode(row, BALANCES, balance));
+    }
+
+    private ByteBuffer chunk(int row) {
+        int index = row >>> CHUNK_SHIFT;
+        ByteBuffer[] current = chunks;
+        if (index == current.length) {
+            ByteBuffer[] grown = Arrays.copyOf(current, index + 1);
+            grown[index] = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+            chunks = grown;
+            return grown[index];
+        }
+        return current[index];
+    }
+
+    private long encode(int row, int column, BigDecimal value) {
+        if (value == null) {
+            return NULL;
+        }
+        try {
+            long ore = value.movePointRight(2).longValueExact();
+            if (ore != NULL && ore != INEXACT) {
+                return ore;
+            }
+        } catch (ArithmeticException e) {
+            // Fractions of an öre or out of range
+        }
+        exact.put(key(row, column), value);
+        return INEXACT;
+    }
+
+    private long encode(int row, int column, long ore) {
+        // The two sentinels themselves go to the side table
+        return ore != NULL && ore != INEXACT ? ore : encode(row, column, BigDecimal.valueOf(ore, 2));
+    }
+
+    private BigDecimal decode(int row, int column, long ore) {
+        if (ore == NULL) {
+            return null;
+        }
+        if (ore == INEXACT) {
+            synchronized (this) {
+                return exact.get(key(row, column));
+            }
+        }
+        return BigDecimal.valueOf(ore, 2);
+    }
+
+    private int descriptionId(String description) {
+        if (description == null) {
+            return -1;
+        }
+        Integer id = descriptionIds.get(description);
+        if (id == null) {
+            id = descriptionCount++;
+            String[] grown = id < descriptions.length
+                    ? descriptions
+                    : Arrays.copyOf(descriptions, descriptions.length * 2);
+            grown[id] = description;
+            // Written even when unchanged, to publish the new entry
+            descriptions = grown;
+            descriptionIds.put(description, id);
+        }
+        return id;
+    }
+
+    private static long key(int row, int column) {
+        return (long) row << 32 | column;
+    }
+}
@@ -0,0 +1,200 @@
+package database;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import logic.SnapshotInfo;
+import metrics.Metrics;
+import metrics.OperationTimer;
+
+/**
+ * Storage engine backed by PostgreSQL through a {@link ConnectionPool}.
+ * Change tracking is the trigger-fed {@link ChangeLog}, interest runs are
+ * set-based through {@link InterestDAO}, and since several clients can
+ * share the database it provides the {@link ChangeFeed} that pushes other
+ * clients' changes.
+ */
+public class PostgresEngine implements StorageEngine {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(PostgresEngine.class.getName());
+
+    private static final OperationTimer TRANSACTION_TIMER =
+            Metrics.timer("PostgresEngine.transaction");
+    private static final LongAdder COMMITS = Metrics.counter("PostgresEngine.commits");
+    private static final LongAdder ROLLBACKS = Metrics.counter("PostgresEngine.rollbacks");
+
+    private final ConnectionPool pool;
+    private final CustomerDAO customerDAO;
+    private final AccountDAO accountDAO;
+    private final TransactionDAO transactionDAO;
+    private final InterestDAO interestDAO;
+    private final ChangeLog changeLog;
+    private ChangeFeed changeFeed;
+    private boolean changeFeedFailed;
+
+    /**
+     * Creates the engine and installs the change log. The engine owns the
+     * pool and closes it on {@link #close()}.
+     */
+    public PostgresEngine(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
+        }
+        this.pool = pool;
+        this.customerDAO = new CustomerDAO(pool);
+        this.accountDAO = new AccountDAO(pool);
+        this.transactionDAO = new TransactionDAO(pool);
+        this.interestDAO = new InterestDAO(pool);
+        this.changeLog = new ChangeLog(pool);
+        changeLog.ensureSchema();
+    }
+
+    @Override
+    public CustomerStore customers() {
+        return customerDAO;
+    }
+
+    @Override
+    public AccountStore accounts() {
+        return accountDAO;
+    }
+
+    @Override
+    public TransactionStore transactions() {
+        return transactionDAO;
+    }
+
+    @Override
+    public InterestDAO interest() {
+        return interestDAO;
+    }
+
+    @Override
+    public ChangeLog changeTracker() {
+        return changeLog;
+    }
+
+    /**
+     * Returns the change feed, installing its triggers and starting it on
+     * first use.
+     *
+     * @return the running feed, or {@code null} if the triggers could not
+     *         be installed
+     */
+    @Override
+    public synchronized ChangeFeed changeFeed() {
+        if (changeFeed == null && !changeFeedFailed) {
+            ChangeFeed feed = new ChangeFeed(pool);
+            try {
+                feed.ensureSchema();
+            } catch (DatabaseException e) {
+                changeFeedFailed = true;
+                return null;
+            }
+            feed.start();
+            changeFeed = feed;
+        }
+        return changeFeed;
+    }
+
+    @Override
+    public ConnectionPool.PoolStats poolStats() {
+        return pool.getStats();
+    }
+
+    /**
+     * Runs the work with commit / rollback semantics. The connection is
+     * leased from the pool for the duration of the work; DAO calls made
+     * by the work on this thread share it. A nested call joins the
+     * surrounding transaction and keeps its isolation level.
+     */
+    @Override
+    public <T> T inTransaction(int isolation, Supplier<T> work) {
+
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+
+            if (!connection.getAutoCommit()) {
+                return work.get();
+            }
+
+            int previousIsolation = connection.getTransactionIsolation();
+            if (isolation != previousIsolation) {
+                connection.setTransactionIsolation(isolation);
+            }
+            connection.setAutoCommit(false);
+            long start = TRANSACTION_TIMER.start();
+            try {
+                T result = work.get();
+                connection.commit();
+                COMMITS.increment();
+                return result;
+
+            } catch (Exception e) {
+                TRANSACTION_TIMER.failed();
+                ROLLBACKS.increment();
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackEx) {
+                    LOGGER.log(Level.SEVERE,
+                            "Rollback failed", rollbackEx);
+                    lease.invalidate();
+                }
+
+                LOGGER.log(Level.SEVERE, "Transaction failed, rolled back", e);
+                throw new DatabaseException("Transaction failed", e);
+
+            } finally {
+                TRANSACTION_TIMER.stop(start);
+                try {
+                    connection.setAutoCommit(true);
+                    if (isolation != previousIsolation) {
+                        connection.setTransactionIsolation(previousIsolation);
+                    }
+                } catch (SQLException autoCommitEx) {
+                    LOGGER.log(Level.SEVERE,
+                            "Failed to reset auto-commit", autoCommitEx);
+                    lease.invalidate();
+                }
+            }
+
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to begin transaction", e);
+        }
+    }
+
+    /** Restores with COPY, see {@link BankRestorer}. */
+    @Override
+    public SnapshotInfo restore(List<Path> chain) throws IOException {
+        BankRestorer restorer = new BankRestorer(pool);
+        SnapshotInfo info = restorer.restore(chain.get(0));
+        for (Path delta : chain.subList(1, chain.size())) {
+            info = restorer.applyDelta(delta);
+        }
+        return info;
+    }
+
+    /** @return the pool's maximum size */
+    @Override
+    public int concurrency() {
+        return pool.getStats().maxSize();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (changeFeed != null) {
+                changeFeed.close();
+            }
+        }
+        pool.close();
+    }
+}
@@ -0,0 +1,88 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Size-bounded LRU cache of prepared statements for one connection.
+ *
+ * <p>Statements stay open between DAO calls, so the driver can promote
+ * them to named server-side statements and skip parse / plan on reuse.
+ * A cache is only touched by the thread currently leasing its
+ * connection and therefore needs no locking; the shared {@link Counters}
+ * are thread-safe.
+ */
+final class StatementCache {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(StatementCache.class.getName());
+
+    private final Connection connection;
+    private final Counters counters;
+    private final Map<Key, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int maxSize, Counters counters) {
+        this.connection = connection;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                counters.evictions.increment();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a cached statement for {@code sql}, preparing it on a miss.
+     * The caller must not close the returned statement.
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null && !stmt.isClosed()) {
+            counters.hits.increment();
+            return stmt;
+        }
+        counters.misses.increment();
+        stmt = connection.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, stmt);
+        return stmt;
+    }
+
+    /** Closes every cached statement. */
+    void clear() {
+        for (PreparedStatement stmt : statements.values()) {
+            closeQuietly(stmt);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Failed to close cached statement", e);
+        }
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    /** Hit / miss / eviction counts aggregated over all caches of a pool. */
+    static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+}
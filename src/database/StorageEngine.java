@@ -0,0 +1,94 @@
+package database;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Supplier;
+
+import logic.SnapshotInfo;
+
+/**
+ * A storage backend for the bank: the customer, account and transaction
+ * stores together with transactions, interest runs, change tracking for
+ * incremental snapshots and snapshot restore.
+ *
+ * <p>{@link #open()} picks the engine named by the {@code bank.storage}
+ * system property:
+ * <ul>
+ *   <li>{@code postgres} (the default): {@link PostgresEngine}, the
+ *       PostgreSQL database configured in {@link Database}.</li>
+ *   <li>{@code memory}: {@link MemoryEngine}, which keeps the bank on the
+ *       heap and needs no database. Its contents are lost on exit unless
+ *       written to a snapshot.</li>
+ * </ul>
+ */
+public interface StorageEngine extends AutoCloseable {
+
+    CustomerStore customers();
+
+    AccountStore accounts();
+
+    TransactionStore transactions();
+
+    InterestStore interest();
+
+    ChangeTracker changeTracker();
+
+    /**
+     * Runs a unit of work as one transaction. Store calls made by the
+     * work on this thread take part in it, and a nested call joins the
+     * surrounding transaction.
+     *
+     * @param isolation a {@link java.sql.Connection} isolation level for a
+     *                  new transaction
+     * @throws DatabaseException if the work throws; the cause is the
+     *                           work's exception
+     */
+    <T> T inTransaction(int isolation, Supplier<T> work);
+
+    /**
+     * Replaces the bank's contents with a chain of snapshots: a full
+     * snapshot followed by incremental ones in the order they were taken.
+     *
+     * @return a summary of the last snapshot in the chain
+     * @throws IOException if a snapshot cannot be read
+     */
+    SnapshotInfo restore(List<Path> chain) throws IOException;
+
+    /** @return how many units of work the engine can serve at once */
+    int concurrency();
+
+    /** @return connection pool metrics, or {@code null} if the engine has no pool */
+    default ConnectionPool.PoolStats poolStats() {
+        return null;
+    }
+
+    /**
+     * Returns the feed of changes made by other clients of the same
+     * storage, starting it on first use.
+     *
+     * @return the running feed, or {@code null} if the engine has no
+     *         other clients or cannot report changes
+     */
+    default ChangeFeed changeFeed() {
+        return null;
+    }
+
+    @Override
+    void close();
+
+    /**
+     * Opens the engine selected by the {@code bank.storage} system property.
+     *
+     * @throws SQLException if the PostgreSQL engine cannot reach the database
+     */
+    static StorageEngine open() throws SQLException {
+        String engine = System.getProperty("bank.storage", "postgres");
+        return switch (engine) {
+            case "postgres" -> new PostgresEngine(Database.createPool());
+            case "memory" -> new MemoryEngine();
+            default -> throw new IllegalArgumentException("Unknown storage engine: " + engine);
+        };
+    }
+}
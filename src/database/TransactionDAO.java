@@ -2,51 +2,261 @@ package database;
 
 import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import metrics.Metrics;
+import metrics.OperationTimer;
+import model.Money;
 import model.TransactionType;
 
 /**
  * Data Access Object for the transactions table.
  */
-public class TransactionDAO {
+public class TransactionDAO implements TransactionStore {
 
     private static final Logger LOGGER =
             Logger.getLogger(TransactionDAO.class.getName());
 
-    private final Connection connection;
+    private static final String INSERT_SQL =
+            "INSERT INTO transactions " +
+            "(account_id, amount, transaction_type, description, balance_after, transaction_time) " +
+            "VALUES (?, ?, ?::transaction_type, ?, ?, clock_timestamp())";
 
-    public TransactionDAO(Connection connection) {
-        if (connection == null) {
-            throw new IllegalArgumentException("Connection cannot be null");
+    private static final String ADD_BALANCE_COLUMN_SQL =
+            "ALTER TABLE transactions ADD COLUMN IF NOT EXISTS balance_after numeric";
+
+    private static final String BALANCE_TIME_INDEX = "transactions_account_time_idx";
+
+    private static final String CREATE_BALANCE_TIME_INDEX_SQL =
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + BALANCE_TIME_INDEX + " " +
+            "ON transactions (account_id, transaction_time, transaction_id) " +
+            "INCLUDE (balance_after)";
+
+    /**
+     * Empty except after restoring an older snapshot, so finding rows to
+     * backfill is one probe instead of a scan of every transaction.
+     * Postings never match its predicate and do not maintain it.
+     */
+    private static final String BALANCE_MISSING_INDEX = "transactions_balance_missing_idx";
+
+    private static final String CREATE_BALANCE_MISSING_INDEX_SQL =
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + BALANCE_MISSING_INDEX + " " +
+            "ON transactions (account_id) WHERE balance_after IS NULL";
+
+    /**
+     * Whether {@code balance_after} exists, and whether each of its indexes
+     * is valid: null when missing, false when a concurrent build failed.
+     */
+    private static final String BALANCE_HISTORY_STATE_SQL =
+            "SELECT EXISTS (SELECT 1 FROM pg_attribute " +
+            "               WHERE attrelid = 'transactions'::regclass " +
+            "                 AND attname = 'balance_after' AND NOT attisdropped), " +
+            "       (SELECT indisvalid FROM pg_index " +
+            "        WHERE indexrelid = to_regclass('" + BALANCE_TIME_INDEX + "')), " +
+            "       (SELECT indisvalid FROM pg_index " +
+            "        WHERE indexrelid = to_regclass('" + BALANCE_MISSING_INDEX + "'))";
+
+    private static final String HAS_MISSING_BALANCES_SQL =
+            "SELECT EXISTS (SELECT 1 FROM transactions WHERE balance_after IS NULL)";
+
+    /**
+     * Fills in {@code balance_after} where it is missing, working back from
+     * the account's current balance: a row's running balance is the
+     * current balance minus every later amount on the account.
+     */
+    private static final String BACKFILL_BALANCES_SQL =
+            "UPDATE transactions t SET balance_after = s.balance_after FROM (" +
+            "  SELECT x.transaction_id, a.balance - COALESCE(sum(x.amount) OVER (" +
+            "    PARTITION BY x.account_id ORDER BY x.transaction_id DESC " +
+            "    ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING), 0) AS balance_after " +
+            "  FROM transactions x JOIN accounts a ON a.account_id = x.account_id " +
+            "  WHERE x.account_id IN (" +
+            "    SELECT account_id FROM transactions WHERE balance_after IS NULL)) s " +
+            "WHERE t.transaction_id = s.transaction_id AND t.balance_after IS NULL";
+
+    /**
+     * The last posting at or before a time. Postings are stamped while
+     * their account is locked (see {@link AccountDAO}), so per account the
+     * latest time is also the latest {@code balance_after}.
+     */
+    private static final String BALANCE_AT_SQL =
+            "SELECT balance_after FROM transactions " +
+            "WHERE account_id = ? AND transaction_time <= ? " +
+            "ORDER BY transaction_time DESC, transaction_id DESC LIMIT 1";
+
+    /** One index probe per day for the last posting before the next midnight. */
+    private static final String DAILY_BALANCES_SQL =
+            "SELECT d::date, (" +
+            "  SELECT balance_after FROM transactions " +
+            "  WHERE account_id = ? AND transaction_time < d + interval '1 day' " +
+            "  ORDER BY transaction_time DESC, transaction_id DESC LIMIT 1) " +
+            "FROM generate_series(?::date, ?::date, interval '1 day') d " +
+            "ORDER BY d";
+
+    private static final String FIND_BY_ACCOUNT_SQL =
+            "SELECT * FROM transactions " +
+            "WHERE account_id = ? " +
+            "ORDER BY transaction_time DESC, transaction_id DESC";
+
+    private static final String FIND_PAGE_SQL =
+            "SELECT * FROM transactions " +
+            "WHERE account_id = ? " +
+            "ORDER BY transaction_time DESC, transaction_id DESC LIMIT ?";
+
+    private static final String FIND_PAGE_AFTER_SQL =
+            "SELECT * FROM transactions " +
+            "WHERE account_id = ? AND (transaction_time, transaction_id) < (?, ?) " +
+            "ORDER BY transaction_time DESC, transaction_id DESC LIMIT ?";
+
+    private static final String STREAM_ALL_SQL =
+            "SELECT * FROM transactions ORDER BY transaction_id";
+
+    private static final String STREAM_RANGE_SQL =
+            "SELECT * FROM transactions " +
+            "WHERE transaction_id > ? AND transaction_id <= ? ORDER BY transaction_id";
+
+    private static final OperationTimer SAVE_TIMER =
+            Metrics.timer("TransactionDAO.save");
+
+    private static final OperationTimer FIND_BY_ACCOUNT_ID_TIMER =
+            Metrics.timer("TransactionDAO.findByAccountId");
+
+    private static final OperationTimer FIND_PAGE_TIMER =
+            Metrics.timer("TransactionDAO.findPage");
+
+    private static final OperationTimer STREAM_BY_ACCOUNT_ID_TIMER =
+            Metrics.timer("TransactionDAO.streamByAccountId");
+
+    private static final OperationTimer STREAM_ALL_TIMER =
+            Metrics.timer("TransactionDAO.streamAll");
+
+    private static final OperationTimer STREAM_RANGE_TIMER =
+            Metrics.timer("TransactionDAO.streamRange");
+
+    private static final OperationTimer BALANCE_AT_TIMER =
+            Metrics.timer("TransactionDAO.balanceAt");
+
+    private static final OperationTimer DAILY_BALANCES_TIMER =
+            Metrics.timer("TransactionDAO.dailyBalances");
+
+    private final ConnectionPool pool;
+
+    public TransactionDAO(ConnectionPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Connection pool cannot be null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Adds the {@code balance_after} column and its indexes if they are
+     * missing, and fills in the running balance of rows written before
+     * the column existed or restored from an older snapshot.
+     *
+     * <p>Runs on every start, so each step is guarded by a catalog lookup
+     * or an index probe, and nothing takes a table lock once the schema
+     * is in place. The indexes are built {@code CONCURRENTLY}, without
+     * blocking writers; a build that failed halfway is dropped and
+     * redone. Must not be called inside a transaction.
+     *
+     * @return the number of rows backfilled
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public int ensureBalanceHistory() {
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement()) {
+            boolean hasColumn;
+            Boolean timeIndexValid;
+            Boolean missingIndexValid;
+            try (ResultSet rs = stmt.executeQuery(BALANCE_HISTORY_STATE_SQL)) {
+                rs.next();
+                hasColumn = rs.getBoolean(1);
+                timeIndexValid = rs.getObject(2, Boolean.class);
+                missingIndexValid = rs.getObject(3, Boolean.class);
+            }
+
+            if (!hasColumn) {
+                stmt.execute(ADD_BALANCE_COLUMN_SQL);
+            }
+            ensureIndex(stmt, BALANCE_TIME_INDEX, timeIndexValid, CREATE_BALANCE_TIME_INDEX_SQL);
+            ensureIndex(stmt, BALANCE_MISSING_INDEX, missingIndexValid,
+                    CREATE_BALANCE_MISSING_INDEX_SQL);
+
+            try (ResultSet rs = stmt.executeQuery(HAS_MISSING_BALANCES_SQL)) {
+                rs.next();
+                if (!rs.getBoolean(1)) {
+                    return 0;
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to install balance history", e);
+            throw new DatabaseException("Failed to install balance history", e);
+        }
+        return backfillBalances();
+    }
+
+    private static void ensureIndex(Statement stmt, String name, Boolean valid, String createSql)
+            throws SQLException {
+        if (Boolean.TRUE.equals(valid)) {
+            return;
         }
-        this.connection = connection;
+        if (valid != null) {
+            LOGGER.warning(() -> "Rebuilding invalid index " + name);
+            stmt.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+        }
+        LOGGER.info(() -> "Building index " + name);
+        stmt.execute(createSql);
     }
 
+    /**
+     * Fills in {@code balance_after} for rows that lack it, based on the
+     * current account balances.
+     *
+     * @return the number of rows updated
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public int backfillBalances() {
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement()) {
+            int updated = stmt.executeUpdate(BACKFILL_BALANCES_SQL);
+            if (updated > 0) {
+                LOGGER.info(() -> "Backfilled running balance on " + updated + " transactions");
+            }
+            return updated;
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to backfill running balances", e);
+            throw new DatabaseException("Failed to backfill running balances", e);
+        }
+    }
 
     /**
      * Inserts a new transaction and returns the generated id.
      *
+     * @param balanceAfter the account's balance after this transaction
      * @throws DatabaseException on failure
      */
-    public int save(int accountId, BigDecimal amount,
-                    TransactionType transactionType, String description) {
-
-        String sql =
-                "INSERT INTO transactions " +
-                "(account_id, amount, transaction_type, description) " +
-                "VALUES (?, ?, ?::transaction_type, ?)";
+    @Override
+    public int save(int accountId, Money amount,
+                    TransactionType transactionType, String description,
+                    Money balanceAfter) {
 
-        try (PreparedStatement stmt =
-                     connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        long start = SAVE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt =
+                    lease.prepare(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
 
             stmt.setInt(1, accountId);
-            stmt.setBigDecimal(2, amount);
+            stmt.setBigDecimal(2, amount.toBigDecimal());
             stmt.setString(3, transactionType.name());
             stmt.setString(4, description);
+            stmt.setBigDecimal(5, balanceAfter.toBigDecimal());
 
             int affected = stmt.executeUpdate();
 
@@ -65,9 +275,12 @@ public class TransactionDAO {
             }
 
         } catch (SQLException e) {
+            SAVE_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed to save transaction for accountId=" + accountId, e);
             throw new DatabaseException("Failed to save transaction", e);
+        } finally {
+            SAVE_TIMER.stop(start);
         }
     }
 
@@ -77,16 +290,14 @@ public class TransactionDAO {
      *
      * @throws DatabaseException on SQL error
      */
+    @Override
     public List<TransactionRecord> findByAccountId(int accountId) {
 
         List<TransactionRecord> list = new ArrayList<>();
 
-        String sql =
-                "SELECT * FROM transactions " +
-                "WHERE account_id = ? " +
-                "ORDER BY transaction_time DESC";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = FIND_BY_ACCOUNT_ID_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(FIND_BY_ACCOUNT_SQL);
 
             stmt.setInt(1, accountId);
 
@@ -97,10 +308,214 @@ public class TransactionDAO {
             }
 
         } catch (SQLException e) {
+            FIND_BY_ACCOUNT_ID_TIMER.failed();
             LOGGER.log(Level.SEVERE,
                     "Failed to find transactions for accountId=" + accountId, e);
             throw new DatabaseException(
                     "Failed to find transactions for account " + accountId, e);
+        } finally {
+            FIND_BY_ACCOUNT_ID_TIMER.stop(start);
+        }
+
+        return list;
+    }
+
+
+    /**
+     * Returns one page of an account's transactions, newest first, using
+     * keyset pagination on (transaction_time, transaction_id).
+     *
+     * @param after last row of the previous page, or {@code null} for the
+     *              first page
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public List<TransactionRecord> findPage(int accountId, TransactionRecord after, int limit) {
+
+        List<TransactionRecord> list = new ArrayList<>(limit);
+
+        long start = FIND_PAGE_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt;
+            if (after == null) {
+                stmt = lease.prepare(FIND_PAGE_SQL);
+                stmt.setInt(1, accountId);
+                stmt.setInt(2, limit);
+            } else {
+                stmt = lease.prepare(FIND_PAGE_AFTER_SQL);
+                stmt.setInt(1, accountId);
+                stmt.setTimestamp(2, Timestamp.valueOf(after.transactionTime()));
+                stmt.setInt(3, after.transactionId());
+                stmt.setInt(4, limit);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            FIND_PAGE_TIMER.failed();
+            LOGGER.log(Level.SEVERE,
+                    "Failed to find transaction page for accountId=" + accountId, e);
+            throw new DatabaseException(
+                    "Failed to find transactions for account " + accountId, e);
+        } finally {
+            FIND_PAGE_TIMER.stop(start);
+        }
+
+        return list;
+    }
+
+
+    /**
+     * Streams all transactions for an account, newest first, to
+     * {@code sink} without materializing them.
+     *
+     * @return the number of rows streamed
+     * @throws DatabaseException on SQL error
+     * @see Cursors
+     */
+    @Override
+    public long streamByAccountId(int accountId, Consumer<TransactionRecord> sink) {
+
+        long start = STREAM_BY_ACCOUNT_ID_TIMER.start();
+        try {
+            return Cursors.stream(pool, FIND_BY_ACCOUNT_SQL,
+                    stmt -> stmt.setInt(1, accountId), this::mapRow, sink);
+
+        } catch (SQLException e) {
+            STREAM_BY_ACCOUNT_ID_TIMER.failed();
+            LOGGER.log(Level.SEVERE,
+                    "Failed to stream transactions for accountId=" + accountId, e);
+            throw new DatabaseException(
+                    "Failed to stream transactions for account " + accountId, e);
+        } finally {
+            STREAM_BY_ACCOUNT_ID_TIMER.stop(start);
+        }
+    }
+
+
+    /**
+     * Streams every transaction in the bank, in id order, to {@code sink}.
+     *
+     * @return the number of rows streamed
+     * @throws DatabaseException on SQL error
+     * @see Cursors
+     */
+    @Override
+    public long streamAll(Consumer<TransactionRecord> sink) {
+
+        long start = STREAM_ALL_TIMER.start();
+        try {
+            return Cursors.stream(pool, STREAM_ALL_SQL, stmt -> { }, this::mapRow, sink);
+
+        } catch (SQLException e) {
+            STREAM_ALL_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to stream all transactions", e);
+            throw new DatabaseException("Failed to stream transactions", e);
+        } finally {
+            STREAM_ALL_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Streams the transactions with ids after {@code afterId} up to and
+     * including {@code throughId}, in id order, to {@code sink}.
+     *
+     * @return the number of rows streamed
+     * @throws DatabaseException on SQL error
+     * @see Cursors
+     */
+    @Override
+    public long streamRange(long afterId, long throughId, Consumer<TransactionRecord> sink) {
+
+        long start = STREAM_RANGE_TIMER.start();
+        try {
+            return Cursors.stream(pool, STREAM_RANGE_SQL,
+                    stmt -> {
+                        stmt.setLong(1, afterId);
+                        stmt.setLong(2, throughId);
+                    },
+                    this::mapRow, sink);
+
+        } catch (SQLException e) {
+            STREAM_RANGE_TIMER.failed();
+            LOGGER.log(Level.SEVERE, "Failed to stream transactions after id " + afterId, e);
+            throw new DatabaseException("Failed to stream transactions", e);
+        } finally {
+            STREAM_RANGE_TIMER.stop(start);
+        }
+    }
+
+
+    /**
+     * Returns an account's balance at a point in time: the running balance
+     * after its last transaction at or before {@code at}. One probe of the
+     * (account_id, transaction_time) index, however long the history is.
+     *
+     * @return the balance, zero if the account had no transactions yet
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public BigDecimal balanceAt(int accountId, LocalDateTime at) {
+
+        long start = BALANCE_AT_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(BALANCE_AT_SQL);
+            stmt.setInt(1, accountId);
+            stmt.setTimestamp(2, Timestamp.valueOf(at));
+            try (ResultSet rs = stmt.executeQuery()) {
+                BigDecimal balance = rs.next() ? rs.getBigDecimal(1) : null;
+                return balance != null ? balance : BigDecimal.ZERO;
+            }
+
+        } catch (SQLException e) {
+            BALANCE_AT_TIMER.failed();
+            LOGGER.log(Level.SEVERE,
+                    "Failed to find balance at " + at + " for accountId=" + accountId, e);
+            throw new DatabaseException(
+                    "Failed to find balance for account " + accountId, e);
+        } finally {
+            BALANCE_AT_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Returns an account's closing balance for every day from {@code from}
+     * to {@code to} inclusive, in one round trip with one index probe per
+     * day.
+     *
+     * @throws DatabaseException on SQL error
+     */
+    @Override
+    public List<DailyBalance> dailyBalances(int accountId, LocalDate from, LocalDate to) {
+
+        List<DailyBalance> list = new ArrayList<>();
+
+        long start = DAILY_BALANCES_TIMER.start();
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare(DAILY_BALANCES_SQL);
+            stmt.setInt(1, accountId);
+            stmt.setDate(2, Date.valueOf(from));
+            stmt.setDate(3, Date.valueOf(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    BigDecimal balance = rs.getBigDecimal(2);
+                    list.add(new DailyBalance(rs.getDate(1).toLocalDate(),
+                            balance != null ? balance : BigDecimal.ZERO));
+                }
+            }
+
+        } catch (SQLException e) {
+            DAILY_BALANCES_TIMER.failed();
+            LOGGER.log(Level.SEVERE,
+                    "Failed to find daily balances for accountId=" + accountId, e);
+            throw new DatabaseException(
+                    "Failed to find daily balances for account " + accountId, e);
+        } finally {
+            DAILY_BALANCES_TIMER.stop(start);
         }
 
         return list;
@@ -118,25 +533,38 @@ public class TransactionDAO {
                 rs.getBigDecimal("amount"),
                 rs.getString("transaction_type"),
                 rs.getString("description"),
-                time
+                time,
+                rs.getBigDecimal("balance_after")
         );
     }
 
+    /** Closing balance of an account on one day. */
+    public record DailyBalance(LocalDate date, BigDecimal balance) {
+    }
+
     /**
          * Immutable data-transfer object representing one row in
          * the <strong>transactions</strong> table.
          */
         public record TransactionRecord(int transactionId, int accountId, BigDecimal amount, String transactionType,
-                                        String description, LocalDateTime transactionTime) {
+                                        String description, LocalDateTime transactionTime,
+                                        BigDecimal balanceAfter) {
+
+        /** A transaction without a recorded running balance. */
+        public TransactionRecord(int transactionId, int accountId, BigDecimal amount, String transactionType,
+                                 String description, LocalDateTime transactionTime) {
+            this(transactionId, accountId, amount, transactionType, description, transactionTime, null);
+        }
 
         @Override
             public String toString() {
-                return String.format(
-                        "%s | %s | %s kr | %s",
-                        transactionTime != null ? transactionTime : "N/A",
-                        transactionType,
-                        amount != null ? amount.toPlainString() : "0",
-                        description != null ? description : "");
+                // Rendered for every history row and every line of a text export
+                return new StringBuilder(80)
+                        .append(transactionTime != null ? transactionTime : "N/A")
+                        .append(" | ").append(transactionType)
+                        .append(" | ").append(amount != null ? amount.toPlainString() : "0")
+                        .append(" kr | ").append(description != null ? description : "")
+                        .toString();
             }
         }
 }
\ No newline at end of file
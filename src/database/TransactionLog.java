@@ -0,0 +1,176 @@
+package database;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import model.Money;
+import model.TransactionType;
+
+/**
+ * Append-only history of one account for the in-memory engine: the
+ * indexes of the account's rows in the {@link OffHeapLedger}, in
+ * (transaction time, transaction id) order. The index array is only ever
+ * appended to, so a {@link View} taken under the owner's lock can be read
+ * without it. Not thread-safe; guarded by the owning account.
+ */
+final class TransactionLog {
+
+    /** Stands for a null transaction time. */
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final OffHeapLedger ledger;
+    private final int accountId;
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private int size;
+    private boolean missingBalances;
+    private boolean outOfOrder;
+
+    TransactionLog(OffHeapLedger ledger, int accountId) {
+        this.ledger = ledger;
+        this.accountId = accountId;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void append(int id, long time, BigDecimal amount, TransactionType type,
+                String description, BigDecimal balanceAfter) {
+        reserve(id, time);
+        rows[size++] = ledger.append(id, accountId, amount, balanceAfter, time,
+                (byte) type.ordinal(), description);
+        missingBalances |= balanceAfter == null;
+    }
+
+    /** Appends a posting whose amount and running balance are known. */
+    void append(int id, long time, Money amount, TransactionType type,
+                String description, Money balanceAfter) {
+        reserve(id, time);
+        rows[size++] = ledger.append(id, accountId, amount.ore(), balanceAfter.ore(), time,
+                (byte) type.ordinal(), description);
+    }
+
+    private void reserve(int id, long time) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+        if (size > 0) {
+            int last = rows[size - 1];
+            if (compare(ledger.time(last), ledger.transactionId(last), time, id) > 0) {
+                outOfOrder = true;
+            }
+        }
+    }
+
+    /**
+     * Restores (time, id) order after rows were appended out of order, as
+     * a restored snapshot may do.
+     */
+    void sort() {
+        if (!outOfOrder) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = rows[i];
+        }
+        Arrays.sort(order, (a, b) -> compare(ledger.time(a), ledger.transactionId(a),
+                ledger.time(b), ledger.transactionId(b)));
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = order[i];
+        }
+        rows = sorted;
+        outOfOrder = false;
+    }
+
+    /**
+     * Fills in missing running balances, working back from the account's
+     * current balance.
+     *
+     * @return the number of rows filled in
+     */
+    int backfill(BigDecimal balance) {
+        if (!missingBalances) {
+            return 0;
+        }
+        int filled = 0;
+        BigDecimal running = balance;
+        for (int i = size - 1; i >= 0; i--) {
+            if (!ledger.hasBalance(rows[i])) {
+                ledger.setBalance(rows[i], running);
+                filled++;
+            }
+            running = running.subtract(ledger.amount(rows[i]));
+        }
+        missingBalances = false;
+        return filled;
+    }
+
+    /** @return the rows appended so far, readable without the owner's lock */
+    View view() {
+        return new View(ledger, accountId, rows, size);
+    }
+
+    /** A fixed prefix of the log. */
+    record View(OffHeapLedger ledger, int accountId, int[] rows, int size) {
+
+        int transactionId(int i) {
+            return ledger.transactionId(rows[i]);
+        }
+
+        TransactionDAO.TransactionRecord get(int i) {
+            int row = rows[i];
+            return new TransactionDAO.TransactionRecord(ledger.transactionId(row), accountId,
+                    ledger.amount(row), TYPES[ledger.type(row)].name(),
+                    ledger.description(row), fromMicros(ledger.time(row)), ledger.balance(row));
+        }
+
+        /** @return the index of the first row at or after (time, id), or {@link #size} */
+        int lowerBound(long time, int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int row = rows[mid];
+                if (compare(ledger.time(row), ledger.transactionId(row), time, id) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** @return the running balance after row {@code i}, zero before the first row */
+        BigDecimal balanceAt(int i) {
+            BigDecimal balance = i >= 0 ? ledger.balance(rows[i]) : null;
+            return balance != null ? balance : BigDecimal.ZERO;
+        }
+    }
+
+    static long toMicros(LocalDateTime time) {
+        if (time == null) {
+            return NO_TIME;
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        if (micros == NO_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static int compare(long timeA, int idA, long timeB, int idB) {
+        int c = Long.compare(timeA, timeB);
+        return c != 0 ? c : Integer.compare(idA, idB);
+    }
+}
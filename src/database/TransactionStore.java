@@ -0,0 +1,93 @@
+package database;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import model.Money;
+import model.TransactionType;
+
+/**
+ * Storage contract for the transaction history, implemented by
+ * {@link TransactionDAO} on PostgreSQL and by the in-memory engine.
+ *
+ * @see StorageEngine
+ */
+public interface TransactionStore {
+
+    /**
+     * Prepares the running-balance history and fills in the balance of
+     * transactions that lack one.
+     *
+     * @return the number of transactions backfilled
+     */
+    int ensureBalanceHistory();
+
+    /**
+     * Fills in the running balance of transactions that lack one, based on
+     * the current account balances.
+     *
+     * @return the number of transactions updated
+     */
+    int backfillBalances();
+
+    /**
+     * Records a transaction on an account without changing its balance.
+     *
+     * @param balanceAfter the account's balance after this transaction
+     * @return the new transaction's id
+     * @throws DatabaseException on failure, including an unknown account
+     */
+    int save(int accountId, Money amount, TransactionType transactionType,
+             String description, Money balanceAfter);
+
+    /** Returns all transactions for an account, newest first. */
+    List<TransactionDAO.TransactionRecord> findByAccountId(int accountId);
+
+    /**
+     * Returns one page of an account's transactions, newest first.
+     *
+     * @param after last row of the previous page, or {@code null} for the
+     *              first page
+     */
+    List<TransactionDAO.TransactionRecord> findPage(
+            int accountId, TransactionDAO.TransactionRecord after, int limit);
+
+    /**
+     * Streams all transactions for an account, newest first, to {@code sink}.
+     *
+     * @return the number of transactions streamed
+     */
+    long streamByAccountId(int accountId, Consumer<TransactionDAO.TransactionRecord> sink);
+
+    /**
+     * Streams every transaction in the bank, in id order, to {@code sink}.
+     *
+     * @return the number of transactions streamed
+     */
+    long streamAll(Consumer<TransactionDAO.TransactionRecord> sink);
+
+    /**
+     * Streams the transactions with ids after {@code afterId} up to and
+     * including {@code throughId}, in id order, to {@code sink}.
+     *
+     * @return the number of transactions streamed
+     */
+    long streamRange(long afterId, long throughId, Consumer<TransactionDAO.TransactionRecord> sink);
+
+    /**
+     * Returns an account's balance after its last transaction at or before
+     * {@code at}.
+     *
+     * @return the balance, zero if the account had no transactions yet
+     */
+    BigDecimal balanceAt(int accountId, LocalDateTime at);
+
+    /**
+     * Returns an account's closing balance for every day from {@code from}
+     * to {@code to} inclusive.
+     */
+    List<TransactionDAO.DailyBalance> dailyBalances(int accountId, LocalDate from, LocalDate to);
+}
@@ -2,14 +2,12 @@ package logic;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
-import java.text.NumberFormat;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 import model.AccountType;
+import model.Formats;
 
 /**
  * Abstrakt klass som innefattar ett konto.
@@ -137,10 +135,7 @@ public abstract class Account implements Serializable {
      * @return räntan i formaterad sträng.
      */
     protected String getFormattedInterest(BigDecimal interest) {
-        NumberFormat percentFormat =
-                NumberFormat.getPercentInstance(Locale.forLanguageTag("sv-SE"));
-        percentFormat.setMaximumFractionDigits(1);
-        return percentFormat.format(interest.movePointLeft(2));
+        return Formats.percent(interest);
     }
 
     /**
@@ -150,7 +145,7 @@ public abstract class Account implements Serializable {
      * @return saldot i formaterad sträng.
      */
     protected String formatNumber(BigDecimal balance) {
-        return NumberFormat.getCurrencyInstance(Locale.forLanguageTag("sv-SE")).format(balance);
+        return Formats.currency(balance);
     }
 
     /**
@@ -159,9 +154,7 @@ public abstract class Account implements Serializable {
      * @return den nuvarande formaterade tiden
      */
     protected String getTimeNow() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        LocalDateTime date = LocalDateTime.now();
-        return date.format(formatter);
+        return Formats.timestamp(LocalDateTime.now());
     }
 
     /**
@@ -0,0 +1,391 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import database.AccountDAO;
+import metrics.Metrics;
+import model.Money;
+
+/**
+ * Begränsad cache över konton, nycklade på konto-id med ett index per
+ * personnummer. Det minst nyligen använda kontot tas bort när cachen är
+ * full. När alla en kunds konton har lästs in på en gång markeras kunden
+ * som komplett, och kundens kontolista kan då läsas ur cachen.
+ *
+ * <p>Ägare och kontotyp ändras aldrig, så ägarkontroller kan alltid göras
+ * mot cachen. Saldon skrivs igenom vid varje bokföring tillsammans med
+ * bokföringens transaktions-id, och ett äldre saldo skriver aldrig över ett
+ * nyare. Ett konto som lästs från databasen läggs bara in om inget skrivits
+ * till det under tiden, så en långsam läsning kan inte ersätta ett saldo
+ * som redan skrivits igenom.
+ *
+ */
+class AccountCache {
+
+    /** Standardstorlek, konton. */
+    static final int DEFAULT_CAPACITY = 10_000;
+
+    private static final int STRIPES = 64;
+
+    private static final LongAdder HITS = Metrics.counter("AccountCache.hits");
+    private static final LongAdder MISSES = Metrics.counter("AccountCache.misses");
+    private static final LongAdder EVICTIONS = Metrics.counter("AccountCache.evictions");
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Integer, Entry> entries;
+    private final Map<String, Set<Integer>> byPNo = new HashMap<>();
+    /** Kunder vars alla konton finns i cachen. */
+    private final Set<String> completeOwners = new HashSet<>();
+    /** Räknas upp vid varje skrivning, per konto-id och per personnummer. */
+    private final AtomicLongArray accountStamps = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray ownerStamps = new AtomicLongArray(STRIPES);
+
+    private static final class Entry {
+        AccountDAO.AccountRecord account;
+        /** Transaktions-id för saldots senaste bokföring, 0 om det lästs från databasen. */
+        long version;
+
+        Entry(AccountDAO.AccountRecord account, long version) {
+            this.account = account;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Konstruktor för kontocachen.
+     *
+     * @param capacity högsta antal konton i cachen
+     */
+    AccountCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        Metrics.gauge("AccountCache.size", this::size);
+        Metrics.gauge("AccountCache.hitRatioPercent", () -> {
+            long hits = HITS.sum();
+            long total = hits + MISSES.sum();
+            return total == 0 ? 0 : hits * 100 / total;
+        });
+    }
+
+    /**
+     * Hämtar ett konto, från databasen om det inte finns i cachen.
+     *
+     * @param accountId kontots id
+     * @param loader läser kontot från databasen, returnerar null om det saknas
+     * @return kontot, eller null om det inte finns.
+     */
+    AccountDAO.AccountRecord get(int accountId, IntFunction<AccountDAO.AccountRecord> loader) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(accountId);
+            if (entry != null) {
+                HITS.increment();
+                return entry.account;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        MISSES.increment();
+        long stamp = accountStamps.get(stripe(accountId));
+        AccountDAO.AccountRecord account = loader.apply(accountId);
+        if (account != null) {
+            lock.lock();
+            try {
+                if (accountStamps.get(stripe(accountId)) == stamp) {
+                    insertLoaded(account);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return account;
+    }
+
+    /**
+     * Hämtar alla en kunds konton sorterade på id, från databasen om
+     * kunden inte är komplett i cachen.
+     *
+     * @param pNo kundens personnummer
+     * @param loader läser kundens konton från databasen
+     * @return kundens konton.
+     */
+    List<AccountDAO.AccountRecord> getByOwner(
+            String pNo, Function<String, List<AccountDAO.AccountRecord>> loader) {
+        lock.lock();
+        try {
+            if (completeOwners.contains(pNo)) {
+                HITS.increment();
+                List<AccountDAO.AccountRecord> accounts = new ArrayList<>();
+                for (int id : byPNo.getOrDefault(pNo, Set.of())) {
+                    accounts.add(entries.get(id).account);
+                }
+                return accounts;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        MISSES.increment();
+        long ownerStamp = ownerStamps.get(stripe(pNo));
+        long[] stamps = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stamps[i] = accountStamps.get(i);
+        }
+        List<AccountDAO.AccountRecord> accounts = loader.apply(pNo);
+        if (accounts.size() > capacity / 2) {
+            return accounts;
+        }
+
+        lock.lock();
+        try {
+            boolean complete = ownerStamps.get(stripe(pNo)) == ownerStamp;
+            for (AccountDAO.AccountRecord account : accounts) {
+                int i = stripe(account.getAccountId());
+                if (accountStamps.get(i) == stamps[i]) {
+                    insertLoaded(account);
+                } else if (!entries.containsKey(account.getAccountId())) {
+                    complete = false;
+                }
+            }
+            if (complete) {
+                completeOwners.add(pNo);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return accounts;
+    }
+
+    /**
+     * Lägger till ett nyskapat konto.
+     *
+     * @param account kontot
+     */
+    void added(AccountDAO.AccountRecord account) {
+        String pNo = account.getpNo();
+        lock.lock();
+        try {
+            touch(account.getAccountId(), pNo);
+            entries.put(account.getAccountId(), new Entry(account, 0));
+            byPNo.computeIfAbsent(pNo, k -> new TreeSet<>()).add(account.getAccountId());
+            evictIfFull();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Skriver igenom ett kontos nya saldo efter en bokföring. Ett konto som
+     * inte finns i cachen läggs inte till.
+     *
+     * @param accountId kontots id
+     * @param balance saldot efter bokföringen
+     * @param transactionId bokföringens transaktions-id
+     */
+    void posted(int accountId, Money balance, long transactionId) {
+        lock.lock();
+        try {
+            accountStamps.incrementAndGet(stripe(accountId));
+            Entry entry = entries.get(accountId);
+            if (entry != null && transactionId > entry.version) {
+                AccountDAO.AccountRecord old = entry.account;
+                entry.account = new AccountDAO.AccountRecord(
+                        accountId, old.getpNo(), old.getAccountType(), balance.toBigDecimal());
+                entry.version = transactionId;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Kontrollerar om kontots cachade saldo redan innehåller en bokföring,
+     * till exempel när databasen rapporterar en bokföring som den här
+     * klienten själv gjort.
+     *
+     * @param accountId kontots id
+     * @param transactionId bokföringens transaktions-id
+     * @return true om kontot finns i cachen med ett saldo som skrivits
+     *         igenom vid den bokföringen eller en senare.
+     */
+    boolean reflects(int accountId, long transactionId) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(accountId);
+            return entry != null && entry.version >= transactionId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tar bort ett konto, till exempel när det stängts eller när en
+     * bokföring på det avvisats och saldot kan ha ändrats av någon annan.
+     *
+     * @param accountId kontots id
+     * @return true om kontot fanns i cachen.
+     */
+    boolean invalidate(int accountId) {
+        return remove(accountId, false);
+    }
+
+    /**
+     * Tar bort ett stängt konto. Kundens kontolista förblir komplett.
+     *
+     * @param accountId kontots id
+     */
+    void removed(int accountId) {
+        remove(accountId, true);
+    }
+
+    private boolean remove(int accountId, boolean closed) {
+        lock.lock();
+        try {
+            accountStamps.incrementAndGet(stripe(accountId));
+            Entry entry = entries.remove(accountId);
+            if (entry == null) {
+                return false;
+            }
+            String pNo = entry.account.getpNo();
+            ownerStamps.incrementAndGet(stripe(pNo));
+            if (!closed) {
+                completeOwners.remove(pNo);
+            }
+            Set<Integer> ids = byPNo.get(pNo);
+            if (ids != null) {
+                ids.remove(accountId);
+                if (ids.isEmpty() && !completeOwners.contains(pNo)) {
+                    byPNo.remove(pNo);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Markerar att en kund kan ha fått konton som inte finns i cachen, så
+     * att kundens kontolista läses om nästa gång.
+     *
+     * @param pNo kundens personnummer
+     */
+    void invalidateOwner(String pNo) {
+        lock.lock();
+        try {
+            ownerStamps.incrementAndGet(stripe(pNo));
+            completeOwners.remove(pNo);
+            Set<Integer> ids = byPNo.get(pNo);
+            if (ids != null && ids.isEmpty()) {
+                byPNo.remove(pNo);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tar bort alla en kunds konton, när kunden tagits bort.
+     *
+     * @param pNo kundens personnummer
+     */
+    void removedOwner(String pNo) {
+        lock.lock();
+        try {
+            ownerStamps.incrementAndGet(stripe(pNo));
+            completeOwners.remove(pNo);
+            Set<Integer> ids = byPNo.remove(pNo);
+            if (ids != null) {
+                for (int id : ids) {
+                    accountStamps.incrementAndGet(stripe(id));
+                    entries.remove(id);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Tömmer cachen, till exempel efter att en ögonblicksbild lästs in. */
+    void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < STRIPES; i++) {
+                accountStamps.incrementAndGet(i);
+                ownerStamps.incrementAndGet(i);
+            }
+            entries.clear();
+            byPNo.clear();
+            completeOwners.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return antal konton i cachen. */
+    int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Lägger till ett konto som lästs från databasen, om det inte redan finns. */
+    private void insertLoaded(AccountDAO.AccountRecord account) {
+        if (entries.putIfAbsent(account.getAccountId(), new Entry(account, 0)) == null) {
+            byPNo.computeIfAbsent(account.getpNo(), k -> new TreeSet<>()).add(account.getAccountId());
+            evictIfFull();
+        }
+    }
+
+    private void touch(int accountId, String pNo) {
+        accountStamps.incrementAndGet(stripe(accountId));
+        ownerStamps.incrementAndGet(stripe(pNo));
+    }
+
+    private void evictIfFull() {
+        Iterator<Map.Entry<Integer, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > capacity && eldest.hasNext()) {
+            AccountDAO.AccountRecord account = eldest.next().getValue().account;
+            eldest.remove();
+            EVICTIONS.increment();
+            String pNo = account.getpNo();
+            completeOwners.remove(pNo);
+            Set<Integer> ids = byPNo.get(pNo);
+            if (ids != null) {
+                ids.remove(account.getAccountId());
+                if (ids.isEmpty()) {
+                    byPNo.remove(pNo);
+                }
+            }
+        }
+    }
+
+    private static int stripe(int accountId) {
+        return Math.floorMod(accountId * 0x9E3779B9, STRIPES);
+    }
+
+    private static int stripe(String pNo) {
+        return Math.floorMod(pNo.hashCode() * 0x9E3779B9, STRIPES);
+    }
+}
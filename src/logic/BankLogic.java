@@ -2,40 +2,196 @@ package logic;
 
 import database.*;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
+import metrics.MetricsReporter;
 import model.TransactionType;
 import model.AccountType;
+import model.Money;
 
 
 /**
  * Klass som innefattar bankens logik.
  *
  */
-public class BankLogic implements Serializable, AutoCloseable {
+public class BankLogic implements AutoCloseable {
 
     /** Konstruktor för bankens logik */
     private static final Logger LOGGER =
             Logger.getLogger(BankLogic.class.getName());
 
-    private final Connection connection;
-    private final CustomerDAO customerDAO;
-    private final AccountDAO accountDAO;
-    private final TransactionDAO transactionDAO;
+    /** Antal kommandon per commit i {@link #postBatch(Stream)}. */
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 1000;
+
+    /** Ränta i procent som sparkonton får när de stängs. */
+    private static final BigDecimal CLOSING_INTEREST_PERCENT = BigDecimal.ONE;
+
+    private final StorageEngine engine;
+    private final CustomerStore customerStore;
+    private final AccountStore accountStore;
+    private final TransactionStore transactionStore;
+    private final CustomerDirectory customerDirectory;
+    private final AccountCache accountCache;
+    private final ChangeTracker changeTracker;
+    private final MetricsReporter metricsReporter;
+    /** Sätts när banken börjat ta emot ändringar från andra klienter. */
+    private volatile boolean listening;
+    /**
+     * Kunder som banken själv skrivit och som katalogen redan visar. Nästa
+     * ändring som rapporteras för dem är den egna och hoppas över.
+     */
+    private final Set<String> ownCustomerWrites = ConcurrentHashMap.newKeySet();
 
+    /**
+     * Konstruktor för bankens logik med lagringsmotorn som väljs med
+     * {@code -Dbank.storage}, se {@link StorageEngine#open()}.
+     *
+     * @throws SQLException om databasen inte kan nås
+     */
     public BankLogic() throws SQLException {
-        this.connection = Database.connect();
-        this.customerDAO    = new CustomerDAO(connection);
-        this.accountDAO     = new AccountDAO(connection);
-        this.transactionDAO = new TransactionDAO(connection);
+        this(StorageEngine.open());
+    }
+
+    /**
+     * Konstruktor för bankens logik med en given lagringsmotor. Banken
+     * stänger motorn när den själv stängs.
+     *
+     * @param engine lagringsmotorn
+     */
+    public BankLogic(StorageEngine engine) {
+        this.engine = engine;
+        this.customerStore    = engine.customers();
+        this.accountStore     = engine.accounts();
+        this.transactionStore = engine.transactions();
+        this.customerDirectory = new CustomerDirectory(customerStore);
+        this.accountCache = new AccountCache(AccountCache.DEFAULT_CAPACITY);
+        this.changeTracker = engine.changeTracker();
+        transactionStore.ensureBalanceHistory();
+        this.metricsReporter = MetricsReporter.fromSystemProperties();
+    }
+
+    /**
+     * Hämtar statistik för anslutningspoolen.
+     *
+     * @return poolens storlek, väntetider och leasingtider, null när banken körs i minnet.
+     */
+    public ConnectionPool.PoolStats getPoolStats() {
+        return engine.poolStats();
+    }
+
+    /**
+     * Hämtar hur många arbeten lagringsmotorn kan betjäna samtidigt.
+     *
+     * @return anslutningspoolens storlek, eller antal processorer när banken körs i minnet.
+     */
+    public int getConcurrency() {
+        return engine.concurrency();
+    }
+
+    /**
+     * Tar emot ändringar som andra klienter gjort i databasen. Banken
+     * uppdaterar först sina egna cachar, sedan anropas lyssnaren med
+     * samma ändringar från en bakgrundstråd. Även bankens egna ändringar
+     * rapporteras.
+     *
+     * @param listener tar emot ändringarna, måste returnera snabbt
+     * @return true om ändringar kommer att rapporteras, false när banken
+     *         körs i minnet eller databasen inte kan skicka ändringar.
+     */
+    public synchronized boolean listenForChanges(ChangeFeed.Listener listener) {
+        ChangeFeed feed = engine.changeFeed();
+        if (feed == null) {
+            return false;
+        }
+        if (!listening) {
+            feed.addListener(this::applyChanges);
+            listening = true;
+        }
+        feed.addListener(listener);
+        return true;
+    }
+
+    /**
+     * Tar bort cachade kunder och konton som ändrats av andra klienter.
+     * Ett konto vars cachade saldo redan innehåller kontots senaste
+     * rapporterade bokföring, till exempel efter en egen insättning, behålls.
+     * Anropas på ändringstråden och gör därför inga databasanrop: kunder
+     * som skapats eller bytt namn hämtas av katalogen när den används.
+     */
+    private void applyChanges(List<ChangeFeed.Change> changes) {
+        Map<String, String> posted = Map.of();
+        for (ChangeFeed.Change change : changes) {
+            if (change.table() == ChangeFeed.Table.TRANSACTIONS && !change.isAll()) {
+                posted = change.rows();
+            }
+        }
+
+        for (ChangeFeed.Change change : changes) {
+            switch (change.table()) {
+                case CUSTOMERS -> {
+                    if (change.isAll()) {
+                        ownCustomerWrites.clear();
+                        customerDirectory.invalidate();
+                        accountCache.clear();
+                        continue;
+                    }
+                    List<String> changed = new ArrayList<>();
+                    for (Map.Entry<String, String> row : change.rows().entrySet()) {
+                        String pNo = row.getKey();
+                        boolean own = ownCustomerWrites.remove(pNo);
+                        if (row.getValue().equals(ChangeFeed.DELETED)) {
+                            customerDirectory.removed(pNo);
+                            accountCache.removedOwner(pNo);
+                        } else if (!own) {
+                            changed.add(pNo);
+                        }
+                    }
+                    customerDirectory.changed(changed);
+                }
+                case ACCOUNTS -> {
+                    if (change.isAll()) {
+                        accountCache.clear();
+                        continue;
+                    }
+                    for (Map.Entry<String, String> row : change.rows().entrySet()) {
+                        int accountId = Integer.parseInt(row.getKey());
+                        String lastPosted = posted.get(row.getKey());
+                        if (lastPosted != null
+                                && accountCache.reflects(accountId, Long.parseLong(lastPosted))) {
+                            continue;
+                        }
+                        if (!accountCache.invalidate(accountId)) {
+                            // A new account makes its owner's cached list incomplete
+                            accountCache.invalidateOwner(row.getValue());
+                        }
+                    }
+                }
+                case TRANSACTIONS -> {
+                    // Nothing cached; balances follow from the accounts change
+                }
+            }
+        }
     }
 
     /**
@@ -44,11 +200,7 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return customerInfo lista med info om alla kunder.
      */
     public List<String> getAllCustomers() {
-        List<String> info = new ArrayList<>();
-        for (Customer c : customerDAO.getAllCustomers()) {
-            info.add(c.toString());
-        }
-        return info;
+        return new ArrayList<>(List.of(customerDirectory.infoArray()));
     }
 
     /**
@@ -61,11 +213,16 @@ public class BankLogic implements Serializable, AutoCloseable {
      */
         public boolean createCustomer(String name, String surname, String pNo) {
 
-            if (customerDAO.exists(pNo)) {
+            if (customerStore.exists(pNo)) {
             return false;
             }
 
-        return customerDAO.save(new Customer(name, surname, pNo));
+        Customer customer = new Customer(name, surname, pNo);
+        if (!writeCustomer(pNo, () -> customerStore.save(customer))) {
+            return false;
+        }
+        customerDirectory.added(customer);
+        return true;
     }
 
     /**
@@ -75,18 +232,17 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return customerInfo lista med info om kunden och dess konton, null om kunden inte finns.
      */
     public List<String> getCustomer(String pNo) {
-        Customer customer = customerDAO.findByPNo(pNo);
-        if (customer == null) {
-            return null;
-        }
-
-        List<String> info = new ArrayList<>();
-        info.add(customer.toString());
+        return describe(customerStore.findWithAccounts(pNo));
+    }
 
-        for (AccountDAO.AccountRecord acc : accountDAO.findByPNo(pNo)) {
-            info.add(acc.toString());
-        }
-        return info;
+    /**
+     * Kontrollerar om en kund finns, utan att läsa kunden eller dess konton.
+     *
+     * @param pNo kundens personnummer
+     * @return true om kunden finns, annars false.
+     */
+    public boolean customerExists(String pNo) {
+        return customerStore.exists(pNo);
     }
 
     /**
@@ -98,7 +254,7 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return true om antingen förnamn eller efternamn ändrades, annars false.
      */
     public boolean changeCustomerName(String name, String surname, String pNo) {
-        Customer customer = customerDAO.findByPNo(pNo);
+        Customer customer = customerStore.findByPNo(pNo);
         if (customer == null) {
             return false;
         }
@@ -110,7 +266,28 @@ public class BankLogic implements Serializable, AutoCloseable {
             return false;
         }
 
-        return customerDAO.updateName(pNo, newFirst, newLast);
+        if (!writeCustomer(pNo, () -> customerStore.updateName(pNo, newFirst, newLast))) {
+            return false;
+        }
+        customerDirectory.renamed(pNo, newFirst, newLast);
+        return true;
+    }
+
+    /**
+     * Kör en egen skrivning av en kund och noterar den, när banken tar emot
+     * ändringar, så att ändringen inte hämtas igen när den rapporteras.
+     */
+    private boolean writeCustomer(String pNo, BooleanSupplier write) {
+        boolean noted = listening && ownCustomerWrites.add(pNo);
+        boolean written = false;
+        try {
+            written = write.getAsBoolean();
+            return written;
+        } finally {
+            if (noted && !written) {
+                ownCustomerWrites.remove(pNo);
+            }
+        }
     }
 
     /**
@@ -120,20 +297,53 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return customerInfo lista med info om kunden och dess konton, null om kunden inte finns.
      */
     public List<String> deleteCustomer(String pNo) {
-        Customer customer = customerDAO.findByPNo(pNo);
-        if (customer == null) {
+        // Gather info before deletion (cascade removes accounts + transactions)
+        List<String> info = describe(customerStore.findWithAccounts(pNo));
+        if (info == null) {
             return null;
         }
 
-        // Gather info before deletion (cascade removes accounts + transactions)
-        List<String> info = new ArrayList<>();
-        info.add(customer.toString());
+        customerStore.delete(pNo);   // cascade handles the rest
+        customerDirectory.removed(pNo);
+        accountCache.removedOwner(pNo);
+        return info;
+    }
 
-        for (AccountDAO.AccountRecord acc : accountDAO.findByPNo(pNo)) {
-            info.add(acc.toString());
+    /**
+     * Importerar en delbatch nya kunder med deras konton och startsaldon i
+     * en transaktion. Kunder vars personnummer redan finns hoppas över.
+     * (Används av {@link CustomerImporter} som läser och validerar filen)
+     *
+     * @param rows kunder att importera
+     * @return antal skapade kunder och konton samt raderna som hoppades över.
+     */
+    public CustomerDAO.ImportResult importCustomers(List<CustomerDAO.ImportRow> rows) {
+        CustomerDAO.ImportResult result =
+                executeInTransaction(() -> customerStore.importBatch(rows));
+
+        Set<Long> duplicates = new HashSet<>(result.duplicateLines());
+        for (CustomerDAO.ImportRow row : rows) {
+            if (!duplicates.contains(row.line())) {
+                Customer customer = row.customer();
+                customerDirectory.added(customer);
+                // Lookups of the new pNo may have cached it as an owner without accounts
+                accountCache.removedOwner(customer.getpNo());
+            }
         }
+        return result;
+    }
 
-        customerDAO.delete(pNo);   // cascade handles the rest
+    /** @return kundens info följd av kontonas, null om kunden inte finns. */
+    private static List<String> describe(CustomerDAO.CustomerDetails details) {
+        if (details == null) {
+            return null;
+        }
+
+        List<String> info = new ArrayList<>(details.accounts().size() + 1);
+        info.add(details.customer().toString());
+        for (AccountDAO.AccountRecord acc : details.accounts()) {
+            info.add(acc.toString());
+        }
         return info;
     }
 
@@ -144,10 +354,15 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return accountId det nya kontots id, -1 om kunden inte finns.
      */
     public int createSavingsAccount(String pNo) {
-        if (customerDAO.findByPNo(pNo) == null) {
+        if (!customerStore.exists(pNo)) {
             return -1;
         }
-        return accountDAO.save(pNo, AccountType.SAVINGS, BigDecimal.ZERO);
+        int accountId = accountStore.save(pNo, AccountType.SAVINGS, Money.ZERO);
+        if (accountId > 0) {
+            accountCache.added(new AccountDAO.AccountRecord(
+                    accountId, pNo, AccountType.SAVINGS, BigDecimal.ZERO));
+        }
+        return accountId;
     }
 
     /**
@@ -157,10 +372,15 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return accountId det nya kontots id, -1 om kunden inte finns.
      */
     public int createCreditAccount(String pNo) {
-        if (customerDAO.findByPNo(pNo) == null) {
+        if (!customerStore.exists(pNo)) {
             return -1;
         }
-        return accountDAO.save(pNo, AccountType.CREDIT, BigDecimal.ZERO);
+        int accountId = accountStore.save(pNo, AccountType.CREDIT, Money.ZERO);
+        if (accountId > 0) {
+            accountCache.added(new AccountDAO.AccountRecord(
+                    accountId, pNo, AccountType.CREDIT, BigDecimal.ZERO));
+        }
+        return accountId;
     }
 
 
@@ -183,30 +403,31 @@ public class BankLogic implements Serializable, AutoCloseable {
      *
      * @param pNo kundens personnummer
      * @param accountId kontots id
-     * @param amount belopp att sätta in
+     * @param amount belopp att sätta in, i kronor
      * @return true om insättningen lyckades, annars false.
      */
     public boolean deposit(String pNo, int accountId, int amount) {
+        return amount > 0 && deposit(pNo, accountId, Money.ofKronor(amount));
+    }
 
-        if (amount <= 0) {
-            return false;
-        }
+    /**
+     * Sätter in pengar på ett konto. Beloppet kan innehålla ören.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param amount belopp att sätta in
+     * @return true om insättningen lyckades, annars false.
+     */
+    public boolean deposit(String pNo, int accountId, Money amount) {
 
-        AccountDAO.AccountRecord acc = getOwnedAccount(pNo, accountId);
-        if (acc == null) {
+        if (amount.signum() <= 0) {
             return false;
         }
 
-        BigDecimal newBalance = acc.getBalance().add(BigDecimal.valueOf(amount));
-
-        return executeInTransaction(() -> {
-            accountDAO.updateBalance(accountId, newBalance);
-            transactionDAO.save(accountId,
-                    BigDecimal.valueOf(amount),
-                    TransactionType.DEPOSIT,
-                    "Deposit");
-            return true;
-        });
+        return posted(accountId, accountStore.applyDelta(accountId, pNo,
+                amount,
+                TransactionType.DEPOSIT,
+                "Deposit"));
     }
 
     /**
@@ -214,37 +435,180 @@ public class BankLogic implements Serializable, AutoCloseable {
      *
      * @param pNo kundens personnummer
      * @param accountId kontots id
-     * @param amount belopp att ta ut
+     * @param amount belopp att ta ut, i kronor
      * @return true om uttaget lyckades, annars false.
      */
     public boolean withdraw(String pNo, int accountId, int amount) {
+        return amount > 0 && withdraw(pNo, accountId, Money.ofKronor(amount));
+    }
 
-        if (amount <= 0) {
+    /**
+     * Tar ut pengar från ett konto. Beloppet kan innehålla ören.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param amount belopp att ta ut
+     * @return true om uttaget lyckades, annars false.
+     */
+    public boolean withdraw(String pNo, int accountId, Money amount) {
+
+        if (amount.signum() <= 0) {
             return false;
         }
 
-        AccountDAO.AccountRecord acc = getOwnedAccount(pNo, accountId);
-        if (acc == null) {
+        // Credit accounts may go negative, savings may not (checked by the UPDATE)
+        return posted(accountId, accountStore.applyDelta(accountId, pNo,
+                amount.negate(),
+                TransactionType.WITHDRAWAL,
+                "Withdrawal"));
+    }
+
+    /**
+     * Skriver igenom en bokförings nya saldo till kontocachen. En avvisad
+     * bokföring kan bero på att det cachade saldot var inaktuellt, så då
+     * tas kontot bort ur cachen.
+     *
+     * @return true om bokföringen genomfördes.
+     */
+    private boolean posted(int accountId, AccountDAO.Posting posting) {
+        if (posting == null) {
+            accountCache.invalidate(accountId);
             return false;
         }
+        accountCache.posted(accountId, posting.balance(), posting.transactionId());
+        return true;
+    }
 
-        BigDecimal amountBD = BigDecimal.valueOf(amount);
-        BigDecimal newBalance = acc.getBalance().subtract(amountBD);
+    /**
+     * Bokför en ström av insättningar och uttag i delbatchar om
+     * {@link #DEFAULT_BATCH_CHUNK_SIZE}.
+     *
+     * @param commands kommandon att bokföra, i ordning
+     * @return ett resultat per kommando, i samma ordning.
+     */
+    public List<PostingResult> postBatch(Stream<PostingCommand> commands) {
+        return postBatch(commands, DEFAULT_BATCH_CHUNK_SIZE);
+    }
 
-        // Credit accounts may go negative, savings may not
-        if (AccountType.SAVINGS == acc.getAccountType()
-            && newBalance.compareTo(BigDecimal.ZERO) < 0) {
-            return false;
+    /**
+     * Bokför en ström av insättningar och uttag. Kommandona skickas som
+     * JDBC-batchar och varje delbatch om {@code chunkSize} kommandon
+     * committas i en egen transaktion. Misslyckas en delbatch rullas bara
+     * den tillbaka; efterföljande delbatchar bokförs ändå.
+     *
+     * @param commands kommandon att bokföra, i ordning
+     * @param chunkSize antal kommandon per commit
+     * @return ett resultat per kommando, i samma ordning.
+     */
+    public List<PostingResult> postBatch(Stream<PostingCommand> commands, int chunkSize) {
+
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
         }
 
-        return executeInTransaction(() -> {
-            accountDAO.updateBalance(accountId, newBalance);
-            transactionDAO.save(accountId,
-                    amountBD.negate(),
-                    TransactionType.WITHDRAWAL,
-                    "Withdrawal");
-            return true;
-        });
+        List<PostingResult> results = new ArrayList<>();
+        List<PostingCommand> chunk = new ArrayList<>(chunkSize);
+
+        Iterator<PostingCommand> it = commands.iterator();
+        while (it.hasNext()) {
+            chunk.add(it.next());
+            if (chunk.size() == chunkSize) {
+                postChunk(chunk, results);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            postChunk(chunk, results);
+        }
+        return results;
+    }
+
+    private void postChunk(List<PostingCommand> chunk, List<PostingResult> results) {
+
+        List<AccountDAO.Delta> deltas = new ArrayList<>(chunk.size());
+        PostingResult.Status[] statuses = new PostingResult.Status[chunk.size()];
+
+        for (int i = 0; i < chunk.size(); i++) {
+            PostingCommand cmd = chunk.get(i);
+            AccountDAO.Delta delta = toDelta(cmd);
+            if (delta == null) {
+                statuses[i] = PostingResult.Status.INVALID;
+            } else {
+                deltas.add(delta);
+            }
+        }
+
+        try {
+            boolean[] applied = executeInTransaction(
+                    () -> accountStore.applyDeltaBatch(deltas));
+            int next = 0;
+            for (int i = 0; i < statuses.length; i++) {
+                if (statuses[i] == null) {
+                    statuses[i] = applied[next++]
+                            ? PostingResult.Status.POSTED
+                            : PostingResult.Status.REJECTED;
+                }
+            }
+        } catch (DatabaseException e) {
+            LOGGER.log(Level.SEVERE,
+                    "Batch chunk of " + deltas.size() + " postings failed", e);
+            for (int i = 0; i < statuses.length; i++) {
+                if (statuses[i] == null) {
+                    statuses[i] = PostingResult.Status.FAILED;
+                }
+            }
+        }
+
+        // The batch does not return balances, so the cached ones are dropped
+        for (AccountDAO.Delta delta : deltas) {
+            accountCache.invalidate(delta.accountId());
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            results.add(new PostingResult(chunk.get(i), statuses[i]));
+        }
+    }
+
+    private static AccountDAO.Delta toDelta(PostingCommand cmd) {
+        if (cmd.amount().signum() <= 0 || cmd.pNo() == null) {
+            return null;
+        }
+        Money amount = cmd.amount();
+        if (cmd.transactionType() == TransactionType.DEPOSIT) {
+            return new AccountDAO.Delta(cmd.accountId(), cmd.pNo(), amount,
+                    TransactionType.DEPOSIT, "Deposit");
+        }
+        if (cmd.transactionType() == TransactionType.WITHDRAWAL) {
+            return new AccountDAO.Delta(cmd.accountId(), cmd.pNo(), amount.negate(),
+                    TransactionType.WITHDRAWAL, "Withdrawal");
+        }
+        return null;
+    }
+
+    /**
+     * Bokför periodens ränta på alla konton: sparränta på sparkonton,
+     * kreditränta eller skuldränta på kreditkonton. Körningen sparar
+     * kontrollpunkter, så om den avbryts fortsätter den där den slutade
+     * när den startas om med samma år. Perioden är alltid ett år, så att
+     * samma år inte kan köras två gånger under olika namn.
+     *
+     * @param year året som räntan gäller
+     * @param rates räntesatser för året
+     * @param progress tar emot framsteg, kan vara null
+     * @return antal konton och summa ränta för året.
+     */
+    public InterestRun.Result accrueInterest(Year year, InterestRates rates,
+                                             InterestRun.ProgressListener progress) {
+        // One connection holds the run lock, the rest are shared with other users
+        int parallelism = Math.max(1, Math.min(
+                engine.concurrency() - 2,
+                Runtime.getRuntime().availableProcessors()));
+        try {
+            return new InterestRun(engine.interest(), parallelism)
+                    .run(year.toString(), rates, progress);
+        } finally {
+            accountCache.clear();
+        }
     }
 
     /**
@@ -256,41 +620,48 @@ public class BankLogic implements Serializable, AutoCloseable {
      */
     public String closeAccount(String pNo, int accountId) {
 
-        AccountDAO.AccountRecord acc = getOwnedAccount(pNo, accountId);
+        if (getOwnedAccount(pNo, accountId) == null) {
+            return null;
+        }
+
+        // The closing balance must not come from the cache
+        AccountDAO.AccountRecord acc = accountStore.findById(accountId);
         if (acc == null) {
+            accountCache.removed(accountId);
             return null;
         }
 
-        BigDecimal balance = acc.getBalance();
+        Money balance = Money.of(acc.getBalance(), RoundingMode.UNNECESSARY);
 
         // Calculate interest on savings (example: 1.0 %)
-        if (AccountType.SAVINGS == acc.getAccountType()
-            && balance.compareTo(BigDecimal.ZERO) > 0) {
+        if (AccountType.SAVINGS == acc.getAccountType() && balance.signum() > 0) {
 
-            BigDecimal interest = balance
-                    .multiply(new BigDecimal("0.01")).setScale(2, RoundingMode.HALF_UP);
+            Money interest = balance.percent(CLOSING_INTEREST_PERCENT, RoundingMode.HALF_UP);
 
+            Money withInterest = balance.plus(interest);
             executeInTransaction(() -> {
-                transactionDAO.save(accountId, interest,
-                        TransactionType.INTEREST, "Interest on closure");
+                transactionStore.save(accountId, interest,
+                        TransactionType.INTEREST, "Interest on closure", withInterest);
                 return null;
             });
 
-            balance = balance.add(interest);
+            balance = withInterest;
         }
 
-        BigDecimal finalBalance = balance;
+        Money finalBalance = balance;
         executeInTransaction(() -> {
-            transactionDAO.save(accountId, finalBalance,
-                    TransactionType.ACCOUNT_CLOSED, "Account closed");
+            // The final balance is paid out, so the account ends at zero
+            transactionStore.save(accountId, finalBalance,
+                    TransactionType.ACCOUNT_CLOSED, "Account closed", Money.ZERO);
             return null;
         });
 
-        accountDAO.delete(accountId);
+        accountStore.delete(accountId);
+        accountCache.removed(accountId);
 
         return String.format(
                 "Account %d (%s) closed. Final balance: %s",
-                accountId, acc.getAccountType(), balance.toPlainString());
+                accountId, acc.getAccountType(), balance);
     }
 
     /**
@@ -308,19 +679,111 @@ public class BankLogic implements Serializable, AutoCloseable {
         }
 
         List<String> history = new ArrayList<>();
-        for (TransactionDAO.TransactionRecord t
-                : transactionDAO.findByAccountId(accountId)) {
-            history.add(t.toString());
-        }
+        transactionStore.streamByAccountId(accountId, t -> history.add(t.toString()));
         return history;
     }
 
+    /**
+     * Hämtar ett kontos saldo vid en viss tidpunkt, det vill säga saldot
+     * efter den sista transaktionen vid eller före tidpunkten.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param at tidpunkten
+     * @return saldot, noll om kontot saknade transaktioner då, null om kontot inte finns.
+     */
+    public BigDecimal getBalanceAt(String pNo, int accountId, LocalDateTime at) {
+
+        if (getOwnedAccount(pNo, accountId) == null) {
+            return null;
+        }
+        return transactionStore.balanceAt(accountId, at);
+    }
+
+    /**
+     * Hämtar ett kontos saldo vid slutet av varje dag i ett datumintervall.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param from första dagen
+     * @param to sista dagen, inklusive
+     * @return ett saldo per dag, null om kontot inte finns.
+     */
+    public List<TransactionDAO.DailyBalance> getDailyBalances(
+            String pNo, int accountId, LocalDate from, LocalDate to) {
+
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Start date after end date: " + from + " > " + to);
+        }
+        if (getOwnedAccount(pNo, accountId) == null) {
+            return null;
+        }
+        return transactionStore.dailyBalances(accountId, from, to);
+    }
+
+    /**
+     * Hämtar en sida av kontohistoriken, nyaste transaktionen först.
+     * (Används av GUI:ts historikvy som läser nästa sida när användaren scrollar)
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param after sista transaktionen på föregående sida, null för första sidan
+     * @param limit sidans storlek
+     * @return transaktionerna på sidan, null om kontot inte finns.
+     */
+    public List<TransactionDAO.TransactionRecord> getTransactionPage(
+            String pNo, int accountId, TransactionDAO.TransactionRecord after, int limit) {
+
+        if (getOwnedAccount(pNo, accountId) == null) {
+            return null;
+        }
+        return transactionStore.findPage(accountId, after, limit);
+    }
+
+    /**
+     * Skickar hela kontohistoriken, nyaste transaktionen först, till
+     * {@code sink} utan att läsa in den i minnet.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param sink tar emot en transaktion i taget
+     * @return antal transaktioner, eller -1 om kontot inte finns.
+     */
+    public long streamTransactions(
+            String pNo, int accountId, Consumer<TransactionDAO.TransactionRecord> sink) {
+
+        if (getOwnedAccount(pNo, accountId) == null) {
+            return -1;
+        }
+        return transactionStore.streamByAccountId(accountId, sink);
+    }
+
+    /**
+     * Hämtar alla konton för en kund, sorterade på konto-id.
+     *
+     * @param pNo kundens personnummer
+     * @return kundens konton, tom lista om kunden saknar konton.
+     */
+    public List<AccountDAO.AccountRecord> getAccounts(String pNo) {
+        return findAccountsByPNo(pNo);
+    }
+
+    /**
+     * Hämtar alla konton i banken, sorterade på konto-id.
+     *
+     * @return bankens konton.
+     */
+    public List<AccountDAO.AccountRecord> getAllAccounts() {
+        return accountStore.findAll();
+    }
+
     /**
      * Verifierar att ett konto existerar OCH tillhör den givna kunden.
+     * Kontot läses ur kontocachen, så saldot kan vara något inaktuellt.
      */
     private AccountDAO.AccountRecord getOwnedAccount(String pNo, int accountId) {
 
-        AccountDAO.AccountRecord acc = accountDAO.findById(accountId);
+        AccountDAO.AccountRecord acc = accountCache.get(accountId, accountStore::findById);
         if (acc == null) {
             return null;
         }
@@ -339,25 +802,39 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return customerInfoArray array med info om alla kunder.
      */
     public String[] getCustomerInfoArray() {
-        List<String> customerInfoList = new ArrayList<>();
-        for (Customer customer : customerDAO.getAllCustomers()) {
-            customerInfoList.add(customer.toString());
-        }
-        return customerInfoList.toArray(new String[0]);
+        return customerDirectory.infoArray().clone();
+    }
+
+    /**
+     * Hämtar antalet kunder.
+     *
+     * @return antalet kunder i databasen.
+     */
+    public int getCustomerCount() {
+        return customerStore.count();
     }
 
     /**
-     * Hämtar en kund baserat på index i den sorterade databaslistan.
+     * Hämtar en sida kunder sorterade på förnamn, efternamn och personnummer.
+     * (Används av GUI:ts kundlista som bara läser de rader som syns)
+     *
+     * @param after sista kunden före sidan, null för att börja från början
+     * @param skip antal kunder att hoppa över efter {@code after}
+     * @param limit sidans storlek
+     * @return kunderna på sidan.
+     */
+    public List<Customer> getCustomerPage(Customer after, int skip, int limit) {
+        return customerStore.findPage(after, skip, limit);
+    }
+
+    /**
+     * Hämtar en kund baserat på index i den sorterade kundlistan.
      *
      * @param index index för kunden
      * @return customer om hittad, annars null.
      */
     public Customer getCustomerByIndex(int index) {
-        List<Customer> customers = customerDAO.getAllCustomers();
-        if (index >= 0 && index < customers.size()) {
-            return customers.get(index);
-        }
-        return null;
+        return customerDirectory.get(index);
     }
 
     /**
@@ -369,7 +846,7 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return kontots id som sträng, null om kunden eller indexet inte finns.
      */
     public String getAccountIdBypNoAndIndex(String pNo, int index) {
-        List<AccountDAO.AccountRecord> accounts = accountDAO.findByPNo(pNo);
+        List<AccountDAO.AccountRecord> accounts = findAccountsByPNo(pNo);
         if (accounts.isEmpty()) {
             return null;
         }
@@ -386,13 +863,7 @@ public class BankLogic implements Serializable, AutoCloseable {
      * @return index för kunden, -1 om kunden inte finns.
      */
     public int findCustomerIndexBypNo(String pNo) {
-        List<Customer> customers = customerDAO.getAllCustomers();
-        for (int i = 0; i < customers.size(); i++) {
-            if (customers.get(i).getpNo().equals(pNo)) {
-                return i;
-            }
-        }
-        return -1;
+        return customerDirectory.indexOf(pNo);
     }
 
     /**
@@ -408,50 +879,180 @@ public class BankLogic implements Serializable, AutoCloseable {
             return new String[0];
         }
 
-        String pNo = customer.getpNo();
-        List<AccountDAO.AccountRecord> accounts = accountDAO.findByPNo(pNo);
-        List<String> accountStrings = new ArrayList<>();
+        return getAccountInfoArray(customer.getpNo());
+    }
 
-        for (AccountDAO.AccountRecord acc : accounts) {
-            accountStrings.add(acc.toString());
+    /**
+     * Hämtar en array med info om alla konton för en specifik kund.
+     * (Används av GUI för att populera JList)
+     *
+     * @param pNo kundens personnummer.
+     * @return array med info om kundens konton.
+     */
+    public String[] getAccountInfoArray(String pNo) {
+        List<AccountDAO.AccountRecord> accounts = findAccountsByPNo(pNo);
+        String[] accountStrings = new String[accounts.size()];
+        for (int i = 0; i < accountStrings.length; i++) {
+            accountStrings[i] = accounts.get(i).toString();
         }
-        return accountStrings.toArray(new String[0]);
+        return accountStrings;
     }
 
     /**
-     * Runs a unit of work inside a database transaction with
-     * commit / rollback semantics.
+     * Skriver banken till en ögonblicksbild. Tabellerna läses i samma
+     * transaktion med REPEATABLE READ så att ögonblicksbilden blir konsistent
+     * även om banken används under tiden.
+     *
+     * <p>Om skrivaren har en föregående ögonblicksbild skrivs bara det som
+     * ändrats sedan den: kunder och konton som lagringsmotorns
+     * {@link ChangeTracker} registrerat som ändrade och transaktioner med
+     * högre id. Ögonblicksbilden registreras i lagringsmotorn så att senare
+     * inkrementella bilder kan bygga på den.
+     *
+     * @param writer ögonblicksbilden som skrivs
+     * @return sammanfattning av det som skrevs.
+     * @throws IOException om ögonblicksbilden inte kunde skrivas, eller om den
+     *                     föregående ögonblicksbilden är okänd för banken
      */
-    private <T> T executeInTransaction(TransactionCallback<T> callback) {
+    public SnapshotInfo writeSnapshot(SnapshotWriter writer) throws IOException {
+        ChangeLog.Marks parent = null;
+        if (writer.getParentId() != 0) {
+            parent = changeTracking() ? changeTracker.findMarks(writer.getParentId()) : null;
+            if (parent == null) {
+                throw new IOException("Den föregående ögonblicksbilden är okänd för banken."
+                        + " Spara en fullständig ögonblicksbild först.");
+            }
+        }
+        ChangeLog.Marks base = parent;
 
         try {
-            connection.setAutoCommit(false);
-
-            T result = callback.execute();
+            return executeInTransaction(Connection.TRANSACTION_REPEATABLE_READ, () -> {
+                // Must run first: it fixes the transaction's snapshot
+                ChangeLog.Marks marks = changeTracking() ? changeTracker.pinSnapshot() : null;
+
+                if (base == null) {
+                    customerStore.streamAll(c -> write(() -> writer.writeCustomer(c)));
+                    accountStore.streamAll(a -> write(() -> writer.writeAccount(a)));
+                    transactionStore.streamAll(t -> write(() -> writer.writeTransaction(t)));
+                } else {
+                    customerStore.streamChanged(base.changeMark(), marks.changeMark(),
+                            c -> write(() -> writer.writeCustomer(c)),
+                            pNo -> write(() -> writer.writeCustomerDeletion(pNo)));
+                    accountStore.streamChanged(base.changeMark(), marks.changeMark(),
+                            a -> write(() -> writer.writeAccount(a)),
+                            id -> write(() -> writer.writeAccountDeletion(id)));
+                    transactionStore.streamRange(base.transactionMark(), marks.transactionMark(),
+                            t -> write(() -> writer.writeTransaction(t)));
+                }
+
+                // Registered in the same transaction, so a snapshot that could
+                // not be finished is never used as a base
+                SnapshotInfo info;
+                try {
+                    info = writer.finish();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (marks != null) {
+                    changeTracker.register(info.snapshotId(), marks, base == null);
+                }
+                return info;
+            });
+        } catch (DatabaseException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+    }
 
-            connection.commit();
-            connection.setAutoCommit(true);
-            return result;
+    /**
+     * Ersätter allt innehåll i databasen med en ögonblicksbild. Tabellerna
+     * läses in parallellt med COPY, se {@link BankRestorer}.
+     *
+     * @param snapshot filen med ögonblicksbilden
+     * @return sammanfattning av det som lästes in.
+     * @throws IOException om ögonblicksbilden inte kunde läsas
+     */
+    public SnapshotInfo restoreSnapshot(Path snapshot) throws IOException {
+        return restoreSnapshot(List.of(snapshot));
+    }
 
-        } catch (Exception e) {
-            try {
-                connection.rollback();
-            } catch (SQLException rollbackEx) {
-                LOGGER.log(Level.SEVERE,
-                        "Rollback failed", rollbackEx);
-            }
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException autoCommitEx) {
-                LOGGER.log(Level.SEVERE,
-                        "Failed to reset auto-commit", autoCommitEx);
+    /**
+     * Ersätter allt innehåll i databasen med en kedja av ögonblicksbilder:
+     * en fullständig bild följd av inkrementella bilder i den ordning de
+     * skrevs. Den sista bilden registreras som bas för nya inkrementella
+     * bilder, så banken bör inte ändras medan inläsningen pågår.
+     *
+     * @param chain fullständig ögonblicksbild först, sedan inkrementella
+     * @return sammanfattning av den sista ögonblicksbilden.
+     * @throws IOException om en ögonblicksbild inte kunde läsas
+     */
+    public SnapshotInfo restoreSnapshot(List<Path> chain) throws IOException {
+        if (chain.isEmpty()) {
+            throw new IllegalArgumentException("No snapshot to restore");
+        }
+        try {
+            SnapshotInfo info = engine.restore(chain);
+            // Snapshots older than version 3 carry no running balances
+            transactionStore.backfillBalances();
+
+            if (changeTracking() && info.snapshotId() != 0) {
+                long tip = info.snapshotId();
+                executeInTransaction(Connection.TRANSACTION_REPEATABLE_READ, () -> {
+                    changeTracker.register(tip, changeTracker.pinSnapshot(), true);
+                    return null;
+                });
             }
+            return info;
+        } finally {
+            customerDirectory.invalidate();
+            accountCache.clear();
+        }
+    }
+
+    /** @return true om lagringsmotorn loggar ändringar för inkrementella ögonblicksbilder. */
+    private boolean changeTracking() {
+        return changeTracker.isAvailable();
+    }
 
-            LOGGER.log(Level.SEVERE, "Transaction failed, rolled back", e);
-            throw new DatabaseException("Transaction failed", e);
+    /** Hämtar en kunds konton via kontocachen, sorterade på konto-id. */
+    private List<AccountDAO.AccountRecord> findAccountsByPNo(String pNo) {
+        return accountCache.getByOwner(pNo, accountStore::findByPNo);
+    }
+
+    @FunctionalInterface
+    private interface SnapshotWrite {
+        void run() throws IOException;
+    }
+
+    private static void write(SnapshotWrite write) {
+        try {
+            write.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Runs a unit of work inside a storage transaction with commit /
+     * rollback semantics. Store calls made by the callback on this thread
+     * take part in it. A nested call joins the surrounding transaction
+     * instead of committing on its own.
+     */
+    private <T> T executeInTransaction(TransactionCallback<T> callback) {
+        return executeInTransaction(Connection.TRANSACTION_READ_COMMITTED, callback);
+    }
+
+    /**
+     * Like {@link #executeInTransaction(TransactionCallback)}, with the
+     * given isolation level for a new transaction. A nested call keeps
+     * the surrounding transaction's isolation.
+     */
+    private <T> T executeInTransaction(int isolation, TransactionCallback<T> callback) {
+        return engine.inTransaction(isolation, callback::execute);
+    }
+
     @FunctionalInterface
     private interface TransactionCallback<T> {
         T execute();
@@ -462,13 +1063,10 @@ public class BankLogic implements Serializable, AutoCloseable {
 
     @Override
     public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-            }
-        } catch (SQLException e) {
-            LOGGER.log(Level.WARNING, "Failed to close connection", e);
+        if (metricsReporter != null) {
+            metricsReporter.close();
         }
+        engine.close();
     }
 }
 
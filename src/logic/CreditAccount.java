@@ -2,10 +2,10 @@ package logic;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.NumberFormat;
-import java.util.Locale;
 
 import model.AccountType;
+import model.Formats;
+import model.Money;
 
 /**
  * Klass som innefattar ett kreditkonto.
@@ -85,25 +85,15 @@ public class CreditAccount extends Account {
      */
     @Override
     public String calculateAndFormatInterest() {
-        BigDecimal debtInterestAmount;
-        BigDecimal normalInterestAmount;
-        if (getBalance().compareTo(BigDecimal.ZERO) < 0) {
-            debtInterestAmount = getBalance().abs();
-            normalInterestAmount = BigDecimal.ZERO;
+        Money balance = Money.of(getBalance(), RoundingMode.HALF_UP);
+        Money totalInterestAmount;
+        if (balance.signum() < 0) {
+            totalInterestAmount =
+                    balance.abs().percent(getDebtInterest(), RoundingMode.HALF_UP).negate();
         } else {
-            debtInterestAmount = BigDecimal.ZERO;
-            normalInterestAmount = getBalance();
+            totalInterestAmount = balance.percent(getInterest(), RoundingMode.HALF_UP);
         }
-        debtInterestAmount =
-                debtInterestAmount.multiply(
-                        getDebtInterest().divide(new BigDecimal("100"), 10, RoundingMode.HALF_UP));
-        normalInterestAmount =
-                normalInterestAmount.multiply(
-                        getInterest().divide(new BigDecimal("100"), 10, RoundingMode.HALF_UP));
-
-        BigDecimal totalInterestAmount = normalInterestAmount.subtract(debtInterestAmount);
-        return NumberFormat.getCurrencyInstance(Locale.forLanguageTag("sv-SE"))
-                .format(totalInterestAmount);
+        return Formats.currency(totalInterestAmount);
     }
 
     /**
@@ -0,0 +1,267 @@
+package logic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import database.CustomerDAO;
+import database.CustomerStore;
+
+/**
+ * Cache över alla kunder, sorterade på förnamn, efternamn och personnummer
+ * i samma ordning som kundlistan i GUI:t. Laddas från databasen vid första
+ * användning och hålls sedan uppdaterad stegvis när kunder skapas, byter
+ * namn eller tas bort, så att index- och personnummeruppslag inte behöver
+ * läsa hela kundtabellen. Kunder som andra klienter ändrat markeras som
+ * inaktuella och hämtas först vid nästa uppslag.
+ *
+ */
+class CustomerDirectory {
+
+    static final Comparator<Customer> ORDER = CustomerDAO.NAME_ORDER;
+
+    /** Fler inaktuella kunder än så läses hellre om med hela katalogen. */
+    private static final int MAX_STALE = 1_000;
+
+    private final CustomerStore customerStore;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Kunder i {@link #ORDER}-ordning, null tills katalogen laddats. */
+    private List<Customer> sorted;
+    private final Map<String, Customer> byPNo = new HashMap<>();
+    /** Kunder som ändrats på okänt sätt och saknas i {@link #sorted} tills de hämtats. */
+    private final Set<String> stale = new HashSet<>();
+    private String[] infoArray;
+
+    /**
+     * Konstruktor för kundkatalogen.
+     *
+     * @param customerStore lagringen som katalogen laddas från.
+     */
+    CustomerDirectory(CustomerStore customerStore) {
+        this.customerStore = customerStore;
+    }
+
+    /**
+     * Hämtar kunden på en viss position.
+     *
+     * @param index position i den sorterade listan
+     * @return kunden, eller null om indexet är utanför listan.
+     */
+    Customer get(int index) {
+        lock.readLock().lock();
+        try {
+            if (isCurrent()) {
+                return index >= 0 && index < sorted.size() ? sorted.get(index) : null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        load();
+        return get(index);
+    }
+
+    /**
+     * Hämtar en kunds position i den sorterade listan.
+     *
+     * @param pNo personnummer
+     * @return position, eller -1 om kunden inte finns.
+     */
+    int indexOf(String pNo) {
+        lock.readLock().lock();
+        try {
+            if (isCurrent()) {
+                Customer customer = byPNo.get(pNo);
+                if (customer == null) {
+                    return -1;
+                }
+                return Collections.binarySearch(sorted, customer, ORDER);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        load();
+        return indexOf(pNo);
+    }
+
+    /**
+     * Hämtar info om alla kunder i sorterad ordning. Arrayen återanvänds
+     * tills katalogen ändras och får inte modifieras av anroparen.
+     *
+     * @return array med {@link Customer#toString()} för varje kund.
+     */
+    String[] infoArray() {
+        lock.readLock().lock();
+        try {
+            if (infoArray != null) {
+                return infoArray;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+            if (infoArray == null) {
+                String[] info = new String[sorted.size()];
+                for (int i = 0; i < info.length; i++) {
+                    info[i] = sorted.get(i).toString();
+                }
+                infoArray = info;
+            }
+            return infoArray;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lägger till en nyskapad kund på rätt position.
+     *
+     * @param customer kunden
+     */
+    void added(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            if (sorted == null) {
+                return;
+            }
+            stale.remove(customer.getpNo());
+            Customer previous = byPNo.put(customer.getpNo(), customer);
+            if (previous != null) {
+                sorted.remove(Collections.binarySearch(sorted, previous, ORDER));
+            }
+            int pos = Collections.binarySearch(sorted, customer, ORDER);
+            sorted.add(pos < 0 ? -pos - 1 : pos, customer);
+            infoArray = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flyttar en kund som bytt namn till sin nya position.
+     *
+     * @param pNo personnummer
+     * @param name nytt förnamn
+     * @param surname nytt efternamn
+     */
+    void renamed(String pNo, String name, String surname) {
+        added(new Customer(name, surname, pNo));
+    }
+
+    /**
+     * Tar bort en kund.
+     *
+     * @param pNo personnummer
+     */
+    void removed(String pNo) {
+        lock.writeLock().lock();
+        try {
+            if (sorted == null) {
+                return;
+            }
+            stale.remove(pNo);
+            remove(pNo);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Markerar kunder som skapats, bytt namn eller tagits bort utan att
+     * katalogen vet vilket. De hämtas från databasen vid nästa uppslag.
+     *
+     * @param pNos personnummer
+     */
+    void changed(Collection<String> pNos) {
+        if (pNos.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (sorted == null) {
+                return;
+            }
+            if (stale.size() + pNos.size() > MAX_STALE) {
+                clear();
+                return;
+            }
+            for (String pNo : pNos) {
+                remove(pNo);
+                stale.add(pNo);
+            }
+            infoArray = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Tömmer katalogen så att den laddas om vid nästa uppslag. */
+    void invalidate() {
+        lock.writeLock().lock();
+        try {
+            clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isCurrent() {
+        return sorted != null && stale.isEmpty();
+    }
+
+    private void remove(String pNo) {
+        Customer customer = byPNo.remove(pNo);
+        if (customer != null) {
+            sorted.remove(Collections.binarySearch(sorted, customer, ORDER));
+            infoArray = null;
+        }
+    }
+
+    private void clear() {
+        sorted = null;
+        byPNo.clear();
+        stale.clear();
+        infoArray = null;
+    }
+
+    private void load() {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (sorted != null) {
+            for (Iterator<String> it = stale.iterator(); it.hasNext(); ) {
+                Customer customer = customerStore.findByPNo(it.next());
+                it.remove();
+                if (customer != null) {
+                    byPNo.put(customer.getpNo(), customer);
+                    int pos = Collections.binarySearch(sorted, customer, ORDER);
+                    sorted.add(pos < 0 ? -pos - 1 : pos, customer);
+                }
+            }
+            return;
+        }
+        List<Customer> customers = new ArrayList<>(customerStore.getAllCustomers());
+        byPNo.clear();
+        for (Customer customer : customers) {
+            byPNo.put(customer.getpNo(), customer);
+        }
+        sorted = customers;
+    }
+}
@@ -0,0 +1,426 @@
+package logic;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import database.CustomerDAO;
+import model.AccountType;
+
+/**
+ * Importerar kunder i bulk från en CSV-fil. Filen läses i delbatchar om
+ * {@link #CHUNK_SIZE} rader som valideras parallellt, och medan en
+ * delbatch skrivs till databasen läses och valideras nästa. Rader som inte
+ * kan tolkas, personnummer som förekommer flera gånger i filen och kunder
+ * som redan finns i banken avvisas och skrivs till en separat fil med
+ * radnummer och orsak.
+ *
+ * <p>Varje rad har formatet {@code förnamn,efternamn,personnummer} följt av
+ * noll eller flera par {@code kontotyp,saldo}, till exempel
+ * {@code Anna,Berg,19900101-1234,SAVINGS,1000.00,CREDIT,0}. Fält kan
+ * omges av dubbla citattecken. En rubrikrad, tomma rader och rader som
+ * börjar med {@code #} hoppas över.
+ *
+ */
+public class CustomerImporter {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(CustomerImporter.class.getName());
+
+    /** Antal rader per delbatch och databastransaktion. */
+    static final int CHUNK_SIZE = 5_000;
+
+    private static final Pattern PNO = Pattern.compile("(\\d{2})?\\d{6}-?\\d{4}");
+
+    /** Tar emot framsteg under en import. Anropas från importerande tråd. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param linesRead antal rader som lästs hittills
+         * @param customersImported antal kunder som skapats hittills
+         * @param rejected antal rader som avvisats hittills
+         */
+        void onProgress(long linesRead, long customersImported, long rejected);
+    }
+
+    /**
+     * Resultatet av en import.
+     *
+     * @param lines antal lästa rader, rubrik och tomma rader inräknade
+     * @param customers antal skapade kunder
+     * @param accounts antal skapade konton
+     * @param rejected antal avvisade rader
+     * @param rejectedFile filen med avvisade rader
+     * @param elapsed importens totala tid
+     */
+    public record Result(long lines, long customers, long accounts, long rejected,
+                         Path rejectedFile, Duration elapsed) {
+
+        /** @return antal lästa rader per sekund. */
+        public double linesPerSecond() {
+            long nanos = Math.max(1, elapsed.toNanos());
+            return lines * 1_000_000_000.0 / nanos;
+        }
+    }
+
+    private record Line(long number, String text) {
+    }
+
+    private record Rejection(long line, String reason, String text) {
+    }
+
+    /** En tolkad rad: antingen en kund att importera eller en orsak att avvisa raden. */
+    private record Parsed(Line line, CustomerDAO.ImportRow row, String reason) {
+
+        static Parsed rejected(Line line, String reason) {
+            return new Parsed(line, null, reason);
+        }
+    }
+
+    /** En validerad delbatch på väg till databasen. */
+    private record Chunk(Future<CustomerDAO.ImportResult> insert,
+                         Map<Long, String> texts, List<Rejection> rejections) {
+    }
+
+    /** Summor för de delbatchar som importerats hittills. */
+    private static final class Totals {
+        long customers;
+        long accounts;
+        long rejected;
+
+        void add(Chunk chunk, CustomerDAO.ImportResult result) {
+            customers += result.customers();
+            accounts += result.accounts();
+            rejected += chunk.rejections().size();
+        }
+    }
+
+    private final BankLogic bankLogic;
+
+    /**
+     * Konstruktor för CustomerImporter.
+     *
+     * @param bankLogic banklogiken som kunderna importeras till.
+     */
+    public CustomerImporter(BankLogic bankLogic) {
+        this.bankLogic = bankLogic;
+    }
+
+    /**
+     * Importerar kunderna i en CSV-fil. Varje delbatch committas för sig,
+     * så om importen avbryts finns de delbatchar som redan skrivits kvar.
+     * En befintlig fil för avvisade rader skrivs över.
+     *
+     * @param csv filen som ska importeras
+     * @param rejectedFile filen som avvisade rader skrivs till
+     * @param progress tar emot framsteg, kan vara null
+     * @return resultatet av importen.
+     * @throws IOException om en fil inte kunde läsas eller skrivas
+     */
+    public Result importFile(Path csv, Path rejectedFile, ProgressListener progress)
+            throws IOException {
+
+        long started = System.nanoTime();
+        long linesRead = 0;
+        Totals totals = new Totals();
+        Set<String> seen = new HashSet<>();
+
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectedFile, StandardCharsets.UTF_8)) {
+
+            rejects.write("rad,orsak,innehåll");
+            rejects.newLine();
+
+            // The chunk submitted to the writer and not yet awaited
+            Chunk pending = null;
+            try {
+                List<Line> lines = new ArrayList<>(CHUNK_SIZE);
+                boolean done = false;
+                while (!done) {
+                    String text = in.readLine();
+                    if (text != null) {
+                        linesRead++;
+                        if (!isSkipped(text, linesRead)) {
+                            lines.add(new Line(linesRead, text));
+                        }
+                    } else {
+                        done = true;
+                    }
+                    if (lines.size() < CHUNK_SIZE && !done) {
+                        continue;
+                    }
+
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException("Import cancelled");
+                    }
+                    Chunk next = validate(lines, seen, writer);
+                    lines = new ArrayList<>(CHUNK_SIZE);
+
+                    Chunk finishing = pending;
+                    pending = next;
+                    if (finishing != null) {
+                        totals.add(finishing, finish(finishing, rejects, false));
+                        if (progress != null) {
+                            progress.onProgress(linesRead, totals.customers, totals.rejected);
+                        }
+                    }
+                }
+                if (pending != null) {
+                    Chunk last = pending;
+                    pending = null;
+                    totals.add(last, finish(last, rejects, false));
+                    if (progress != null) {
+                        progress.onProgress(linesRead, totals.customers, totals.rejected);
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw failed(e, pending, rejects, totals);
+            }
+
+        } finally {
+            writer.shutdownNow();
+        }
+
+        Result result = new Result(linesRead, totals.customers, totals.accounts, totals.rejected,
+                rejectedFile,
+                Duration.ofNanos(System.nanoTime() - started));
+        LOGGER.info(() -> String.format(
+                "Imported %d customers and %d accounts from %s, %d rows rejected, %.0f lines/s",
+                result.customers(), result.accounts(), csv.getFileName(),
+                result.rejected(), result.linesPerSecond()));
+        return result;
+    }
+
+    /**
+     * Väntar in delbatchen som redan skickats till databasen när importen
+     * avbryts, eftersom den kan committas trots att tråden avbryts. Dess
+     * avvisade rader skrivs till filen och dess kunder räknas med i felet.
+     *
+     * @return felet som importen avbryts med.
+     */
+    private static RuntimeException failed(RuntimeException error, Chunk inFlight,
+                                           BufferedWriter rejects, Totals totals) {
+        if (inFlight != null) {
+            try {
+                totals.add(inFlight, finish(inFlight, rejects, true));
+            } catch (RuntimeException | IOException e) {
+                error.addSuppressed(e);
+            }
+        }
+        LOGGER.warning(() -> String.format(
+                "Import failed after %d customers and %d accounts were imported",
+                totals.customers, totals.accounts));
+        String reason = error instanceof CancellationException ? "Importen avbröts" : "Importen misslyckades";
+        return new IllegalStateException(String.format(
+                "%s efter att %d kunder och %d konton importerats: %s",
+                reason, totals.customers, totals.accounts, error.getMessage()), error);
+    }
+
+    /**
+     * Tolkar en delbatch parallellt, avvisar personnummer som redan setts i
+     * filen och lämnar resten till {@code writer} för import.
+     */
+    private Chunk validate(List<Line> lines, Set<String> seen, ExecutorService writer) {
+        List<Parsed> parsed = lines.parallelStream().map(CustomerImporter::parse).toList();
+
+        List<CustomerDAO.ImportRow> rows = new ArrayList<>(parsed.size());
+        Map<Long, String> texts = new HashMap<>();
+        List<Rejection> rejections = new ArrayList<>();
+        for (Parsed p : parsed) {
+            if (p.reason() != null) {
+                rejections.add(new Rejection(p.line().number(), p.reason(), p.line().text()));
+            } else if (!seen.add(p.row().customer().getpNo())) {
+                rejections.add(new Rejection(p.line().number(),
+                        "Personnumret förekommer tidigare i filen", p.line().text()));
+            } else {
+                rows.add(p.row());
+                texts.put(p.line().number(), p.line().text());
+            }
+        }
+
+        Future<CustomerDAO.ImportResult> insert = rows.isEmpty()
+                ? null
+                : writer.submit(() -> bankLogic.importCustomers(rows));
+        return new Chunk(insert, texts, rejections);
+    }
+
+    /**
+     * Väntar på att en delbatch importerats och skriver dess avvisade rader
+     * i radordning.
+     *
+     * @param uninterruptibly vänta även om tråden avbryts
+     */
+    private static CustomerDAO.ImportResult finish(Chunk chunk, BufferedWriter rejects,
+                                                   boolean uninterruptibly) throws IOException {
+
+        CustomerDAO.ImportResult result = chunk.insert() == null
+                ? new CustomerDAO.ImportResult(0, 0, List.of())
+                : await(chunk.insert(), uninterruptibly);
+        for (long line : result.duplicateLines()) {
+            chunk.rejections().add(new Rejection(line, "Kunden finns redan", chunk.texts().get(line)));
+        }
+
+        chunk.rejections().sort(Comparator.comparingLong(Rejection::line));
+        for (Rejection r : chunk.rejections()) {
+            rejects.write(r.line() + "," + quote(r.reason()) + "," + quote(r.text()));
+            rejects.newLine();
+        }
+        return result;
+    }
+
+    private static CustomerDAO.ImportResult await(Future<CustomerDAO.ImportResult> future,
+                                                  boolean uninterruptibly) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    if (!uninterruptibly) {
+                        throw new CancellationException("Import interrupted");
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean isSkipped(String text, long number) {
+        String trimmed = text.strip();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return true;
+        }
+        if (number == 1) {
+            List<String> fields = split(trimmed);
+            return fields != null && fields.size() >= 3
+                    && (fields.get(2).equalsIgnoreCase("pno")
+                        || fields.get(2).equalsIgnoreCase("personnummer"));
+        }
+        return false;
+    }
+
+    /** Tolkar och validerar en rad. Anropas parallellt. */
+    private static Parsed parse(Line line) {
+        List<String> fields = split(line.text());
+        if (fields == null) {
+            return Parsed.rejected(line, "Felaktiga citattecken");
+        }
+        if (fields.size() < 3) {
+            return Parsed.rejected(line, "För få fält");
+        }
+        if ((fields.size() - 3) % 2 != 0) {
+            return Parsed.rejected(line, "Kontotyp saknar saldo");
+        }
+
+        String name = fields.get(0);
+        String surname = fields.get(1);
+        String pNo = fields.get(2);
+        if (name.isEmpty()) {
+            return Parsed.rejected(line, "Förnamn saknas");
+        }
+        if (surname.isEmpty()) {
+            return Parsed.rejected(line, "Efternamn saknas");
+        }
+        if (!PNO.matcher(pNo).matches()) {
+            return Parsed.rejected(line, "Ogiltigt personnummer");
+        }
+
+        List<CustomerDAO.OpeningAccount> accounts = new ArrayList<>((fields.size() - 3) / 2);
+        for (int i = 3; i < fields.size(); i += 2) {
+            AccountType type;
+            try {
+                type = AccountType.valueOf(fields.get(i).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return Parsed.rejected(line, "Okänd kontotyp: " + fields.get(i));
+            }
+
+            BigDecimal balance;
+            try {
+                balance = new BigDecimal(fields.get(i + 1));
+            } catch (NumberFormatException e) {
+                return Parsed.rejected(line, "Ogiltigt saldo: " + fields.get(i + 1));
+            }
+            if (balance.scale() > 2) {
+                return Parsed.rejected(line, "Saldot har fler än två decimaler");
+            }
+            if (type == AccountType.SAVINGS && balance.signum() < 0) {
+                return Parsed.rejected(line, "Sparkonto kan inte ha negativt saldo");
+            }
+            accounts.add(new CustomerDAO.OpeningAccount(type, balance));
+        }
+
+        return new Parsed(line,
+                new CustomerDAO.ImportRow(line.number(), new Customer(name, surname, pNo), accounts),
+                null);
+    }
+
+    /**
+     * Delar en CSV-rad i fält med blanksteg runt varje fält borttagna.
+     *
+     * @return fälten, eller null om ett citattecken inte avslutats.
+     */
+    private static List<String> split(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().strip());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString().strip());
+        return fields;
+    }
+
+    private static String quote(String value) {
+        return '"' + (value == null ? "" : value.replace("\"", "\"\"")) + '"';
+    }
+}
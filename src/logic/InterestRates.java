@@ -0,0 +1,54 @@
+package logic;
+
+import java.math.BigDecimal;
+
+/**
+ * Räntesatser för en räntekörning, i procent för hela perioden.
+ *
+ * <p>Banken har inga inbyggda räntesatser. De anges för varje körning, och
+ * förslag kan ges med {@code -Dbank.interest.savings},
+ * {@code -Dbank.interest.credit} och {@code -Dbank.interest.debt}.
+ *
+ * @param savings ränta på sparkonton
+ * @param credit ränta på kreditkonton med positivt saldo
+ * @param creditDebt skuldränta på kreditkonton med negativt saldo
+ */
+public record InterestRates(BigDecimal savings, BigDecimal credit, BigDecimal creditDebt) {
+
+    public InterestRates {
+        if (savings.signum() < 0 || credit.signum() < 0 || creditDebt.signum() < 0) {
+            throw new IllegalArgumentException("Interest rates cannot be negative");
+        }
+    }
+
+    /**
+     * Tolkar räntesatser i procent, med punkt eller komma som decimaltecken.
+     *
+     * @param savings ränta på sparkonton
+     * @param credit ränta på kreditkonton med positivt saldo
+     * @param creditDebt skuldränta på kreditkonton med negativt saldo
+     * @return räntesatserna.
+     * @throws NumberFormatException om en räntesats inte är ett tal
+     * @throws IllegalArgumentException om en räntesats är negativ
+     */
+    public static InterestRates parse(String savings, String credit, String creditDebt) {
+        return new InterestRates(percent(savings), percent(credit), percent(creditDebt));
+    }
+
+    /**
+     * Hämtar föreslagna räntesatser från systemegenskaperna, som text.
+     *
+     * @return sparränta, kreditränta och skuldränta, tom text för de som inte angetts.
+     */
+    public static String[] suggested() {
+        return new String[] {
+                System.getProperty("bank.interest.savings", ""),
+                System.getProperty("bank.interest.credit", ""),
+                System.getProperty("bank.interest.debt", "")
+        };
+    }
+
+    private static BigDecimal percent(String text) {
+        return new BigDecimal(text.strip().replace(',', '.'));
+    }
+}
@@ -0,0 +1,170 @@
+package logic;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import database.InterestDAO;
+import database.InterestStore;
+import model.Money;
+
+/**
+ * Räntekörning vid periodens slut för alla konton. Kontona delas upp i
+ * intervall av konto-id som behandlas parallellt, en delbatch om
+ * {@link #BATCH_SIZE} konton i taget. Varje delbatch räknas ut och bokförs
+ * i ett svep som också flyttar fram intervallets kontrollpunkt,
+ * så en avbruten körning fortsätter där den slutade när den startas om för
+ * samma period och inget konto får ränta två gånger.
+ *
+ */
+public class InterestRun {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(InterestRun.class.getName());
+
+    /** Antal konton per delbatch och transaktion. */
+    static final int BATCH_SIZE = 10_000;
+
+    /** Intervall per tråd, så att en tråd som blir klar tidigt kan ta nästa. */
+    private static final int SLICES_PER_THREAD = 4;
+
+    /** Tar emot framsteg under en räntekörning. Kan anropas från flera trådar. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param accountsScanned antal konton som behandlats hittills i denna körning
+         * @param slicesDone antal intervall som är klara
+         * @param slicesTotal antal intervall i körningen
+         */
+        void onProgress(long accountsScanned, int slicesDone, int slicesTotal);
+    }
+
+    /**
+     * Resultatet av en räntekörning, inklusive tidigare avbrutna försök för
+     * samma period.
+     *
+     * @param period perioden
+     * @param accounts antal konton som fått eller debiterats ränta
+     * @param interest summa bokförd ränta, skuldränta avdragen
+     * @param elapsed tid för denna körning
+     */
+    public record Result(String period, long accounts, Money interest, Duration elapsed) {
+    }
+
+    private final InterestStore interestStore;
+    private final int parallelism;
+
+    /**
+     * Konstruktor för InterestRun.
+     *
+     * @param interestStore lagringsmotorns räntekörningar.
+     * @param parallelism hur många intervall som behandlas samtidigt.
+     */
+    InterestRun(InterestStore interestStore, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.interestStore = interestStore;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Kör eller återupptar räntekörningen för en period.
+     *
+     * @param period periodens namn, till exempel "2026"
+     * @param rates räntesatser för perioden
+     * @param progress tar emot framsteg, kan vara null
+     * @return resultatet av körningen.
+     * @throws IllegalStateException om perioden redan körs
+     */
+    Result run(String period, InterestRates rates, ProgressListener progress) {
+        long started = System.nanoTime();
+        String description = "Interest " + period;
+
+        try (InterestStore.RunLock lock = interestStore.tryLock(period)) {
+            if (lock == null) {
+                throw new IllegalStateException("Räntekörningen för " + period + " pågår redan");
+            }
+
+            List<InterestDAO.Slice> slices =
+                    interestStore.startOrResume(period, parallelism * SLICES_PER_THREAD);
+            AtomicLong scanned = new AtomicLong();
+            AtomicLong accounts = new AtomicLong();
+            AtomicLong interestOre = new AtomicLong();
+            AtomicInteger done = new AtomicInteger();
+            for (InterestDAO.Slice slice : slices) {
+                accounts.addAndGet(slice.accounts());
+                interestOre.addAndGet(slice.interest().ore());
+                if (slice.finished()) {
+                    done.incrementAndGet();
+                }
+            }
+
+            ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+            try {
+                List<Future<?>> pending = new ArrayList<>();
+                for (InterestDAO.Slice slice : slices) {
+                    if (slice.finished()) {
+                        continue;
+                    }
+                    pending.add(workers.submit(() -> {
+                        while (true) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                throw new CancellationException("Interest run cancelled");
+                            }
+                            InterestDAO.BatchResult batch = interestStore.accrueBatch(
+                                    period, slice.slice(), BATCH_SIZE,
+                                    rates.savings(), rates.credit(), rates.creditDebt(),
+                                    description);
+                            long total = scanned.addAndGet(batch.scanned());
+                            accounts.addAndGet(batch.credited());
+                            interestOre.addAndGet(batch.interest().ore());
+                            int slicesDone = batch.finished() ? done.incrementAndGet() : done.get();
+                            if (progress != null) {
+                                progress.onProgress(total, slicesDone, slices.size());
+                            }
+                            if (batch.finished()) {
+                                return null;
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> f : pending) {
+                    await(f);
+                }
+            } finally {
+                workers.shutdownNow();
+            }
+
+            Result result = new Result(period, accounts.get(), Money.ofOre(interestOre.get()),
+                    Duration.ofNanos(System.nanoTime() - started));
+            LOGGER.info(() -> String.format(
+                    "Interest run %s: %d accounts scanned in %d ms, %d credited in total, net %s",
+                    period, scanned.get(), result.elapsed().toMillis(),
+                    result.accounts(), result.interest()));
+            return result;
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interest run interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
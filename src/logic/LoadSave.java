@@ -1,77 +1,141 @@
 package logic;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-
-import javax.swing.JOptionPane;
+import java.util.Map;
 
 /**
- * Klass som hanterar sparande och laddande av data.
+ * Klass som hanterar sparande och laddande av data. Banken sparas som en
+ * binär ögonblicksbild (se {@link SnapshotWriter}) i stället för som ett
+ * serialiserat objekt, så att filen inte beror på programmets klasser och
+ * kan skrivas och läsas utan att hela banken hålls i minnet.
  *
  */
 public class LoadSave {
     /**
-     * Sparar bankens data till en fil.
+     * Sparar bankens data till en fil. Ögonblicksbilden skrivs först till en
+     * temporär fil som sedan byter namn, så en befintlig fil skrivs aldrig
+     * över med en halvfärdig.
      *
      * @param bankLogic banklogik.
      * @param filePath sökvägen till filen där data ska sparas.
+     * @return sammanfattning av det som sparades.
+     * @throws IOException om filen inte kunde skrivas.
      */
-    public static void saveBankToFile(BankLogic bankLogic, String filePath) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            out.writeObject(bankLogic);
-            out.writeInt(Account.getLastAssignedId());
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, e.getMessage());
-        }
+    public static SnapshotInfo saveBankToFile(BankLogic bankLogic, String filePath) throws IOException {
+        return save(bankLogic, filePath, 0);
     }
 
     /**
-     * Laddar bankens data från en fil. Intellij rekommenderade pattern variable här.
+     * Sparar bara det som ändrats sedan en tidigare sparad ögonblicksbild.
+     * Den tidigare bilden måste vara den senaste fullständiga bilden från
+     * databasen eller en inkrementell bild som bygger på den. Filen läses in
+     * med {@link #loadBankFromFile(BankLogic, String)} så länge alla bilder i
+     * kedjan ligger i samma katalog.
      *
-     * @param filePath sökvägen till filen där data ska laddas ifrån.
-     * @return banklogik med uppdaterad data, alternativt null om det inte gick att ladda.
+     * @param bankLogic banklogik.
+     * @param parentPath den tidigare ögonblicksbilden.
+     * @param filePath sökvägen till filen där ändringarna ska sparas.
+     * @return sammanfattning av det som sparades.
+     * @throws IOException om filerna inte kunde läsas eller skrivas.
      */
-    public static BankLogic loadBankFromFile(String filePath) {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filePath))) {
-            Object object = in.readObject();
-            if (!(object instanceof BankLogic bankLogic)) {
-                JOptionPane.showMessageDialog(null, "Felaktigt filformat");
-                return null;
+    public static SnapshotInfo saveIncrementalBankToFile(BankLogic bankLogic, String parentPath,
+                                                         String filePath) throws IOException {
+        SnapshotInfo parent;
+        try (SnapshotReader reader = new SnapshotReader(Paths.get(parentPath))) {
+            parent = reader.info();
+        }
+        if (parent.snapshotId() == 0) {
+            throw new IOException("Den tidigare ögonblicksbilden är sparad i ett äldre format");
+        }
+        return save(bankLogic, filePath, parent.snapshotId());
+    }
+
+    private static SnapshotInfo save(BankLogic bankLogic, String filePath, long parentId) throws IOException {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            SnapshotInfo info;
+            try (SnapshotWriter writer = new SnapshotWriter(temp, true, parentId)) {
+                info = bankLogic.writeSnapshot(writer);
             }
-            int lastAssignedId = in.readInt();
-            Account.setLastAssignedID(lastAssignedId);
-            return bankLogic;
-        } catch (IOException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(null, e.getMessage());
-            return null;
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return info;
+        } finally {
+            Files.deleteIfExists(temp);
         }
     }
 
     /**
-     * Sparar en transaktion till en fil.
+     * Laddar bankens data från en fil. Allt nuvarande innehåll i databasen
+     * ersätts med innehållet i filen. Är filen inkrementell letas de
+     * ögonblicksbilder den bygger på upp i samma katalog och läses in först.
      *
-     * @param filePath sökvägen till filen där transaktionen ska sparas.
-     * @param transaction transaktionen som ska sparas.
-     * @return transaktionen som sparades, eller null om det inte gick att spara.
+     * @param bankLogic banklogiken vars databas ska fyllas.
+     * @param filePath sökvägen till filen där data ska laddas ifrån.
+     * @return sammanfattning av det som laddades.
+     * @throws IOException om filen inte kunde läsas eller har fel format.
      */
-    public static List<String> saveTransactionToFile(String filePath, List<String> transaction) {
-        try {
-            Files.write(
-                    Paths.get(filePath),
-                    transaction,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND);
-            return transaction;
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Error saving transaction: " + e.getMessage());
-            return null;
+    public static SnapshotInfo loadBankFromFile(BankLogic bankLogic, String filePath) throws IOException {
+        return bankLogic.restoreSnapshot(resolveChain(Paths.get(filePath).toAbsolutePath()));
+    }
+
+    /**
+     * Följer en inkrementell ögonblicksbild bakåt till den fullständiga bild
+     * den bygger på. Alla filer i samma katalog som går att läsa som
+     * ögonblicksbilder kandiderar.
+     *
+     * @return kedjan med den fullständiga bilden först och {@code tip} sist.
+     */
+    private static List<Path> resolveChain(Path tip) throws IOException {
+        SnapshotInfo info;
+        try (SnapshotReader reader = new SnapshotReader(tip)) {
+            info = reader.info();
+        }
+        if (!info.isIncremental()) {
+            return List.of(tip);
+        }
+
+        Map<Long, Path> byId = new HashMap<>();
+        Map<Long, Long> parents = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tip.getParent())) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                try (SnapshotReader reader = new SnapshotReader(file)) {
+                    SnapshotInfo candidate = reader.info();
+                    if (candidate.snapshotId() != 0) {
+                        byId.put(candidate.snapshotId(), file);
+                        parents.put(candidate.snapshotId(), candidate.parentId());
+                    }
+                } catch (IOException e) {
+                    // Inte en ögonblicksbild
+                }
+            }
+        }
+
+        Deque<Path> chain = new ArrayDeque<>();
+        chain.addFirst(tip);
+        long parentId = info.parentId();
+        while (parentId != 0) {
+            Path parent = byId.get(parentId);
+            if (parent == null || chain.contains(parent)) {
+                throw new IOException("Hittar inte ögonblicksbilden som "
+                        + chain.peekFirst().getFileName() + " bygger på");
+            }
+            chain.addFirst(parent);
+            parentId = parents.get(parentId);
         }
+        return new ArrayList<>(chain);
     }
 }
@@ -0,0 +1,64 @@
+package logic;
+
+import model.Money;
+import model.TransactionType;
+
+/**
+ * En insättning eller ett uttag som ska bokföras via {@link BankLogic#postBatch}.
+ *
+ * @param pNo kundens personnummer
+ * @param accountId kontots id
+ * @param amount beloppet, alltid positivt
+ * @param transactionType {@link TransactionType#DEPOSIT} eller {@link TransactionType#WITHDRAWAL}
+ */
+public record PostingCommand(String pNo, int accountId, Money amount,
+                             TransactionType transactionType) {
+
+    /**
+     * Skapar ett insättningskommando.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param amount belopp att sätta in, i kronor
+     * @return kommandot.
+     */
+    public static PostingCommand deposit(String pNo, int accountId, int amount) {
+        return deposit(pNo, accountId, Money.ofKronor(amount));
+    }
+
+    /**
+     * Skapar ett insättningskommando.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param amount belopp att sätta in
+     * @return kommandot.
+     */
+    public static PostingCommand deposit(String pNo, int accountId, Money amount) {
+        return new PostingCommand(pNo, accountId, amount, TransactionType.DEPOSIT);
+    }
+
+    /**
+     * Skapar ett uttagskommando.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param amount belopp att ta ut, i kronor
+     * @return kommandot.
+     */
+    public static PostingCommand withdraw(String pNo, int accountId, int amount) {
+        return withdraw(pNo, accountId, Money.ofKronor(amount));
+    }
+
+    /**
+     * Skapar ett uttagskommando.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param amount belopp att ta ut
+     * @return kommandot.
+     */
+    public static PostingCommand withdraw(String pNo, int accountId, Money amount) {
+        return new PostingCommand(pNo, accountId, amount, TransactionType.WITHDRAWAL);
+    }
+}
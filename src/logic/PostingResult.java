@@ -0,0 +1,31 @@
+package logic;
+
+/**
+ * Resultatet av ett {@link PostingCommand} i en batch.
+ *
+ * @param command kommandot som resultatet gäller
+ * @param status utfallet
+ */
+public record PostingResult(PostingCommand command, Status status) {
+
+    /** Utfall för ett enskilt kommando. */
+    public enum Status {
+        /** Bokfört. */
+        POSTED,
+        /** Beloppet eller transaktionstypen är ogiltig, skickades aldrig till databasen. */
+        INVALID,
+        /** Kontot finns inte, tillhör inte kunden, eller sparkontot skulle bli negativt. */
+        REJECTED,
+        /** Databasfel, hela delbatchen rullades tillbaka. */
+        FAILED
+    }
+
+    /**
+     * Kontrollerar om kommandot bokfördes.
+     *
+     * @return true om kommandot bokfördes, annars false.
+     */
+    public boolean isPosted() {
+        return status == Status.POSTED;
+    }
+}
@@ -2,10 +2,10 @@ package logic;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.NumberFormat;
-import java.util.Locale;
 
 import model.AccountType;
+import model.Formats;
+import model.Money;
 
 /**
  * Klass som innefattar ett sparkonto.
@@ -84,13 +84,9 @@ public class SavingsAccount extends Account {
      */
     @Override
     public String calculateAndFormatInterest() {
-        BigDecimal totalInterest =
-                getBalance()
-                        .multiply(
-                                getInterest()
-                                        .divide(new BigDecimal("100"), 10, RoundingMode.HALF_UP));
-        return NumberFormat.getCurrencyInstance(Locale.forLanguageTag("sv-SE"))
-                .format(totalInterest);
+        Money totalInterest = Money.of(getBalance(), RoundingMode.HALF_UP)
+                .percent(getInterest(), RoundingMode.HALF_UP);
+        return Formats.currency(totalInterest);
     }
 
     /**
@@ -0,0 +1,205 @@
+package logic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Gemensamma konstanter och kodare för bankens binära ögonblicksbild.
+ *
+ * <pre>
+ * fil     := header block* slutblock
+ * header  := magic(4) version(2) flaggor(2) skapad(8, epoch-ms)
+ * block   := typ(1) rader(4) rålängd(4) lagrad längd(4) crc32(4) data
+ * data    := kolumn*            (komprimerad med Deflate om flaggan är satt)
+ * kolumn  := längd(varint) värden
+ * </pre>
+ *
+ * Varje block innehåller högst {@link #BLOCK_ROWS} rader av en tabell, lagrade
+ * kolumn för kolumn. Heltal och id:n lagras som zigzag-varint, id:n och
+ * tidpunkter som skillnad mot föregående rad. CRC32 beräknas över de lagrade
+ * byten så att en skadad fil upptäcks innan den packas upp. Slutblocket
+ * innehåller antalet rader per tabell och, från version 2, ögonblicksbildens
+ * id och id för den ögonblicksbild en inkrementell bild bygger på. Från
+ * version 3 har transaktionerna en sjunde kolumn med saldot efter
+ * transaktionen.
+ *
+ * <p>En inkrementell ögonblicksbild innehåller bara ändrade och nya rader
+ * samt block med nycklar för borttagna kunder och konton.
+ *
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x424B534E; // "BKSN"
+    static final short VERSION = 3;
+    /** Äldsta version som kan läsas; version 1 saknar id i slutblocket. */
+    static final short MIN_VERSION = 1;
+    static final short FLAG_DEFLATE = 1;
+
+    static final int HEADER_BYTES = 16;
+    static final int BLOCK_HEADER_BYTES = 17;
+    static final int BLOCK_ROWS = 8192;
+
+    static final byte BLOCK_END = 0;
+    static final byte BLOCK_CUSTOMERS = 1;
+    static final byte BLOCK_ACCOUNTS = 2;
+    static final byte BLOCK_TRANSACTIONS = 3;
+    static final byte BLOCK_CUSTOMER_DELETIONS = 4;
+    static final byte BLOCK_ACCOUNT_DELETIONS = 5;
+
+    private SnapshotFormat() {
+    }
+
+    static long toEpochMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(
+                Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000,
+                ZoneOffset.UTC);
+    }
+
+    /** Växande bytebuffert som en kolumn skrivs till. */
+    static final class ColumnBuffer {
+        private byte[] bytes = new byte[4096];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /** Sträng som längd + 1 följt av UTF-8; längd 0 betyder null. */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        /** Decimaltal som skala följt av det oskalade värdet; null lagras som skala -1. */
+        void writeDecimal(BigDecimal value) {
+            if (value == null) {
+                writeZigZag(-1);
+                return;
+            }
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() > 63 || value.scale() < 0) {
+                value = value.setScale(Math.max(0, value.scale()));
+                unscaled = value.unscaledValue();
+                if (unscaled.bitLength() > 63) {
+                    throw new IllegalArgumentException("Amount out of range: " + value);
+                }
+            }
+            writeZigZag(value.scale());
+            writeZigZag(unscaled.longValue());
+        }
+
+        void writeTo(ColumnBuffer target) {
+            target.writeVarLong(size);
+            target.ensure(size);
+            System.arraycopy(bytes, 0, target.bytes, target.size, size);
+            target.size += size;
+        }
+
+        byte[] array() {
+            return bytes;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /** Läser värden ur en kolumn i ett uppackat block. */
+    static final class ColumnReader {
+        private final ByteBuffer data;
+
+        private ColumnReader(ByteBuffer data) {
+            this.data = data;
+        }
+
+        /** Delar upp ett blocks data i nästa kolumn. */
+        static ColumnReader next(ByteBuffer block) {
+            int length = (int) readVarLong(block);
+            ByteBuffer column = block.slice(block.position(), length);
+            block.position(block.position() + length);
+            return new ColumnReader(column);
+        }
+
+        long readVarLong() {
+            return readVarLong(data);
+        }
+
+        long readZigZag() {
+            long raw = readVarLong(data);
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong(data) - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(
+                    data.array(), data.arrayOffset() + data.position(), length,
+                    StandardCharsets.UTF_8);
+            data.position(data.position() + length);
+            return value;
+        }
+
+        BigDecimal readDecimal() {
+            int scale = (int) readZigZag();
+            if (scale < 0) {
+                return null;
+            }
+            return BigDecimal.valueOf(readZigZag(), scale);
+        }
+
+        private static long readVarLong(ByteBuffer buffer) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
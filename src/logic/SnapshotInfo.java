@@ -0,0 +1,42 @@
+package logic;
+
+import java.time.Instant;
+
+/**
+ * Sammanfattning av en ögonblicksbild av banken.
+ *
+ * @param snapshotId ögonblicksbildens id, 0 för filer i version 1
+ * @param parentId id för ögonblicksbilden en inkrementell bild bygger på, 0 för en fullständig
+ * @param customers antal kunder
+ * @param accounts antal konton
+ * @param transactions antal transaktioner
+ * @param deletedCustomers antal borttagna kunder i en inkrementell bild
+ * @param deletedAccounts antal borttagna konton i en inkrementell bild
+ * @param created när ögonblicksbilden skapades
+ */
+public record SnapshotInfo(long snapshotId, long parentId,
+                           long customers, long accounts, long transactions,
+                           long deletedCustomers, long deletedAccounts,
+                           Instant created) {
+
+    /**
+     * Kontrollerar om ögonblicksbilden är inkrementell.
+     *
+     * @return true om den bara innehåller ändringar sedan en tidigare bild.
+     */
+    public boolean isIncremental() {
+        return parentId != 0;
+    }
+
+    @Override
+    public String toString() {
+        if (isIncremental()) {
+            return String.format(
+                    "%d ändrade kunder, %d ändrade konton, %d nya transaktioner, "
+                            + "%d borttagna kunder, %d borttagna konton (%s)",
+                    customers, accounts, transactions, deletedCustomers, deletedAccounts, created);
+        }
+        return String.format("%d kunder, %d konton, %d transaktioner (%s)",
+                customers, accounts, transactions, created);
+    }
+}
@@ -0,0 +1,296 @@
+package logic;
+
+import static logic.SnapshotFormat.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import database.AccountDAO;
+import database.TransactionDAO;
+import model.AccountType;
+
+/**
+ * Läser en ögonblicksbild skriven av {@link SnapshotWriter}. Varje tabell
+ * läses för sig och block för andra tabeller hoppas över utan att läsas,
+ * så flera läsare kan läsa olika tabeller ur samma fil parallellt. Bara ett
+ * block i taget hålls i minnet.
+ *
+ */
+public class SnapshotReader implements AutoCloseable {
+
+    private static final AccountType[] ACCOUNT_TYPES = AccountType.values();
+
+    private final FileChannel channel;
+    private final short version;
+    private final boolean compressed;
+    private final Instant created;
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final Inflater inflater = new Inflater();
+    private byte[] stored = new byte[0];
+    private byte[] raw = new byte[0];
+
+    /**
+     * Öppnar en ögonblicksbild och kontrollerar filhuvudet.
+     *
+     * @param file filen som ska läsas
+     * @throws IOException om filen inte kunde läsas eller inte är en ögonblicksbild
+     */
+    public SnapshotReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Felaktigt filformat");
+            }
+            version = header.getShort();
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException("Filformatets version " + version + " stöds inte");
+            }
+            compressed = (header.getShort() & FLAG_DEFLATE) != 0;
+            created = Instant.ofEpochMilli(header.getLong());
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Läser slutblocket med antalet rader per tabell.
+     *
+     * @return sammanfattning av ögonblicksbilden.
+     * @throws IOException om filen är skadad eller saknar slutblock
+     */
+    public SnapshotInfo info() throws IOException {
+        long[] totals = new long[7];
+        int fields = version == 1 ? 3 : totals.length;
+        scan(BLOCK_END, (block, rows) -> {
+            ColumnReader column = ColumnReader.next(block);
+            for (int i = 0; i < fields; i++) {
+                totals[i] = column.readVarLong();
+            }
+        });
+        return new SnapshotInfo(totals[5], totals[6], totals[0], totals[1], totals[2],
+                totals[3], totals[4], created);
+    }
+
+    /**
+     * Läser alla kunder.
+     *
+     * @param sink tar emot en kund i taget
+     * @return antal kunder.
+     * @throws IOException om filen är skadad
+     */
+    public long readCustomers(Consumer<Customer> sink) throws IOException {
+        return scan(BLOCK_CUSTOMERS, (block, rows) -> {
+            ColumnReader pNo = ColumnReader.next(block);
+            ColumnReader name = ColumnReader.next(block);
+            ColumnReader surname = ColumnReader.next(block);
+            for (int i = 0; i < rows; i++) {
+                sink.accept(new Customer(name.readString(), surname.readString(), pNo.readString()));
+            }
+        });
+    }
+
+    /**
+     * Läser alla konton.
+     *
+     * @param sink tar emot ett konto i taget
+     * @return antal konton.
+     * @throws IOException om filen är skadad
+     */
+    public long readAccounts(Consumer<AccountDAO.AccountRecord> sink) throws IOException {
+        return scan(BLOCK_ACCOUNTS, (block, rows) -> {
+            ColumnReader id = ColumnReader.next(block);
+            ColumnReader pNo = ColumnReader.next(block);
+            ColumnReader type = ColumnReader.next(block);
+            ColumnReader balance = ColumnReader.next(block);
+            long accountId = 0;
+            for (int i = 0; i < rows; i++) {
+                accountId += id.readZigZag();
+                sink.accept(new AccountDAO.AccountRecord(
+                        (int) accountId,
+                        pNo.readString(),
+                        ACCOUNT_TYPES[(int) type.readVarLong()],
+                        balance.readDecimal()));
+            }
+        });
+    }
+
+    /**
+     * Läser alla transaktioner.
+     *
+     * @param sink tar emot en transaktion i taget
+     * @return antal transaktioner.
+     * @throws IOException om filen är skadad
+     */
+    public long readTransactions(Consumer<TransactionDAO.TransactionRecord> sink) throws IOException {
+        return scan(BLOCK_TRANSACTIONS, (block, rows) -> {
+            ColumnReader id = ColumnReader.next(block);
+            ColumnReader accountId = ColumnReader.next(block);
+            ColumnReader amount = ColumnReader.next(block);
+            ColumnReader type = ColumnReader.next(block);
+            ColumnReader description = ColumnReader.next(block);
+            ColumnReader time = ColumnReader.next(block);
+            ColumnReader balanceAfter = version >= 3 ? ColumnReader.next(block) : null;
+            long transactionId = 0;
+            long micros = 0;
+            for (int i = 0; i < rows; i++) {
+                transactionId += id.readZigZag();
+                long encodedTime = time.readVarLong();
+                if (encodedTime != 0) {
+                    long delta = encodedTime - 1;
+                    micros += (delta >>> 1) ^ -(delta & 1);
+                }
+                sink.accept(new TransactionDAO.TransactionRecord(
+                        (int) transactionId,
+                        (int) accountId.readZigZag(),
+                        amount.readDecimal(),
+                        type.readString(),
+                        description.readString(),
+                        encodedTime != 0 ? fromEpochMicros(micros) : null,
+                        balanceAfter != null ? balanceAfter.readDecimal() : null));
+            }
+        });
+    }
+
+    /**
+     * Läser personnumren för kunder som tagits bort, i en inkrementell ögonblicksbild.
+     *
+     * @param sink tar emot ett personnummer i taget
+     * @return antal borttagna kunder.
+     * @throws IOException om filen är skadad
+     */
+    public long readCustomerDeletions(Consumer<String> sink) throws IOException {
+        return scan(BLOCK_CUSTOMER_DELETIONS, (block, rows) -> {
+            ColumnReader pNo = ColumnReader.next(block);
+            for (int i = 0; i < rows; i++) {
+                sink.accept(pNo.readString());
+            }
+        });
+    }
+
+    /**
+     * Läser id för konton som tagits bort, i en inkrementell ögonblicksbild.
+     *
+     * @param sink tar emot ett konto-id i taget
+     * @return antal borttagna konton.
+     * @throws IOException om filen är skadad
+     */
+    public long readAccountDeletions(IntConsumer sink) throws IOException {
+        return scan(BLOCK_ACCOUNT_DELETIONS, (block, rows) -> {
+            ColumnReader id = ColumnReader.next(block);
+            long accountId = 0;
+            for (int i = 0; i < rows; i++) {
+                accountId += id.readZigZag();
+                sink.accept((int) accountId);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    @FunctionalInterface
+    private interface BlockHandler {
+        void accept(ByteBuffer block, int rows);
+    }
+
+    /**
+     * Går igenom filens block från början och avkodar de av en viss typ.
+     *
+     * @return antal rader i de avkodade blocken.
+     */
+    private long scan(byte wanted, BlockHandler handler) throws IOException {
+        long position = HEADER_BYTES;
+        long rowsRead = 0;
+        while (true) {
+            blockHeader.clear();
+            if (!readFully(blockHeader, position)) {
+                throw new IOException("Ögonblicksbilden saknar slutblock");
+            }
+            blockHeader.flip();
+            byte type = blockHeader.get();
+            int rows = blockHeader.getInt();
+            int rawLength = blockHeader.getInt();
+            int storedLength = blockHeader.getInt();
+            int checksum = blockHeader.getInt();
+            position += BLOCK_HEADER_BYTES;
+
+            if (type == wanted) {
+                handler.accept(readBlock(position, rawLength, storedLength, checksum), rows);
+                rowsRead += rows;
+            }
+            if (type == BLOCK_END) {
+                return rowsRead;
+            }
+            position += storedLength;
+        }
+    }
+
+    private ByteBuffer readBlock(long position, int rawLength, int storedLength,
+                                 int checksum) throws IOException {
+        if (stored.length < storedLength) {
+            stored = new byte[storedLength];
+        }
+        if (!readFully(ByteBuffer.wrap(stored, 0, storedLength), position)) {
+            throw new IOException("Ögonblicksbilden är avkortad");
+        }
+        crc.reset();
+        crc.update(stored, 0, storedLength);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Felaktig kontrollsumma vid position " + position);
+        }
+        if (!compressed) {
+            return ByteBuffer.wrap(stored, 0, storedLength).slice();
+        }
+
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        inflater.reset();
+        inflater.setInput(stored, 0, storedLength);
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, n, rawLength - n);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != rawLength) {
+                throw new IOException("Felaktig blocklängd vid position " + position);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Skadat block vid position " + position, e);
+        }
+        return ByteBuffer.wrap(raw, 0, rawLength).slice();
+    }
+
+    /** @return false om filen tog slut innan bufferten fylldes. */
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                return false;
+            }
+            position += n;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,336 @@
+package logic;
+
+import static logic.SnapshotFormat.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import database.AccountDAO;
+import database.TransactionDAO;
+
+/**
+ * Skriver en ögonblicksbild av banken i det kolumnbaserade binärformatet
+ * som beskrivs i {@link SnapshotFormat}. Rader buffras kolumnvis tills ett
+ * block är fullt och skrivs sedan genom en {@link FileChannel}, så
+ * minnesåtgången är konstant oavsett bankens storlek.
+ *
+ * <p>Rader av samma slag bör skrivas i följd, eftersom ett block avslutas
+ * varje gång en rad av ett annat slag skrivs.
+ *
+ */
+public class SnapshotWriter implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final boolean compress;
+    private final Deflater deflater;
+    private final Instant created = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    private final long snapshotId = UUID.randomUUID().getMostSignificantBits() | 1;
+    private final long parentId;
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    private final ColumnBuffer[] columns = new ColumnBuffer[7];
+    private final ColumnBuffer payload = new ColumnBuffer();
+    private byte[] compressed = new byte[0];
+
+    private byte blockType = BLOCK_CUSTOMERS;
+    private int blockRows;
+    private long previousId;
+    private long previousTime;
+    private long customers;
+    private long accounts;
+    private long transactions;
+    private long deletedCustomers;
+    private long deletedAccounts;
+    private boolean closed;
+
+    /**
+     * Skapar en fil för en fullständig ögonblicksbild. En befintlig fil skrivs över.
+     *
+     * @param file filen som ska skrivas
+     * @param compress om blocken ska komprimeras med Deflate
+     * @throws IOException om filen inte kunde skapas
+     */
+    public SnapshotWriter(Path file, boolean compress) throws IOException {
+        this(file, compress, 0);
+    }
+
+    /**
+     * Skapar en fil för en ögonblicksbild. En befintlig fil skrivs över.
+     *
+     * @param file filen som ska skrivas
+     * @param compress om blocken ska komprimeras med Deflate
+     * @param parentId id för ögonblicksbilden som en inkrementell bild bygger
+     *                 på, eller 0 för en fullständig
+     * @throws IOException om filen inte kunde skapas
+     */
+    public SnapshotWriter(Path file, boolean compress, long parentId) throws IOException {
+        this.parentId = parentId;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.compress = compress;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnBuffer();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort(compress ? FLAG_DEFLATE : 0)
+                .putLong(created.toEpochMilli())
+                .flip();
+        writeFully(header);
+    }
+
+    /**
+     * Hämtar ögonblicksbildens id.
+     *
+     * @return id, aldrig 0.
+     */
+    public long getSnapshotId() {
+        return snapshotId;
+    }
+
+    /**
+     * Hämtar id för ögonblicksbilden som denna bygger på.
+     *
+     * @return id, eller 0 för en fullständig ögonblicksbild.
+     */
+    public long getParentId() {
+        return parentId;
+    }
+
+    /**
+     * Skriver en kund.
+     *
+     * @param customer kunden
+     * @throws IOException om blocket inte kunde skrivas
+     */
+    public void writeCustomer(Customer customer) throws IOException {
+        startRow(BLOCK_CUSTOMERS);
+        columns[0].writeString(customer.getpNo());
+        columns[1].writeString(customer.getName());
+        columns[2].writeString(customer.getSurname());
+        customers++;
+        endRow();
+    }
+
+    /**
+     * Skriver ett konto.
+     *
+     * @param account kontot
+     * @throws IOException om blocket inte kunde skrivas
+     */
+    public void writeAccount(AccountDAO.AccountRecord account) throws IOException {
+        startRow(BLOCK_ACCOUNTS);
+        columns[0].writeZigZag(account.getAccountId() - previousId);
+        previousId = account.getAccountId();
+        columns[1].writeString(account.getpNo());
+        columns[2].writeByte(account.getAccountType().ordinal());
+        columns[3].writeDecimal(account.getBalance());
+        accounts++;
+        endRow();
+    }
+
+    /**
+     * Skriver en transaktion.
+     *
+     * @param transaction transaktionen
+     * @throws IOException om blocket inte kunde skrivas
+     */
+    public void writeTransaction(TransactionDAO.TransactionRecord transaction) throws IOException {
+        startRow(BLOCK_TRANSACTIONS);
+        columns[0].writeZigZag(transaction.transactionId() - previousId);
+        previousId = transaction.transactionId();
+        columns[1].writeZigZag(transaction.accountId());
+        columns[2].writeDecimal(transaction.amount());
+        columns[3].writeString(transaction.transactionType());
+        columns[4].writeString(transaction.description());
+        LocalDateTime time = transaction.transactionTime();
+        if (time == null) {
+            columns[5].writeVarLong(0);
+        } else {
+            long micros = toEpochMicros(time);
+            // Shifted by one so that 0 can mean null
+            columns[5].writeVarLong(zigZag(micros - previousTime) + 1);
+            previousTime = micros;
+        }
+        columns[6].writeDecimal(transaction.balanceAfter());
+        transactions++;
+        endRow();
+    }
+
+    /**
+     * Skriver att en kund tagits bort sedan föregående ögonblicksbild.
+     *
+     * @param pNo kundens personnummer
+     * @throws IOException om blocket inte kunde skrivas
+     */
+    public void writeCustomerDeletion(String pNo) throws IOException {
+        startRow(BLOCK_CUSTOMER_DELETIONS);
+        columns[0].writeString(pNo);
+        deletedCustomers++;
+        endRow();
+    }
+
+    /**
+     * Skriver att ett konto tagits bort sedan föregående ögonblicksbild.
+     *
+     * @param accountId kontots id
+     * @throws IOException om blocket inte kunde skrivas
+     */
+    public void writeAccountDeletion(int accountId) throws IOException {
+        startRow(BLOCK_ACCOUNT_DELETIONS);
+        columns[0].writeZigZag(accountId - previousId);
+        previousId = accountId;
+        deletedAccounts++;
+        endRow();
+    }
+
+    /**
+     * Skriver det sista blocket och slutblocket och stänger filen.
+     *
+     * @return sammanfattning av det som skrevs.
+     * @throws IOException om filen inte kunde skrivas
+     */
+    public SnapshotInfo finish() throws IOException {
+        if (!closed) {
+            flushBlock();
+            ColumnBuffer totals = columns[0];
+            totals.writeVarLong(customers);
+            totals.writeVarLong(accounts);
+            totals.writeVarLong(transactions);
+            totals.writeVarLong(deletedCustomers);
+            totals.writeVarLong(deletedAccounts);
+            totals.writeVarLong(snapshotId);
+            totals.writeVarLong(parentId);
+            blockType = BLOCK_END;
+            writeBlock(0, 1);
+            channel.force(false);
+            close();
+        }
+        return info();
+    }
+
+    /**
+     * Sammanfattning av det som skrivits hittills.
+     *
+     * @return sammanfattningen.
+     */
+    public SnapshotInfo info() {
+        return new SnapshotInfo(snapshotId, parentId, customers, accounts, transactions,
+                deletedCustomers, deletedAccounts, created);
+    }
+
+    /** Stänger filen. Utan {@link #finish()} saknar filen slutblock och kan inte läsas. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+        channel.close();
+    }
+
+    private void startRow(byte type) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Snapshot is closed");
+        }
+        if (type != blockType) {
+            flushBlock();
+            blockType = type;
+            previousId = 0;
+            previousTime = 0;
+        }
+    }
+
+    private void endRow() throws IOException {
+        if (++blockRows == BLOCK_ROWS) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRows == 0) {
+            return;
+        }
+        int columnCount = switch (blockType) {
+            case BLOCK_CUSTOMERS -> 3;
+            case BLOCK_ACCOUNTS -> 4;
+            case BLOCK_TRANSACTIONS -> 7;
+            default -> 1;
+        };
+        writeBlock(blockRows, columnCount);
+        blockRows = 0;
+        // Deltas restart in every block so blocks can be decoded independently
+        previousId = 0;
+        previousTime = 0;
+    }
+
+    private void writeBlock(int rows, int columnCount) throws IOException {
+        payload.reset();
+        for (int i = 0; i < columnCount; i++) {
+            columns[i].writeTo(payload);
+            columns[i].reset();
+        }
+
+        byte[] stored = payload.array();
+        int storedLength = payload.size();
+        if (compress) {
+            deflater.reset();
+            deflater.setInput(payload.array(), 0, payload.size());
+            deflater.finish();
+            if (compressed.length < payload.size() + 64) {
+                compressed = new byte[payload.size() + payload.size() / 8 + 64];
+            }
+            storedLength = 0;
+            while (!deflater.finished()) {
+                storedLength += deflater.deflate(
+                        compressed, storedLength, compressed.length - storedLength);
+                if (storedLength == compressed.length && !deflater.finished()) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+            }
+            stored = compressed;
+        }
+
+        crc.reset();
+        crc.update(stored, 0, storedLength);
+
+        blockHeader.clear();
+        blockHeader.put(blockType)
+                .putInt(rows)
+                .putInt(payload.size())
+                .putInt(storedLength)
+                .putInt((int) crc.getValue())
+                .flip();
+        writeFully(blockHeader);
+        writeFully(ByteBuffer.wrap(stored, 0, storedLength));
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -21,7 +21,7 @@ public class Transaction implements Serializable {
     public Transaction(String date, String amount, String balance) {
         this.date = date;
         this.amount = amount;
-        this.balance = amount;
+        this.balance = balance;
     }
 
     /**
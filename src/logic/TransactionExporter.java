@@ -0,0 +1,371 @@
+package logic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import database.AccountDAO;
+import database.TransactionDAO;
+
+/**
+ * Exporterar kontohistorik till fil utan att läsa in den i minnet.
+ * Transaktionerna strömmas från databasen rad för rad och skrivs genom en
+ * buffrad {@link FileChannel}, så minnesåtgången är konstant oavsett hur
+ * många transaktioner ett konto har. Flera konton exporteras parallellt,
+ * en fil per konto.
+ *
+ */
+public class TransactionExporter {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(TransactionExporter.class.getName());
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** Hur ofta (antal rader) framsteg rapporteras under en export. */
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    /** Filformat för exporten. */
+    public enum Format {
+        /** Samma radformat som kontohistoriken visas i. */
+        TEXT("txt"),
+        /** Kommaseparerade värden med rubrikrad. */
+        CSV("csv");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /** Tar emot framsteg under en export. Kan anropas från flera trådar. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param rowsWritten antal rader som skrivits hittills
+         * @param accountsDone antal konton som exporterats klart
+         * @param accountsTotal antal konton som ska exporteras
+         */
+        void onProgress(long rowsWritten, int accountsDone, int accountsTotal);
+    }
+
+    /** Resultatet av en export. */
+    public record Result(int accounts, long rows, List<Path> files) {
+    }
+
+    private final BankLogic bankLogic;
+    private final int parallelism;
+
+    /**
+     * Konstruktor för TransactionExporter.
+     *
+     * @param bankLogic banklogiken som transaktionerna läses från.
+     * @param parallelism hur många konton som exporteras samtidigt.
+     */
+    public TransactionExporter(BankLogic bankLogic, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.bankLogic = bankLogic;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Konstruktor för TransactionExporter som exporterar lika många konton
+     * samtidigt som anslutningspoolen har plats för.
+     *
+     * @param bankLogic banklogiken som transaktionerna läses från.
+     */
+    public TransactionExporter(BankLogic bankLogic) {
+        this(bankLogic, Math.max(1, Math.min(
+                bankLogic.getConcurrency() - 1,
+                Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Exporterar ett kontos transaktioner till en fil. En befintlig fil skrivs över.
+     *
+     * @param pNo kundens personnummer
+     * @param accountId kontots id
+     * @param file filen som ska skrivas
+     * @param format filformat
+     * @param progress tar emot framsteg, kan vara null
+     * @return resultatet, eller null om kontot inte finns.
+     * @throws IOException om filen inte kunde skrivas
+     */
+    public Result exportAccount(String pNo, int accountId, Path file,
+                                Format format, ProgressListener progress) throws IOException {
+
+        Progress tracker = new Progress(1, progress);
+        long rows = writeAccount(pNo, accountId, file, format, tracker);
+        if (rows < 0) {
+            Files.deleteIfExists(file);
+            return null;
+        }
+        tracker.accountDone();
+        return new Result(1, rows, List.of(file));
+    }
+
+    /**
+     * Exporterar alla konton för en kund till en katalog, en fil per konto.
+     *
+     * @param pNo kundens personnummer
+     * @param directory katalogen som filerna skrivs till
+     * @param format filformat
+     * @param progress tar emot framsteg, kan vara null
+     * @return resultatet.
+     * @throws IOException om någon fil inte kunde skrivas
+     */
+    public Result exportCustomer(String pNo, Path directory,
+                                 Format format, ProgressListener progress) throws IOException {
+        return exportAll(bankLogic.getAccounts(pNo), directory, format, progress);
+    }
+
+    /**
+     * Exporterar alla konton i banken till en katalog, en fil per konto.
+     *
+     * @param directory katalogen som filerna skrivs till
+     * @param format filformat
+     * @param progress tar emot framsteg, kan vara null
+     * @return resultatet.
+     * @throws IOException om någon fil inte kunde skrivas
+     */
+    public Result exportBank(Path directory, Format format,
+                             ProgressListener progress) throws IOException {
+        return exportAll(bankLogic.getAllAccounts(), directory, format, progress);
+    }
+
+    /**
+     * Filnamnet som ett konto exporteras till i en katalog.
+     *
+     * @param accountId kontots id
+     * @param format filformat
+     * @return filnamnet.
+     */
+    public static String fileName(int accountId, Format format) {
+        return "konto-" + accountId + "." + format.getExtension();
+    }
+
+    private Result exportAll(List<AccountDAO.AccountRecord> accounts, Path directory,
+                             Format format, ProgressListener progress) throws IOException {
+
+        Files.createDirectories(directory);
+        Progress tracker = new Progress(accounts.size(), progress);
+        ExecutorService workers = Executors.newFixedThreadPool(
+                Math.min(parallelism, Math.max(1, accounts.size())));
+
+        try {
+            List<Future<Long>> pending = new ArrayList<>(accounts.size());
+            List<Path> files = new ArrayList<>(accounts.size());
+            for (AccountDAO.AccountRecord account : accounts) {
+                Path file = directory.resolve(fileName(account.getAccountId(), format));
+                files.add(file);
+                pending.add(workers.submit(() -> {
+                    long rows = writeAccount(
+                            account.getpNo(), account.getAccountId(), file, format, tracker);
+                    tracker.accountDone();
+                    return rows;
+                }));
+            }
+
+            long total = 0;
+            for (Future<Long> f : pending) {
+                total += Math.max(0, await(f));
+            }
+            return new Result(accounts.size(), total, files);
+
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static long await(Future<Long> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Export interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Strömmar ett kontos transaktioner till en fil.
+     *
+     * @return antal rader, eller -1 om kontot inte finns.
+     */
+    private long writeAccount(String pNo, int accountId, Path file,
+                              Format format, Progress tracker) throws IOException {
+
+        try (ChannelWriter out = new ChannelWriter(file)) {
+            if (format == Format.CSV) {
+                out.write("transaction_id,account_id,transaction_time,transaction_type,amount,description\n");
+            }
+            StringBuilder line = new StringBuilder(128);
+            return bankLogic.streamTransactions(pNo, accountId, t -> {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Export cancelled");
+                }
+                line.setLength(0);
+                if (format == Format.CSV) {
+                    appendCsv(line, t);
+                } else {
+                    line.append(t);
+                }
+                line.append('\n');
+                try {
+                    out.write(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                tracker.rowWritten();
+            });
+        } catch (UncheckedIOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to export account " + accountId, e);
+            throw e.getCause();
+        }
+    }
+
+    private static void appendCsv(StringBuilder line, TransactionDAO.TransactionRecord t) {
+        line.append(t.transactionId()).append(',')
+                .append(t.accountId()).append(',');
+        if (t.transactionTime() != null) {
+            line.append(t.transactionTime());
+        }
+        line.append(',')
+                .append(t.transactionType()).append(',')
+                .append(t.amount().toPlainString()).append(',');
+        appendCsvField(line, t.description());
+    }
+
+    private static void appendCsvField(StringBuilder line, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    /** Samlar framsteg från alla exporttrådar och rapporterar dem glest. */
+    private static final class Progress {
+        private final int accountsTotal;
+        private final ProgressListener listener;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicInteger accountsDone = new AtomicInteger();
+
+        Progress(int accountsTotal, ProgressListener listener) {
+            this.accountsTotal = accountsTotal;
+            this.listener = listener;
+        }
+
+        void rowWritten() {
+            long n = rows.incrementAndGet();
+            if (listener != null && n % PROGRESS_INTERVAL == 0) {
+                listener.onProgress(n, accountsDone.get(), accountsTotal);
+            }
+        }
+
+        void accountDone() {
+            int done = accountsDone.incrementAndGet();
+            if (listener != null) {
+                listener.onProgress(rows.get(), done, accountsTotal);
+            }
+        }
+    }
+
+    /**
+     * UTF-8-kodande skrivare mot en {@link FileChannel} med en återanvänd
+     * direktbuffert, så att inga mellanliggande strängar eller byte-arrayer
+     * skapas per rad.
+     */
+    private static final class ChannelWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        ChannelWriter(Path file) throws IOException {
+            channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    flush();
+                } else if (result.isUnderflow()) {
+                    return;
+                } else {
+                    result.throwException();
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of operation timers, counters and gauges.
+ *
+ * <p>Timers and counters are created once, typically into
+ * {@code static final} fields, and are then updated without locking or
+ * allocation. Gauges are read only when metrics are reported. Everything
+ * is exposed over JMX under the {@code bank} domain and can be dumped as
+ * text or JSON, see {@link MetricsReporter}.
+ *
+ * <p>Recording is on unless the system property {@code bank.metrics} is
+ * {@code false}. It can also be switched at runtime over JMX.
+ */
+public final class Metrics {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(Metrics.class.getName());
+
+    private static final String DOMAIN = "bank";
+
+    private static final ConcurrentMap<String, OperationTimer> TIMERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled =
+            !"false".equalsIgnoreCase(System.getProperty("bank.metrics"));
+
+    static {
+        register("type=Metrics", new Registry());
+    }
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Returns the timer for an operation, creating and registering it with
+     * JMX on first use.
+     *
+     * @param name operation name, conventionally {@code Class.method}
+     */
+    public static OperationTimer timer(String name) {
+        return TIMERS.computeIfAbsent(name, n -> {
+            OperationTimer timer = new OperationTimer(n);
+            register("type=Operation,name=" + ObjectName.quote(n), timer);
+            return timer;
+        });
+    }
+
+    /** Returns the counter with the given name, creating it on first use. */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Registers a value that is read whenever metrics are reported,
+     * replacing any earlier gauge with the same name.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /** Resets all timers and counters. Gauges are left alone. */
+    public static void reset() {
+        TIMERS.values().forEach(OperationTimer::reset);
+        COUNTERS.values().forEach(LongAdder::reset);
+    }
+
+    /** Formats all metrics as aligned text, one operation per line. */
+    public static String dumpText() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-40s %10s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "mean us", "p50 us", "p90 us",
+                "p99 us", "p99.9 us", "max us"));
+        for (OperationTimer timer : new TreeMap<>(TIMERS).values()) {
+            LatencyHistogram.Snapshot s = timer.snapshot();
+            out.append(String.format("%-40s %10d %7d %9d %9d %9d %9d %9d %9d%n",
+                    timer.getName(), s.count(), timer.getErrors(),
+                    OperationTimer.micros(s.mean()),
+                    OperationTimer.micros(s.percentile(50)),
+                    OperationTimer.micros(s.percentile(90)),
+                    OperationTimer.micros(s.percentile(99)),
+                    OperationTimer.micros(s.percentile(99.9)),
+                    OperationTimer.micros(s.max())));
+        }
+        counterValues().forEach((name, value) ->
+                out.append(String.format("%-40s %10d%n", name, value)));
+        gaugeValues().forEach((name, value) ->
+                out.append(String.format("%-40s %10d%n", name, value)));
+        return out.toString();
+    }
+
+    /** Formats all metrics as a single JSON object. */
+    public static String dumpJson() {
+        StringBuilder out = new StringBuilder("{\"timestamp\":")
+                .append(System.currentTimeMillis())
+                .append(",\"operations\":{");
+        String separator = "";
+        for (OperationTimer timer : new TreeMap<>(TIMERS).values()) {
+            LatencyHistogram.Snapshot s = timer.snapshot();
+            out.append(separator).append(quote(timer.getName()))
+                    .append(":{\"count\":").append(s.count())
+                    .append(",\"errors\":").append(timer.getErrors())
+                    .append(",\"meanMicros\":").append(OperationTimer.micros(s.mean()))
+                    .append(",\"p50Micros\":").append(OperationTimer.micros(s.percentile(50)))
+                    .append(",\"p90Micros\":").append(OperationTimer.micros(s.percentile(90)))
+                    .append(",\"p99Micros\":").append(OperationTimer.micros(s.percentile(99)))
+                    .append(",\"p999Micros\":").append(OperationTimer.micros(s.percentile(99.9)))
+                    .append(",\"maxMicros\":").append(OperationTimer.micros(s.max()))
+                    .append('}');
+            separator = ",";
+        }
+        out.append("},\"counters\":");
+        appendJson(out, counterValues());
+        out.append(",\"gauges\":");
+        appendJson(out, gaugeValues());
+        return out.append('}').toString();
+    }
+
+    private static Map<String, Long> counterValues() {
+        Map<String, Long> values = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    private static Map<String, Long> gaugeValues() {
+        Map<String, Long> values = new TreeMap<>();
+        GAUGES.forEach((name, gauge) -> {
+            try {
+                values.put(name, gauge.getAsLong());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Gauge " + name + " failed", e);
+            }
+        });
+        return values;
+    }
+
+    private static void appendJson(StringBuilder out, Map<String, Long> values) {
+        out.append('{');
+        String separator = "";
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            out.append(separator).append(quote(entry.getKey())).append(':').append(entry.getValue());
+            separator = ",";
+        }
+        out.append('}');
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static void register(String properties, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(bean, name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Could not register MBean " + properties, e);
+        }
+    }
+
+    private static final class Registry implements MetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return counterValues();
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return gaugeValues();
+        }
+
+        @Override
+        public String dumpText() {
+            return Metrics.dumpText();
+        }
+
+        @Override
+        public String dumpJson() {
+            return Metrics.dumpJson();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
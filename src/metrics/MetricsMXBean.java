@@ -0,0 +1,24 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link Metrics} registry. Per-operation latencies are
+ * registered separately as {@link OperationMXBean}s.
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    String dumpText();
+
+    String dumpJson();
+
+    void reset();
+}
@@ -0,0 +1,103 @@
+package metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically dumps all {@link Metrics}, either to the log or by
+ * replacing a file.
+ *
+ * <p>Configured with system properties:
+ * <ul>
+ *   <li>{@code bank.metrics.dump.interval}: seconds between dumps; no
+ *       reporter is started without it</li>
+ *   <li>{@code bank.metrics.dump.format}: {@code text} (default) or {@code json}</li>
+ *   <li>{@code bank.metrics.dump.file}: file to replace on every dump;
+ *       without it, dumps are logged at INFO</li>
+ * </ul>
+ */
+public final class MetricsReporter implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(MetricsReporter.class.getName());
+
+    private final ScheduledExecutorService scheduler;
+    private final boolean json;
+    private final Path file;
+
+    /**
+     * @param intervalSeconds seconds between dumps
+     * @param json {@code true} for JSON, {@code false} for text
+     * @param file file to replace on every dump, or {@code null} to log
+     */
+    public MetricsReporter(long intervalSeconds, boolean json, Path file) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("intervalSeconds must be positive");
+        }
+        this.json = json;
+        this.file = file;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts a reporter as configured by system properties.
+     *
+     * @return the reporter, or {@code null} if no interval is configured
+     */
+    public static MetricsReporter fromSystemProperties() {
+        String interval = System.getProperty("bank.metrics.dump.interval");
+        if (interval == null) {
+            return null;
+        }
+        try {
+            String file = System.getProperty("bank.metrics.dump.file");
+            return new MetricsReporter(
+                    Long.parseLong(interval.trim()),
+                    "json".equalsIgnoreCase(System.getProperty("bank.metrics.dump.format")),
+                    file != null ? Paths.get(file) : null);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Invalid bank.metrics.dump.interval: " + interval, e);
+            return null;
+        }
+    }
+
+    /** Writes one dump now. */
+    public void report() {
+        String dump = json ? Metrics.dumpJson() : Metrics.dumpText();
+        if (file == null) {
+            LOGGER.info(() -> "Metrics:\n" + dump);
+            return;
+        }
+        try {
+            Path target = file.toAbsolutePath();
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(temp, dump, StandardCharsets.UTF_8);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write metrics to " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
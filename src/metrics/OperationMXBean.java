@@ -0,0 +1,25 @@
+package metrics;
+
+/**
+ * JMX view of one {@link OperationTimer}. Latencies are in microseconds.
+ */
+public interface OperationMXBean {
+
+    long getCount();
+
+    long getErrors();
+
+    long getMeanMicros();
+
+    long getP50Micros();
+
+    long getP90Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,109 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count for one named operation. Intended to
+ * be held in a {@code static final} field and used as
+ *
+ * <pre>
+ * long start = TIMER.start();
+ * try {
+ *     ...
+ * } catch (SQLException e) {
+ *     TIMER.failed();
+ *     ...
+ * } finally {
+ *     TIMER.stop(start);
+ * }
+ * </pre>
+ *
+ * Neither call allocates. While metrics are disabled, {@link #start()}
+ * returns 0 without reading the clock and {@link #stop(long)} ignores it.
+ */
+public final class OperationTimer implements OperationMXBean {
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationTimer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** @return the start time to pass to {@link #stop(long)} */
+    public long start() {
+        return Metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /** Records the time since {@code start}, unless metrics were disabled at start. */
+    public void stop(long start) {
+        if (start != 0) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /** Counts one failed call. The call's latency is still recorded by {@link #stop(long)}. */
+    public void failed() {
+        errors.increment();
+    }
+
+    public LatencyHistogram.Snapshot snapshot() {
+        return histogram.snapshot();
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.snapshot().count();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return micros(histogram.snapshot().mean());
+    }
+
+    @Override
+    public long getP50Micros() {
+        return micros(histogram.snapshot().percentile(50));
+    }
+
+    @Override
+    public long getP90Micros() {
+        return micros(histogram.snapshot().percentile(90));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return micros(histogram.snapshot().percentile(99));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return micros(histogram.snapshot().percentile(99.9));
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return micros(histogram.snapshot().max());
+    }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+        errors.reset();
+    }
+
+    static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
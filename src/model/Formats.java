@@ -0,0 +1,150 @@
+package model;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Färdiga formaterare för belopp, procentsatser och tidpunkter på svenska
+ * (sv-SE). Alla metoder är trådsäkra och skapar inga nya formaterare.
+ *
+ * <p>Belopp i hela öre formateras för hand, med samma resultat som
+ * {@link NumberFormat#getCurrencyInstance(Locale)} för sv-SE, till exempel
+ * "−1&nbsp;234,50&nbsp;kr". Övriga belopp och procentsatser formateras med en
+ * {@link NumberFormat} per tråd, eftersom {@link NumberFormat} inte är
+ * trådsäker.
+ *
+ */
+public final class Formats {
+
+    public static final Locale SWEDISH = Locale.forLanguageTag("sv-SE");
+
+    /** Tidpunkt med sekunder, till exempel "2026-03-01 14:05:09". */
+    public static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** Tusentalsavgränsare och mellanrum före valutan, som i sv-SE. */
+    private static final char NBSP = '\u00a0';
+    private static final char MINUS = '\u2212';
+    private static final String KRONOR = NBSP + "kr";
+
+    private static final ThreadLocal<NumberFormat> CURRENCY =
+            ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(SWEDISH));
+
+    private static final ThreadLocal<NumberFormat> PERCENT = ThreadLocal.withInitial(() -> {
+        NumberFormat format = NumberFormat.getPercentInstance(SWEDISH);
+        format.setMaximumFractionDigits(1);
+        return format;
+    });
+
+    private Formats() {
+    }
+
+    /**
+     * Formaterar ett belopp i öre som kronor, till exempel "1&nbsp;234,50&nbsp;kr".
+     *
+     * @param ore beloppet i öre
+     * @return det formaterade beloppet.
+     */
+    public static String currency(long ore) {
+        return appendCurrency(new StringBuilder(24), ore).toString();
+    }
+
+    /**
+     * Formaterar ett belopp i kronor. Belopp med fler än två decimaler
+     * avrundas som {@link NumberFormat} gör.
+     *
+     * @param kronor beloppet i kronor
+     * @return det formaterade beloppet.
+     */
+    public static String currency(BigDecimal kronor) {
+        // Whole öre that fit in a long take the hand-rolled path
+        if (kronor.scale() <= 2 && kronor.precision() - kronor.scale() <= 16) {
+            return currency(kronor.movePointRight(2).longValue());
+        }
+        return CURRENCY.get().format(kronor);
+    }
+
+    /**
+     * Formaterar ett belopp som kronor.
+     *
+     * @param amount beloppet
+     * @return det formaterade beloppet.
+     */
+    public static String currency(Money amount) {
+        return currency(amount.ore());
+    }
+
+    /**
+     * Lägger till ett belopp i öre, formaterat som kronor.
+     *
+     * @param out strängen att lägga till i
+     * @param ore beloppet i öre
+     * @return {@code out}.
+     */
+    public static StringBuilder appendCurrency(StringBuilder out, long ore) {
+        if (ore == Long.MIN_VALUE) {
+            return out.append(CURRENCY.get().format(BigDecimal.valueOf(ore, 2)));
+        }
+        if (ore < 0) {
+            out.append(MINUS);
+            ore = -ore;
+        }
+        String kronor = Long.toString(ore / 100);
+        int group = kronor.length() % 3 == 0 ? 3 : kronor.length() % 3;
+        out.append(kronor, 0, group);
+        for (int i = group; i < kronor.length(); i += 3) {
+            out.append(NBSP).append(kronor, i, i + 3);
+        }
+        int cents = (int) (ore % 100);
+        return out.append(',')
+                .append((char) ('0' + cents / 10))
+                .append((char) ('0' + cents % 10))
+                .append(KRONOR);
+    }
+
+    /**
+     * Formaterar ett belopp i öre som kronor med punkt och två decimaler,
+     * utan tusentalsavgränsare, till exempel "-1234.50".
+     *
+     * @param ore beloppet i öre
+     * @return det formaterade beloppet.
+     */
+    public static String plain(long ore) {
+        if (ore == Long.MIN_VALUE) {
+            return BigDecimal.valueOf(ore, 2).toPlainString();
+        }
+        StringBuilder out = new StringBuilder(22);
+        if (ore < 0) {
+            out.append('-');
+            ore = -ore;
+        }
+        int cents = (int) (ore % 100);
+        return out.append(ore / 100).append('.')
+                .append((char) ('0' + cents / 10))
+                .append((char) ('0' + cents % 10))
+                .toString();
+    }
+
+    /**
+     * Formaterar en procentsats med högst en decimal, till exempel "1,5&nbsp;%".
+     *
+     * @param percent procentsatsen, till exempel 1.5 för 1,5 %
+     * @return den formaterade procentsatsen.
+     */
+    public static String percent(BigDecimal percent) {
+        return PERCENT.get().format(percent.movePointLeft(2));
+    }
+
+    /**
+     * Formaterar en tidpunkt som {@link #TIMESTAMP}.
+     *
+     * @param time tidpunkten
+     * @return den formaterade tidpunkten.
+     */
+    public static String timestamp(LocalDateTime time) {
+        return TIMESTAMP.format(time);
+    }
+}
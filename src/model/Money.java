@@ -0,0 +1,163 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Ett belopp i kronor, lagrat som ett heltal öre. Värdet ändras aldrig,
+ * och addition, subtraktion och jämförelser görs med {@code long} utan att
+ * skapa några {@link BigDecimal}. Räkneoperationer som ger ett resultat
+ * utanför {@code long} kastar {@link ArithmeticException}.
+ *
+ * <p>Där ett belopp måste avrundas, till exempel vid ränteberäkning eller
+ * när det skapas från en {@link BigDecimal}, anges avrundningen alltid
+ * uttryckligen. I databasen motsvaras beloppet av en NUMERIC med två
+ * decimaler.
+ *
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    /** Öre per krona. */
+    private static final int ORE_PER_KRONA = 100;
+
+    /** Hela kronor som återanvänds i stället för att skapas på nytt. */
+    private static final Money[] KRONOR = new Money[1001];
+
+    static {
+        KRONOR[0] = ZERO;
+        for (int i = 1; i < KRONOR.length; i++) {
+            KRONOR[i] = new Money((long) i * ORE_PER_KRONA);
+        }
+    }
+
+    private final long ore;
+
+    private Money(long ore) {
+        this.ore = ore;
+    }
+
+    /**
+     * Skapar ett belopp i öre.
+     *
+     * @param ore beloppet i öre
+     * @return beloppet.
+     */
+    public static Money ofOre(long ore) {
+        if (ore >= 0 && ore % ORE_PER_KRONA == 0 && ore / ORE_PER_KRONA < KRONOR.length) {
+            return KRONOR[(int) (ore / ORE_PER_KRONA)];
+        }
+        return new Money(ore);
+    }
+
+    /**
+     * Skapar ett belopp i hela kronor.
+     *
+     * @param kronor beloppet i kronor
+     * @return beloppet.
+     */
+    public static Money ofKronor(long kronor) {
+        if (kronor >= 0 && kronor < KRONOR.length) {
+            return KRONOR[(int) kronor];
+        }
+        return new Money(Math.multiplyExact(kronor, ORE_PER_KRONA));
+    }
+
+    /**
+     * Skapar ett belopp från ett decimaltal i kronor.
+     *
+     * @param kronor beloppet i kronor
+     * @param rounding avrundning till hela öre, {@link RoundingMode#UNNECESSARY}
+     *                 om beloppet måste vara jämna öre
+     * @return beloppet.
+     * @throws ArithmeticException om beloppet inte går att avrunda som angivet
+     *                             eller inte ryms
+     */
+    public static Money of(BigDecimal kronor, RoundingMode rounding) {
+        return ofOre(kronor.movePointRight(2).setScale(0, rounding).longValueExact());
+    }
+
+    /**
+     * Tolkar ett belopp i kronor, med punkt eller komma som decimaltecken
+     * och högst två decimaler, till exempel "12,50".
+     *
+     * @param text beloppet
+     * @return beloppet.
+     * @throws NumberFormatException om texten inte är ett belopp i jämna öre
+     */
+    public static Money parse(String text) {
+        try {
+            return of(new BigDecimal(text.trim().replace(',', '.')), RoundingMode.UNNECESSARY);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Not a whole number of öre: " + text);
+        }
+    }
+
+    /** @return beloppet i öre. */
+    public long ore() {
+        return ore;
+    }
+
+    /** @return -1, 0 eller 1 beroende på om beloppet är negativt, noll eller positivt. */
+    public int signum() {
+        return Long.signum(ore);
+    }
+
+    public Money plus(Money other) {
+        return other.ore == 0 ? this : ofOre(Math.addExact(ore, other.ore));
+    }
+
+    public Money minus(Money other) {
+        return other.ore == 0 ? this : ofOre(Math.subtractExact(ore, other.ore));
+    }
+
+    public Money negate() {
+        return ore == 0 ? this : ofOre(Math.negateExact(ore));
+    }
+
+    public Money abs() {
+        return ore < 0 ? negate() : this;
+    }
+
+    /**
+     * Beräknar en procentsats av beloppet, till exempel ränta.
+     *
+     * @param percent procentsatsen, till exempel 1.5 för 1,5 %
+     * @param rounding avrundning till hela öre
+     * @return procentsatsen av beloppet.
+     */
+    public Money percent(BigDecimal percent, RoundingMode rounding) {
+        if (ore == 0 || percent.signum() == 0) {
+            return ZERO;
+        }
+        return ofOre(BigDecimal.valueOf(ore).multiply(percent).movePointLeft(2)
+                .setScale(0, rounding).longValueExact());
+    }
+
+    /** @return beloppet i kronor med två decimaler. */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(ore, 2);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(ore, other.ore);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money other && ore == other.ore;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(ore);
+    }
+
+    /** @return beloppet i kronor med två decimaler och punkt, till exempel "-12.50". */
+    @Override
+    public String toString() {
+        return Formats.plain(ore);
+    }
+}
@@ -0,0 +1,131 @@
+package database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import logic.Customer;
+import model.AccountType;
+import model.Money;
+import model.TransactionType;
+
+/**
+ * Point-in-time balances against a real database, selected like the
+ * application with {@code -Dbank.db.url}, {@code -Dbank.db.user} and
+ * {@code -Dbank.db.password}. Skipped when no database can be reached.
+ * Each test works on a customer of its own and deletes it afterwards.
+ */
+class BalanceHistoryTest {
+
+    private static PostgresEngine engine;
+
+    private String pNo;
+    private int account;
+    private int other;
+
+    @BeforeAll
+    static void connect() {
+        try {
+            engine = new PostgresEngine(Database.createPool());
+        } catch (SQLException | DatabaseException e) {
+            assumeTrue(false, "No database: " + e.getMessage());
+        }
+        engine.transactions().ensureBalanceHistory();
+    }
+
+    @AfterAll
+    static void close() {
+        if (engine != null) {
+            engine.close();
+        }
+    }
+
+    @BeforeEach
+    void createCustomer() {
+        pNo = String.format("99%010d", ThreadLocalRandom.current().nextLong(10_000_000_000L));
+        assertTrue(engine.customers().save(new Customer("Test", "Saldohistorik", pNo)));
+        account = engine.accounts().save(pNo, AccountType.CREDIT, Money.ZERO);
+        other = engine.accounts().save(pNo, AccountType.CREDIT, Money.ZERO);
+    }
+
+    @AfterEach
+    void deleteCustomer() {
+        engine.customers().delete(pNo);
+    }
+
+    /**
+     * A batch transaction starts first and posts to the account only after
+     * a deposit that started later has committed. The batch's posting is
+     * the later one, so the current balance and today's closing balance
+     * must include both.
+     */
+    @Test
+    void batchPostingAfterLaterDepositIsTheLatestBalance() throws Exception {
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        CountDownLatch depositCommitted = new CountDownLatch(1);
+        ExecutorService batchThread = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> batch = batchThread.submit(() ->
+                    engine.inTransaction(Connection.TRANSACTION_READ_COMMITTED, () -> {
+                        // Starts the database transaction on the batch's connection
+                        engine.accounts().applyDelta(other, pNo, Money.ofKronor(1),
+                                TransactionType.DEPOSIT, "Batch");
+                        batchStarted.countDown();
+                        awaitLatch(depositCommitted);
+                        engine.accounts().applyDelta(account, pNo, Money.ofKronor(100),
+                                TransactionType.DEPOSIT, "Batch");
+                        return null;
+                    }));
+
+            assertTrue(batchStarted.await(10, TimeUnit.SECONDS));
+            // The deposit's transaction must start strictly after the batch's
+            Thread.sleep(20);
+            engine.accounts().applyDelta(account, pNo, Money.ofKronor(10),
+                    TransactionType.DEPOSIT, "Deposit");
+            depositCommitted.countDown();
+            batch.get(10, TimeUnit.SECONDS);
+        } finally {
+            batchThread.shutdownNow();
+        }
+
+        BigDecimal expected = new BigDecimal("110.00");
+        assertEquals(0, expected.compareTo(engine.accounts().findById(account).getBalance()));
+        assertEquals(0, expected.compareTo(
+                engine.transactions().balanceAt(account, LocalDateTime.now().plusDays(1))));
+
+        LocalDate today = LocalDate.now();
+        List<TransactionDAO.DailyBalance> days =
+                engine.transactions().dailyBalances(account, today.minusDays(1), today.plusDays(1));
+        assertEquals(0, expected.compareTo(days.get(days.size() - 1).balance()));
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for the deposit");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}